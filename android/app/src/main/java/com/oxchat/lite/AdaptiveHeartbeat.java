@@ -0,0 +1,183 @@
+package com.oxchat.lite;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Learns the longest WebSocket ping interval each network's NAT tolerates and persists it per network key
+ * Sockets are opened with OkHttp's pingInterval set to the current candidate; OkHttp fails a socket whose pong
+ * is missing by the next ping, so a dead connection is always detected within 2 * MAX_INTERVAL_MS
+ *
+ * Learning per network:
+ * - A socket that stays up for CONFIRM_PINGS intervals proves the interval safe, the next socket probes higher
+ *   (halfway to the lowest known unsafe interval, or 1.5x when none is known)
+ * - A socket that dies on a validated network after at least one full interval marks the interval unsafe,
+ *   the next socket falls back to the safe interval (or half the failed one)
+ * - Drops at or below the safe interval are counted as strikes, two in a row shrink the safe interval,
+ *   so one random network blip does not undo what was learned
+ *
+ * Must only be used from the push event-loop thread
+ */
+class AdaptiveHeartbeat {
+    private static final String TAG = "AdaptiveHeartbeat";
+    static final String KEY_HEARTBEAT = "heartbeat_intervals";
+    static final long MIN_INTERVAL_MS = 20_000;
+    static final long INITIAL_INTERVAL_MS = 45_000;
+    static final long MAX_INTERVAL_MS = 240_000;
+    static final int CONFIRM_PINGS = 3;
+    private static final long RESOLUTION_MS = 10_000;
+    private static final int MAX_STRIKES = 2;
+    private static final int MAX_NETWORKS = 32;
+
+    private static final class Estimate {
+        long safe; // Longest interval that kept a socket alive, 0 if unknown
+        long unsafe; // Shortest interval a socket died with, 0 if unknown
+        long current = INITIAL_INTERVAL_MS; // Interval the next socket uses
+        int strikes;
+        long updatedAt;
+    }
+
+    private final SharedPreferences prefs;
+    private final Map<String, Estimate> estimates = new HashMap<>();
+
+    AdaptiveHeartbeat(SharedPreferences prefs) {
+        this.prefs = prefs;
+        load();
+    }
+
+    /**
+     * Ping interval for a new socket on the given network
+     */
+    long intervalFor(String networkKey) {
+        return estimate(networkKey).current;
+    }
+
+    /**
+     * A socket stayed open for CONFIRM_PINGS intervals without failing
+     */
+    void onSocketSurvived(String networkKey, long intervalMs) {
+        Estimate estimate = estimate(networkKey);
+        estimate.strikes = 0;
+        if (intervalMs > estimate.safe) {
+            estimate.safe = intervalMs;
+            if (estimate.unsafe > 0 && estimate.unsafe <= estimate.safe) {
+                // NAT got more tolerant than we recorded, forget the old limit
+                estimate.unsafe = 0;
+            }
+        }
+        long next;
+        if (estimate.unsafe > 0) {
+            next = estimate.unsafe - estimate.safe <= RESOLUTION_MS
+                    ? estimate.safe : (estimate.safe + estimate.unsafe) / 2;
+        } else {
+            next = estimate.safe + estimate.safe / 2;
+        }
+        update(networkKey, estimate, next, "survived " + intervalMs + "ms");
+    }
+
+    /**
+     * A socket failed after being open for openMs
+     * @param networkValidated whether the network was still usable, failures while offline say nothing about NAT
+     */
+    void onSocketDropped(String networkKey, long intervalMs, long openMs, boolean networkValidated) {
+        if (!networkValidated || openMs < intervalMs) {
+            return;
+        }
+        Estimate estimate = estimate(networkKey);
+        if (intervalMs > estimate.safe) {
+            estimate.unsafe = estimate.unsafe > 0 ? Math.min(estimate.unsafe, intervalMs) : intervalMs;
+            long next = estimate.safe > 0 ? estimate.safe : intervalMs / 2;
+            update(networkKey, estimate, next, "dropped above safe at " + intervalMs + "ms");
+            return;
+        }
+        estimate.strikes++;
+        if (estimate.strikes >= MAX_STRIKES) {
+            estimate.strikes = 0;
+            estimate.unsafe = intervalMs;
+            estimate.safe = Math.max(MIN_INTERVAL_MS, intervalMs * 3 / 4);
+            update(networkKey, estimate, estimate.safe, "dropped twice at safe " + intervalMs + "ms");
+        } else {
+            persist();
+        }
+    }
+
+    private Estimate estimate(String networkKey) {
+        Estimate estimate = estimates.get(networkKey);
+        if (estimate == null) {
+            estimate = new Estimate();
+            estimates.put(networkKey, estimate);
+        }
+        return estimate;
+    }
+
+    private void update(String networkKey, Estimate estimate, long next, String reason) {
+        long clamped = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, next));
+        Log.d(TAG, networkKey + ": " + reason + ", next ping interval " + estimate.current + " -> " + clamped
+                + "ms (safe=" + estimate.safe + ", unsafe=" + estimate.unsafe + ")");
+        estimate.current = clamped;
+        estimate.updatedAt = System.currentTimeMillis();
+        persist();
+    }
+
+    private void persist() {
+        // Keep the most recently updated networks only
+        while (estimates.size() > MAX_NETWORKS) {
+            String oldestKey = null;
+            long oldest = Long.MAX_VALUE;
+            for (Map.Entry<String, Estimate> entry : estimates.entrySet()) {
+                if (entry.getValue().updatedAt < oldest) {
+                    oldest = entry.getValue().updatedAt;
+                    oldestKey = entry.getKey();
+                }
+            }
+            estimates.remove(oldestKey);
+        }
+        try {
+            JSONObject networks = new JSONObject();
+            for (Map.Entry<String, Estimate> entry : estimates.entrySet()) {
+                Estimate estimate = entry.getValue();
+                JSONObject item = new JSONObject();
+                item.put("safe", estimate.safe);
+                item.put("unsafe", estimate.unsafe);
+                item.put("current", estimate.current);
+                item.put("strikes", estimate.strikes);
+                item.put("updatedAt", estimate.updatedAt);
+                networks.put(entry.getKey(), item);
+            }
+            prefs.edit().putString(KEY_HEARTBEAT, networks.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist heartbeat intervals", e);
+        }
+    }
+
+    private void load() {
+        String saved = prefs.getString(KEY_HEARTBEAT, null);
+        if (saved == null) return;
+        try {
+            JSONObject networks = new JSONObject(saved);
+            Iterator<String> keys = networks.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                JSONObject item = networks.getJSONObject(key);
+                Estimate estimate = new Estimate();
+                estimate.safe = item.optLong("safe", 0);
+                estimate.unsafe = item.optLong("unsafe", 0);
+                estimate.current = Math.max(MIN_INTERVAL_MS,
+                        Math.min(MAX_INTERVAL_MS, item.optLong("current", INITIAL_INTERVAL_MS)));
+                estimate.strikes = item.optInt("strikes", 0);
+                estimate.updatedAt = item.optLong("updatedAt", 0);
+                estimates.put(key, estimate);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to load heartbeat intervals, starting over", e);
+            estimates.clear();
+        }
+    }
+}
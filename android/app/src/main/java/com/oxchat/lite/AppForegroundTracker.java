@@ -0,0 +1,86 @@
+package com.oxchat.lite;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide foreground state, fed by the activity lifecycle of MainActivity and MultiEngineActivity
+ * Replaces ActivityManager.getRunningAppProcesses() scans (a Binder call listing every process) with a
+ * volatile read, and notifies listeners when the app moves between foreground and background
+ * The app counts as foreground while at least one of its activities is started (visible to the user)
+ */
+public final class AppForegroundTracker {
+    private static final String TAG = "AppForegroundTracker";
+    private static final AppForegroundTracker INSTANCE = new AppForegroundTracker();
+
+    public interface Listener {
+        /**
+         * Called on the main thread
+         */
+        void onForegroundChanged(boolean foreground);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private int startedActivities; // Main thread only
+    private volatile boolean foreground;
+
+    public static AppForegroundTracker getInstance() {
+        return INSTANCE;
+    }
+
+    private AppForegroundTracker() {
+    }
+
+    /**
+     * True while an activity of the app is visible, safe to call from any thread
+     */
+    public boolean isForeground() {
+        return foreground;
+    }
+
+    /**
+     * Call from Activity.onStart()
+     */
+    public void onActivityStarted() {
+        checkMainThread();
+        startedActivities++;
+        update();
+    }
+
+    /**
+     * Call from Activity.onStop()
+     */
+    public void onActivityStopped() {
+        checkMainThread();
+        if (startedActivities > 0) {
+            startedActivities--;
+        }
+        update();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void update() {
+        boolean nowForeground = startedActivities > 0;
+        if (nowForeground == foreground) return;
+        foreground = nowForeground;
+        Log.d(TAG, "App moved to " + (nowForeground ? "foreground" : "background"));
+        for (Listener listener : listeners) {
+            listener.onForegroundChanged(nowForeground);
+        }
+    }
+
+    private static void checkMainThread() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("Activity lifecycle must be reported on the main thread");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.oxchat.lite;
+
+/**
+ * Bech32 encoding (BIP-173) for NIP-19 keys, so notifications can name a sender the way the app shows it
+ */
+final class Bech32 {
+    private static final String CHARSET = "qpzry9x8gf2tvdw0s3jn54khce6mua7l";
+    private static final int[] GENERATOR = {0x3b6a57b2, 0x26508e6d, 0x1ea119fa, 0x3d4233dd, 0x2a1462b3};
+
+    private Bech32() {
+    }
+
+    /**
+     * Encode bytes with a human-readable prefix, e.g. encode("npub", pubkey)
+     */
+    static String encode(String hrp, byte[] data) {
+        int[] values = convertBits(data);
+        int[] checksum = checksum(hrp, values);
+        StringBuilder out = new StringBuilder(hrp.length() + 1 + values.length + checksum.length);
+        out.append(hrp).append('1');
+        for (int value : values) {
+            out.append(CHARSET.charAt(value));
+        }
+        for (int value : checksum) {
+            out.append(CHARSET.charAt(value));
+        }
+        return out.toString();
+    }
+
+    /**
+     * npub of a hex public key, shortened to npub1abcdefg...uvwxyz for display
+     */
+    static String shortNpub(String hexPubkey) {
+        String npub = encode("npub", Hex.decode(hexPubkey));
+        return npub.substring(0, 12) + "\u2026" + npub.substring(npub.length() - 6);
+    }
+
+    private static int[] convertBits(byte[] data) {
+        int[] out = new int[(data.length * 8 + 4) / 5];
+        int accumulator = 0;
+        int bits = 0;
+        int index = 0;
+        for (byte b : data) {
+            accumulator = (accumulator << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                out[index++] = (accumulator >>> bits) & 31;
+            }
+        }
+        if (bits > 0) {
+            out[index] = (accumulator << (5 - bits)) & 31;
+        }
+        return out;
+    }
+
+    private static int[] checksum(String hrp, int[] values) {
+        int[] expanded = new int[hrp.length() * 2 + 1 + values.length + 6];
+        int index = 0;
+        for (int i = 0; i < hrp.length(); i++) {
+            expanded[index++] = hrp.charAt(i) >> 5;
+        }
+        expanded[index++] = 0;
+        for (int i = 0; i < hrp.length(); i++) {
+            expanded[index++] = hrp.charAt(i) & 31;
+        }
+        System.arraycopy(values, 0, expanded, index, values.length);
+        int polymod = polymod(expanded) ^ 1;
+        int[] checksum = new int[6];
+        for (int i = 0; i < 6; i++) {
+            checksum[i] = (polymod >>> (5 * (5 - i))) & 31;
+        }
+        return checksum;
+    }
+
+    private static int polymod(int[] values) {
+        int checksum = 1;
+        for (int value : values) {
+            int top = checksum >>> 25;
+            checksum = ((checksum & 0x1ffffff) << 5) ^ value;
+            for (int i = 0; i < 5; i++) {
+                if (((top >>> i) & 1) != 0) {
+                    checksum ^= GENERATOR[i];
+                }
+            }
+        }
+        return checksum;
+    }
+}
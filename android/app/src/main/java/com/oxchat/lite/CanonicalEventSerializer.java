@@ -0,0 +1,286 @@
+package com.oxchat.lite;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Canonical NIP-01 event serializer and id hasher
+ * Writes [0,pubkey,created_at,kind,tags,content] as UTF-8 into a reusable buffer that is streamed into SHA-256
+ * whenever it fills, so computing an id allocates nothing beyond the caller's output
+ *
+ * Output is byte-identical to Jackson's default writer followed by String.getBytes(UTF_8), which is what
+ * nostr-java's EventSerializer and the previous Jackson code path produced:
+ * quote and backslash are escaped, backspace/tab/newline/form feed/carriage return use their short escapes,
+ * other control characters use the six-character u00XX escape with upper-case hex, '/' and non-ASCII
+ * are written as-is, and unpaired surrogates become '?'
+ *
+ * Methods are synchronized so one instance can be shared by the relay reader threads
+ */
+final class CanonicalEventSerializer {
+    static final int ID_LENGTH = 32;
+    private static final int BUFFER_SIZE = 512;
+    private static final byte[] HEX_UPPER = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final MessageDigest sha256;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private boolean hashing; // true: flush full buffer into the digest, false: grow buffer to keep the text
+
+    CanonicalEventSerializer() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Compute the event id into out[offset, offset + 32)
+     * @param tags tag values, each tag is an array of strings
+     */
+    synchronized void computeId(String pubkey, long createdAt, int kind, String[][] tags, String content,
+                                byte[] out, int offset) {
+        hashing = true;
+        position = 0;
+        sha256.reset();
+        writeCanonical(pubkey, createdAt, kind, tags, content);
+        sha256.update(buffer, 0, position);
+        position = 0;
+        try {
+            sha256.digest(out, offset, ID_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("Output buffer too small for event id", e);
+        }
+    }
+
+    /**
+     * Compute the event id as lower-case hex
+     */
+    String computeIdHex(String pubkey, long createdAt, int kind, String[][] tags, String content) {
+        byte[] id = new byte[ID_LENGTH];
+        computeId(pubkey, createdAt, kind, tags, content, id, 0);
+        return Hex.encode(id);
+    }
+
+    /**
+     * Canonical serialization bytes, the exact input of the id hash
+     */
+    synchronized byte[] serializeCanonical(String pubkey, long createdAt, int kind, String[][] tags, String content) {
+        hashing = false;
+        position = 0;
+        writeCanonical(pubkey, createdAt, kind, tags, content);
+        byte[] out = new byte[position];
+        System.arraycopy(buffer, 0, out, 0, position);
+        position = 0;
+        return out;
+    }
+
+    /**
+     * Signed event as a JSON object with members in nostr-java order: id, pubkey, created_at, kind, tags, content, sig
+     */
+    synchronized String serializeEvent(String id, String pubkey, long createdAt, int kind, String[][] tags,
+                                       String content, String sig) {
+        hashing = false;
+        position = 0;
+        writeEvent(id, pubkey, createdAt, kind, tags, content, sig);
+        return takeString();
+    }
+
+    /**
+     * Client message carrying a signed event, e.g. ["AUTH",{...}] or ["EVENT",{...}]
+     */
+    synchronized String serializeEventMessage(String messageType, String id, String pubkey, long createdAt, int kind,
+                                              String[][] tags, String content, String sig) {
+        hashing = false;
+        position = 0;
+        writeByte('[');
+        writeString(messageType);
+        writeByte(',');
+        writeEvent(id, pubkey, createdAt, kind, tags, content, sig);
+        writeByte(']');
+        return takeString();
+    }
+
+    private String takeString() {
+        String result = new String(buffer, 0, position, StandardCharsets.UTF_8);
+        position = 0;
+        if (buffer.length > BUFFER_SIZE * 8) {
+            // Don't pin a buffer grown by one unusually large event
+            buffer = new byte[BUFFER_SIZE];
+        }
+        return result;
+    }
+
+    private void writeCanonical(String pubkey, long createdAt, int kind, String[][] tags, String content) {
+        writeByte('[');
+        writeByte('0');
+        writeByte(',');
+        writeString(pubkey);
+        writeByte(',');
+        writeLong(createdAt);
+        writeByte(',');
+        writeLong(kind);
+        writeByte(',');
+        writeTags(tags);
+        writeByte(',');
+        writeString(content);
+        writeByte(']');
+    }
+
+    private void writeEvent(String id, String pubkey, long createdAt, int kind, String[][] tags, String content,
+                            String sig) {
+        writeByte('{');
+        writeKey("id");
+        writeString(id);
+        writeByte(',');
+        writeKey("pubkey");
+        writeString(pubkey);
+        writeByte(',');
+        writeKey("created_at");
+        writeLong(createdAt);
+        writeByte(',');
+        writeKey("kind");
+        writeLong(kind);
+        writeByte(',');
+        writeKey("tags");
+        writeTags(tags);
+        writeByte(',');
+        writeKey("content");
+        writeString(content);
+        writeByte(',');
+        writeKey("sig");
+        writeString(sig);
+        writeByte('}');
+    }
+
+    private void writeKey(String key) {
+        writeString(key);
+        writeByte(':');
+    }
+
+    private void writeTags(String[][] tags) {
+        writeByte('[');
+        if (tags != null) {
+            for (int i = 0; i < tags.length; i++) {
+                if (i > 0) writeByte(',');
+                writeByte('[');
+                String[] tag = tags[i];
+                for (int j = 0; j < tag.length; j++) {
+                    if (j > 0) writeByte(',');
+                    writeString(tag[j]);
+                }
+                writeByte(']');
+            }
+        }
+        writeByte(']');
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        ensureCapacity(19);
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // Digits were written least significant first
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void writeAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            writeByte(value.charAt(i));
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeAscii("null");
+            return;
+        }
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                    writeByte(c);
+                } else if (c < 0x20) {
+                    writeControl(c);
+                } else {
+                    writeByte(c);
+                }
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensureCapacity(4);
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    // Unpaired surrogate, String.getBytes(UTF_8) replaces it with '?'
+                    writeByte('?');
+                }
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeControl(char c) {
+        writeByte('\\');
+        switch (c) {
+            case '\b': writeByte('b'); return;
+            case '\t': writeByte('t'); return;
+            case '\n': writeByte('n'); return;
+            case '\f': writeByte('f'); return;
+            case '\r': writeByte('r'); return;
+            default:
+                writeByte('u');
+                writeByte('0');
+                writeByte('0');
+                writeByte(HEX_UPPER[c >> 4]);
+                writeByte(HEX_UPPER[c & 0x0f]);
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (position + needed <= buffer.length) return;
+        if (hashing) {
+            sha256.update(buffer, 0, position);
+            position = 0;
+        } else {
+            byte[] grown = new byte[Math.max(buffer.length * 2, position + needed)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+}
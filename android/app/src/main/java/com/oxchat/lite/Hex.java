@@ -0,0 +1,85 @@
+package com.oxchat.lite;
+
+/**
+ * Lower-case hex encoding with lookup tables, used for event ids, keys and signatures
+ */
+final class Hex {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            VALUES['a' + i] = (byte) (10 + i);
+            VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private Hex() {
+    }
+
+    static String encode(byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    static String encode(byte[] bytes, int offset, int length) {
+        char[] out = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            out[i * 2] = DIGITS[b >>> 4];
+            out[i * 2 + 1] = DIGITS[b & 0x0f];
+        }
+        return new String(out);
+    }
+
+    static byte[] decode(CharSequence hex) {
+        if ((hex.length() & 1) != 0) {
+            throw new IllegalArgumentException("Hex string has odd length: " + hex.length());
+        }
+        byte[] out = new byte[hex.length() / 2];
+        decode(hex, out, 0);
+        return out;
+    }
+
+    /**
+     * Decode hex into out starting at offset, the whole string must fit
+     */
+    static void decode(CharSequence hex, byte[] out, int offset) {
+        int length = hex.length() / 2;
+        if ((hex.length() & 1) != 0 || offset + length > out.length) {
+            throw new IllegalArgumentException("Hex string does not fit: " + hex.length());
+        }
+        for (int i = 0; i < length; i++) {
+            int high = value(hex.charAt(i * 2));
+            int low = value(hex.charAt(i * 2 + 1));
+            out[offset + i] = (byte) ((high << 4) | low);
+        }
+    }
+
+    /**
+     * Decode ASCII hex bytes, so secrets never have to exist as an immutable String
+     */
+    static byte[] decodeAscii(byte[] ascii) {
+        if ((ascii.length & 1) != 0) {
+            throw new IllegalArgumentException("Hex input has odd length: " + ascii.length);
+        }
+        byte[] out = new byte[ascii.length / 2];
+        for (int i = 0; i < out.length; i++) {
+            int high = value((char) (ascii[i * 2] & 0xff));
+            int low = value((char) (ascii[i * 2 + 1] & 0xff));
+            out[i] = (byte) ((high << 4) | low);
+        }
+        return out;
+    }
+
+    private static int value(char c) {
+        int v = c < 128 ? VALUES[c] : -1;
+        if (v < 0) {
+            throw new IllegalArgumentException("Invalid hex character: " + c);
+        }
+        return v;
+    }
+}
@@ -12,6 +12,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -21,6 +22,7 @@ import javax.crypto.spec.GCMParameterSpec;
 /**
  * Helper class for storing/retrieving private key using Android Keystore
  * Private key is encrypted and stored in app's private file directory, not in SharedPreferences
+ * One file per push account, named after the account's hex pubkey
  */
 public class KeystoreHelper {
     private static final String TAG = "KeystoreHelper";
@@ -29,7 +31,9 @@ public class KeystoreHelper {
     private static final String TRANSFORMATION = "AES/GCM/NoPadding";
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
-    private static final String PRIVKEY_FILE_NAME = "encrypted_privkey.dat";
+    private static final String PRIVKEY_FILE_NAME = "encrypted_privkey.dat"; // Single-account file of older versions
+    private static final String PRIVKEY_FILE_PREFIX = "encrypted_privkey_";
+    private static final String PRIVKEY_FILE_SUFFIX = ".dat";
 
     /**
      * Get or create the secret key for encryption
@@ -60,20 +64,34 @@ public class KeystoreHelper {
     }
 
     /**
-     * Get the file path for storing encrypted private key
+     * Get the file path for storing an account's encrypted private key
+     * @return null if pubkey is not a 64 character hex key, it becomes part of the file name
      */
-    private static File getPrivkeyFile(Context context) {
-        return new File(context.getFilesDir(), PRIVKEY_FILE_NAME);
+    private static File getPrivkeyFile(Context context, String pubkey) {
+        if (pubkey == null || pubkey.length() != 64) {
+            return null;
+        }
+        for (int i = 0; i < pubkey.length(); i++) {
+            if (Character.digit(pubkey.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        return new File(context.getFilesDir(), PRIVKEY_FILE_PREFIX + pubkey.toLowerCase() + PRIVKEY_FILE_SUFFIX);
     }
 
     /**
      * Store private key encrypted in app's private file directory (encrypted with Android Keystore)
      * Not stored in SharedPreferences for better security
      */
-    public static boolean storePrivateKey(Context context, String plaintext) {
+    public static boolean storePrivateKey(Context context, String pubkey, String plaintext) {
         if (plaintext == null || plaintext.isEmpty()) {
             return false;
         }
+        File privkeyFile = getPrivkeyFile(context, pubkey);
+        if (privkeyFile == null) {
+            Log.e(TAG, "Invalid pubkey for private key file: " + pubkey);
+            return false;
+        }
 
         try {
             SecretKey secretKey = getOrCreateSecretKey();
@@ -91,18 +109,18 @@ public class KeystoreHelper {
 
             // Encode to Base64 and save to file
             String encryptedData = Base64.encodeToString(combined, Base64.DEFAULT);
-            File privkeyFile = getPrivkeyFile(context);
             Log.d(TAG, "Storing private key to file: " + privkeyFile.getAbsolutePath());
             try (FileOutputStream fos = new FileOutputStream(privkeyFile)) {
                 fos.write(encryptedData.getBytes(StandardCharsets.UTF_8));
             }
 
             Log.d(TAG, "Private key encrypted and stored in private file, size: " + privkeyFile.length() + " bytes");
+            // A new key replaces whatever the signer still holds, and wakes AUTH challenges waiting on it
+            SigningKeyCache.getInstance().keyStored(pubkey);
             return true;
         } catch (Exception e) {
             Log.e(TAG, "Failed to encrypt and store private key", e);
             // Delete file if encryption failed
-            File privkeyFile = getPrivkeyFile(context);
             if (privkeyFile.exists()) {
                 privkeyFile.delete();
             }
@@ -110,11 +128,73 @@ public class KeystoreHelper {
         }
     }
 
+    /**
+     * Whether a key file exists for the account, without decrypting it
+     */
+    public static boolean hasPrivateKey(Context context, String pubkey) {
+        File privkeyFile = getPrivkeyFile(context, pubkey);
+        return privkeyFile != null && privkeyFile.exists();
+    }
+
     /**
      * Retrieve private key from app's private file directory (decrypted using Android Keystore)
      */
-    public static String getPrivateKey(Context context) {
-        File privkeyFile = getPrivkeyFile(context);
+    public static String getPrivateKey(Context context, String pubkey) {
+        byte[] decryptedBytes = decryptPrivateKey(getPrivkeyFile(context, pubkey));
+        if (decryptedBytes == null) {
+            return null;
+        }
+        String privkey = new String(decryptedBytes, StandardCharsets.UTF_8);
+        Arrays.fill(decryptedBytes, (byte) 0);
+        return privkey;
+    }
+
+    /**
+     * Retrieve private key as raw 32 bytes, the decrypted hex is wiped before returning
+     * Caller owns the returned array and should zero it when done
+     */
+    public static byte[] getPrivateKeyBytes(Context context, String pubkey) {
+        byte[] decryptedBytes = decryptPrivateKey(getPrivkeyFile(context, pubkey));
+        if (decryptedBytes == null) {
+            return null;
+        }
+        try {
+            byte[] keyBytes = Hex.decodeAscii(decryptedBytes);
+            if (keyBytes.length != 32) {
+                Log.e(TAG, "Private key must be 32 bytes, got: " + keyBytes.length);
+                Arrays.fill(keyBytes, (byte) 0);
+                return null;
+            }
+            return keyBytes;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Stored private key is not valid hex", e);
+            return null;
+        } finally {
+            Arrays.fill(decryptedBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Move the key file of the single-account versions to the file of its account
+     * Lets a service restarted by the system sign before the app has stored the key again
+     */
+    public static void migrateLegacyPrivateKey(Context context, String pubkey) {
+        File legacyFile = new File(context.getFilesDir(), PRIVKEY_FILE_NAME);
+        File privkeyFile = getPrivkeyFile(context, pubkey);
+        if (!legacyFile.exists() || privkeyFile == null) return;
+        if (privkeyFile.exists()) {
+            wipeFile(legacyFile);
+        } else if (legacyFile.renameTo(privkeyFile)) {
+            Log.d(TAG, "Moved legacy private key file to " + privkeyFile.getName());
+        } else {
+            Log.e(TAG, "Failed to move legacy private key file");
+        }
+    }
+
+    private static byte[] decryptPrivateKey(File privkeyFile) {
+        if (privkeyFile == null) {
+            return null;
+        }
         Log.d(TAG, "Looking for private key file at: " + privkeyFile.getAbsolutePath());
         if (!privkeyFile.exists()) {
             Log.d(TAG, "Private key file not found at: " + privkeyFile.getAbsolutePath());
@@ -145,9 +225,7 @@ public class KeystoreHelper {
             Cipher cipher = Cipher.getInstance(TRANSFORMATION);
             GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
             cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
-            byte[] decryptedBytes = cipher.doFinal(encryptedBytes);
-
-            return new String(decryptedBytes, StandardCharsets.UTF_8);
+            return cipher.doFinal(encryptedBytes);
         } catch (Exception e) {
             Log.e(TAG, "Failed to decrypt private key", e);
             return null;
@@ -155,10 +233,33 @@ public class KeystoreHelper {
     }
 
     /**
-     * Clear private key from file system
+     * Clear the private keys of all accounts from file system
      */
     public static void clearPrivateKey(Context context) {
-        File privkeyFile = getPrivkeyFile(context);
+        SigningKeyCache.getInstance().invalidate();
+        File[] files = context.getFilesDir().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(PRIVKEY_FILE_NAME)
+                    || (name.startsWith(PRIVKEY_FILE_PREFIX) && name.endsWith(PRIVKEY_FILE_SUFFIX))) {
+                wipeFile(file);
+            }
+        }
+    }
+
+    /**
+     * Clear one account's private key from file system
+     */
+    public static void clearPrivateKey(Context context, String pubkey) {
+        SigningKeyCache.getInstance().invalidate(pubkey);
+        File privkeyFile = getPrivkeyFile(context, pubkey);
+        if (privkeyFile != null) {
+            wipeFile(privkeyFile);
+        }
+    }
+
+    private static void wipeFile(File privkeyFile) {
         if (privkeyFile.exists()) {
             // Overwrite file with zeros before deleting
             try (FileOutputStream fos = new FileOutputStream(privkeyFile)) {
@@ -169,7 +270,7 @@ public class KeystoreHelper {
                 Log.e(TAG, "Failed to overwrite file", e);
             }
             privkeyFile.delete();
-            Log.d(TAG, "Private key file deleted");
+            Log.d(TAG, "Private key file deleted: " + privkeyFile.getName());
         }
     }
 
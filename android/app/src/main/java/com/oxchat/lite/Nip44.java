@@ -0,0 +1,229 @@
+package com.oxchat.lite;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import fr.acinq.secp256k1.Secp256k1;
+
+/**
+ * NIP-44 version 2 decryption (secp256k1 ECDH, HKDF-SHA256, ChaCha20, HMAC-SHA256)
+ * Payload: base64(version 0x02 || nonce[32] || ciphertext || mac[32])
+ * - conversation key = HKDF-extract(salt "nip44-v2", unhashed ECDH x coordinate)
+ * - message keys = HKDF-expand(conversation key, nonce, 76) split into ChaCha key[32], ChaCha nonce[12], HMAC key[32]
+ * - plaintext = unpad(ChaCha20(ciphertext)), padding is a big-endian u16 length followed by zeros
+ * The MAC is checked in constant time before anything is decrypted
+ * ChaCha20 is implemented here because Android only exposes it as ChaCha20-Poly1305 through the Cipher API
+ *
+ * Methods are synchronized so one instance can be shared, Mac instances are reused between calls
+ */
+final class Nip44 {
+    static final int VERSION = 2;
+    static final int KEY_LENGTH = 32;
+    private static final int NONCE_LENGTH = 32;
+    private static final int MAC_LENGTH = 32;
+    private static final int MIN_PLAINTEXT_LENGTH = 1;
+    private static final int MAX_PLAINTEXT_LENGTH = 65535;
+    private static final int MIN_PAYLOAD_LENGTH = 132; // Base64 of 1 + 32 + 34 (padded 32 + length) + 32 bytes
+    private static final int MAX_PAYLOAD_LENGTH = 87472;
+    private static final byte[] SALT = "nip44-v2".getBytes(StandardCharsets.US_ASCII);
+
+    private final Secp256k1 secp256k1;
+    private final Mac hmac;
+    private final byte[] compressedPubkey = new byte[33];
+    private final int[] chachaState = new int[16];
+    private final int[] chachaBlock = new int[16];
+
+    Nip44(Secp256k1 secp256k1) {
+        this.secp256k1 = secp256k1;
+        try {
+            hmac = Mac.getInstance("HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    /**
+     * Conversation key between our private key and a peer's x-only public key, symmetric for both sides
+     * The caller owns the returned array and should wipe it when done
+     */
+    synchronized byte[] conversationKey(byte[] privateKey, byte[] xOnlyPublicKey) {
+        if (privateKey.length != KEY_LENGTH || xOnlyPublicKey.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Keys must be 32 bytes");
+        }
+        // secp256k1 ecdh() hashes the shared point, NIP-44 needs the raw x coordinate, so multiply directly
+        compressedPubkey[0] = 0x02;
+        System.arraycopy(xOnlyPublicKey, 0, compressedPubkey, 1, KEY_LENGTH);
+        byte[] shared = secp256k1.pubKeyTweakMul(compressedPubkey, privateKey);
+        if (shared == null || (shared.length != 33 && shared.length != 65)) {
+            throw new IllegalStateException("Unexpected shared point length: "
+                    + (shared == null ? "null" : shared.length));
+        }
+        try {
+            return hmacSha256(SALT, shared, 1, KEY_LENGTH, null, 0, 0);
+        } finally {
+            Arrays.fill(shared, (byte) 0);
+        }
+    }
+
+    /**
+     * Decrypt a base64 payload with a conversation key
+     * @throws IllegalArgumentException if the payload is malformed, of another version or fails authentication
+     */
+    synchronized String decrypt(String payload, byte[] conversationKey) {
+        if (payload == null || payload.isEmpty() || payload.charAt(0) == '#') {
+            throw new IllegalArgumentException("Unsupported NIP-44 payload encoding");
+        }
+        if (payload.length() < MIN_PAYLOAD_LENGTH || payload.length() > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Invalid NIP-44 payload length: " + payload.length());
+        }
+        byte[] data = Base64.getDecoder().decode(payload);
+        if (data.length < 1 + NONCE_LENGTH + 2 + MAC_LENGTH || data[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported NIP-44 version: " + (data.length > 0 ? data[0] : -1));
+        }
+        int ciphertextOffset = 1 + NONCE_LENGTH;
+        int ciphertextLength = data.length - ciphertextOffset - MAC_LENGTH;
+
+        byte[] messageKeys = messageKeys(conversationKey, data, 1);
+        try {
+            // MAC covers nonce || ciphertext
+            byte[] mac = hmacSha256(Arrays.copyOfRange(messageKeys, 44, 76), data, 1,
+                    NONCE_LENGTH + ciphertextLength, null, 0, 0);
+            byte[] expected = Arrays.copyOfRange(data, data.length - MAC_LENGTH, data.length);
+            if (!MessageDigest.isEqual(mac, expected)) {
+                throw new IllegalArgumentException("Invalid NIP-44 MAC");
+            }
+            chacha20(messageKeys, data, ciphertextOffset, ciphertextLength);
+            int length = ((data[ciphertextOffset] & 0xff) << 8) | (data[ciphertextOffset + 1] & 0xff);
+            if (length < MIN_PLAINTEXT_LENGTH || length > MAX_PLAINTEXT_LENGTH
+                    || ciphertextLength != 2 + paddedLength(length)) {
+                throw new IllegalArgumentException("Invalid NIP-44 padding");
+            }
+            String plaintext = new String(data, ciphertextOffset + 2, length, StandardCharsets.UTF_8);
+            Arrays.fill(data, (byte) 0);
+            return plaintext;
+        } finally {
+            Arrays.fill(messageKeys, (byte) 0);
+        }
+    }
+
+    /**
+     * Length of the padded plaintext for an unpadded length (NIP-44 calc_padded_len)
+     */
+    static int paddedLength(int length) {
+        if (length <= 32) {
+            return 32;
+        }
+        int nextPower = Integer.highestOneBit(length - 1) << 1;
+        int chunk = nextPower <= 256 ? 32 : nextPower / 8;
+        return chunk * ((length - 1) / chunk + 1);
+    }
+
+    /**
+     * HKDF-expand to 76 bytes: T(1) || T(2) || T(3)[0, 12), info is the 32-byte nonce
+     */
+    private byte[] messageKeys(byte[] conversationKey, byte[] nonce, int nonceOffset) {
+        byte[] out = new byte[76];
+        byte[] previous = null;
+        for (int block = 1, written = 0; written < out.length; block++) {
+            byte[] counter = {(byte) block};
+            byte[] t = hmacSha256(conversationKey, previous, 0, previous == null ? 0 : previous.length,
+                    nonce, nonceOffset, NONCE_LENGTH, counter);
+            int count = Math.min(t.length, out.length - written);
+            System.arraycopy(t, 0, out, written, count);
+            written += count;
+            if (previous != null) {
+                Arrays.fill(previous, (byte) 0);
+            }
+            previous = t;
+        }
+        Arrays.fill(previous, (byte) 0);
+        return out;
+    }
+
+    private byte[] hmacSha256(byte[] key, byte[] first, int firstOffset, int firstLength,
+                              byte[] second, int secondOffset, int secondLength) {
+        return hmacSha256(key, first, firstOffset, firstLength, second, secondOffset, secondLength, null);
+    }
+
+    private byte[] hmacSha256(byte[] key, byte[] first, int firstOffset, int firstLength,
+                              byte[] second, int secondOffset, int secondLength, byte[] third) {
+        try {
+            hmac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to init HmacSHA256", e);
+        }
+        if (first != null && firstLength > 0) {
+            hmac.update(first, firstOffset, firstLength);
+        }
+        if (second != null && secondLength > 0) {
+            hmac.update(second, secondOffset, secondLength);
+        }
+        if (third != null) {
+            hmac.update(third);
+        }
+        return hmac.doFinal();
+    }
+
+    /**
+     * RFC 8439 ChaCha20 with a 32-bit block counter starting at 0, XORs data[offset, offset + length) in place
+     * messageKeys[0, 32) is the key and messageKeys[32, 44) the nonce
+     */
+    private void chacha20(byte[] messageKeys, byte[] data, int offset, int length) {
+        int[] state = chachaState;
+        state[0] = 0x61707865;
+        state[1] = 0x3320646e;
+        state[2] = 0x79622d32;
+        state[3] = 0x6b206574;
+        for (int i = 0; i < 8; i++) {
+            state[4 + i] = littleEndian(messageKeys, i * 4);
+        }
+        state[12] = 0;
+        for (int i = 0; i < 3; i++) {
+            state[13 + i] = littleEndian(messageKeys, 32 + i * 4);
+        }
+        int[] x = chachaBlock;
+        for (int position = 0; position < length; position += 64) {
+            System.arraycopy(state, 0, x, 0, 16);
+            for (int round = 0; round < 10; round++) {
+                quarterRound(x, 0, 4, 8, 12);
+                quarterRound(x, 1, 5, 9, 13);
+                quarterRound(x, 2, 6, 10, 14);
+                quarterRound(x, 3, 7, 11, 15);
+                quarterRound(x, 0, 5, 10, 15);
+                quarterRound(x, 1, 6, 11, 12);
+                quarterRound(x, 2, 7, 8, 13);
+                quarterRound(x, 3, 4, 9, 14);
+            }
+            int count = Math.min(64, length - position);
+            for (int i = 0; i < count; i++) {
+                int word = x[i >>> 2] + state[i >>> 2];
+                data[offset + position + i] ^= (byte) (word >>> ((i & 3) * 8));
+            }
+            state[12]++;
+        }
+        Arrays.fill(state, 0);
+        Arrays.fill(x, 0);
+    }
+
+    private static void quarterRound(int[] x, int a, int b, int c, int d) {
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+    }
+
+    private static int littleEndian(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,85 @@
+package com.oxchat.lite;
+
+import java.security.SecureRandom;
+
+import fr.acinq.secp256k1.Secp256k1;
+
+/**
+ * BIP-340 Schnorr signer for Nostr event ids, working on raw byte arrays
+ * Wraps the shared Secp256k1 handle and one SecureRandom that is seeded once and reused for the 32-byte aux
+ * randomness of every signature, instead of a new SecureRandom per signature
+ * Reference: nostr-java Identity.sign() and Schnorr.sign(msg, secKey, auxRand)
+ */
+final class NostrSigner {
+    static final int ID_LENGTH = 32;
+    static final int KEY_LENGTH = 32;
+    static final int SIGNATURE_LENGTH = 64;
+
+    private final Secp256k1 secp256k1;
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] aux = new byte[32];
+
+    NostrSigner(Secp256k1 secp256k1) {
+        this.secp256k1 = secp256k1;
+    }
+
+    /**
+     * Sign one 32-byte event id
+     * @return 64-byte signature (R || s)
+     */
+    synchronized byte[] sign(byte[] eventId, byte[] privateKey) {
+        checkLength(eventId, ID_LENGTH, "Event ID");
+        checkLength(privateKey, KEY_LENGTH, "Private key");
+        return signChecked(eventId, privateKey);
+    }
+
+    /**
+     * Sign many event ids with the same key in one call (receipts, AUTH to several relays)
+     * The key is validated once for the whole batch
+     * @return one 64-byte signature per event id, in input order
+     */
+    synchronized byte[][] signBatch(byte[][] eventIds, byte[] privateKey) {
+        checkLength(privateKey, KEY_LENGTH, "Private key");
+        if (!secp256k1.secKeyVerify(privateKey)) {
+            throw new IllegalArgumentException("Invalid private key");
+        }
+        byte[][] signatures = new byte[eventIds.length][];
+        for (int i = 0; i < eventIds.length; i++) {
+            checkLength(eventIds[i], ID_LENGTH, "Event ID");
+            signatures[i] = signChecked(eventIds[i], privateKey);
+        }
+        return signatures;
+    }
+
+    /**
+     * Check a BIP-340 signature against an x-only public key
+     */
+    boolean verify(byte[] signature, byte[] eventId, byte[] xOnlyPublicKey) {
+        if (signature.length != SIGNATURE_LENGTH || eventId.length != ID_LENGTH || xOnlyPublicKey.length != 32) {
+            return false;
+        }
+        try {
+            return secp256k1.verifySchnorr(signature, eventId, xOnlyPublicKey);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private byte[] signChecked(byte[] eventId, byte[] privateKey) {
+        // Fresh aux randomness per signature (BIP340 requirement), from the long-lived generator
+        random.nextBytes(aux);
+        byte[] signature = secp256k1.signSchnorr(eventId, privateKey, aux);
+        if (signature == null || signature.length != SIGNATURE_LENGTH) {
+            throw new IllegalStateException("Signature must be 64 bytes, got: "
+                    + (signature == null ? "null" : signature.length));
+        }
+        return signature;
+    }
+
+    private static void checkLength(byte[] value, int expected, String name) {
+        if (value == null || value.length != expected) {
+            throw new IllegalArgumentException(name + " must be " + expected + " bytes, got: "
+                    + (value == null ? "null" : value.length));
+        }
+    }
+}
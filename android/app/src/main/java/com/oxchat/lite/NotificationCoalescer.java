@@ -0,0 +1,170 @@
+package com.oxchat.lite;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces bursts of push events into one notification update per window
+ * Events only bump per-group counters; a flush posted on the handler hands the totals to the sink once per
+ * WINDOW_MS, never faster than MIN_POST_INTERVAL_MS (NotificationManager drops updates above ~5/s per app)
+ * and with sound/vibration at most once per ALERT_INTERVAL_MS, later updates of the same burst are silent
+ * The last MAX_PREVIEWS decoded messages are kept for the notification body
+ * Each window asks the wake budget once, with the kinds of its events; a window the budget turns down is posted
+ * silently and cannot alert
+ * A call (PushWakeGovernor.KIND_CALL) does not wait for the window or the post interval and always alerts, a
+ * ringing call must not be held back or silenced by the messages before it
+ */
+class NotificationCoalescer {
+    static final long WINDOW_MS = 750;
+    static final long MIN_POST_INTERVAL_MS = 1000;
+    static final long ALERT_INTERVAL_MS = 10_000;
+    static final int MAX_PREVIEWS = 5;
+
+    /**
+     * Decides whether a window may alert and start the app, asked once per posted window on the handler thread
+     */
+    interface WakeBudget {
+        /**
+         * @param kinds kinds of the events of the window
+         * @return false if the window must not interrupt
+         */
+        boolean tryWake(Set<Integer> kinds);
+    }
+
+    /**
+     * Receives one summary per window, called on the handler thread
+     */
+    interface Sink {
+        /**
+         * @param totalEvents events since the last reset
+         * @param groupCounts events per group since the last reset, must not be modified
+         * @param previews decoded messages since the last reset, oldest first, at most MAX_PREVIEWS
+         * @param alert true if this update may play sound and vibrate
+         * @param silent true if the wake budget turned the window down, the update must not interrupt
+         */
+        void onSummary(int totalEvents, Map<String, Integer> groupCounts,
+                       List<PushMessageDecoder.Preview> previews, boolean alert, boolean silent);
+    }
+
+    private final Handler handler;
+    private final WakeBudget wakeBudget;
+    private final Sink sink;
+    private final Runnable flushRunnable = this::flush;
+
+    private final Map<String, Integer> groupCounts = new HashMap<>();
+    private final ArrayDeque<PushMessageDecoder.Preview> previews = new ArrayDeque<>();
+    private int totalEvents;
+    private boolean flushScheduled;
+    private boolean pending;
+    private final Set<Integer> pendingKinds = new HashSet<>(); // Kinds of the pending window's events
+    private long lastPostAtMs = -MIN_POST_INTERVAL_MS;
+    private long lastAlertAtMs = -ALERT_INTERVAL_MS;
+    private long receivedEvents;
+    private long postedSummaries;
+
+    NotificationCoalescer(Handler handler, WakeBudget wakeBudget, Sink sink) {
+        this.handler = handler;
+        this.wakeBudget = wakeBudget;
+        this.sink = sink;
+    }
+
+    /**
+     * Count an event for a group and make sure a flush is scheduled, safe to call from any thread
+     * @param preview decoded message, null if the event could not be decoded
+     * @param kind kind the wake budget charges the event's window by
+     */
+    synchronized void onEvent(String groupKey, PushMessageDecoder.Preview preview, int kind) {
+        String key = groupKey != null ? groupKey : "";
+        Integer count = groupCounts.get(key);
+        groupCounts.put(key, count == null ? 1 : count + 1);
+        totalEvents++;
+        receivedEvents++;
+        if (preview != null) {
+            if (previews.size() == MAX_PREVIEWS) {
+                previews.removeFirst();
+            }
+            previews.addLast(preview);
+        }
+        pending = true;
+        pendingKinds.add(kind);
+        if (kind == PushWakeGovernor.KIND_CALL) {
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = true;
+            handler.post(flushRunnable);
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            long now = SystemClock.elapsedRealtime();
+            long flushAt = Math.max(now + WINDOW_MS, lastPostAtMs + MIN_POST_INTERVAL_MS);
+            handler.postDelayed(flushRunnable, flushAt - now);
+        }
+    }
+
+    /**
+     * Forget counted events, e.g. once the user has the app open again
+     */
+    synchronized void reset() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        pending = false;
+        pendingKinds.clear();
+        groupCounts.clear();
+        previews.clear();
+        totalEvents = 0;
+    }
+
+    /**
+     * Hand pending counts to the sink right away instead of at the end of the window, on the handler thread
+     */
+    void flushNow() {
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+        }
+        flush();
+    }
+
+    synchronized long getReceivedEvents() {
+        return receivedEvents;
+    }
+
+    /**
+     * Number of notification updates handed to the sink
+     */
+    synchronized long getPostedSummaries() {
+        return postedSummaries;
+    }
+
+    private void flush() {
+        int total;
+        Map<String, Integer> snapshot;
+        List<PushMessageDecoder.Preview> previewSnapshot;
+        boolean alert;
+        boolean silent;
+        synchronized (this) {
+            flushScheduled = false;
+            if (!pending) return;
+            pending = false;
+            long now = SystemClock.elapsedRealtime();
+            lastPostAtMs = now;
+            silent = !wakeBudget.tryWake(pendingKinds);
+            boolean call = pendingKinds.contains(PushWakeGovernor.KIND_CALL);
+            pendingKinds.clear();
+            alert = !silent && (call || now - lastAlertAtMs >= ALERT_INTERVAL_MS);
+            if (alert) {
+                lastAlertAtMs = now;
+            }
+            total = totalEvents;
+            snapshot = new HashMap<>(groupCounts);
+            previewSnapshot = new ArrayList<>(previews);
+            postedSummaries++;
+        }
+        sink.onSummary(total, snapshot, previewSnapshot, alert, silent);
+    }
+}
@@ -0,0 +1,39 @@
+package com.oxchat.lite;
+
+/**
+ * One account served by {@link PushNotificationService}, created and used on the push event loop
+ * Accounts share the relay sockets and each has its own REQ and AUTH there ({@link PushRelayConnection.Subscription}),
+ * so a socket, ping and reconnect cycle per relay serves every account; per account there is only a subscription,
+ * a notification channel and id, and a coalescer so a burst for one account doesn't fold into another's
+ *
+ * The first configured account is the primary: it keeps the notification channel and id of the single-account
+ * versions, and its dedup keys are bare event ids so the persisted seen-event index stays valid across the upgrade
+ */
+final class PushAccount {
+    final String pubkey;
+    final boolean primary;
+    final String channelId;
+    final int notificationId;
+    NotificationCoalescer coalescer;
+
+    PushAccount(String pubkey, boolean primary, String channelId, int notificationId) {
+        this.pubkey = pubkey;
+        this.primary = primary;
+        this.channelId = channelId;
+        this.notificationId = notificationId;
+    }
+
+    /**
+     * Key for the seen-event index and the pool's cross-relay dedup, an event addressed to two of our
+     * accounts is delivered once per subscription and notifies each of them
+     */
+    String seenKey(String eventId) {
+        if (primary || eventId == null || eventId.isEmpty()) return eventId;
+        return eventId + ":" + pubkey;
+    }
+
+    @Override
+    public String toString() {
+        return Bech32.shortNpub(pubkey) + (primary ? " (primary)" : "");
+    }
+}
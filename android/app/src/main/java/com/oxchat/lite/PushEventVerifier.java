@@ -0,0 +1,267 @@
+package com.oxchat.lite;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks incoming EVENT frames before anything acts on them: the id is recomputed from the event fields and the
+ * BIP-340 signature is verified against the event pubkey, so a relay cannot make up events to wake the app
+ * Frames are handed back in arrival order on the delivery executor, other frame types pass through in order too,
+ * so an EOSE never overtakes the events before it. While a batch is being verified new frames queue up and go out
+ * as the next batch, a burst is split across a small worker pool
+ * submit() and the callbacks run on the delivery executor, the push event loop in the service
+ */
+final class PushEventVerifier {
+    static final int MAX_WORKERS = 4;
+    private static final int MAX_BATCH = 256;
+    private static final int MIN_EVENTS_PER_WORKER = 4; // Smaller bursts are not worth the hand-off
+
+    interface Callback {
+        /**
+         * @param verified false for an EVENT with a wrong id or signature, true for everything else
+         */
+        void onVerified(boolean verified);
+    }
+
+    private static final class Item {
+        final RelayFrame frame;
+        final Callback callback;
+        boolean verified = true;
+
+        Item(RelayFrame frame, Callback callback) {
+            this.frame = frame;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Per worker thread, the serializer is synchronized and would otherwise serialize the workers
+     */
+    private static final class WorkerState {
+        final CanonicalEventSerializer serializer = new CanonicalEventSerializer();
+        final byte[] id = new byte[NostrSigner.ID_LENGTH];
+        final byte[] pubkey = new byte[NostrSigner.KEY_LENGTH];
+        final byte[] signature = new byte[NostrSigner.SIGNATURE_LENGTH];
+    }
+
+    private final NostrSigner signer;
+    private final Executor delivery;
+    private final int workerCount;
+    private final ExecutorService workers;
+    private final ThreadLocal<WorkerState> workerState = new ThreadLocal<WorkerState>() {
+        @Override
+        protected WorkerState initialValue() {
+            return new WorkerState();
+        }
+    };
+    private final ArrayDeque<Item> queue = new ArrayDeque<>();
+    private boolean inFlight;
+    private long verifiedEvents;
+    private long rejectedEvents;
+    private long batches;
+    private int largestBatch;
+    private long verifyNanos;
+
+    /**
+     * @param workerCount verification threads, see defaultWorkerCount()
+     * @param delivery where submit() is called and callbacks run, must be a single thread
+     */
+    PushEventVerifier(NostrSigner signer, int workerCount, Executor delivery) {
+        this.signer = signer;
+        this.delivery = delivery;
+        this.workerCount = Math.max(1, workerCount);
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(this.workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "PushVerify-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * One core is left to the event loop and the UI, at most MAX_WORKERS
+     */
+    static int defaultWorkerCount() {
+        return Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Queue a frame, its callback runs once it and every frame before it were checked
+     */
+    void submit(RelayFrame frame, Callback callback) {
+        queue.addLast(new Item(frame, callback));
+        if (!inFlight) {
+            inFlight = true;
+            // Posted, so frames already waiting on the delivery thread join this batch
+            delivery.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Check a batch of event objects on the workers and wait for the result, for benchmarks and the harness
+     */
+    boolean[] verifyBatch(String[] eventsJson) throws InterruptedException {
+        boolean[] results = new boolean[eventsJson.length];
+        CountDownLatch done = new CountDownLatch(1);
+        runChunks(eventsJson, results, done::countDown);
+        done.await();
+        return results;
+    }
+
+    long getVerifiedEvents() {
+        return verifiedEvents;
+    }
+
+    long getRejectedEvents() {
+        return rejectedEvents;
+    }
+
+    long getBatches() {
+        return batches;
+    }
+
+    int getLargestBatch() {
+        return largestBatch;
+    }
+
+    int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Average time to check one event on a worker, in microseconds
+     */
+    double getAverageVerifyMicros() {
+        long events = verifiedEvents + rejectedEvents;
+        return events == 0 ? 0 : verifyNanos / 1000.0 / events;
+    }
+
+    /**
+     * Stop the workers, queued frames are dropped
+     */
+    void shutdown() {
+        workers.shutdownNow();
+        queue.clear();
+    }
+
+    private void dispatch() {
+        List<Item> batch = new ArrayList<>();
+        List<Item> events = new ArrayList<>();
+        while (!queue.isEmpty() && batch.size() < MAX_BATCH) {
+            Item item = queue.removeFirst();
+            batch.add(item);
+            if (item.frame.isValid() && item.frame.type() == RelayFrame.TYPE_EVENT) {
+                events.add(item);
+            }
+        }
+        if (events.isEmpty()) {
+            deliver(batch);
+            return;
+        }
+        String[] eventsJson = new String[events.size()];
+        for (int i = 0; i < eventsJson.length; i++) {
+            eventsJson[i] = events.get(i).frame.rawAt(2);
+        }
+        boolean[] results = new boolean[eventsJson.length];
+        long startNs = System.nanoTime();
+        try {
+            runChunks(eventsJson, results, () -> delivery.execute(() -> {
+                verifyNanos += System.nanoTime() - startNs;
+                for (int i = 0; i < results.length; i++) {
+                    events.get(i).verified = results[i];
+                    if (results[i]) {
+                        verifiedEvents++;
+                    } else {
+                        rejectedEvents++;
+                    }
+                }
+                batches++;
+                largestBatch = Math.max(largestBatch, events.size());
+                deliver(batch);
+            }));
+        } catch (RejectedExecutionException e) {
+            // Shut down
+            inFlight = false;
+        }
+    }
+
+    private void deliver(List<Item> batch) {
+        for (Item item : batch) {
+            item.callback.onVerified(item.verified);
+        }
+        if (queue.isEmpty()) {
+            inFlight = false;
+        } else {
+            dispatch();
+        }
+    }
+
+    /**
+     * Split the events into contiguous chunks, one per worker, onDone runs on the worker finishing last
+     */
+    private void runChunks(String[] eventsJson, boolean[] results, Runnable onDone) {
+        int chunks = Math.max(1, Math.min(workerCount, eventsJson.length / MIN_EVENTS_PER_WORKER));
+        AtomicInteger remaining = new AtomicInteger(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) eventsJson.length * chunk / chunks);
+            int to = (int) ((long) eventsJson.length * (chunk + 1) / chunks);
+            workers.execute(() -> {
+                try {
+                    WorkerState state = workerState.get();
+                    for (int i = from; i < to; i++) {
+                        try {
+                            results[i] = verifyEvent(eventsJson[i], state);
+                        } catch (RuntimeException e) {
+                            // A signer or parser failure rejects the event, the batch still completes
+                            results[i] = false;
+                        }
+                    }
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        onDone.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean verifyEvent(String eventJson, WorkerState state) {
+        if (eventJson == null) return false;
+        try {
+            JSONObject event = new JSONObject(eventJson);
+            String id = event.optString("id", "");
+            String pubkey = event.optString("pubkey", "");
+            String sig = event.optString("sig", "");
+            if (id.length() != 64 || pubkey.length() != 64 || sig.length() != 128) return false;
+            JSONArray tagsArray = event.optJSONArray("tags");
+            String[][] tags = new String[tagsArray == null ? 0 : tagsArray.length()][];
+            for (int i = 0; i < tags.length; i++) {
+                JSONArray tag = tagsArray.getJSONArray(i);
+                tags[i] = new String[tag.length()];
+                for (int j = 0; j < tag.length(); j++) {
+                    tags[i][j] = tag.getString(j);
+                }
+            }
+            state.serializer.computeId(pubkey, event.getLong("created_at"), event.getInt("kind"), tags,
+                    event.getString("content"), state.id, 0);
+            if (!Arrays.equals(state.id, Hex.decode(id))) return false;
+            Hex.decode(pubkey, state.pubkey, 0);
+            Hex.decode(sig, state.signature, 0);
+            return signer.verify(state.signature, state.id, state.pubkey);
+        } catch (JSONException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.oxchat.lite;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Unwraps a pushed event into sender and preview text, so the notification can say who wrote what
+ * without starting the Flutter engine
+ *
+ * Supported shapes:
+ * - NIP-59 gift wrap (kind 1059): NIP-44 content from an ephemeral key holding a seal (kind 13) signed by the
+ *   sender, whose NIP-44 content holds the unsigned rumor (kind 14 chat message, kind 15 file message)
+ * - A push event whose content is a gift wrap or another event as JSON, as forwarded by the push relay
+ * - A push event whose content is NIP-44 encrypted directly to us by the event author
+ *
+ * The seal signature is verified and the rumor author must match the seal signer, otherwise a gift wrap could
+ * name anyone as sender. Anything that does not decode returns null and the generic notification is shown
+ *
+ * Methods are synchronized so one instance can be shared
+ */
+final class PushMessageDecoder {
+    static final int KIND_SEAL = 13;
+    static final int KIND_CHAT_MESSAGE = 14;
+    static final int KIND_FILE_MESSAGE = 15;
+    static final int KIND_GIFT_WRAP = 1059;
+    private static final int MAX_DEPTH = 3;
+    private static final int MAX_PREVIEW_LENGTH = 200;
+
+    /**
+     * What a notification can show about one message
+     */
+    static final class Preview {
+        final String senderPubkey;
+        final int kind;
+        final String text; // Null for attachments and kinds without readable text
+
+        Preview(String senderPubkey, int kind, String text) {
+            this.senderPubkey = senderPubkey;
+            this.kind = kind;
+            this.text = text;
+        }
+    }
+
+    private final Nip44 nip44;
+    private final NostrSigner signer;
+    private final CanonicalEventSerializer eventSerializer;
+    private final byte[] idBuffer = new byte[NostrSigner.ID_LENGTH];
+
+    PushMessageDecoder(Nip44 nip44, NostrSigner signer, CanonicalEventSerializer eventSerializer) {
+        this.nip44 = nip44;
+        this.signer = signer;
+        this.eventSerializer = eventSerializer;
+    }
+
+    /**
+     * @param eventJson the event object of an EVENT message
+     * @param privateKey our private key, only used during the call
+     * @return preview of the message, or null if the event is not a message for us
+     */
+    synchronized Preview decode(String eventJson, byte[] privateKey) throws JSONException {
+        if (eventJson == null) return null;
+        return decodeEvent(new JSONObject(eventJson), privateKey, 0);
+    }
+
+    private Preview decodeEvent(JSONObject event, byte[] privateKey, int depth) throws JSONException {
+        if (depth >= MAX_DEPTH) return null;
+        int kind = event.optInt("kind", -1);
+        String author = event.optString("pubkey", "");
+        String content = event.optString("content", "");
+        if (kind == KIND_GIFT_WRAP) {
+            return unwrapGift(event, privateKey);
+        }
+        JSONObject forwarded = parseEvent(content);
+        if (forwarded != null) {
+            // Push relay forwarding the original event
+            return decodeEvent(forwarded, privateKey, depth + 1);
+        }
+        if (!isNip44Payload(content) || !isPubkey(author)) {
+            return null;
+        }
+        String plaintext = decrypt(privateKey, author, content);
+        JSONObject inner = parseEvent(plaintext);
+        if (inner != null) {
+            return decodeEvent(inner, privateKey, depth + 1);
+        }
+        return new Preview(author, kind, truncate(plaintext));
+    }
+
+    private Preview unwrapGift(JSONObject wrap, byte[] privateKey) throws JSONException {
+        String ephemeralPubkey = wrap.optString("pubkey", "");
+        if (!isPubkey(ephemeralPubkey)) return null;
+        JSONObject seal = new JSONObject(decrypt(privateKey, ephemeralPubkey, wrap.optString("content", "")));
+        String sender = seal.optString("pubkey", "");
+        if (seal.optInt("kind", -1) != KIND_SEAL || !isPubkey(sender) || !verify(seal)) {
+            return null;
+        }
+        JSONObject rumor = new JSONObject(decrypt(privateKey, sender, seal.optString("content", "")));
+        if (!sender.equals(rumor.optString("pubkey", ""))) {
+            return null;
+        }
+        int kind = rumor.optInt("kind", -1);
+        String text = kind == KIND_FILE_MESSAGE ? null : truncate(rumor.optString("content", ""));
+        return new Preview(sender, kind, text);
+    }
+
+    private String decrypt(byte[] privateKey, String peerPubkey, String payload) {
+        byte[] conversationKey = nip44.conversationKey(privateKey, Hex.decode(peerPubkey));
+        try {
+            return nip44.decrypt(payload, conversationKey);
+        } finally {
+            Arrays.fill(conversationKey, (byte) 0);
+        }
+    }
+
+    private boolean verify(JSONObject event) throws JSONException {
+        String id = event.optString("id", "");
+        String sig = event.optString("sig", "");
+        if (id.length() != 64 || sig.length() != 128) return false;
+        JSONArray tagsArray = event.optJSONArray("tags");
+        String[][] tags = new String[tagsArray == null ? 0 : tagsArray.length()][];
+        for (int i = 0; i < tags.length; i++) {
+            JSONArray tag = tagsArray.getJSONArray(i);
+            tags[i] = new String[tag.length()];
+            for (int j = 0; j < tag.length(); j++) {
+                tags[i][j] = tag.getString(j);
+            }
+        }
+        String pubkey = event.getString("pubkey");
+        eventSerializer.computeId(pubkey, event.optLong("created_at", 0), event.optInt("kind", -1), tags,
+                event.optString("content", ""), idBuffer, 0);
+        return Arrays.equals(idBuffer, Hex.decode(id)) && signer.verify(Hex.decode(sig), idBuffer, Hex.decode(pubkey));
+    }
+
+    /**
+     * Content that is itself an event (forwarded or wrapped), null for an ordinary text message
+     */
+    private static JSONObject parseEvent(String text) {
+        if (!text.startsWith("{")) return null;
+        try {
+            JSONObject event = new JSONObject(text);
+            return event.has("kind") ? event : null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNip44Payload(String content) {
+        // Version 2 payloads start with 0x02, which base64-encodes to 'A'
+        return content.length() >= 132 && content.charAt(0) == 'A';
+    }
+
+    private static boolean isPubkey(String value) {
+        if (value.length() != 64) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && (c < 'A' || c > 'F')) return false;
+        }
+        return true;
+    }
+
+    private static String truncate(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) return null;
+        if (trimmed.length() <= MAX_PREVIEW_LENGTH) return trimmed;
+        int end = MAX_PREVIEW_LENGTH;
+        if (Character.isHighSurrogate(trimmed.charAt(end - 1))) {
+            end--;
+        }
+        return trimmed.substring(0, end) + "\u2026";
+    }
+}
@@ -1,6 +1,5 @@
 package com.oxchat.lite;
 
-import android.app.ActivityManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -9,87 +8,182 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Binder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
 
 import com.oxchat.lite.R;
 import com.oxchat.lite.KeystoreHelper;
 import com.oxchat.nostr.MainActivity;
+import com.oxchat.nostr.WarmFlutterEngine;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
-import java.security.SecureRandom;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
+import okhttp3.Dns;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.WebSocket;
-import okhttp3.WebSocketListener;
 
 import fr.acinq.secp256k1.Secp256k1;
 
 /**
  * Foreground service for push notification monitoring
- * Connects to push serverRelay via WebSocket and listens for events
+ * Connects to push serverRelay (plus optional hot standby relays) via WebSocket and listens for events
+ * Serves several accounts over the same sockets, see {@link PushAccount}
  */
-public class PushNotificationService extends Service {
+public class PushNotificationService extends Service
+        implements PushRelayConnection.Listener, PushRelayProtocol.Listener {
     private static final String TAG = "PushNotificationService";
     private static final String CHANNEL_ID = "PushNotificationServiceChannel";
     private static final String PUSH_NOTIFICATION_CHANNEL_ID = "PushNotificationChannel";
     
-    // Jackson ObjectMapper for JSON serialization (matching nostr-java EventJsonMapper)
-    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
-    private static final JsonNodeFactory JSON_NODE_FACTORY = JsonNodeFactory.instance;
+    // Canonical event serializer, output matches the Jackson writer used by nostr-java
+    private final CanonicalEventSerializer eventSerializer = new CanonicalEventSerializer();
     private static final int NOTIFICATION_ID = 1001;
     private static final int PUSH_NOTIFICATION_ID = 1002;
+    // Notification ids of non-primary accounts, derived from the pubkey so they survive reordering
+    private static final int ACCOUNT_NOTIFICATION_ID_BASE = 0x50410000;
     
     public static final String EXTRA_SERVER_RELAY = "server_relay";
     public static final String EXTRA_DEVICE_ID = "device_id";
     public static final String EXTRA_PUBKEY = "pubkey";
+    // Hex pubkeys of all accounts to serve, primary first; EXTRA_PUBKEY alone means a single account
+    public static final String EXTRA_ACCOUNTS = "accounts";
+    public static final String EXTRA_STANDBY_RELAYS = "standby_relays";
+    // Further relays carrying the push events, probed in the background and pooled when faster
+    public static final String EXTRA_CANDIDATE_RELAYS = "candidate_relays";
+    public static final String EXTRA_KEY_CACHE_TTL_MS = "key_cache_ttl_ms";
+    public static final String EXTRA_MODE = "mode";
+    // Always-on foreground service socket
+    public static final String MODE_PERSISTENT = "persistent";
+    // PushSyncJobService windows, no foreground service between them
+    public static final String MODE_SCHEDULED = "scheduled";
+    static final String ACTION_SYNC = "com.oxchat.lite.SYNC";
+    // Bind with this action for ControlBinder
+    public static final String ACTION_CONTROL = "com.oxchat.lite.CONTROL";
+    // AUTH event signed outside the service, e.g. by the Flutter app, for a challenge this service is holding
+    public static final String ACTION_SEND_AUTH = "com.oxchat.nostr.SEND_AUTH";
+    public static final String EXTRA_AUTH_JSON = "authJson";
     
-    private WebSocket webSocket;
     private OkHttpClient httpClient;
+    private PushRelayPool relayPool;
     private String serverRelay;
+    private ArrayList<String> standbyRelays;
+    private ArrayList<String> candidateRelays;
+    private List<String> relayCandidates = new ArrayList<>(); // Event loop only, configured relays first
+    private RelayLatencyProber latencyProber; // Event loop only
     private String deviceId;
-    private String pubkey;
-    private String subscriptionId;
-    private Handler reconnectHandler;
-    private Runnable reconnectRunnable;
-    private static final long RECONNECT_DELAY_MS = 5000; // 5 seconds
-    private String pendingAuthChallenge;
-    private String authEventId; // Track AUTH event ID to match OK response
-    private boolean regenerateSubscriptionId; // Flag to regenerate subscription ID after AUTH
-    private boolean isConnecting = false; // Track if we're currently connecting
-    private boolean isReconnecting = false; // Track if we're reconnecting (to avoid duplicate reconnects)
-    private Secp256k1 secp256k1; // For Schnorr signature
-    private Handler authRetryHandler; // Handler for retrying AUTH challenge when privatekey is not available
-    private Runnable authRetryRunnable; // Runnable for retrying AUTH challenge
+    private ArrayList<String> pubkeys = new ArrayList<>(); // Configured accounts, primary first
+    private Map<String, PushAccount> accounts = new LinkedHashMap<>(); // Event loop only, by pubkey
+    private String mode = MODE_PERSISTENT;
+    private HandlerThread eventLoopThread; // Push event loop, owns all relay connection state
+    private Handler eventLoop;
+    private ReconnectScheduler reconnectScheduler;
+    private NostrSigner signer; // Schnorr signer (BIP340) on the shared Secp256k1 handle
+    private PushMessageDecoder messageDecoder; // NIP-44 / gift wrap unwrapping for notification previews
+    private final SigningKeyCache signingKeyCache = SigningKeyCache.getInstance();
+    // Key available signal, AUTH challenges that were waiting on the account's key are answered right away
+    private final SigningKeyCache.KeyStoredListener keyStoredListener =
+            storedPubkey -> eventLoop.post(() -> answerWaitingAuthChallenges(storedPubkey.toLowerCase()));
+    private SeenEventIndex seenEventIndex; // Event ids already handled, survives service restarts
+    private RelayDnsCache dnsCache; // Relay host answers, survives service restarts
+    private PushEventVerifier eventVerifier; // Id and signature check of every EVENT before it can notify
+    private PushWakeGovernor wakeGovernor; // Per-kind budget of alerting notifications and app warm-ups
+    private SubscriptionWatermarks watermarks; // Highest created_at per relay, for since on reconnect
+    private PushRelayProtocol relayProtocol; // REQ, AUTH and EVENT dedup on the pool's relays
+    private final Runnable persistEventStateRunnable = this::persistEventState;
+    private final Runnable persistTrafficRunnable = new Runnable() {
+        @Override
+        public void run() {
+            persistTrafficStats();
+            powerStats.persist();
+            wakeGovernor.persist();
+            telemetry.sampleMinute(relayPool.getConnections());
+            telemetry.persist();
+            latencyProber.persist();
+            persistDnsCache();
+            eventLoop.postDelayed(this, TRAFFIC_PERSIST_INTERVAL_MS);
+        }
+    };
+    // Probe relays outside the pool, pooled relays are measured from their own connects
+    private final Runnable relayProbeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            eventLoop.postDelayed(this, RELAY_PROBE_INTERVAL_MS);
+            // Same rule as reconnects: a network that never validates still gets probed, doze waits
+            if (!reconnectScheduler.canConnectNow()) return;
+            List<String> targets = new ArrayList<>(relayCandidates);
+            for (PushRelayConnection connection : relayPool.getConnections()) {
+                targets.remove(connection.url);
+            }
+            if (targets.isEmpty()) return;
+            Log.d(TAG, "Probing " + targets.size() + " candidate relay(s)");
+            latencyProber.probe(targets, () -> {
+                latencyProber.persist();
+                if (relayPool.isEmpty()) return;
+                applyRelaySelection();
+                relayPool.connectIdle();
+            });
+        }
+    };
+    private PushPowerStats powerStats; // Event loop only
+    private PushTelemetry telemetry; // Latencies, reconnect causes and traffic per minute for getPushServiceStats
+    private final SyncBinder syncBinder = new SyncBinder();
+    private final ControlBinder controlBinder = new ControlBinder();
+    private Runnable syncWindowDone; // Set while a scheduled sync window runs, event loop only
+    private long syncWindowStartedAtMs;
+    private final Runnable syncWindowTimeoutRunnable = () -> finishSyncWindow("timeout");
+    private long previewsDecoded; // Event loop only
+    private long previewDecodeTotalUs; // Event loop only
+    private final ArrayDeque<JSONObject> stateTransitions = new ArrayDeque<>(); // Event loop only
+    // User opened the app, events counted so far have been seen
+    private final AppForegroundTracker.Listener foregroundListener = foreground -> {
+        if (foreground) {
+            eventLoop.post(this::resetNotifications);
+        }
+    };
 
     private static final String PREFS_NAME = "push_service";
     private static final String KEY_SERVER_RELAY = "server_relay";
     private static final String KEY_DEVICE_ID = "device_id";
     private static final String KEY_PUBKEY = "pubkey";
+    private static final String KEY_ACCOUNTS = "push_accounts";
+    private static final String KEY_STANDBY_RELAYS = "standby_relays";
+    private static final String KEY_CANDIDATE_RELAYS = "candidate_relays";
+    private static final long RELAY_PROBE_INITIAL_DELAY_MS = 60_000;
+    private static final long RELAY_PROBE_INTERVAL_MS = 6 * 60 * 60 * 1000; // 6 hours
+    private static final String KEY_KEY_CACHE_TTL_MS = "key_cache_ttl_ms";
+    private static final String KEY_MODE = "push_mode";
+    private static final long SYNC_WINDOW_TIMEOUT_MS = 30_000;
+    private static final String SEEN_EVENTS_FILE = "push_seen_events.bin";
+    private static final String DNS_CACHE_FILE = "push_dns_cache.bin";
+    private static final long EVENT_STATE_PERSIST_DELAY_MS = 5000;
+    private static final String KEY_CONNECTION_STATES = "connection_states";
+    private static final String KEY_RELAY_TRAFFIC = "relay_traffic";
+    private static final long TRAFFIC_PERSIST_INTERVAL_MS = 60_000;
+    private static final int MAX_STATE_TRANSITIONS = 32;
     // Note: private key is stored in Android Keystore, not in SharedPreferences
     
     @Override
@@ -98,39 +192,75 @@ public class PushNotificationService extends Service {
         Log.d(TAG, "PushNotificationService created");
         createNotificationChannel();
         
+        // Reconnects come right after network switches, cached DNS answers keep them short
+        dnsCache = new RelayDnsCache(new File(getFilesDir(), DNS_CACHE_FILE), Dns.SYSTEM);
+        try {
+            dnsCache.load();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load DNS cache, starting empty", e);
+        }
         httpClient = new OkHttpClient.Builder()
                 .connectTimeout(10, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
+                .dns(dnsCache)
                 .build();
         
-        reconnectHandler = new Handler(Looper.getMainLooper());
-        authRetryHandler = new Handler(Looper.getMainLooper());
+        // All connection logic runs on one dedicated thread, OkHttp callbacks only post events to it
+        eventLoopThread = new HandlerThread("PushEventLoop");
+        eventLoopThread.start();
+        eventLoop = new Handler(eventLoopThread.getLooper());
+        reconnectScheduler = new ReconnectScheduler(this, eventLoop, getSharedPreferences(PREFS_NAME, MODE_PRIVATE));
+        telemetry = new PushTelemetry(getSharedPreferences(PREFS_NAME, MODE_PRIVATE));
+        eventLoop.post(reconnectScheduler::start);
+        eventLoop.postDelayed(persistTrafficRunnable, TRAFFIC_PERSIST_INTERVAL_MS);
+        // Ping interval is set per socket from what has been learned about the current network's NAT
+        AdaptiveHeartbeat heartbeat = new AdaptiveHeartbeat(getSharedPreferences(PREFS_NAME, MODE_PRIVATE));
+        relayPool = new PushRelayPool(httpClient, eventLoop, reconnectScheduler, heartbeat, this);
+        latencyProber = new RelayLatencyProber(httpClient, eventLoop, getSharedPreferences(PREFS_NAME, MODE_PRIVATE),
+                this::signProbeAuth);
+        
+        // Load ids of events handled before the last restart, so relay replays don't wake the app again
+        seenEventIndex = new SeenEventIndex(new File(getFilesDir(), SEEN_EVENTS_FILE));
+        try {
+            seenEventIndex.load();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load seen event index, starting empty", e);
+        }
+        watermarks = new SubscriptionWatermarks(getSharedPreferences(PREFS_NAME, MODE_PRIVATE));
+        AppForegroundTracker.getInstance().addListener(foregroundListener);
+        signingKeyCache.setKeyStoredListener(keyStoredListener);
         
         // Initialize secp256k1 for Schnorr signature
         try {
-            secp256k1 = Secp256k1.get();
+            Secp256k1 secp256k1 = Secp256k1.get();
+            signer = new NostrSigner(secp256k1);
+            messageDecoder = new PushMessageDecoder(new Nip44(secp256k1), signer, eventSerializer);
+            eventVerifier = new PushEventVerifier(signer, PushEventVerifier.defaultWorkerCount(), eventLoop::post);
             Log.d(TAG, "Secp256k1 initialized");
         } catch (Exception e) {
             Log.e(TAG, "Failed to initialize Secp256k1", e);
         }
+        relayProtocol = new PushRelayProtocol(relayPool, watermarks, seenEventIndex, eventSerializer, signer, this);
         
         // Load config from SharedPreferences early in onCreate
         // This ensures privatekey is available even if Service is restarted by system
         loadConfigFromPrefs();
+        powerStats = new PushPowerStats(getSharedPreferences(PREFS_NAME, MODE_PRIVATE), mode);
+        wakeGovernor = new PushWakeGovernor(getSharedPreferences(PREFS_NAME, MODE_PRIVATE));
         
         // If config exists, try to start the service
-        if (serverRelay != null && !serverRelay.isEmpty() && pubkey != null && !pubkey.isEmpty()) {
+        // In scheduled mode the service only lives while PushSyncJobService has it bound for a sync window
+        if (MODE_PERSISTENT.equals(mode)
+                && serverRelay != null && !serverRelay.isEmpty() && !pubkeys.isEmpty()) {
             Log.d(TAG, "Service restarted by system, config loaded from prefs in onCreate");
             if (deviceId == null || deviceId.isEmpty()) {
-                deviceId = pubkey;
+                deviceId = pubkeys.get(0);
             }
             // Start foreground service and connect
             startForeground(NOTIFICATION_ID, createNotification());
-            if (!isConnecting && webSocket == null) {
-                Log.d(TAG, "Auto-connecting to relay after system restart: " + serverRelay);
-                connectToRelay();
-            }
+            Log.d(TAG, "Auto-connecting to relays after system restart: " + serverRelay + " + " + standbyRelays);
+            connectToRelays();
         }
     }
 
@@ -138,45 +268,76 @@ public class PushNotificationService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "PushNotificationService started");
         
+        if (intent != null && ACTION_SEND_AUTH.equals(intent.getAction())) {
+            // Not a new config, only an AUTH answer for the running service
+            String authJson = intent.getStringExtra(EXTRA_AUTH_JSON);
+            eventLoop.post(() -> sendExternalAuth(authJson));
+            return START_STICKY;
+        }
         if (intent != null) {
             // New start from Flutter app
             serverRelay = intent.getStringExtra(EXTRA_SERVER_RELAY);
             deviceId = intent.getStringExtra(EXTRA_DEVICE_ID);
-            pubkey = intent.getStringExtra(EXTRA_PUBKEY);
+            pubkeys = normalizeAccounts(intent.getStringArrayListExtra(EXTRA_ACCOUNTS),
+                    intent.getStringExtra(EXTRA_PUBKEY));
+            standbyRelays = intent.getStringArrayListExtra(EXTRA_STANDBY_RELAYS);
+            candidateRelays = intent.getStringArrayListExtra(EXTRA_CANDIDATE_RELAYS);
+            String newMode = MODE_SCHEDULED.equals(intent.getStringExtra(EXTRA_MODE)) ? MODE_SCHEDULED : MODE_PERSISTENT;
+            boolean modeChanged = !newMode.equals(mode);
+            mode = newMode;
+            eventLoop.post(() -> powerStats.selectMode(newMode, modeChanged));
+            if (intent.hasExtra(EXTRA_KEY_CACHE_TTL_MS)) {
+                long keyCacheTtlMs = intent.getLongExtra(EXTRA_KEY_CACHE_TTL_MS, SigningKeyCache.DEFAULT_IDLE_TTL_MS);
+                signingKeyCache.setIdleTtlMs(keyCacheTtlMs);
+                getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putLong(KEY_KEY_CACHE_TTL_MS, keyCacheTtlMs).apply();
+            }
             persistConfig();
             
-            if (serverRelay == null || serverRelay.isEmpty() || pubkey == null || pubkey.isEmpty()) {
+            if (serverRelay == null || serverRelay.isEmpty() || pubkeys.isEmpty()) {
                 Log.e(TAG, "Missing required config, cannot start service");
                 stopSelf();
                 return START_STICKY;
             }
             
-            // For Android, if deviceId is not provided, use pubkey as deviceId
+            // For Android, if deviceId is not provided, use the primary pubkey as deviceId
             if (deviceId == null || deviceId.isEmpty()) {
-                deviceId = pubkey;
+                deviceId = pubkeys.get(0);
             }
-            
-            // Only connect if not already connecting
-            if (!isConnecting && webSocket == null) {
-                Log.d(TAG, "Connecting to relay: " + serverRelay + ", deviceId: " + deviceId);
-                connectToRelay();
-            } else {
-                Log.d(TAG, "WebSocket already connected or connecting, skipping connection");
+
+            if (MODE_SCHEDULED.equals(mode)) {
+                // Close the always-on sockets, the periodic job takes over
+                Log.d(TAG, "Scheduled sync mode selected, handing over to PushSyncJobService");
+                eventLoop.post(() -> relayPool.disconnectAll());
+                PushSyncJobService.schedule(this);
+                ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+                stopSelf();
+                return START_NOT_STICKY;
             }
+            PushSyncJobService.cancel(this);
+            
+            // Relays already in the pool keep their sockets, only new relays connect
+            Log.d(TAG, "Connecting to relays: " + serverRelay + " + " + standbyRelays + ", deviceId: " + deviceId
+                    + ", " + pubkeys.size() + " account(s)");
+            connectToRelays();
             
             // Start foreground service
             startForeground(NOTIFICATION_ID, createNotification());
         } else {
             // Service restarted by system
             // Config should already be loaded in onCreate(), but double-check
-            if (serverRelay == null || serverRelay.isEmpty() || pubkey == null || pubkey.isEmpty()) {
+            if (serverRelay == null || serverRelay.isEmpty() || pubkeys.isEmpty()) {
                 loadConfigFromPrefs();
-                if (serverRelay == null || serverRelay.isEmpty() || pubkey == null || pubkey.isEmpty()) {
+                if (serverRelay == null || serverRelay.isEmpty() || pubkeys.isEmpty()) {
                     Log.e(TAG, "Missing required config after system restart, cannot start service");
                     stopSelf();
                     return START_STICKY;
                 }
             }
+            if (MODE_SCHEDULED.equals(mode)) {
+                // Left over from persistent mode, windows are run by PushSyncJobService now
+                stopSelf();
+                return START_NOT_STICKY;
+            }
             // Service should already be started in onCreate(), just ensure foreground
             startForeground(NOTIFICATION_ID, createNotification());
         }
@@ -186,25 +347,167 @@ public class PushNotificationService extends Service {
 
     @Override
     public IBinder onBind(Intent intent) {
+        if (intent == null) return null;
+        if (ACTION_SYNC.equals(intent.getAction())) return syncBinder;
+        if (ACTION_CONTROL.equals(intent.getAction())) return controlBinder;
         return null;
     }
 
+    /**
+     * Handle for PushSyncJobService to run one sync window in this process
+     */
+    class SyncBinder extends Binder {
+        /**
+         * Connect, AUTH, drain stored events and close again
+         * @param onDone called on the main thread once the window is over
+         */
+        void runSyncWindow(Runnable onDone) {
+            startSyncWindow(onDone);
+        }
+    }
+
+    /**
+     * Receives ControlBinder.getStats results on the main thread
+     */
+    public interface StatsCallback {
+        void onStats(JSONObject stats);
+    }
+
+    /**
+     * In-process control interface for the app, bound with ACTION_CONTROL through PushServiceClient
+     * Calls come in on the caller's thread, relay work is posted to the event loop
+     */
+    public class ControlBinder extends Binder {
+        /**
+         * Store an account's private key in the Keystore
+         * AUTH challenges waiting on this key are answered as soon as it is stored
+         */
+        public boolean storeKey(String accountPubkey, String privkey) {
+            return KeystoreHelper.storePrivateKey(PushNotificationService.this, accountPubkey, privkey);
+        }
+
+        /**
+         * Send an AUTH event signed by the app, see ACTION_SEND_AUTH
+         * @param authJson ["AUTH", event] or the bare event
+         */
+        public void sendAuth(String authJson) {
+            eventLoop.post(() -> sendExternalAuth(authJson));
+        }
+
+        /**
+         * Replace the served accounts, i.e. the #h filters, primary first
+         * Open sockets are kept, only the REQs of added and removed accounts change
+         * @return false, and nothing changes, if the list is empty or an account has no stored key: the relay
+         *     would challenge it and the AUTH would wait for a key that never comes
+         */
+        public boolean updateFilters(List<String> accountPubkeys) {
+            ArrayList<String> updated = normalizeAccounts(accountPubkeys, null);
+            if (updated.isEmpty()) {
+                Log.w(TAG, "Ignoring filter update without accounts");
+                return false;
+            }
+            List<String> withoutKey = new ArrayList<>();
+            for (String pubkey : updated) {
+                if (!KeystoreHelper.hasPrivateKey(PushNotificationService.this, pubkey)) {
+                    withoutKey.add(pubkey);
+                }
+            }
+            if (!withoutKey.isEmpty()) {
+                Log.w(TAG, "Ignoring filter update, no stored key for " + withoutKey);
+                return false;
+            }
+            pubkeys = updated;
+            persistConfig();
+            if (MODE_PERSISTENT.equals(mode)) {
+                connectToRelays();
+            }
+            return true;
+        }
+
+        /**
+         * Current service stats in the getPushServiceStats form plus relay states and traffic
+         * Built on the event loop, never blocks the caller
+         * @param callback called on the main thread, with null if the event loop is gone
+         */
+        public void getStats(StatsCallback callback) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            boolean posted = eventLoop.post(() -> {
+                JSONObject snapshot;
+                try {
+                    snapshot = telemetry.toJson();
+                    snapshot.put("mode", mode);
+                    snapshot.put("accounts", accounts.size());
+                    snapshot.put("relays", relayStatesJson());
+                    snapshot.put("keyCacheHits", signingKeyCache.getHits());
+                    snapshot.put("keyCacheMisses", signingKeyCache.getMisses());
+                    snapshot.put("relayLatency", latencyProber.toJson());
+                    JSONObject dns = new JSONObject();
+                    dns.put("freshHits", dnsCache.getFreshHits());
+                    dns.put("staleHits", dnsCache.getStaleHits());
+                    dns.put("misses", dnsCache.getMisses());
+                    dns.put("refreshFailures", dnsCache.getRefreshFailures());
+                    snapshot.put("dns", dns);
+                    snapshot.put("wakeGovernor", wakeGovernor.toJson());
+                    if (eventVerifier != null) {
+                        JSONObject verification = new JSONObject();
+                        verification.put("workers", eventVerifier.getWorkerCount());
+                        verification.put("verified", eventVerifier.getVerifiedEvents());
+                        verification.put("rejected", eventVerifier.getRejectedEvents());
+                        verification.put("batches", eventVerifier.getBatches());
+                        verification.put("largestBatch", eventVerifier.getLargestBatch());
+                        verification.put("avgVerifyMicros", eventVerifier.getAverageVerifyMicros());
+                        snapshot.put("verification", verification);
+                    }
+                } catch (JSONException e) {
+                    Log.e(TAG, "Failed to read push service stats", e);
+                    snapshot = null;
+                }
+                JSONObject stats = snapshot;
+                mainHandler.post(() -> callback.onStats(stats));
+            });
+            if (!posted) {
+                mainHandler.post(() -> callback.onStats(null));
+            }
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "PushNotificationService destroyed");
-        disconnectFromRelay();
-        if (reconnectRunnable != null) {
-            reconnectHandler.removeCallbacks(reconnectRunnable);
-        }
-        if (authRetryRunnable != null) {
-            authRetryHandler.removeCallbacks(authRetryRunnable);
+        AppForegroundTracker.getInstance().removeListener(foregroundListener);
+        signingKeyCache.setKeyStoredListener(null);
+        // Tear down on the event loop after anything already queued, then let the thread finish
+        eventLoop.post(() -> {
+            eventLoop.removeCallbacks(persistTrafficRunnable);
+            eventLoop.removeCallbacks(relayProbeRunnable);
+            latencyProber.cancel();
+            latencyProber.persist();
+            persistDnsCache();
+            dnsCache.shutdown();
+            if (eventVerifier != null) {
+                eventVerifier.shutdown();
+            }
+            eventLoop.removeCallbacks(syncWindowTimeoutRunnable);
+            syncWindowDone = null;
+            persistTrafficStats();
+            telemetry.sampleMinute(relayPool.getConnections());
+            relayPool.disconnectAll();
+            powerStats.persist();
+            wakeGovernor.persist();
+            telemetry.persist();
+            reconnectScheduler.stop();
+            eventLoop.removeCallbacks(persistEventStateRunnable);
+            persistEventState();
+            resetNotifications();
+        });
+        eventLoopThread.quitSafely();
+        // Clear private key from file system when service is destroyed, this also wipes the cached signing key
+        // Scheduled mode needs the key for every window, it is cleared when push is stopped from the app
+        if (!MODE_SCHEDULED.equals(mode)) {
+            KeystoreHelper.clearPrivateKey(this);
         }
-        isConnecting = false;
-        isReconnecting = false;
-        // Clear private key from file system when service is destroyed
-        KeystoreHelper.clearPrivateKey(this);
-        stopForeground(true);
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
     }
 
     /**
@@ -269,572 +572,538 @@ public class PushNotificationService extends Service {
     }
 
     /**
-     * Connect to WebSocket relay
+     * Apply the configured accounts and relay list, and connect relays that have no socket yet
+     * Runs on the event loop, config fields are read there after being set on the main thread
      */
-    private void connectToRelay() {
-        // Avoid duplicate connections
-        if (isConnecting) {
-            Log.d(TAG, "Already connecting, skipping duplicate connection attempt");
-            return;
-        }
-        
-        // If WebSocket is already connected and healthy, don't reconnect
-        if (webSocket != null) {
-            Log.d(TAG, "WebSocket already exists, closing existing connection first");
-            isReconnecting = true; // Mark as reconnecting to avoid duplicate reconnect calls
-            webSocket.close(1000, "Reconnecting");
-            webSocket = null;
-        }
-        
-        isConnecting = true;
-        
-        try {
-            Request request = new Request.Builder()
-                    .url(serverRelay)
-                    .build();
-            
-            webSocket = httpClient.newWebSocket(request, new WebSocketListener() {
-                @Override
-                public void onOpen(WebSocket webSocket, Response response) {
-                    Log.d(TAG, "WebSocket connected to: " + serverRelay);
-                    isConnecting = false;
-                    isReconnecting = false;
-                    sendSubscriptionRequest();
-                }
+    private void connectToRelays() {
+        final List<String> candidates = new ArrayList<>();
+        addRelays(candidates, Collections.singletonList(serverRelay));
+        addRelays(candidates, standbyRelays);
+        addRelays(candidates, candidateRelays);
+        final List<String> accountPubkeys = new ArrayList<>(pubkeys);
+        final boolean probe = MODE_PERSISTENT.equals(mode);
+        eventLoop.post(() -> {
+            applyAccounts(accountPubkeys);
+            relayCandidates = candidates;
+            latencyProber.retain(candidates);
+            applyRelaySelection();
+            relayPool.connectIdle();
+            eventLoop.removeCallbacks(relayProbeRunnable);
+            if (probe) {
+                eventLoop.postDelayed(relayProbeRunnable, RELAY_PROBE_INITIAL_DELAY_MS);
+            }
+        });
+    }
 
-                @Override
-                public void onMessage(WebSocket webSocket, String text) {
-                    Log.d(TAG, "Received message: " + text);
-                    handleMessage(text);
-                }
+    private static void addRelays(List<String> relays, List<String> urls) {
+        if (urls == null) return;
+        for (String url : urls) {
+            if (url != null && !url.isEmpty() && !relays.contains(url)) {
+                relays.add(url);
+            }
+        }
+    }
 
-                @Override
-                public void onMessage(WebSocket webSocket, okio.ByteString bytes) {
-                    Log.d(TAG, "Received bytes message");
-                    handleMessage(bytes.utf8());
-                }
+    /**
+     * Fill the pool from the relay candidates ranked by measured latency, on the event loop
+     * The pool keeps healthy open sockets in their slot and hands the slots of failing relays to the next
+     * candidate; with no measurements yet the ranking is the configured order, primary relay first
+     */
+    private void applyRelaySelection() {
+        if (relayCandidates.isEmpty()) return;
+        List<String> ranked = latencyProber.rank(relayCandidates);
+        List<String> selection = relayPool.select(ranked);
+        if (!selection.equals(latencyProber.getSelected())) {
+            Log.d(TAG, "Relay selection: " + selection + " from ranking " + ranked);
+        }
+        latencyProber.setSelected(selection);
+    }
 
-                @Override
-                public void onClosing(WebSocket webSocket, int code, String reason) {
-                    Log.d(TAG, "WebSocket closing: " + code + " " + reason);
-                    webSocket.close(1000, null);
+    /**
+     * Switch to the given accounts, on the event loop
+     * Open sockets are kept: removed accounts get a CLOSE for their REQ, added ones a REQ and, if the relay has
+     * already challenged this socket, an AUTH answering that challenge
+     */
+    private void applyAccounts(List<String> accountPubkeys) {
+        Map<String, PushAccount> updated = new LinkedHashMap<>();
+        for (int i = 0; i < accountPubkeys.size(); i++) {
+            String accountPubkey = accountPubkeys.get(i);
+            boolean primary = i == 0;
+            PushAccount account = accounts.get(accountPubkey);
+            if (account == null || account.primary != primary) {
+                account = createAccount(accountPubkey, primary);
+            }
+            updated.put(accountPubkey, account);
+        }
+        for (PushAccount account : accounts.values()) {
+            if (updated.get(account.pubkey) != account) {
+                account.coalescer.reset();
+                if (!updated.containsKey(account.pubkey)) {
+                    Log.d(TAG, "Account " + account + " removed from push");
+                    signingKeyCache.invalidate(account.pubkey);
                 }
+            }
+        }
+        accounts = updated;
+        syncAccountChannels();
+        for (PushRelayConnection connection : relayPool.getConnections()) {
+            syncSubscriptions(connection);
+        }
+    }
 
-                @Override
-                public void onClosed(WebSocket webSocket, int code, String reason) {
-                    Log.d(TAG, "WebSocket closed: " + code + " " + reason);
-                    isConnecting = false;
-                    // Only schedule reconnect if we're not already reconnecting (to avoid duplicate reconnects)
-                    if (!isReconnecting) {
-                        scheduleReconnect();
+    private PushAccount createAccount(String accountPubkey, boolean primary) {
+        PushAccount account = primary
+                ? new PushAccount(accountPubkey, true, PUSH_NOTIFICATION_CHANNEL_ID, PUSH_NOTIFICATION_ID)
+                : new PushAccount(accountPubkey, false, PUSH_NOTIFICATION_CHANNEL_ID + "_" + accountPubkey,
+                        ACCOUNT_NOTIFICATION_ID_BASE + (accountPubkey.hashCode() & 0xffff));
+        account.coalescer = new NotificationCoalescer(eventLoop, wakeGovernor::tryWake,
+                (totalEvents, groupCounts, previews, alert, silent) -> {
+                    if (silent) {
+                        Log.d(TAG, "Wake budget spent, " + totalEvents + " event(s) for " + account
+                                + " update silently");
                     } else {
-                        isReconnecting = false;
+                        // Start Dart now so tapping the notification attaches to a running engine
+                        WarmFlutterEngine.warmUp(this);
                     }
-                }
-
-                @Override
-                public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                    Log.e(TAG, "WebSocket failure", t);
-                    isConnecting = false;
-                    isReconnecting = false;
-                    scheduleReconnect();
-                }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to connect to WebSocket", e);
-            isConnecting = false;
-            isReconnecting = false;
-            scheduleReconnect();
-        }
+                    activateApp(account, totalEvents, groupCounts, previews, alert, silent);
+                });
+        return account;
     }
 
     /**
-     * Send subscription request to relay
-     * Format: ["REQ", subscriptionId, {"kinds": [20284], "#h": [pubkey], "since": now}]
-     * subscriptionId is a random number
+     * Bring the subscriptions of an open relay in line with the accounts
      */
-    private void sendSubscriptionRequest() {
-        if (pubkey == null) {
-            Log.e(TAG, "Cannot send subscription: missing pubkey");
-            return;
-        }
-        
-        try {
-            // Generate random subscription ID
-            if (subscriptionId == null || regenerateSubscriptionId) {
-                subscriptionId = generateRandomHex(16);
-                regenerateSubscriptionId = false;
+    private void syncSubscriptions(PushRelayConnection connection) {
+        Iterator<PushRelayConnection.Subscription> iterator = connection.subscriptions.values().iterator();
+        while (iterator.hasNext()) {
+            PushRelayConnection.Subscription subscription = iterator.next();
+            if (accounts.containsKey(subscription.pubkey)) continue;
+            if (connection.isOpen() && subscription.id != null) {
+                connection.send(new JSONArray().put("CLOSE").put(subscription.id).toString());
             }
-            
-            // Build Request: ["REQ", subscriptionId, {"kinds": [20285, 20284], "#h": [pubkey]}]
-            JSONArray requestArray = new JSONArray();
-            requestArray.put("REQ");
-            requestArray.put(subscriptionId);
-            
-            JSONObject filter = new JSONObject();
-            // NIP-29 group events
-            JSONArray kindsArray = new JSONArray();
-            kindsArray.put(20285);
-            kindsArray.put(20284);
-            filter.put("kinds", kindsArray);
-            
-            // h tag contains any of the groupIds (pubkey)
-            JSONArray hArray = new JSONArray();
-            hArray.put(pubkey);
-            filter.put("#h", hArray);
-            
-            requestArray.put(filter);
-            
-            String requestMessage = requestArray.toString();
-            Log.d(TAG, "Sending subscription request: " + requestMessage);
-            
-            if (webSocket != null) {
-                webSocket.send(requestMessage);
+            iterator.remove();
+        }
+        if (!connection.isOpen()) return;
+        boolean authPending = false;
+        for (PushAccount account : accounts.values()) {
+            if (connection.subscriptions.containsKey(account.pubkey)) continue;
+            PushRelayConnection.Subscription subscription = connection.subscriptionFor(account.pubkey);
+            relayProtocol.sendSubscriptionRequest(connection, subscription);
+            if (connection.authChallenge != null) {
+                subscription.pendingAuthChallenge = connection.authChallenge;
+                authPending = true;
             }
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to create subscription request", e);
+        }
+        if (authPending) {
+            answerAuthChallenges(Collections.singletonList(connection));
         }
     }
 
     /**
-     * Handle incoming WebSocket messages
+     * Hand notifications counted so far to nobody, e.g. once the user has the app open again
      */
-    private void handleMessage(String message) {
-        try {
-            JSONArray jsonArray = new JSONArray(message);
-            String messageType = jsonArray.getString(0);
-            
-            if ("EVENT".equals(messageType)) {
-                // Received an event, only wake app if process is not running
-                Log.d(TAG, "Received EVENT");
-                if (!isAppProcessRunning()) {
-                    Log.d(TAG, "App process not running, activating");
-                    activateApp();
-                } else {
-                    Log.d(TAG, "App process already running, skipping activation");
-                }
-            } else if ("EOSE".equals(messageType)) {
-                // End of stored events
-                Log.d(TAG, "End of stored events");
-            } else if ("NOTICE".equals(messageType)) {
-                String notice = jsonArray.getString(1);
-                Log.d(TAG, "Relay notice: " + notice);
-            } else if ("CLOSED".equals(messageType)) {
-                Log.d(TAG, "Subscription closed");
-            } else if ("AUTH".equals(messageType)) {
-                // Handle AUTH challenge
-                String challenge = jsonArray.getString(1);
-                Log.d(TAG, "Received AUTH challenge: " + challenge);
-                handleAuthChallenge(challenge);
-            } else if ("OK".equals(messageType)) {
-                // Handle OK response, check if it's AUTH response
-                if (jsonArray.length() >= 3) {
-                    String eventId = jsonArray.getString(1);
-                    boolean status = jsonArray.getBoolean(2);
-                    String okMessage = jsonArray.length() > 3 ? jsonArray.getString(3) : "";
-                    Log.d(TAG, "Received OK: eventId=" + eventId + ", status=" + status + ", message=" + okMessage);
-                    // If this is AUTH OK response and successful, resend subscription request
-                    if (status && authEventId != null && authEventId.equals(eventId)) {
-                        Log.d(TAG, "AUTH successful, resending subscription request");
-                        authEventId = null;
-                        pendingAuthChallenge = null;
-                        regenerateSubscriptionId = true;
-                        sendSubscriptionRequest();
-                    }
-                }
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to parse message: " + message, e);
+    private void resetNotifications() {
+        for (PushAccount account : accounts.values()) {
+            account.coalescer.reset();
         }
     }
 
     /**
-     * Handle AUTH challenge by creating and sending AUTH response
-     * If privatekey is not available, retry after a delay
+     * Start a scheduled sync window: connect the relays and wait until each has delivered its stored events
+     * The REQ carries since from the watermarks, so only events newer than the last window are drained
+     * Ends on EOSE from every open relay or after SYNC_WINDOW_TIMEOUT_MS, whichever comes first
      */
-    private void handleAuthChallenge(String challenge) {
-        Log.d(TAG, "Handling AUTH challenge: challenge=" + challenge + ", relay=" + serverRelay);
-        
-        // Store challenge for retry
-        pendingAuthChallenge = challenge;
-        
-        // Get private key from Android Keystore (stored in private file)
-        String privkey = getPrivateKey();
-        if (privkey == null || privkey.isEmpty()) {
-            Log.w(TAG, "Private key not found in Android Keystore file, will retry after delay");
-            Log.w(TAG, "Private key may not have been stored yet. Retrying in 2 seconds...");
-            
-            // Cancel any existing retry
-            if (authRetryRunnable != null) {
-                authRetryHandler.removeCallbacks(authRetryRunnable);
-            }
-            
-            // Retry after 2 seconds
-            authRetryRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    if (pendingAuthChallenge != null) {
-                        Log.d(TAG, "Retrying AUTH challenge handling");
-                        handleAuthChallenge(pendingAuthChallenge);
-                    }
-                }
-            };
-            authRetryHandler.postDelayed(authRetryRunnable, 2000);
+    private void startSyncWindow(Runnable onDone) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        if (serverRelay == null || serverRelay.isEmpty() || pubkeys.isEmpty()) {
+            Log.e(TAG, "Missing config, skipping sync window");
+            mainHandler.post(onDone);
             return;
         }
-        
-        // Clear pending challenge and retry runnable
-        pendingAuthChallenge = null;
-        if (authRetryRunnable != null) {
-            authRetryHandler.removeCallbacks(authRetryRunnable);
-            authRetryRunnable = null;
-        }
-        
-        try {
-            // Create AUTH event
-            String authJson = createAuthEvent(challenge, serverRelay, pubkey, privkey);
-            if (authJson != null && !authJson.isEmpty()) {
-                Log.d(TAG, "Created AUTH event, sending to relay");
-                sendAuthResponse(authJson);
-            } else {
-                Log.e(TAG, "Failed to create AUTH event");
+        connectToRelays();
+        eventLoop.post(() -> {
+            if (syncWindowDone != null) {
+                // Job restarted while a window is open, the running window reports to the new caller
+                syncWindowDone = () -> mainHandler.post(onDone);
+                return;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling AUTH challenge", e);
-        }
+            Log.d(TAG, "Sync window started");
+            syncWindowDone = () -> mainHandler.post(onDone);
+            syncWindowStartedAtMs = SystemClock.elapsedRealtime();
+            powerStats.onSyncWindowStarted();
+            eventLoop.postDelayed(syncWindowTimeoutRunnable, SYNC_WINDOW_TIMEOUT_MS);
+        });
     }
 
     /**
-     * Create AUTH event for NIP-42
-     * Uses Jackson ObjectMapper for JSON serialization (matching nostr-java)
-     * Format: ["AUTH", {"id": "...", "pubkey": "...", "created_at": ..., "kind": 22242, "tags": [["relay", "..."], ["challenge", "..."]], "content": "", "sig": "..."}]
-     * Reference: nostr-java NIP42.createCanonicalAuthenticationEvent() and CanonicalAuthenticationMessage
+     * True once every open relay is subscribed and past EOSE, and at least one relay is open
      */
-    private String createAuthEvent(String challenge, String relay, String pubkey, String privkey) {
-        try {
-            // Get current timestamp in seconds
-            long createdAt = System.currentTimeMillis() / 1000;
-            
-            // Create tags: [["relay", relay], ["challenge", challenge]]
-            // Using JSONArray for calculateEventId compatibility, then convert to Jackson format
-            JSONArray tags = new JSONArray();
-            JSONArray relayTag = new JSONArray();
-            relayTag.put("relay");
-            relayTag.put(relay);
-            tags.put(relayTag);
-            JSONArray challengeTag = new JSONArray();
-            challengeTag.put("challenge");
-            challengeTag.put(challenge);
-            tags.put(challengeTag);
-            
-            // Calculate event ID: SHA256 of [0, pubkey, created_at, kind, tags, content]
-            // This must be done before creating the final event JSON
-            String eventId = calculateEventId(pubkey.toLowerCase(), createdAt, 22242, tags, "");
-            if (eventId == null) {
-                Log.e(TAG, "Failed to calculate event ID");
-                return null;
+    private boolean isDrained() {
+        boolean anyOpen = false;
+        for (PushRelayConnection connection : relayPool.getConnections()) {
+            if (!connection.isOpen()) continue;
+            if (connection.getState() != PushRelayConnection.State.SUBSCRIBED || connection.isCatchingUp()) {
+                return false;
             }
-            
-            // Sign the event ID with private key
-            String signature = signEventId(eventId, privkey);
-            if (signature == null || signature.isEmpty()) {
-                Log.e(TAG, "Failed to sign event ID");
-                return null;
+            anyOpen = true;
+        }
+        return anyOpen;
+    }
+
+    private void finishSyncWindow(String reason) {
+        if (syncWindowDone == null) return;
+        eventLoop.removeCallbacks(syncWindowTimeoutRunnable);
+        long durationMs = SystemClock.elapsedRealtime() - syncWindowStartedAtMs;
+        Log.d(TAG, "Sync window finished (" + reason + ") after " + durationMs + "ms");
+        // Notify now, the service goes away with the window
+        for (PushAccount account : accounts.values()) {
+            account.coalescer.flushNow();
+        }
+        telemetry.sampleMinute(relayPool.getConnections());
+        relayPool.disconnectAll();
+        persistEventState();
+        persistTrafficStats();
+        powerStats.onSyncWindowFinished(durationMs);
+        powerStats.persist();
+        wakeGovernor.persist();
+        telemetry.persist();
+        Runnable done = syncWindowDone;
+        syncWindowDone = null;
+        done.run();
+    }
+
+    @Override
+    public void onRelayOpen(PushRelayConnection connection) {
+        // One REQ per account on the new socket, accounts removed while it was down are forgotten
+        connection.subscriptions.keySet().retainAll(accounts.keySet());
+        for (PushAccount account : accounts.values()) {
+            relayProtocol.sendSubscriptionRequest(connection, connection.subscriptionFor(account.pubkey));
+        }
+    }
+
+    @Override
+    public void onRelayFrame(PushRelayConnection connection, RelayFrame frame) {
+        powerStats.onInboundFrame();
+        if (eventVerifier == null) {
+            // Without secp256k1 nothing can be verified, and AUTH cannot be answered either
+            relayProtocol.handleFrame(connection, frame);
+            return;
+        }
+        eventVerifier.submit(frame, verified -> {
+            if (!verified) {
+                Log.w(TAG, "Dropping EVENT " + frame.objectString(2, "id") + " from " + connection.url
+                        + ": id or signature does not match");
+                return;
             }
-            
-            // Create event JSON using Jackson (matching nostr-java format)
-            ObjectNode eventNode = JSON_NODE_FACTORY.objectNode();
-            eventNode.put("id", eventId);
-            eventNode.put("pubkey", pubkey.toLowerCase());
-            eventNode.put("created_at", createdAt);
-            eventNode.put("kind", 22242);
-            
-            // Convert tags to Jackson ArrayNode format
-            ArrayNode tagsNode = JSON_NODE_FACTORY.arrayNode();
-            for (int i = 0; i < tags.length(); i++) {
-                JSONArray tagArray = tags.getJSONArray(i);
-                ArrayNode tagNode = JSON_NODE_FACTORY.arrayNode();
-                for (int j = 0; j < tagArray.length(); j++) {
-                    tagNode.add(tagArray.getString(j));
+            relayProtocol.handleFrame(connection, frame);
+        });
+    }
+
+    @Override
+    public void onRelayStateChanged(PushRelayConnection connection, PushRelayConnection.State from,
+                                    PushRelayConnection.State to, String reason) {
+        if (from == PushRelayConnection.State.CONNECTING && to == PushRelayConnection.State.SUBSCRIBED) {
+            powerStats.onSocketOpened(connection);
+            long connectMs = SystemClock.elapsedRealtime() - connection.connectStartedAtMs;
+            telemetry.recordConnect(connectMs);
+            latencyProber.recordConnect(connection.url, connectMs);
+        } else if (to == PushRelayConnection.State.BACKOFF || to == PushRelayConnection.State.IDLE) {
+            powerStats.onSocketClosed(connection);
+        }
+        if (to == PushRelayConnection.State.BACKOFF) {
+            telemetry.recordReconnect(reason);
+            if (from == PushRelayConnection.State.CONNECTING) {
+                latencyProber.recordFailure(connection.url);
+                // The cached addresses may be what failed, the next lookup refreshes them
+                String host = Uri.parse(connection.url).getHost();
+                if (host != null) {
+                    dnsCache.expire(host);
                 }
-                tagsNode.add(tagNode);
             }
-            eventNode.set("tags", tagsNode);
-            eventNode.put("content", "");
-            eventNode.put("sig", signature);
-            
-            // Create AUTH message: ["AUTH", event]
-            // Reference: nostr-java CanonicalAuthenticationMessage.encode()
-            ArrayNode authArray = JSON_NODE_FACTORY.arrayNode();
-            authArray.add("AUTH");
-            authArray.add(eventNode);
-            
-            // Serialize to JSON string using Jackson
-            String authJson = JSON_MAPPER.writeValueAsString(authArray);
-            
-            // Store event ID for OK response matching
-            authEventId = eventId;
-            
-            Log.d(TAG, "Created AUTH event JSON: " + authJson);
-            return authJson;
-        } catch (JsonProcessingException e) {
-            Log.e(TAG, "Failed to serialize AUTH event", e);
-            return null;
+            // The reconnect is where a faster or healthier candidate can take this relay's slot
+            eventLoop.post(() -> {
+                // Pool was emptied since, e.g. the sync window ended
+                if (relayPool.isEmpty()) return;
+                applyRelaySelection();
+                relayPool.connectIdle();
+            });
+        }
+        // Recent transitions plus the current state of every relay, readable from Dart for diagnostics
+        try {
+            JSONObject transition = new JSONObject();
+            transition.put("relay", connection.url);
+            transition.put("from", from.name());
+            transition.put("to", to.name());
+            transition.put("reason", reason);
+            transition.put("at", System.currentTimeMillis());
+            stateTransitions.addLast(transition);
+            while (stateTransitions.size() > MAX_STATE_TRANSITIONS) {
+                stateTransitions.removeFirst();
+            }
+
+            JSONObject snapshot = new JSONObject();
+            snapshot.put("relays", relayStatesJson());
+            snapshot.put("transitions", new JSONArray(stateTransitions));
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                    .putString(KEY_CONNECTION_STATES, snapshot.toString())
+                    .apply();
         } catch (JSONException e) {
-            Log.e(TAG, "Failed to create AUTH event", e);
-            return null;
+            Log.e(TAG, "Failed to record relay state transition", e);
         }
     }
 
     /**
-     * Calculate event ID: SHA256 of [0, pubkey, created_at, kind, tags, content]
-     * Uses Jackson ObjectMapper for serialization (matching nostr-java EventSerializer)
-     * Reference: nostr-java EventSerializer.serialize() and computeEventId()
+     * State of every relay, with its traffic counters
      */
-    private String calculateEventId(String pubkey, long createdAt, int kind, JSONArray tags, String content) {
-        try {
-            // Ensure pubkey is lowercase (matching nostr-java and Flutter)
-            String pubkeyLower = pubkey.toLowerCase();
-            
-            // Create array node: [0, pubkey, created_at, kind, tags, content]
-            // Reference: nostr-java EventSerializer.serialize() using JsonNodeFactory
-            ArrayNode arrayNode = JSON_NODE_FACTORY.arrayNode();
-            arrayNode.add(0); // Protocol version
-            arrayNode.add(pubkeyLower);
-            arrayNode.add(createdAt);
-            arrayNode.add(kind);
-            
-            // Convert JSONArray tags to Jackson ArrayNode
-            // Tags format: [["relay","..."],["challenge","..."]]
-            ArrayNode tagsNode = JSON_NODE_FACTORY.arrayNode();
-            for (int i = 0; i < tags.length(); i++) {
-                JSONArray tagArray = tags.getJSONArray(i);
-                ArrayNode tagNode = JSON_NODE_FACTORY.arrayNode();
-                for (int j = 0; j < tagArray.length(); j++) {
-                    Object tagValue = tagArray.get(j);
-                    if (tagValue instanceof String) {
-                        tagNode.add((String) tagValue);
-                    } else if (tagValue instanceof Number) {
-                        tagNode.add(((Number) tagValue).longValue());
-                    } else {
-                        tagNode.add(tagValue.toString());
-                    }
-                }
-                tagsNode.add(tagNode);
-            }
-            arrayNode.add(tagsNode);
-            arrayNode.add(content);
-            
-            // Serialize to JSON string using Jackson (matching nostr-java)
-            // Reference: nostr-java EventSerializer: MAPPER.writeValueAsString(arrayNode)
-            String serialized = JSON_MAPPER.writeValueAsString(arrayNode);
-            
-            // Debug: Log serialized JSON to compare with nostr-java/Flutter
-            Log.d(TAG, "Event ID calculation - serialized JSON: " + serialized);
-            
-            // SHA256 hash of UTF-8 encoded string
-            // Reference: nostr-java EventSerializer.computeEventId()
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(serialized.getBytes(StandardCharsets.UTF_8));
-            
-            // Convert to hex string (lowercase)
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            
-            String eventId = hexString.toString();
-            Log.d(TAG, "Calculated event ID: " + eventId);
-            return eventId;
-        } catch (JsonProcessingException e) {
-            Log.e(TAG, "Failed to serialize event for ID calculation", e);
-            return null;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to calculate event ID", e);
-            return null;
+    private JSONArray relayStatesJson() throws JSONException {
+        JSONArray relays = new JSONArray();
+        long now = SystemClock.elapsedRealtime();
+        for (PushRelayConnection relay : relayPool.getConnections()) {
+            JSONObject item = new JSONObject();
+            item.put("relay", relay.url);
+            item.put("state", relay.getState().name());
+            item.put("forMs", now - relay.getStateSinceMs());
+            item.put("messagesIn", relay.traffic.messagesIn.get());
+            item.put("wireBytesIn", relay.traffic.wireBytesIn.get());
+            relays.put(item);
         }
+        return relays;
+    }
+
+    @Override
+    public PushAccount findAccount(String pubkey) {
+        return accounts.get(pubkey);
     }
 
     /**
-     * Sign event ID with private key using Schnorr signature (BIP340)
-     * Reference: nostr-java Identity.sign() and Schnorr.sign()
-     * 
-     * Process:
-     * 1. Event ID is already a SHA256 hash (64 hex chars = 32 bytes)
-     * 2. Convert event ID hex string to 32-byte array
-     * 3. Generate random 32-byte aux parameter (BIP340 requirement)
-     * 4. Sign the 32-byte event ID hash with private key and aux
-     * 
-     * Note: The event ID itself is already a hash, so we sign the hash bytes directly
+     * A new EVENT wakes the app, only if its process is not running
+     * Bursts are coalesced, activateApp() runs once per window with the counts
      */
-    private String signEventId(String eventId, String privkey) {
-        try {
-            if (secp256k1 == null) {
-                Log.e(TAG, "Secp256k1 not initialized");
-                return null;
-            }
-            
-            // Convert event ID hex string to 32-byte array
-            // Event ID is already a SHA256 hash (64 hex chars = 32 bytes)
-            byte[] eventIdBytes = hexStringToByteArray(eventId);
-            if (eventIdBytes.length != 32) {
-                Log.e(TAG, "Event ID must be 32 bytes (64 hex chars), got: " + eventIdBytes.length);
-                return null;
-            }
-            
-            // Convert private key hex string to 32-byte array
-            byte[] privkeyBytes = hexStringToByteArray(privkey);
-            if (privkeyBytes.length != 32) {
-                Log.e(TAG, "Private key must be 32 bytes (64 hex chars), got: " + privkeyBytes.length);
-                return null;
-            }
-            
-            // Generate random 32-byte aux parameter (BIP340 requirement)
-            // Reference: nostr-java Identity.generateAuxRand() -> NostrUtil.createRandomByteArray(32)
-            SecureRandom secureRandom = new SecureRandom();
-            byte[] aux = new byte[32];
-            secureRandom.nextBytes(aux);
-            
-            // Sign the 32-byte event ID hash using Schnorr with aux parameter
-            // Reference: nostr-java Schnorr.sign(msg, secKey, auxRand)
-            byte[] signature = secp256k1.signSchnorr(eventIdBytes, privkeyBytes, aux);
-            
-            if (signature == null) {
-                Log.e(TAG, "Signature is null");
-                return null;
-            }
-            
-            // Signature should be 64 bytes (R || s)
-            if (signature.length != 64) {
-                Log.e(TAG, "Signature must be 64 bytes, got: " + signature.length);
-                return null;
+    @Override
+    public void onEvent(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                        PushAccount account, RelayFrame frame, String eventId, int outcome) {
+        if (outcome != PushRelayProtocol.EVENT_NEW) return;
+        eventLoop.removeCallbacks(persistEventStateRunnable);
+        eventLoop.postDelayed(persistEventStateRunnable, EVENT_STATE_PERSIST_DELAY_MS);
+        if (!isAppProcessRunning()) {
+            Log.d(TAG, "App process not running, queueing activation");
+            // Group by the real sender, the outer pubkey of a gift wrap is a throwaway key
+            PushMessageDecoder.Preview preview = decodePreview(frame, account.pubkey);
+            // Budget by the decoded message kind, a gift-wrapped call invitation rides in an ordinary push
+            int kind = preview != null ? preview.kind : (int) frame.objectLong(2, "kind", -1);
+            wakeGovernor.recordEvent(kind);
+            account.coalescer.onEvent(preview != null ? preview.senderPubkey
+                    : frame.objectString(2, "pubkey"), preview, kind);
+            if (!subscription.catchingUp) {
+                telemetry.recordEventNotified(frame.objectLong(2, "created_at", 0));
             }
-            
-            // Convert signature to hex string (lowercase)
-            String sigHex = byteArrayToHexString(signature);
-            Log.d(TAG, "Signed event ID, signature length: " + sigHex.length() + " chars (expected 128)");
-            return sigHex;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to sign event ID", e);
-            return null;
+        } else {
+            Log.d(TAG, "App process already running, skipping activation");
+            account.coalescer.reset();
+        }
+    }
+
+    @Override
+    public void onCatchUpDone(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                              long elapsedMs) {
+        eventLoop.removeCallbacks(persistEventStateRunnable);
+        eventLoop.postDelayed(persistEventStateRunnable, EVENT_STATE_PERSIST_DELAY_MS);
+        if (syncWindowDone != null && isDrained()) {
+            finishSyncWindow("drained");
         }
     }
 
     /**
-     * Convert hex string to byte array
+     * Answer with one AUTH event per account
+     * If an account's privatekey is not available yet, its challenge waits for the key available signal
      */
-    private byte[] hexStringToByteArray(String hex) {
-        int len = hex.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
-                    + Character.digit(hex.charAt(i + 1), 16));
-        }
-        return data;
+    @Override
+    public void onAuthChallenge(PushRelayConnection connection, String challenge) {
+        answerAuthChallenges(Collections.singletonList(connection));
+    }
+
+    @Override
+    public void onAuthAccepted(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                               long authMs) {
+        telemetry.recordAuthRoundTrip(authMs);
+        latencyProber.recordAuth(connection.url, authMs);
     }
 
     /**
-     * Convert byte array to hex string
+     * Answer the pending AUTH challenges of every given relay, per account all AUTH events are signed in one batch
      */
-    private String byteArrayToHexString(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
+    private void answerAuthChallenges(List<PushRelayConnection> connections) {
+        for (PushAccount account : accounts.values()) {
+            List<PushRelayConnection> pending = new ArrayList<>();
+            for (PushRelayConnection connection : connections) {
+                PushRelayConnection.Subscription subscription = connection.subscriptions.get(account.pubkey);
+                if (subscription != null && subscription.pendingAuthChallenge != null) {
+                    pending.add(connection);
+                }
+            }
+            // Without a stored key the challenges stay pending for answerWaitingAuthChallenges
+            if (!pending.isEmpty()) {
+                answerAuthChallenges(account, pending);
             }
-            hexString.append(hex);
         }
-        return hexString.toString();
     }
 
     /**
-     * Get private key from Android Keystore (decrypted from private file)
+     * Key available signal for an account, answer the challenges that were waiting on its key
      */
-    private String getPrivateKey() {
-        String privkey = KeystoreHelper.getPrivateKey(this);
-        if (privkey == null || privkey.isEmpty()) {
-            Log.e(TAG, "Private key not found in Android Keystore file");
-            Log.e(TAG, "This may happen if Service was restarted by system before Flutter app stored the private key");
-            return null;
+    private void answerWaitingAuthChallenges(String accountPubkey) {
+        PushAccount account = accounts.get(accountPubkey);
+        if (account == null) return;
+        List<PushRelayConnection> pending = new ArrayList<>();
+        for (PushRelayConnection connection : relayPool.getConnections()) {
+            PushRelayConnection.Subscription subscription = connection.subscriptions.get(accountPubkey);
+            if (subscription != null && subscription.pendingAuthChallenge != null) {
+                pending.add(connection);
+            }
         }
-        Log.d(TAG, "Private key retrieved successfully from Android Keystore");
-        return privkey;
+        if (pending.isEmpty()) return;
+        Log.d(TAG, "Key of " + account + " stored, answering " + pending.size() + " waiting AUTH challenge(s)");
+        answerAuthChallenges(account, pending);
     }
 
     /**
-     * Send AUTH response to relay
+     * Send an AUTH event signed outside the service, on the event loop
+     * Only sent to the relay named in its relay tag, and only while that relay's challenge for the event's pubkey
+     * is still pending, so a late or repeated answer never reaches a relay that did not ask for it
      */
-    private void sendAuthResponse(String authJson) {
-        if (webSocket != null && authJson != null && !authJson.isEmpty()) {
-            Log.d(TAG, "Sending AUTH response: " + authJson);
-            webSocket.send(authJson);
+    private void sendExternalAuth(String authJson) {
+        if (authJson == null || authJson.isEmpty()) return;
+        try {
+            String trimmed = authJson.trim();
+            JSONObject event = trimmed.startsWith("[")
+                    ? new JSONArray(trimmed).getJSONObject(1)
+                    : new JSONObject(trimmed);
+            String eventPubkey = event.getString("pubkey").toLowerCase();
+            String relay = null;
+            String challenge = null;
+            JSONArray tags = event.getJSONArray("tags");
+            for (int i = 0; i < tags.length(); i++) {
+                JSONArray tag = tags.optJSONArray(i);
+                if (tag == null || tag.length() < 2) continue;
+                if ("relay".equals(tag.optString(0))) relay = tag.optString(1);
+                if ("challenge".equals(tag.optString(0))) challenge = tag.optString(1);
+            }
+            String message = new JSONArray().put("AUTH").put(event).toString();
+            for (PushRelayConnection connection : relayPool.getConnections()) {
+                PushRelayConnection.Subscription subscription = connection.subscriptions.get(eventPubkey);
+                if (subscription == null || subscription.pendingAuthChallenge == null
+                        || !subscription.pendingAuthChallenge.equals(challenge)
+                        || !sameRelay(connection.url, relay)) {
+                    continue;
+                }
+                subscription.authEventId = event.getString("id");
+                relayProtocol.sendAuth(connection, subscription, message);
+                return;
+            }
+            Log.w(TAG, "No pending AUTH challenge for external AUTH to " + relay);
+        } catch (JSONException e) {
+            Log.e(TAG, "Invalid external AUTH event", e);
         }
     }
 
+    private static boolean sameRelay(String url, String relay) {
+        if (relay == null) return false;
+        return stripTrailingSlash(url).equalsIgnoreCase(stripTrailingSlash(relay));
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
     /**
-     * Schedule reconnection
+     * Answer one account's pending AUTH challenges on the given relays
+     * @return false if the account's private key is not stored yet, the challenges wait for the key
      */
-    private void scheduleReconnect() {
-        // Don't schedule reconnect if already connecting or reconnecting
-        if (isConnecting || isReconnecting) {
-            Log.d(TAG, "Already connecting/reconnecting, skipping schedule reconnect");
-            return;
+    private boolean answerAuthChallenges(PushAccount account, List<PushRelayConnection> connections) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        boolean cachedKey = signingKeyCache.isCached(account.pubkey);
+        String[] authMessages;
+        try {
+            // Private key comes from the in-memory cache, or from Android Keystore (stored in private file) on a miss
+            authMessages = signingKeyCache.use(this, account.pubkey,
+                    privkey -> relayProtocol.createAuthEvents(connections, account.pubkey, privkey));
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling AUTH challenge", e);
+            return true;
         }
-        
-        if (reconnectRunnable != null) {
-            reconnectHandler.removeCallbacks(reconnectRunnable);
+        if (authMessages == null && !signingKeyCache.isCached(account.pubkey)) {
+            Log.w(TAG, "Private key of " + account + " not found in Android Keystore file, waiting for it");
+            return false;
+        }
+        if (authMessages == null) {
+            Log.e(TAG, "Failed to create AUTH event");
+            return true;
         }
         
-        isReconnecting = true;
-        reconnectRunnable = new Runnable() {
-            @Override
-            public void run() {
-                Log.d(TAG, "Attempting to reconnect...");
-                isReconnecting = false; // Reset flag before connecting
-                connectToRelay();
-            }
-        };
-        
-        reconnectHandler.postDelayed(reconnectRunnable, RECONNECT_DELAY_MS);
+        long elapsedMicros = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000;
+        Log.d(TAG, "Created " + authMessages.length + " AUTH event(s) for " + account + " in " + elapsedMicros
+                + "us (key " + (cachedKey ? "cached" : "loaded from Keystore") + ", hits=" + signingKeyCache.getHits()
+                + ", misses=" + signingKeyCache.getMisses() + "), sending to relays");
+        for (int i = 0; i < authMessages.length; i++) {
+            PushRelayConnection connection = connections.get(i);
+            relayProtocol.sendAuth(connection, connection.subscriptions.get(account.pubkey), authMessages[i]);
+        }
+        return true;
     }
 
     /**
-     * Disconnect from relay
+     * AUTH answer for a RelayLatencyProber probe socket, signed with the primary account's key
+     * @return null if there is no account or key yet, the probe then only measures the connect
      */
-    private void disconnectFromRelay() {
-        if (webSocket != null) {
-            try {
-                webSocket.close(1000, "Service stopping");
-            } catch (Exception e) {
-                Log.e(TAG, "Error closing WebSocket", e);
-            }
-            webSocket = null;
+    private String signProbeAuth(String relayUrl, String challenge) {
+        if (accounts.isEmpty() || challenge == null) return null;
+        String primary = accounts.keySet().iterator().next();
+        try {
+            String[] authMessages = signingKeyCache.use(this, primary, privkey -> relayProtocol.signAuthEvents(primary,
+                    privkey, new String[]{relayUrl}, new String[]{challenge}, new String[1]));
+            return authMessages != null ? authMessages[0] : null;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to sign probe AUTH", e);
+            return null;
         }
     }
 
     /**
-     * Generate random hex string
+     * Decrypt the pushed message with the signing key for the notification body
+     * Runs on the event loop, two ECDH operations and two ChaCha20 passes for a gift wrap
+     * @param accountPubkey account the event was delivered for, its key decrypts the message
+     * @return null if there is no key yet or the event is not a message we can read
      */
-    private String generateRandomHex(int length) {
-        Random random = new Random();
-        StringBuilder sb = new StringBuilder();
-        String chars = "0123456789abcdef";
-        for (int i = 0; i < length; i++) {
-            sb.append(chars.charAt(random.nextInt(chars.length())));
+    private PushMessageDecoder.Preview decodePreview(RelayFrame frame, String accountPubkey) {
+        if (messageDecoder == null) return null;
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        try {
+            PushMessageDecoder.Preview preview = signingKeyCache.use(this, accountPubkey,
+                    privkey -> messageDecoder.decode(frame.rawAt(2), privkey));
+            long elapsedUs = (SystemClock.elapsedRealtimeNanos() - startNs) / 1000;
+            if (preview != null) {
+                previewsDecoded++;
+                previewDecodeTotalUs += elapsedUs;
+                Log.d(TAG, "Decoded kind " + preview.kind + " preview in " + elapsedUs + "us (avg "
+                        + previewDecodeTotalUs / previewsDecoded + "us over " + previewsDecoded + ")");
+            }
+            return preview;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to decode notification preview: " + e.getMessage());
+            return null;
         }
-        return sb.toString();
     }
 
     /**
-     * Show notification when push notification is received
+     * Show notification when push notification is received, once per coalescing window
+     * Repeated updates replace the same notification and only alert when the coalescer allows it
+     * Updates made only of events over their wake budget are silent and low priority, see PushWakeGovernor
+     * Decoded messages show sender and text, the lock screen only gets the generic public version
+     * Every account posts its own notification on its own channel, labelled with the account once there are several
      * User can click notification to open the app
      */
-    private void activateApp() {
+    private void activateApp(PushAccount account, int totalEvents, Map<String, Integer> groupCounts,
+                             List<PushMessageDecoder.Preview> previews, boolean alert, boolean silent) {
         try {
             // Create a fresh Intent for MainActivity
             Intent intent = new Intent(this, MainActivity.class);
@@ -849,7 +1118,7 @@ public class PushNotificationService extends Service {
             }
             PendingIntent pendingIntent = PendingIntent.getActivity(
                 this,
-                PUSH_NOTIFICATION_ID,
+                account.notificationId,
                 intent,
                 flags
             );
@@ -857,19 +1126,58 @@ public class PushNotificationService extends Service {
             // Show notification that will launch the app when clicked
             NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
             if (notificationManager != null) {
-                NotificationCompat.Builder builder = new NotificationCompat.Builder(this, PUSH_NOTIFICATION_CHANNEL_ID)
+                String text;
+                if (totalEvents <= 1) {
+                    text = getString(R.string.push_notification_text);
+                } else if (groupCounts.size() > 1) {
+                    text = getString(R.string.push_notification_summary_groups, totalEvents, groupCounts.size());
+                } else {
+                    text = getString(R.string.push_notification_summary, totalEvents);
+                }
+                NotificationCompat.Builder builder = new NotificationCompat.Builder(this, account.channelId)
                     .setContentTitle(getString(R.string.push_notification_title))
-                    .setContentText(getString(R.string.push_notification_text))
+                    .setContentText(text)
+                    .setNumber(totalEvents)
                     .setSmallIcon(R.mipmap.ic_launcher)
                     .setContentIntent(pendingIntent)
                     .setAutoCancel(true)
-                    .setPriority(NotificationCompat.PRIORITY_HIGH)
+                    .setOnlyAlertOnce(!alert)
+                    .setSilent(silent)
+                    .setPriority(silent ? NotificationCompat.PRIORITY_LOW : NotificationCompat.PRIORITY_HIGH)
                     .setCategory(NotificationCompat.CATEGORY_MESSAGE)
-                    .setDefaults(Notification.DEFAULT_SOUND | Notification.DEFAULT_VIBRATE)
+                    .setDefaults(alert ? Notification.DEFAULT_SOUND | Notification.DEFAULT_VIBRATE : 0)
                     .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+                if (accounts.size() > 1) {
+                    builder.setSubText(Bech32.shortNpub(account.pubkey));
+                }
+                if (!previews.isEmpty()) {
+                    Notification publicVersion = builder.build();
+                    PushMessageDecoder.Preview latest = previews.get(previews.size() - 1);
+                    String latestSender = Bech32.shortNpub(latest.senderPubkey);
+                    if (totalEvents <= 1) {
+                        builder.setContentTitle(latestSender)
+                            .setContentText(previewText(latest))
+                            .setStyle(new NotificationCompat.BigTextStyle().bigText(previewText(latest)));
+                    } else {
+                        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setSummaryText(text);
+                        for (PushMessageDecoder.Preview preview : previews) {
+                            style.addLine(Bech32.shortNpub(preview.senderPubkey) + ": " + previewText(preview));
+                        }
+                        builder.setContentTitle(groupCounts.size() > 1 ? getString(R.string.push_notification_title)
+                                : latestSender)
+                            .setContentText(previewText(latest))
+                            .setStyle(style);
+                    }
+                    builder.setVisibility(NotificationCompat.VISIBILITY_PRIVATE)
+                        .setPublicVersion(publicVersion);
+                }
                 
-                notificationManager.notify(PUSH_NOTIFICATION_ID, builder.build());
-                Log.d(TAG, "Push notification shown");
+                notificationManager.notify(account.notificationId, builder.build());
+                Log.d(TAG, "Push notification shown for " + account + ": " + totalEvents + " events in "
+                        + groupCounts.size() + " groups, " + previews.size() + " previews, alert=" + alert
+                        + ", silent=" + silent
+                        + ", updates=" + account.coalescer.getPostedSummaries() + "/"
+                        + account.coalescer.getReceivedEvents() + " events");
             } else {
                 Log.e(TAG, "NotificationManager is null");
             }
@@ -878,39 +1186,145 @@ public class PushNotificationService extends Service {
         }
     }
 
+    private String previewText(PushMessageDecoder.Preview preview) {
+        if (preview.text != null) return preview.text;
+        return getString(preview.kind == PushMessageDecoder.KIND_FILE_MESSAGE
+                ? R.string.push_notification_attachment : R.string.push_notification_text);
+    }
+
     /**
      * Check whether app has Activity in foreground
      * Returns true only if there's an Activity visible to the user
      * Returns false if only Service is running (app was killed)
+     * Volatile read of the lifecycle-fed tracker instead of a getRunningAppProcesses() IPC per EVENT
      */
     private boolean isAppProcessRunning() {
-        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager == null) return false;
-        List<ActivityManager.RunningAppProcessInfo> runningApps = activityManager.getRunningAppProcesses();
-        if (runningApps == null) return false;
-        String packageName = getPackageName();
-        for (ActivityManager.RunningAppProcessInfo processInfo : runningApps) {
-            if (processInfo.processName.equals(packageName)) {
-                // Check if process has Activity in foreground
-                // IMPORTANCE_FOREGROUND means there's an Activity visible to user
-                // IMPORTANCE_SERVICE or other values mean only Service is running
-                int importance = processInfo.importance;
-                Log.d(TAG, "Process found, importance: " + importance + 
-                    " (IMPORTANCE_FOREGROUND=" + ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND + ")");
-                return importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND;
-            }
-        }
-        Log.d(TAG, "Process not found in running apps");
-        return false;
+        return AppForegroundTracker.getInstance().isForeground();
+    }
+
+    /**
+     * Write the relay DNS cache if an answer changed
+     */
+    private void persistDnsCache() {
+        if (!dnsCache.isDirty()) return;
+        try {
+            dnsCache.save();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist DNS cache", e);
+        }
+    }
+
+    /**
+     * Write the seen event index and watermarks if they changed, batched so a burst of events costs one write
+     */
+    private void persistEventState() {
+        if (watermarks != null) {
+            watermarks.persist();
+        }
+        if (seenEventIndex == null || !seenEventIndex.isDirty()) return;
+        try {
+            seenEventIndex.save();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist seen event index", e);
+        }
+    }
+
+    /**
+     * Write per-relay wire vs decoded byte counters for AppPreferences.getPushTrafficStats
+     * Called before relays are dropped on teardown, counters cover the current service run
+     */
+    private void persistTrafficStats() {
+        try {
+            JSONArray relays = new JSONArray();
+            for (PushRelayConnection connection : relayPool.getConnections()) {
+                RelayTraffic traffic = connection.traffic;
+                JSONObject item = new JSONObject();
+                item.put("relay", connection.url);
+                item.put("compression", RelayTraffic.describeCompression(traffic.compression));
+                item.put("wireBytesIn", traffic.wireBytesIn.get());
+                item.put("wireBytesOut", traffic.wireBytesOut.get());
+                item.put("decodedBytesIn", traffic.decodedBytesIn.get());
+                item.put("decodedBytesOut", traffic.decodedBytesOut.get());
+                item.put("messagesIn", traffic.messagesIn.get());
+                item.put("messagesOut", traffic.messagesOut.get());
+                relays.put(item);
+            }
+            JSONObject stats = new JSONObject();
+            stats.put("relays", relays);
+            stats.put("updatedAt", System.currentTimeMillis());
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putString(KEY_RELAY_TRAFFIC, stats.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist relay traffic", e);
+        }
+    }
+
+    /**
+     * Lower-case, de-duplicated account list with the primary first
+     * @param primary pubkey of the single-account extra or pref, used when the list is empty
+     */
+    static ArrayList<String> normalizeAccounts(List<String> accountPubkeys, String primary) {
+        ArrayList<String> normalized = new ArrayList<>();
+        if (accountPubkeys == null || accountPubkeys.isEmpty()) {
+            accountPubkeys = Collections.singletonList(primary);
+        }
+        for (String accountPubkey : accountPubkeys) {
+            if (accountPubkey == null || accountPubkey.isEmpty()) continue;
+            String lower = accountPubkey.toLowerCase();
+            if (!normalized.contains(lower)) {
+                normalized.add(lower);
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Create the notification channel of every non-primary account and delete those of removed accounts
+     * The primary account posts on PUSH_NOTIFICATION_CHANNEL_ID, created with the service channel
+     */
+    private void syncAccountChannels() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager == null) return;
+        String prefix = PUSH_NOTIFICATION_CHANNEL_ID + "_";
+        for (NotificationChannel channel : manager.getNotificationChannels()) {
+            String id = channel.getId();
+            if (id.startsWith(prefix) && !accounts.containsKey(id.substring(prefix.length()))) {
+                manager.deleteNotificationChannel(id);
+            }
+        }
+        for (PushAccount account : accounts.values()) {
+            if (account.primary) continue;
+            NotificationChannel accountChannel = new NotificationChannel(
+                    account.channelId,
+                    "Push Notifications " + Bech32.shortNpub(account.pubkey),
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            accountChannel.setDescription("Notifications for new messages to " + Bech32.shortNpub(account.pubkey));
+            accountChannel.setShowBadge(true);
+            accountChannel.enableLights(true);
+            accountChannel.enableVibration(true);
+            manager.createNotificationChannel(accountChannel);
+        }
     }
 
     private void persistConfig() {
-        if (serverRelay == null && deviceId == null && pubkey == null) return;
+        if (serverRelay == null && deviceId == null && pubkeys.isEmpty()) return;
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        JSONArray standbyArray = new JSONArray();
+        if (standbyRelays != null) {
+            for (String relay : standbyRelays) {
+                standbyArray.put(relay);
+            }
+        }
         prefs.edit()
                 .putString(KEY_SERVER_RELAY, serverRelay)
                 .putString(KEY_DEVICE_ID, deviceId)
-                .putString(KEY_PUBKEY, pubkey)
+                .putString(KEY_PUBKEY, pubkeys.isEmpty() ? null : pubkeys.get(0))
+                .putString(KEY_ACCOUNTS, new JSONArray(pubkeys).toString())
+                .putString(KEY_STANDBY_RELAYS, standbyArray.toString())
+                .putString(KEY_CANDIDATE_RELAYS, new JSONArray(candidateRelays != null
+                        ? candidateRelays : Collections.emptyList()).toString())
+                .putString(KEY_MODE, mode)
                 .apply();
     }
 
@@ -922,10 +1336,47 @@ public class PushNotificationService extends Service {
         if (deviceId == null || deviceId.isEmpty()) {
             deviceId = prefs.getString(KEY_DEVICE_ID, null);
         }
-        if (pubkey == null || pubkey.isEmpty()) {
-            pubkey = prefs.getString(KEY_PUBKEY, null);
+        if (pubkeys.isEmpty()) {
+            ArrayList<String> savedAccounts = new ArrayList<>();
+            try {
+                JSONArray accountArray = new JSONArray(prefs.getString(KEY_ACCOUNTS, "[]"));
+                for (int i = 0; i < accountArray.length(); i++) {
+                    savedAccounts.add(accountArray.getString(i));
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to load push accounts", e);
+            }
+            // Single-account versions only saved the pubkey
+            pubkeys = normalizeAccounts(savedAccounts, prefs.getString(KEY_PUBKEY, null));
+            if (!pubkeys.isEmpty()) {
+                KeystoreHelper.migrateLegacyPrivateKey(this, pubkeys.get(0));
+            }
+        }
+        mode = MODE_SCHEDULED.equals(prefs.getString(KEY_MODE, null)) ? MODE_SCHEDULED : MODE_PERSISTENT;
+        if (standbyRelays == null) {
+            standbyRelays = new ArrayList<>();
+            try {
+                JSONArray standbyArray = new JSONArray(prefs.getString(KEY_STANDBY_RELAYS, "[]"));
+                for (int i = 0; i < standbyArray.length(); i++) {
+                    standbyRelays.add(standbyArray.getString(i));
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to load standby relays", e);
+            }
+        }
+        if (candidateRelays == null) {
+            candidateRelays = new ArrayList<>();
+            try {
+                JSONArray candidateArray = new JSONArray(prefs.getString(KEY_CANDIDATE_RELAYS, "[]"));
+                for (int i = 0; i < candidateArray.length(); i++) {
+                    candidateRelays.add(candidateArray.getString(i));
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to load candidate relays", e);
+            }
         }
-        // Note: privatekey is loaded on-demand in getPrivateKey() method
+        // Note: privatekey is loaded on-demand by SigningKeyCache and wiped after its idle TTL
         // We don't store it in instance variable for security reasons
+        signingKeyCache.setIdleTtlMs(prefs.getLong(KEY_KEY_CACHE_TTL_MS, SigningKeyCache.DEFAULT_IDLE_TTL_MS));
     }
 }
@@ -0,0 +1,173 @@
+package com.oxchat.lite;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Socket uptime and wakeups of the push service per push mode, so the always-on socket and scheduled sync
+ * windows can be compared on the same device
+ * - Socket uptime: time at least one relay socket was open
+ * - Wakeups: sync windows, inbound frames arriving more than WAKE_GAP_MS after the previous activity (a burst
+ *   rides on one radio wake), and keep-alive pings estimated from each socket's open time and ping interval
+ * Rates are per hour of wall time since the mode was selected, stats of the other mode are kept for comparison
+ *
+ * Must only be used from the push event-loop thread
+ */
+class PushPowerStats {
+    private static final String TAG = "PushPowerStats";
+    static final String KEY_POWER_STATS = "power_stats";
+    static final long WAKE_GAP_MS = 2000;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private final SharedPreferences prefs;
+    private JSONObject modes;
+    private String mode;
+
+    // Counters of the current mode since it was loaded
+    private long socketUptimeMs;
+    private long wakeups;
+    private long syncWindows;
+    private long syncWindowTotalMs;
+    private long since; // Wall clock ms the mode was selected
+
+    private final Map<PushRelayConnection, Long> openedAtMs = new HashMap<>();
+    private long anyOpenSinceMs;
+    private long lastActivityMs = -WAKE_GAP_MS;
+
+    PushPowerStats(SharedPreferences prefs, String mode) {
+        this.prefs = prefs;
+        String saved = prefs.getString(KEY_POWER_STATS, null);
+        try {
+            modes = saved != null ? new JSONObject(saved) : new JSONObject();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to load power stats, starting over", e);
+            modes = new JSONObject();
+        }
+        load(mode);
+    }
+
+    /**
+     * Switch to a push mode, starting its counters over if the user picked it anew
+     */
+    void selectMode(String newMode, boolean reset) {
+        if (!newMode.equals(mode)) {
+            persist();
+            load(newMode);
+        }
+        if (reset) {
+            socketUptimeMs = 0;
+            wakeups = 0;
+            syncWindows = 0;
+            syncWindowTotalMs = 0;
+            since = System.currentTimeMillis();
+            restartOpenSockets();
+            persist();
+        }
+    }
+
+    void onSocketOpened(PushRelayConnection connection) {
+        long now = SystemClock.elapsedRealtime();
+        if (openedAtMs.isEmpty()) {
+            anyOpenSinceMs = now;
+        }
+        openedAtMs.put(connection, now);
+    }
+
+    void onSocketClosed(PushRelayConnection connection) {
+        Long openedAt = openedAtMs.remove(connection);
+        if (openedAt == null) return;
+        long now = SystemClock.elapsedRealtime();
+        long pingIntervalMs = connection.getSocketPingIntervalMs();
+        if (pingIntervalMs > 0) {
+            wakeups += (now - openedAt) / pingIntervalMs;
+        }
+        if (openedAtMs.isEmpty()) {
+            socketUptimeMs += now - anyOpenSinceMs;
+        }
+    }
+
+    void onInboundFrame() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastActivityMs > WAKE_GAP_MS) {
+            wakeups++;
+        }
+        lastActivityMs = now;
+    }
+
+    void onSyncWindowStarted() {
+        wakeups++;
+        lastActivityMs = SystemClock.elapsedRealtime();
+    }
+
+    void onSyncWindowFinished(long durationMs) {
+        syncWindows++;
+        syncWindowTotalMs += durationMs;
+    }
+
+    /**
+     * Write the current mode's counters to the prefs, with rates per hour
+     */
+    void persist() {
+        long uptime = socketUptimeMs;
+        long pendingPings = 0;
+        if (!openedAtMs.isEmpty()) {
+            // Count sockets that are still open up to now
+            long elapsedNow = SystemClock.elapsedRealtime();
+            uptime += elapsedNow - anyOpenSinceMs;
+            for (Map.Entry<PushRelayConnection, Long> entry : openedAtMs.entrySet()) {
+                long pingIntervalMs = entry.getKey().getSocketPingIntervalMs();
+                if (pingIntervalMs > 0) {
+                    pendingPings += (elapsedNow - entry.getValue()) / pingIntervalMs;
+                }
+            }
+        }
+        long now = System.currentTimeMillis();
+        double hours = Math.max(now - since, 1) / (double) HOUR_MS;
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put("since", since);
+            entry.put("updatedAt", now);
+            entry.put("socketUptimeMs", uptime);
+            entry.put("socketUptimePercent", Math.min(100.0, uptime * 100.0 / Math.max(now - since, 1)));
+            entry.put("wakeups", wakeups + pendingPings);
+            entry.put("wakeupsPerHour", (wakeups + pendingPings) / hours);
+            entry.put("syncWindows", syncWindows);
+            entry.put("avgSyncWindowMs", syncWindows > 0 ? syncWindowTotalMs / syncWindows : 0);
+            entry.put("syncWindowTotalMs", syncWindowTotalMs);
+            modes.put(mode, entry);
+            modes.put("currentMode", mode);
+            prefs.edit().putString(KEY_POWER_STATS, modes.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist power stats", e);
+        }
+    }
+
+    private void load(String newMode) {
+        mode = newMode;
+        JSONObject entry = modes.optJSONObject(newMode);
+        socketUptimeMs = entry != null ? entry.optLong("socketUptimeMs", 0) : 0;
+        wakeups = entry != null ? entry.optLong("wakeups", 0) : 0;
+        syncWindows = entry != null ? entry.optLong("syncWindows", 0) : 0;
+        syncWindowTotalMs = entry != null ? entry.optLong("syncWindowTotalMs", 0) : 0;
+        since = entry != null ? entry.optLong("since", System.currentTimeMillis()) : System.currentTimeMillis();
+        restartOpenSockets();
+    }
+
+    /**
+     * Sockets that stay open across a mode switch or reset only count from now on
+     */
+    private void restartOpenSockets() {
+        long now = SystemClock.elapsedRealtime();
+        anyOpenSinceMs = now;
+        for (Map.Entry<PushRelayConnection, Long> entry : openedAtMs.entrySet()) {
+            entry.setValue(now);
+        }
+    }
+}
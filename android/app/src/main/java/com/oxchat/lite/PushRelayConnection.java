@@ -0,0 +1,434 @@
+package com.oxchat.lite;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.ProtocolException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * One push relay WebSocket inside {@link PushRelayPool}
+ * Owns the socket, the per-account subscription/AUTH state on this relay and the health score
+ * All accounts of the service share the socket, each with its own REQ and NIP-42 AUTH
+ * Reconnect timing is delegated to the shared {@link ReconnectScheduler}
+ *
+ * Connection logic is a state machine that runs only on the push event-loop thread (the handler's looper):
+ * OkHttp callbacks do nothing but post events to that thread, so no field is ever touched concurrently
+ * IDLE -> CONNECTING -> SUBSCRIBED (REQ sent) -> AUTHING (NIP-42 challenge) -> SUBSCRIBED (AUTH OK, REQ re-sent)
+ * Any failure or close moves to BACKOFF until the scheduler reconnects, disconnect() returns to IDLE for good
+ *
+ * Each socket pings at the interval {@link AdaptiveHeartbeat} has learned for the current network
+ *
+ * OkHttp offers permessage-deflate on every handshake and silently falls back to plain frames when the relay
+ * does not accept it; a relay that answers with parameters OkHttp can't honour is closed with 1010, after which
+ * this connection stops offering the extension. Wire and decoded byte counts are kept in {@link RelayTraffic}
+ */
+class PushRelayConnection {
+    private static final String TAG = "PushRelayConnection";
+    private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+    private static final int CLOSE_MANDATORY_EXTENSION = 1010;
+
+    enum State {
+        IDLE,
+        CONNECTING,
+        AUTHING,
+        SUBSCRIBED,
+        BACKOFF
+    }
+
+    /**
+     * Callbacks from the relay, invoked on the push event-loop thread
+     */
+    interface Listener {
+        void onRelayOpen(PushRelayConnection connection);
+
+        void onRelayFrame(PushRelayConnection connection, RelayFrame frame);
+
+        void onRelayStateChanged(PushRelayConnection connection, State from, State to, String reason);
+    }
+
+    final String url;
+    final RelayHealth health = new RelayHealth();
+    final RelayTraffic traffic = new RelayTraffic();
+
+    /**
+     * REQ and NIP-42 AUTH state of one account on this relay, every account has its own subscription on the socket
+     */
+    static final class Subscription {
+        final String pubkey;
+        String id; // Subscription id of the last REQ
+        String pendingAuthChallenge; // Challenge this account still has to answer
+        String authEventId; // Track AUTH event ID to match OK response
+        boolean regenerateId; // Flag to regenerate subscription ID after AUTH
+        long since; // since of the last REQ, 0 when no watermark was known
+        long sentAtMs; // elapsedRealtime of the last REQ, for EOSE timing
+        boolean catchingUp; // True between REQ and EOSE
+        int catchUpEvents; // Stored events delivered before EOSE
+        long authSentAtMs; // elapsedRealtime the pending AUTH was sent, for its round-trip
+
+        Subscription(String pubkey) {
+            this.pubkey = pubkey;
+        }
+    }
+
+    // Per-relay protocol state
+    final Map<String, Subscription> subscriptions = new LinkedHashMap<>(); // By account pubkey
+    String authChallenge; // Last challenge of the current socket, answered again for accounts added later
+    int reconnectAttempts; // Backoff exponent, owned by ReconnectScheduler
+    long connectStartedAtMs; // elapsedRealtime of the last connect(), for connect latency
+
+    private final OkHttpClient httpClient;
+    private final Handler handler;
+    private final ReconnectScheduler reconnectScheduler;
+    private final AdaptiveHeartbeat heartbeat;
+    private final Listener listener;
+    private WebSocket webSocket;
+    private State state = State.IDLE;
+    private long stateSinceMs = SystemClock.elapsedRealtime();
+    private boolean released = false; // Set once the pool drops this relay, no more reconnects
+    private int generation = 0; // Bumped per socket so events of replaced sockets are ignored
+    private String socketNetworkKey; // Network the current socket was opened on
+    private long socketPingIntervalMs; // Ping interval of the current socket
+    private long socketOpenedAtMs; // elapsedRealtime of onOpen, 0 while not open
+    private Runnable heartbeatConfirmRunnable;
+
+    PushRelayConnection(String url, OkHttpClient httpClient, Handler handler, ReconnectScheduler reconnectScheduler,
+                        AdaptiveHeartbeat heartbeat, Listener listener) {
+        this.url = url;
+        this.httpClient = httpClient;
+        this.handler = handler;
+        this.reconnectScheduler = reconnectScheduler;
+        this.heartbeat = heartbeat;
+        this.listener = listener;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * elapsedRealtime of the last state transition
+     */
+    long getStateSinceMs() {
+        return stateSinceMs;
+    }
+
+    /**
+     * Keep-alive ping interval of the current or last socket
+     */
+    long getSocketPingIntervalMs() {
+        return socketPingIntervalMs;
+    }
+
+    /**
+     * Subscription of an account on this relay, created on first use
+     */
+    Subscription subscriptionFor(String pubkey) {
+        Subscription subscription = subscriptions.get(pubkey);
+        if (subscription == null) {
+            subscription = new Subscription(pubkey);
+            subscriptions.put(pubkey, subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * Subscription a relay message refers to by its subscription id, null for ids of earlier REQs
+     */
+    Subscription findSubscription(String subscriptionId) {
+        if (subscriptionId == null) return null;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscriptionId.equals(subscription.id)) return subscription;
+        }
+        return null;
+    }
+
+    /**
+     * Subscription whose AUTH event has the given id, for matching the relay's OK
+     */
+    Subscription findSubscriptionByAuthEvent(String eventId) {
+        if (eventId == null) return null;
+        for (Subscription subscription : subscriptions.values()) {
+            if (eventId.equals(subscription.authEventId)) return subscription;
+        }
+        return null;
+    }
+
+    /**
+     * True while any account's REQ is still waiting for EOSE
+     */
+    boolean isCatchingUp() {
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.catchingUp) return true;
+        }
+        return false;
+    }
+
+    boolean isOpen() {
+        return state == State.SUBSCRIBED || state == State.AUTHING;
+    }
+
+    boolean isIdle() {
+        return state == State.IDLE && !released;
+    }
+
+    /**
+     * Connect to the relay, closing any existing socket first
+     */
+    void connect() {
+        if (released) return;
+        // Avoid duplicate connections
+        if (state == State.CONNECTING) {
+            Log.d(TAG, "Already connecting to " + url + ", skipping duplicate connection attempt");
+            return;
+        }
+
+        if (webSocket != null) {
+            // Events of the old socket are ignored once it is no longer the current one
+            Log.d(TAG, "WebSocket already exists for " + url + ", closing existing connection first");
+            webSocket.close(1000, "Reconnecting");
+            webSocket = null;
+        }
+
+        final int socketGeneration = ++generation;
+        cancelHeartbeatConfirm();
+        socketOpenedAtMs = 0;
+        // Challenges are per socket, the next one comes with the next AUTH frame
+        authChallenge = null;
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.pendingAuthChallenge = null;
+            subscription.authEventId = null;
+        }
+        connectStartedAtMs = SystemClock.elapsedRealtime();
+        socketNetworkKey = reconnectScheduler.getNetworkKey();
+        socketPingIntervalMs = heartbeat.intervalFor(socketNetworkKey);
+        transition(State.CONNECTING, "connect");
+
+        try {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .build();
+
+            // Derived client shares the dispatcher, the ping interval is per relay
+            OkHttpClient.Builder socketClientBuilder = httpClient.newBuilder()
+                    .pingInterval(socketPingIntervalMs, TimeUnit.MILLISECONDS);
+            if (traffic.compression == RelayTraffic.COMPRESSION_DISABLED) {
+                // OkHttp always offers permessage-deflate, strip the offer for relays that mishandle it
+                socketClientBuilder.addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .removeHeader(EXTENSIONS_HEADER)
+                        .build()));
+            }
+            webSocket = socketClientBuilder.build().newWebSocket(request, new WebSocketListener() {
+                @Override
+                public void onOpen(WebSocket webSocket, Response response) {
+                    String extensions = response.header(EXTENSIONS_HEADER);
+                    boolean deflate = extensions != null && extensions.contains("permessage-deflate");
+                    handler.post(() -> handleOpen(socketGeneration, deflate));
+                }
+
+                @Override
+                public void onMessage(WebSocket webSocket, String text) {
+                    traffic.recordMessageIn(text);
+                    // Frame boundaries are scanned on the reader thread, handling happens on the event loop
+                    RelayFrame frame = RelayFrame.parse(text);
+                    handler.post(() -> handleFrame(socketGeneration, frame));
+                }
+
+                @Override
+                public void onMessage(WebSocket webSocket, okio.ByteString bytes) {
+                    traffic.recordMessageIn(bytes);
+                    // Binary frames are scanned in place, no full UTF-8 decode
+                    RelayFrame frame = RelayFrame.parse(bytes);
+                    handler.post(() -> handleFrame(socketGeneration, frame));
+                }
+
+                @Override
+                public void onClosing(WebSocket webSocket, int code, String reason) {
+                    Log.d(TAG, "WebSocket closing: " + url + " " + code + " " + reason);
+                    webSocket.close(1000, null);
+                }
+
+                @Override
+                public void onClosed(WebSocket webSocket, int code, String reason) {
+                    Log.d(TAG, "WebSocket closed: " + url + " " + code + " " + reason);
+                    boolean extensionRejected = code == CLOSE_MANDATORY_EXTENSION;
+                    handler.post(() -> handleClosed(socketGeneration, "closed " + code, false, extensionRejected));
+                }
+
+                @Override
+                public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                    Log.e(TAG, "WebSocket failure: " + url, t);
+                    boolean extensionRejected = t instanceof ProtocolException && t.getMessage() != null
+                            && t.getMessage().contains(EXTENSIONS_HEADER);
+                    handler.post(() -> handleClosed(socketGeneration, "failure " + t.getClass().getSimpleName(),
+                            true, extensionRejected));
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to connect to WebSocket: " + url, e);
+            webSocket = null;
+            health.recordFailure();
+            enterBackoff("connect error");
+        }
+    }
+
+    /**
+     * Mark the subscription as sent, or the relay as waiting on our AUTH
+     * Only SUBSCRIBED and AUTHING can be entered this way, and only while the socket is open
+     */
+    void setProtocolState(State newState, String reason) {
+        if (!isOpen() || (newState != State.SUBSCRIBED && newState != State.AUTHING)) return;
+        transition(newState, reason);
+    }
+
+    /**
+     * Send a text frame if the socket exists
+     */
+    boolean send(String message) {
+        WebSocket socket = webSocket;
+        if (socket == null || !socket.send(message)) {
+            return false;
+        }
+        traffic.recordMessageOut(message);
+        return true;
+    }
+
+    /**
+     * Called by the reconnect scheduler when the backoff elapsed or a validated network appeared
+     */
+    void reconnect() {
+        if (released) return;
+        Log.d(TAG, "Attempting to reconnect to " + url + " (" + health + ")");
+        if (state == State.CONNECTING && webSocket != null) {
+            // Previous attempt may be stuck on a dead network, abandon it for a fresh one
+            webSocket.cancel();
+            webSocket = null;
+            generation++;
+            cancelHeartbeatConfirm();
+            transition(State.BACKOFF, "connect abandoned");
+        }
+        connect();
+    }
+
+    /**
+     * Close the socket and stop reconnecting
+     */
+    void disconnect(String reason) {
+        released = true;
+        generation++;
+        cancelHeartbeatConfirm();
+        reconnectScheduler.cancel(this);
+        if (webSocket != null) {
+            try {
+                webSocket.close(1000, reason);
+            } catch (Exception e) {
+                Log.e(TAG, "Error closing WebSocket: " + url, e);
+            }
+            webSocket = null;
+        }
+        transition(State.IDLE, reason);
+    }
+
+    @Override
+    public String toString() {
+        return url + " [" + state + "]";
+    }
+
+    private void handleOpen(int socketGeneration, boolean deflate) {
+        if (isStale(socketGeneration)) return;
+        if (traffic.compression != RelayTraffic.COMPRESSION_DISABLED) {
+            traffic.compression = deflate ? RelayTraffic.COMPRESSION_NEGOTIATED : RelayTraffic.COMPRESSION_DECLINED;
+        }
+        Log.d(TAG, "WebSocket connected to: " + url + " (ping every " + socketPingIntervalMs + "ms on "
+                + socketNetworkKey + ", compression " + RelayTraffic.describeCompression(traffic.compression) + ")");
+        socketOpenedAtMs = SystemClock.elapsedRealtime();
+        scheduleHeartbeatConfirm(socketGeneration);
+        health.recordConnected();
+        reconnectScheduler.onConnected(this);
+        // REQ goes out right away, relays that require NIP-42 answer with an AUTH challenge
+        transition(State.SUBSCRIBED, "open");
+        listener.onRelayOpen(this);
+    }
+
+    private void handleFrame(int socketGeneration, RelayFrame frame) {
+        if (isStale(socketGeneration)) return;
+        health.recordFrame();
+        listener.onRelayFrame(this, frame);
+    }
+
+    private void handleClosed(int socketGeneration, String reason, boolean failure, boolean extensionRejected) {
+        if (isStale(socketGeneration)) return;
+        if (extensionRejected && traffic.compression != RelayTraffic.COMPRESSION_DISABLED) {
+            Log.w(TAG, "Relay " + url + " mishandled permessage-deflate, reconnecting without it");
+            traffic.compression = RelayTraffic.COMPRESSION_DISABLED;
+        }
+        webSocket = null;
+        cancelHeartbeatConfirm();
+        if (failure) {
+            health.recordFailure();
+            if (socketOpenedAtMs > 0) {
+                // An open socket that fails on a working network is what a NAT timeout looks like
+                heartbeat.onSocketDropped(socketNetworkKey, socketPingIntervalMs,
+                        SystemClock.elapsedRealtime() - socketOpenedAtMs, reconnectScheduler.isNetworkValidated());
+            }
+        }
+        socketOpenedAtMs = 0;
+        enterBackoff(reason);
+    }
+
+    /**
+     * Report the ping interval as safe once the socket has lived through CONFIRM_PINGS of them
+     */
+    private void scheduleHeartbeatConfirm(final int socketGeneration) {
+        cancelHeartbeatConfirm();
+        heartbeatConfirmRunnable = () -> {
+            heartbeatConfirmRunnable = null;
+            if (isStale(socketGeneration) || !isOpen()) return;
+            heartbeat.onSocketSurvived(socketNetworkKey, socketPingIntervalMs);
+        };
+        handler.postDelayed(heartbeatConfirmRunnable, socketPingIntervalMs * AdaptiveHeartbeat.CONFIRM_PINGS);
+    }
+
+    private void cancelHeartbeatConfirm() {
+        if (heartbeatConfirmRunnable != null) {
+            handler.removeCallbacks(heartbeatConfirmRunnable);
+            heartbeatConfirmRunnable = null;
+        }
+    }
+
+    /**
+     * Hand the relay to the reconnect scheduler
+     */
+    private void enterBackoff(String reason) {
+        if (released) return;
+        // Don't schedule reconnect twice for one outage
+        if (state == State.BACKOFF) {
+            Log.d(TAG, "Already waiting to reconnect to " + url + ", skipping schedule reconnect");
+            return;
+        }
+        transition(State.BACKOFF, reason);
+        reconnectScheduler.schedule(this);
+    }
+
+    private boolean isStale(int socketGeneration) {
+        return released || socketGeneration != generation;
+    }
+
+    private void transition(State newState, String reason) {
+        State oldState = state;
+        if (oldState == newState) return;
+        state = newState;
+        stateSinceMs = SystemClock.elapsedRealtime();
+        Log.d(TAG, url + ": " + oldState + " -> " + newState + " (" + reason + ")");
+        listener.onRelayStateChanged(this, oldState, newState, reason);
+    }
+}
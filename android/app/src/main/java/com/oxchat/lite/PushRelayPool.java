@@ -0,0 +1,183 @@
+package com.oxchat.lite;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Pool of push relays: the primary relay plus hot standbys, all connected at the same time
+ * Every relay carries the same subscription, so when one relay stalls the others keep delivering
+ * EVENTs are deduplicated across relays by event id and each delivery feeds the relay health score, which
+ * decides the primary and which relays give up their slot to a standby candidate
+ * Relay sockets run on the push event-loop thread behind the given handler
+ */
+class PushRelayPool {
+    private static final String TAG = "PushRelayPool";
+    static final int MAX_RELAYS = 3;
+    // About five failures in a row from a fresh score, a relay that is only ever late settles at 0.5
+    static final double MIN_SCORE = 0.4;
+    private static final int RECENT_EVENT_CAPACITY = 512;
+
+    private final OkHttpClient httpClient;
+    private final Handler handler;
+    private final ReconnectScheduler reconnectScheduler;
+    private final AdaptiveHeartbeat heartbeat;
+    private final PushRelayConnection.Listener listener;
+    private final List<PushRelayConnection> connections = new ArrayList<>();
+
+    // Event id -> relay that delivered it first
+    private final Map<String, PushRelayConnection> recentEventIds =
+            new LinkedHashMap<String, PushRelayConnection>(RECENT_EVENT_CAPACITY, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PushRelayConnection> eldest) {
+                    return size() > RECENT_EVENT_CAPACITY;
+                }
+            };
+
+    PushRelayPool(OkHttpClient httpClient, Handler handler, ReconnectScheduler reconnectScheduler,
+                  AdaptiveHeartbeat heartbeat, PushRelayConnection.Listener listener) {
+        this.httpClient = httpClient;
+        this.handler = handler;
+        this.reconnectScheduler = reconnectScheduler;
+        this.heartbeat = heartbeat;
+        this.listener = listener;
+    }
+
+    /**
+     * Apply the relay list, keeping sockets of relays that stay in the pool
+     * @param primary primary relay url
+     * @param standbys hot standby relay urls, may be null
+     */
+    synchronized void configure(String primary, List<String> standbys) {
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        if (primary != null && !primary.isEmpty()) {
+            urls.add(primary);
+        }
+        if (standbys != null) {
+            for (String url : standbys) {
+                if (url != null && !url.isEmpty() && urls.size() < MAX_RELAYS) {
+                    urls.add(url);
+                }
+            }
+        }
+
+        List<PushRelayConnection> kept = new ArrayList<>();
+        for (PushRelayConnection connection : connections) {
+            if (urls.contains(connection.url)) {
+                kept.add(connection);
+                urls.remove(connection.url);
+            } else {
+                Log.d(TAG, "Removing relay from pool: " + connection.url);
+                connection.disconnect("Removed from pool");
+            }
+        }
+        for (String url : urls) {
+            Log.d(TAG, "Adding relay to pool: " + url);
+            kept.add(new PushRelayConnection(url, httpClient, handler, reconnectScheduler, heartbeat, listener));
+        }
+        connections.clear();
+        connections.addAll(kept);
+    }
+
+    /**
+     * Connect every relay that has no socket yet
+     */
+    synchronized void connectIdle() {
+        for (PushRelayConnection connection : connections) {
+            if (connection.isIdle()) {
+                connection.connect();
+            }
+        }
+    }
+
+    synchronized void disconnectAll() {
+        for (PushRelayConnection connection : connections) {
+            connection.disconnect("Service stopping");
+        }
+        connections.clear();
+    }
+
+    synchronized boolean isEmpty() {
+        return connections.isEmpty();
+    }
+
+    synchronized List<PushRelayConnection> getConnections() {
+        return Collections.unmodifiableList(new ArrayList<>(connections));
+    }
+
+    /**
+     * Fill the pool from candidate relays ranked best first, and return the new pool, primary first
+     * Open relays keep their slot, healthiest first, so a better ranked relay only takes over a slot once the
+     * relay holding it drops; a relay whose health score fell below MIN_SCORE loses that claim and only gets a
+     * slot no other candidate takes
+     * @param ranked candidate relay urls, best first
+     */
+    synchronized List<String> select(List<String> ranked) {
+        List<PushRelayConnection> open = new ArrayList<>();
+        for (PushRelayConnection connection : connections) {
+            if (connection.isOpen() && ranked.contains(connection.url)
+                    && connection.health.getScore() >= MIN_SCORE) {
+                open.add(connection);
+            }
+        }
+        Collections.sort(open, (a, b) -> Double.compare(b.health.getScore(), a.health.getScore()));
+        List<String> selection = new ArrayList<>();
+        for (PushRelayConnection connection : open) {
+            selection.add(connection.url);
+        }
+        List<String> unhealthy = new ArrayList<>();
+        for (String url : ranked) {
+            if (selection.contains(url)) continue;
+            PushRelayConnection connection = find(url);
+            if (connection != null && connection.health.getScore() < MIN_SCORE) {
+                unhealthy.add(url);
+            } else if (selection.size() < MAX_RELAYS) {
+                selection.add(url);
+            }
+        }
+        for (String url : unhealthy) {
+            if (selection.size() >= MAX_RELAYS) break;
+            selection.add(url);
+        }
+        if (!selection.isEmpty()) {
+            configure(selection.get(0), selection.subList(1, selection.size()));
+        }
+        return selection;
+    }
+
+    private PushRelayConnection find(String url) {
+        for (PushRelayConnection connection : connections) {
+            if (connection.url.equals(url)) return connection;
+        }
+        return null;
+    }
+
+    /**
+     * Record that a relay delivered an event
+     * @return true if this is the first delivery of the event across the pool
+     */
+    synchronized boolean markEventSeen(PushRelayConnection connection, String eventId) {
+        if (eventId == null || eventId.isEmpty()) {
+            connection.health.recordEvent(true);
+            return true;
+        }
+        PushRelayConnection firstRelay = recentEventIds.get(eventId);
+        if (firstRelay == null) {
+            recentEventIds.put(eventId, connection);
+            connection.health.recordEvent(true);
+            return true;
+        }
+        if (firstRelay != connection) {
+            connection.health.recordEvent(false);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,315 @@
+package com.oxchat.lite;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Client side of the push subscriptions on the relays of a pool: REQ with the watermark since, NIP-01 frame
+ * dispatch, NIP-42 AUTH events, and for every EVENT the watermark, the pool's cross-relay dedup and the
+ * seen-event index, in that order
+ * What happens next is up to the Listener: PushNotificationService notifies, the relay path load test counts,
+ * so the test runs the code the service ships
+ * Must only be used from the push event-loop thread
+ */
+final class PushRelayProtocol {
+    private static final String TAG = "PushRelayProtocol";
+    static final int KIND_AUTH = 22242;
+    // NIP-29 group events
+    private static final int[] PUSH_KINDS = {20285, PushWakeGovernor.KIND_GROUP_PUSH};
+    private static final int SUBSCRIPTION_ID_LENGTH = 16;
+
+    static final int EVENT_NEW = 0; // First delivery of the event
+    static final int EVENT_DUPLICATE = 1; // Another relay of the pool delivered it first
+    static final int EVENT_REPLAYED = 2; // Handled before, e.g. replayed by the relay after a reconnect
+
+    interface Listener {
+        /**
+         * Account a subscription belongs to, null if it is no longer served
+         */
+        PushAccount findAccount(String pubkey);
+
+        /**
+         * A verified EVENT for a served account, duplicates and replays included
+         * @param outcome EVENT_NEW, EVENT_DUPLICATE or EVENT_REPLAYED
+         */
+        void onEvent(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                     PushAccount account, RelayFrame frame, String eventId, int outcome);
+
+        /**
+         * First EOSE after a REQ, the relay has delivered its stored events
+         */
+        void onCatchUpDone(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                           long elapsedMs);
+
+        /**
+         * AUTH challenge, already recorded as pending for every subscription of the connection
+         * Answer with createAuthEvents() and sendAuth(), or later once the account's key is available
+         */
+        void onAuthChallenge(PushRelayConnection connection, String challenge);
+
+        /**
+         * The relay accepted a subscription's AUTH, its REQ has been sent again
+         */
+        void onAuthAccepted(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                            long authMs);
+    }
+
+    private final PushRelayPool relayPool;
+    private final SubscriptionWatermarks watermarks;
+    private final SeenEventIndex seenEvents;
+    private final CanonicalEventSerializer serializer;
+    private final NostrSigner signer; // null without secp256k1, AUTH cannot be answered then
+    private final Listener listener;
+    private final Random random = new Random();
+
+    PushRelayProtocol(PushRelayPool relayPool, SubscriptionWatermarks watermarks, SeenEventIndex seenEvents,
+                      CanonicalEventSerializer serializer, NostrSigner signer, Listener listener) {
+        this.relayPool = relayPool;
+        this.watermarks = watermarks;
+        this.seenEvents = seenEvents;
+        this.serializer = serializer;
+        this.signer = signer;
+        this.listener = listener;
+    }
+
+    /**
+     * Send one account's subscription request to relay
+     * Format: ["REQ", subscriptionId, {"kinds": [20285, 20284], "#h": [pubkey], "since": watermark - skew}]
+     * subscriptionId is a random number, since is omitted until this relay has delivered an event for the account
+     */
+    void sendSubscriptionRequest(PushRelayConnection connection, PushRelayConnection.Subscription subscription) {
+        try {
+            if (subscription.id == null || subscription.regenerateId) {
+                subscription.id = generateRandomHex(SUBSCRIPTION_ID_LENGTH);
+                subscription.regenerateId = false;
+            }
+            JSONArray kinds = new JSONArray();
+            for (int kind : PUSH_KINDS) {
+                kinds.put(kind);
+            }
+            JSONObject filter = new JSONObject();
+            filter.put("kinds", kinds);
+            // h tag contains any of the groupIds (pubkey)
+            filter.put("#h", new JSONArray().put(subscription.pubkey));
+            // Only catch up on the window since the last event processed from this relay
+            long since = watermarks.sinceFor(connection.url, subscription.pubkey);
+            if (since > 0) {
+                filter.put("since", since);
+            }
+            String requestMessage = new JSONArray().put("REQ").put(subscription.id).put(filter).toString();
+            Log.d(TAG, "Sending subscription request to " + connection.url + ": " + requestMessage);
+            subscription.since = since;
+            subscription.sentAtMs = SystemClock.elapsedRealtime();
+            subscription.catchingUp = true;
+            subscription.catchUpEvents = 0;
+            connection.send(requestMessage);
+            connection.setProtocolState(PushRelayConnection.State.SUBSCRIBED, "REQ sent");
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create subscription request", e);
+        }
+    }
+
+    /**
+     * Handle one inbound frame, already through PushEventVerifier: an EVENT only gets here with a valid id and
+     * signature, frames come in arrival order
+     * EVENT and EOSE are routed to the account by their subscription id, OK by the AUTH event id
+     */
+    void handleFrame(PushRelayConnection connection, RelayFrame frame) {
+        if (!frame.isValid()) {
+            Log.e(TAG, "Failed to parse message from " + connection.url + ": " + frame);
+            return;
+        }
+        switch (frame.type()) {
+            case RelayFrame.TYPE_EVENT:
+                handleEvent(connection, frame);
+                break;
+            case RelayFrame.TYPE_EOSE: {
+                // End of stored events
+                PushRelayConnection.Subscription subscription = connection.findSubscription(frame.stringAt(1));
+                if (subscription == null || !subscription.catchingUp) {
+                    Log.d(TAG, "End of stored events");
+                    return;
+                }
+                subscription.catchingUp = false;
+                long elapsedMs = SystemClock.elapsedRealtime() - subscription.sentAtMs;
+                Log.d(TAG, "End of stored events from " + connection.url + " for "
+                        + Bech32.shortNpub(subscription.pubkey) + ": " + subscription.catchUpEvents
+                        + " events since " + subscription.since + " in " + elapsedMs + "ms");
+                watermarks.recordEose(connection.url, subscription.since, elapsedMs, subscription.catchUpEvents);
+                listener.onCatchUpDone(connection, subscription, elapsedMs);
+                break;
+            }
+            case RelayFrame.TYPE_NOTICE:
+                Log.d(TAG, "Relay notice: " + frame.stringAt(1));
+                break;
+            case RelayFrame.TYPE_CLOSED:
+                Log.d(TAG, "Subscription closed: " + frame.stringAt(1));
+                break;
+            case RelayFrame.TYPE_AUTH: {
+                String challenge = frame.stringAt(1);
+                Log.d(TAG, "Received AUTH challenge from " + connection.url + ": " + challenge);
+                if (challenge == null) return;
+                // Kept until the key is available, and for accounts added while this socket is open
+                connection.authChallenge = challenge;
+                for (PushRelayConnection.Subscription subscription : connection.subscriptions.values()) {
+                    subscription.pendingAuthChallenge = challenge;
+                }
+                connection.setProtocolState(PushRelayConnection.State.AUTHING, "AUTH challenge");
+                listener.onAuthChallenge(connection, challenge);
+                break;
+            }
+            case RelayFrame.TYPE_OK: {
+                if (frame.size() < 3) return;
+                String eventId = frame.stringAt(1);
+                boolean status = frame.booleanAt(2);
+                Log.d(TAG, "Received OK: eventId=" + eventId + ", status=" + status + ", message="
+                        + (frame.size() > 3 ? frame.stringAt(3) : ""));
+                // AUTH accepted, resend that account's subscription request
+                PushRelayConnection.Subscription subscription = connection.findSubscriptionByAuthEvent(eventId);
+                if (status && subscription != null) {
+                    Log.d(TAG, "AUTH successful on " + connection.url + " for "
+                            + Bech32.shortNpub(subscription.pubkey) + ", resending subscription request");
+                    long authMs = SystemClock.elapsedRealtime() - subscription.authSentAtMs;
+                    subscription.authEventId = null;
+                    subscription.pendingAuthChallenge = null;
+                    subscription.regenerateId = true;
+                    sendSubscriptionRequest(connection, subscription);
+                    listener.onAuthAccepted(connection, subscription, authMs);
+                }
+                break;
+            }
+            default:
+                Log.d(TAG, "Unhandled message from " + connection.url + ": " + frame);
+                break;
+        }
+    }
+
+    private void handleEvent(PushRelayConnection connection, RelayFrame frame) {
+        PushRelayConnection.Subscription subscription = connection.findSubscription(frame.stringAt(1));
+        PushAccount account = subscription != null ? listener.findAccount(subscription.pubkey) : null;
+        if (account == null) {
+            Log.d(TAG, "EVENT for unknown subscription " + frame.stringAt(1) + " from " + connection.url
+                    + ", skipping");
+            return;
+        }
+        String eventId = frame.objectString(2, "id");
+        if (subscription.catchingUp) {
+            subscription.catchUpEvents++;
+        }
+        // Decided before the watermark moves, an event at or below it may have been handled before
+        long createdAt = frame.objectLong(2, "created_at", 0);
+        boolean mayBeReplay = subscription.catchingUp
+                || createdAt <= watermarks.watermarkFor(connection.url, subscription.pubkey);
+        watermarks.advance(connection.url, subscription.pubkey, createdAt);
+        int outcome;
+        // Same event may arrive from every relay in the pool, only the first delivery counts
+        if (!relayPool.markEventSeen(connection, account.seenKey(eventId))) {
+            Log.d(TAG, "Duplicate EVENT " + eventId + " from " + connection.url + ", skipping");
+            outcome = EVENT_DUPLICATE;
+        } else if (!seenEvents.markSeen(account.seenKey(eventId), mayBeReplay)) {
+            // Relays replay stored events after every reconnect, drop the ones handled before
+            Log.d(TAG, "Replayed EVENT " + eventId + " from " + connection.url + " already handled, skipping");
+            outcome = EVENT_REPLAYED;
+        } else {
+            Log.d(TAG, "Received EVENT " + eventId + " for " + account + " from " + connection.url);
+            outcome = EVENT_NEW;
+        }
+        listener.onEvent(connection, subscription, account, frame, eventId, outcome);
+    }
+
+    /**
+     * Create one AUTH event (NIP-42) per relay for one account, answering each relay's pending challenge
+     * The event ids are kept on the subscriptions to match the relays' OK
+     * @return AUTH messages in the order of connections, or null if signing failed
+     */
+    String[] createAuthEvents(List<PushRelayConnection> connections, String pubkey, byte[] privkey) {
+        int count = connections.size();
+        String[] relays = new String[count];
+        String[] challenges = new String[count];
+        for (int i = 0; i < count; i++) {
+            relays[i] = connections.get(i).url;
+            challenges[i] = connections.get(i).subscriptions.get(pubkey).pendingAuthChallenge;
+        }
+        String[] eventIds = new String[count];
+        String[] authMessages = signAuthEvents(pubkey, privkey, relays, challenges, eventIds);
+        if (authMessages == null) return null;
+        for (int i = 0; i < count; i++) {
+            connections.get(i).subscriptions.get(pubkey).authEventId = eventIds[i];
+        }
+        return authMessages;
+    }
+
+    /**
+     * Sign one kind 22242 event per relay/challenge pair
+     * Ids are hashed by CanonicalEventSerializer and signed together through NostrSigner.signBatch()
+     * Format: ["AUTH", {"id": "...", "pubkey": "...", "created_at": ..., "kind": 22242, "tags": [["relay", "..."], ["challenge", "..."]], "content": "", "sig": "..."}]
+     * Reference: nostr-java NIP42.createCanonicalAuthenticationEvent() and CanonicalAuthenticationMessage
+     * @param eventIds receives the hex event ids
+     * @return AUTH messages in the order of relays, or null if signing failed
+     */
+    String[] signAuthEvents(String pubkey, byte[] privkey, String[] relays, String[] challenges, String[] eventIds) {
+        if (signer == null) {
+            Log.e(TAG, "Secp256k1 not initialized");
+            return null;
+        }
+        long createdAt = System.currentTimeMillis() / 1000;
+        // Ensure pubkey is lowercase (matching nostr-java and Flutter)
+        String pubkeyLower = pubkey.toLowerCase();
+        int count = relays.length;
+        String[][][] tags = new String[count][][];
+        byte[][] idHashes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            tags[i] = new String[][]{{"relay", relays[i]}, {"challenge", challenges[i]}};
+            // Event ID: SHA256 of [0, pubkey, created_at, kind, tags, content], streamed straight into the digest
+            idHashes[i] = new byte[CanonicalEventSerializer.ID_LENGTH];
+            serializer.computeId(pubkeyLower, createdAt, KIND_AUTH, tags[i], "", idHashes[i], 0);
+        }
+
+        // Sign the 32-byte id hashes directly (BIP340), one key check for the whole batch
+        byte[][] signatures;
+        try {
+            signatures = signer.signBatch(idHashes, privkey);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to sign event ID", e);
+            return null;
+        }
+
+        String[] authMessages = new String[count];
+        for (int i = 0; i < count; i++) {
+            eventIds[i] = Hex.encode(idHashes[i]);
+            // Reference: nostr-java CanonicalAuthenticationMessage.encode()
+            authMessages[i] = serializer.serializeEventMessage("AUTH", eventIds[i], pubkeyLower, createdAt,
+                    KIND_AUTH, tags[i], "", Hex.encode(signatures[i]));
+            Log.d(TAG, "Created AUTH event JSON: " + authMessages[i]);
+        }
+        return authMessages;
+    }
+
+    /**
+     * Send an AUTH answer for the subscription, its challenge is no longer pending
+     */
+    void sendAuth(PushRelayConnection connection, PushRelayConnection.Subscription subscription, String authJson) {
+        subscription.pendingAuthChallenge = null;
+        if (authJson != null && !authJson.isEmpty()) {
+            Log.d(TAG, "Sending AUTH response to " + connection.url + ": " + authJson);
+            subscription.authSentAtMs = SystemClock.elapsedRealtime();
+            connection.send(authJson);
+        }
+    }
+
+    private String generateRandomHex(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        String chars = "0123456789abcdef";
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+}
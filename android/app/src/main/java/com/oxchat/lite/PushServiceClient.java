@@ -0,0 +1,69 @@
+package com.oxchat.lite;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.util.Log;
+
+/**
+ * App-side handle on PushNotificationService.ControlBinder
+ * Binds without BIND_AUTO_CREATE, so binding never starts the service itself: the binder shows up once the
+ * service is started and goes away when it stops; callers fall back to intents and prefs while it is null
+ */
+public final class PushServiceClient {
+    private static final String TAG = "PushServiceClient";
+
+    private final Context context;
+    private PushNotificationService.ControlBinder binder;
+    private boolean bound;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            if (!(service instanceof PushNotificationService.ControlBinder)) {
+                Log.e(TAG, "Push service did not return a control binder");
+                return;
+            }
+            binder = (PushNotificationService.ControlBinder) service;
+            Log.d(TAG, "Push service control connected");
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            binder = null;
+        }
+    };
+
+    public PushServiceClient(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Bind for the lifetime of the push service, safe to call repeatedly
+     */
+    public void bind() {
+        if (bound) return;
+        Intent intent = new Intent(context, PushNotificationService.class);
+        intent.setAction(PushNotificationService.ACTION_CONTROL);
+        bound = context.bindService(intent, connection, 0);
+        if (!bound) {
+            Log.e(TAG, "Failed to bind push service");
+        }
+    }
+
+    public void unbind() {
+        if (!bound) return;
+        bound = false;
+        binder = null;
+        context.unbindService(connection);
+    }
+
+    /**
+     * @return the control binder, or null while the service is not running
+     */
+    public PushNotificationService.ControlBinder get() {
+        return binder;
+    }
+}
@@ -0,0 +1,113 @@
+package com.oxchat.lite;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.util.Log;
+
+/**
+ * Scheduled sync mode of push notifications, an alternative to the always-on socket of PushNotificationService
+ * A periodic job binds the service for one sync window: connect, AUTH, drain events since the watermark,
+ * show the notification, close, and sleep until the next window
+ * JobScheduler batches periodic jobs into Doze maintenance windows and only runs this one with a network,
+ * so the radio wakes for the windows the system already grants instead of for keep-alive pings
+ */
+public class PushSyncJobService extends JobService {
+    private static final String TAG = "PushSyncJobService";
+    static final int JOB_ID = 0x50534e43; // "PSNC"
+    static final long SYNC_INTERVAL_MS = 15 * 60 * 1000; // JobScheduler minimum period
+    static final long SYNC_FLEX_MS = 5 * 60 * 1000;
+
+    private JobParameters runningParams;
+    private boolean bound;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            if (!(service instanceof PushNotificationService.SyncBinder)) {
+                Log.e(TAG, "Push service did not return a sync binder");
+                finish(false);
+                return;
+            }
+            ((PushNotificationService.SyncBinder) service).runSyncWindow(() -> finish(false));
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            Log.w(TAG, "Push service disconnected during sync window");
+            finish(true);
+        }
+    };
+
+    /**
+     * Schedule the periodic sync job, keeps an already scheduled job and its timing
+     */
+    static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null) return;
+        if (scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, PushSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(SYNC_INTERVAL_MS, SYNC_FLEX_MS)
+                .setPersisted(true)
+                .build();
+        int result = scheduler.schedule(job);
+        Log.d(TAG, "Scheduled push sync every " + SYNC_INTERVAL_MS + "ms: "
+                + (result == JobScheduler.RESULT_SUCCESS ? "ok" : "failed"));
+    }
+
+    public static void cancel(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler != null) {
+            scheduler.cancel(JOB_ID);
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        Log.d(TAG, "Sync window starting");
+        runningParams = params;
+        Intent intent = new Intent(this, PushNotificationService.class);
+        intent.setAction(PushNotificationService.ACTION_SYNC);
+        bound = bindService(intent, connection, Context.BIND_AUTO_CREATE);
+        if (!bound) {
+            Log.e(TAG, "Failed to bind push service");
+            runningParams = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Log.d(TAG, "Sync window stopped by the system");
+        runningParams = null;
+        unbind();
+        // Periodic job, the next window comes anyway
+        return false;
+    }
+
+    private void finish(boolean reschedule) {
+        unbind();
+        JobParameters params = runningParams;
+        runningParams = null;
+        if (params != null) {
+            jobFinished(params, reschedule);
+        }
+    }
+
+    private void unbind() {
+        if (bound) {
+            bound = false;
+            unbindService(connection);
+        }
+    }
+}
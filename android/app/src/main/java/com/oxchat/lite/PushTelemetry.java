@@ -0,0 +1,329 @@
+package com.oxchat.lite;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Field telemetry of the push path, read from Dart through AppPreferences.getPushServiceStats
+ * - Latency histograms: connect (socket start to open), AUTH round-trip (AUTH sent to its OK) and
+ *   EVENT-to-notify (event created_at to the notification being queued, live events only since catch-up
+ *   replays are late by design)
+ * - Reconnects by cause, i.e. the reason a relay went into backoff
+ * - Frames and bytes per minute over the last MINUTE_SAMPLES minutes
+ *
+ * Counters and histograms are atomics so they can be recorded from any thread without locking; the
+ * per-minute sampling and persist() run on the push event loop. The summary is restored on construction
+ * so totals survive service restarts, and started over once it is older than SUMMARY_TTL_MS, checked on restore
+ * and on every minute sample
+ */
+final class PushTelemetry {
+    private static final String TAG = "PushTelemetry";
+    static final String KEY_SERVICE_STATS = "push_service_stats";
+    static final int MINUTE_SAMPLES = 60;
+    static final long SUMMARY_TTL_MS = 24 * 60 * 60 * 1000; // Rolling day
+
+    /**
+     * Fixed-bucket latency histogram in milliseconds, bucket i counts samples up to BOUNDS_MS[i]
+     * and the last bucket everything above
+     */
+    static final class LatencyHistogram {
+        static final long[] BOUNDS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10_000, 30_000, 60_000};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumMs = new AtomicLong();
+        private final AtomicLong maxMs = new AtomicLong();
+
+        void record(long valueMs) {
+            long value = Math.max(0, valueMs);
+            int index = 0;
+            while (index < BOUNDS_MS.length && value > BOUNDS_MS[index]) {
+                index++;
+            }
+            buckets.incrementAndGet(index);
+            count.incrementAndGet();
+            sumMs.addAndGet(value);
+            long max;
+            while (value > (max = maxMs.get()) && !maxMs.compareAndSet(max, value)) {
+                // Retry until the larger value is stored
+            }
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, -1 if there are no samples
+         * Samples in the overflow bucket report the max
+         */
+        long percentile(double percent) {
+            long total = count.get();
+            if (total == 0) return -1;
+            long rank = (long) Math.ceil(total * percent / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS_MS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return BOUNDS_MS[i];
+            }
+            return maxMs.get();
+        }
+
+        JSONObject toJson() throws JSONException {
+            long total = count.get();
+            JSONObject json = new JSONObject();
+            json.put("count", total);
+            json.put("avgMs", total > 0 ? sumMs.get() / total : 0);
+            json.put("maxMs", maxMs.get());
+            json.put("p50Ms", percentile(50));
+            json.put("p90Ms", percentile(90));
+            json.put("p99Ms", percentile(99));
+            JSONArray counts = new JSONArray();
+            for (int i = 0; i < buckets.length(); i++) {
+                counts.put(buckets.get(i));
+            }
+            json.put("bucketBoundsMs", new JSONArray(BOUNDS_MS));
+            json.put("buckets", counts);
+            json.put("sumMs", sumMs.get());
+            return json;
+        }
+
+        void restore(JSONObject json) {
+            if (json == null) return;
+            JSONArray counts = json.optJSONArray("buckets");
+            if (counts == null || counts.length() != buckets.length()) return;
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, counts.optLong(i, 0));
+            }
+            count.set(json.optLong("count", 0));
+            sumMs.set(json.optLong("sumMs", 0));
+            maxMs.set(json.optLong("maxMs", 0));
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sumMs.set(0);
+            maxMs.set(0);
+        }
+    }
+
+    final LatencyHistogram connectLatency = new LatencyHistogram();
+    final LatencyHistogram authRoundTrip = new LatencyHistogram();
+    final LatencyHistogram eventToNotify = new LatencyHistogram();
+    private final ConcurrentHashMap<String, AtomicLong> reconnectCauses = new ConcurrentHashMap<>();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong eventsNotified = new AtomicLong();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final SharedPreferences prefs;
+    private long since; // Wall clock ms the summary started
+    // Event loop only
+    private final ArrayDeque<JSONObject> minutes = new ArrayDeque<>();
+    private final Map<PushRelayConnection, long[]> lastTotals = new IdentityHashMap<>();
+
+    PushTelemetry(SharedPreferences prefs) {
+        this.prefs = prefs;
+        since = System.currentTimeMillis();
+        restore();
+    }
+
+    void recordConnect(long elapsedMs) {
+        connectLatency.record(elapsedMs);
+    }
+
+    void recordAuthRoundTrip(long elapsedMs) {
+        authRoundTrip.record(elapsedMs);
+    }
+
+    /**
+     * @param createdAtSeconds created_at of the event, latency is clamped at 0 for senders with a fast clock
+     */
+    void recordEventNotified(long createdAtSeconds) {
+        eventsNotified.incrementAndGet();
+        if (createdAtSeconds > 0) {
+            eventToNotify.record(System.currentTimeMillis() - createdAtSeconds * 1000);
+        }
+    }
+
+    /**
+     * Count a relay going into backoff, e.g. "closed 1006" or "failure SocketTimeoutException"
+     */
+    void recordReconnect(String cause) {
+        reconnects.incrementAndGet();
+        AtomicLong counter = reconnectCauses.get(cause);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = reconnectCauses.putIfAbsent(cause, created);
+            if (counter == null) counter = created;
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Take the traffic of the last minute from the relays' counters, called once a minute on the event loop
+     * Counters of relays that left the pool since the previous sample are dropped
+     */
+    void sampleMinute(Collection<PushRelayConnection> connections) {
+        long sampledAt = System.currentTimeMillis();
+        rollIfExpired(sampledAt);
+        long frameDeltaIn = 0;
+        long frameDeltaOut = 0;
+        long byteDeltaIn = 0;
+        long byteDeltaOut = 0;
+        Iterator<PushRelayConnection> known = lastTotals.keySet().iterator();
+        while (known.hasNext()) {
+            if (!connections.contains(known.next())) {
+                known.remove();
+            }
+        }
+        for (PushRelayConnection connection : connections) {
+            RelayTraffic traffic = connection.traffic;
+            long[] now = {traffic.messagesIn.get(), traffic.messagesOut.get(),
+                    traffic.wireBytesIn.get(), traffic.wireBytesOut.get()};
+            long[] last = lastTotals.put(connection, now);
+            if (last == null) {
+                last = new long[now.length];
+            }
+            frameDeltaIn += now[0] - last[0];
+            frameDeltaOut += now[1] - last[1];
+            byteDeltaIn += now[2] - last[2];
+            byteDeltaOut += now[3] - last[3];
+        }
+        framesIn.addAndGet(frameDeltaIn);
+        framesOut.addAndGet(frameDeltaOut);
+        bytesIn.addAndGet(byteDeltaIn);
+        bytesOut.addAndGet(byteDeltaOut);
+        try {
+            JSONObject minute = new JSONObject();
+            minute.put("at", sampledAt);
+            minute.put("framesIn", frameDeltaIn);
+            minute.put("framesOut", frameDeltaOut);
+            minute.put("wireBytesIn", byteDeltaIn);
+            minute.put("wireBytesOut", byteDeltaOut);
+            minutes.addLast(minute);
+            while (minutes.size() > MINUTE_SAMPLES) {
+                minutes.removeFirst();
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to record minute sample", e);
+        }
+    }
+
+    /**
+     * Start the summary over once it is older than SUMMARY_TTL_MS, on the event loop
+     * Samples recorded from other threads while the counters are cleared may land in either window
+     * @return true if the window was rolled
+     */
+    boolean rollIfExpired(long now) {
+        if (now - since <= SUMMARY_TTL_MS) return false;
+        Log.d(TAG, "Push service stats older than " + SUMMARY_TTL_MS + "ms, starting over");
+        since = now;
+        connectLatency.reset();
+        authRoundTrip.reset();
+        eventToNotify.reset();
+        reconnectCauses.clear();
+        reconnects.set(0);
+        eventsNotified.set(0);
+        framesIn.set(0);
+        framesOut.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+        minutes.clear();
+        return true;
+    }
+
+    /**
+     * Write the summary for AppPreferences.getPushServiceStats, on the event loop
+     */
+    void persist() {
+        try {
+            prefs.edit().putString(KEY_SERVICE_STATS, toJson().toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist push service stats", e);
+        }
+    }
+
+    /**
+     * Current summary in the persisted form, on the event loop
+     */
+    JSONObject toJson() throws JSONException {
+        long now = System.currentTimeMillis();
+        JSONObject causes = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry : reconnectCauses.entrySet()) {
+            causes.put(entry.getKey(), entry.getValue().get());
+        }
+        double minutesSince = Math.max(now - since, 60_000) / 60_000.0;
+        JSONObject stats = new JSONObject();
+        stats.put("since", since);
+        stats.put("updatedAt", now);
+        stats.put("connect", connectLatency.toJson());
+        stats.put("authRoundTrip", authRoundTrip.toJson());
+        stats.put("eventToNotify", eventToNotify.toJson());
+        stats.put("eventsNotified", eventsNotified.get());
+        stats.put("reconnects", reconnects.get());
+        stats.put("reconnectCauses", causes);
+        stats.put("framesIn", framesIn.get());
+        stats.put("framesOut", framesOut.get());
+        stats.put("wireBytesIn", bytesIn.get());
+        stats.put("wireBytesOut", bytesOut.get());
+        stats.put("framesInPerMinute", framesIn.get() / minutesSince);
+        stats.put("wireBytesInPerMinute", bytesIn.get() / minutesSince);
+        stats.put("minutes", new JSONArray(minutes));
+        return stats;
+    }
+
+    private void restore() {
+        String saved = prefs.getString(KEY_SERVICE_STATS, null);
+        if (saved == null) return;
+        try {
+            JSONObject stats = new JSONObject(saved);
+            long savedSince = stats.optLong("since", 0);
+            if (savedSince <= 0 || System.currentTimeMillis() - savedSince > SUMMARY_TTL_MS) {
+                Log.d(TAG, "Push service stats older than " + SUMMARY_TTL_MS + "ms, starting over");
+                return;
+            }
+            since = savedSince;
+            connectLatency.restore(stats.optJSONObject("connect"));
+            authRoundTrip.restore(stats.optJSONObject("authRoundTrip"));
+            eventToNotify.restore(stats.optJSONObject("eventToNotify"));
+            eventsNotified.set(stats.optLong("eventsNotified", 0));
+            reconnects.set(stats.optLong("reconnects", 0));
+            JSONObject causes = stats.optJSONObject("reconnectCauses");
+            if (causes != null) {
+                Iterator<String> keys = causes.keys();
+                while (keys.hasNext()) {
+                    String cause = keys.next();
+                    reconnectCauses.put(cause, new AtomicLong(causes.optLong(cause, 0)));
+                }
+            }
+            framesIn.set(stats.optLong("framesIn", 0));
+            framesOut.set(stats.optLong("framesOut", 0));
+            bytesIn.set(stats.optLong("wireBytesIn", 0));
+            bytesOut.set(stats.optLong("wireBytesOut", 0));
+            JSONArray savedMinutes = stats.optJSONArray("minutes");
+            if (savedMinutes != null) {
+                for (int i = 0; i < savedMinutes.length(); i++) {
+                    JSONObject minute = savedMinutes.optJSONObject(i);
+                    if (minute != null) minutes.addLast(minute);
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to restore push service stats, starting over", e);
+        }
+    }
+}
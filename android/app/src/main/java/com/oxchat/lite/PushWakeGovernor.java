@@ -0,0 +1,200 @@
+package com.oxchat.lite;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Wake budget of the push service: a token bucket per class of event kind decides whether a notification window
+ * may alert and start the Flutter engine, windows over budget only update the notification silently
+ * A window takes one wake from its most urgent class that has budget left, so a burst coalesced into one update
+ * costs one wake however many events it holds; events are counted per class for the stats only
+ * - call: call signaling, always wakes
+ * - direct: decoded chat and file messages, bursts of 5, 10 per minute
+ * - group: kind 20284 group pushes, bursts of 2, 2 per minute
+ * - other: anything else, bursts of 3, 4 per minute
+ * Buckets refill by wall time so a restart neither hands out a fresh budget nor loses the refill, bucket levels,
+ * event counts and the allowed / suppressed window counts per class are persisted in the push_service preferences
+ *
+ * Must only be used from the push event-loop thread
+ */
+class PushWakeGovernor {
+    private static final String TAG = "PushWakeGovernor";
+    static final String KEY_WAKE_GOVERNOR = "wake_governor";
+    // Call signaling rumor: the NIP-100 WebRTC offer / answer / candidate / disconnect events of the call code in
+    // nostr_core_dart (packages/nostr-dart submodule), gift-wrapped to the callee
+    static final int KIND_CALL = 25050;
+    static final int KIND_GROUP_PUSH = 20284;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private static final class Bucket {
+        final double capacity; // 0 for no limit
+        final double refillPerMinute;
+        double tokens;
+        long refilledAtMs;
+        long events;
+        long allowed;
+        long suppressed;
+
+        Bucket(double capacity, double refillPerMinute) {
+            this.capacity = capacity;
+            this.refillPerMinute = refillPerMinute;
+            this.tokens = capacity;
+        }
+
+        boolean tryTake(long now) {
+            if (capacity == 0) return true;
+            // A clock set back only pauses the refill
+            long elapsedMs = Math.max(0, now - refilledAtMs);
+            tokens = Math.min(capacity, tokens + elapsedMs * refillPerMinute / MINUTE_MS);
+            refilledAtMs = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>();
+    private long since;
+    private boolean dirty;
+
+    PushWakeGovernor(SharedPreferences prefs) {
+        this.prefs = prefs;
+        buckets.put("call", new Bucket(0, 0));
+        buckets.put("direct", new Bucket(5, 10));
+        buckets.put("group", new Bucket(2, 2));
+        buckets.put("other", new Bucket(3, 4));
+        since = System.currentTimeMillis();
+        load();
+    }
+
+    /**
+     * Count an event for the stats, the budget is charged per window by tryWake()
+     * @param kind kind of the decoded message if there is one, the pushed event's kind otherwise
+     */
+    void recordEvent(int kind) {
+        buckets.get(classOf(kind)).events++;
+        dirty = true;
+    }
+
+    /**
+     * Take one wake for a notification window, from the most urgent class of its events that has budget left
+     * @param kinds kinds of the window's events, as passed to recordEvent()
+     * @return false if every class of the window is over budget and it must not alert or start the app
+     */
+    boolean tryWake(Set<Integer> kinds) {
+        if (kinds.isEmpty()) return false;
+        Set<String> classes = new HashSet<>();
+        for (int kind : kinds) {
+            classes.add(classOf(kind));
+        }
+        dirty = true;
+        long now = System.currentTimeMillis();
+        Bucket mostUrgent = null;
+        // Buckets are in order of urgency
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            if (!classes.contains(entry.getKey())) continue;
+            Bucket bucket = entry.getValue();
+            if (bucket.tryTake(now)) {
+                bucket.allowed++;
+                return true;
+            }
+            if (mostUrgent == null) {
+                mostUrgent = bucket;
+            }
+        }
+        mostUrgent.suppressed++;
+        return false;
+    }
+
+    long getSuppressed() {
+        long suppressed = 0;
+        for (Bucket bucket : buckets.values()) {
+            suppressed += bucket.suppressed;
+        }
+        return suppressed;
+    }
+
+    private static String classOf(int kind) {
+        switch (kind) {
+            case KIND_CALL:
+                return "call";
+            case PushMessageDecoder.KIND_CHAT_MESSAGE:
+            case PushMessageDecoder.KIND_FILE_MESSAGE:
+                return "direct";
+            case KIND_GROUP_PUSH:
+                return "group";
+            default:
+                return "other";
+        }
+    }
+
+    /**
+     * Budget, level and counts per class, in the persisted form
+     */
+    JSONObject toJson() throws JSONException {
+        JSONObject classes = new JSONObject();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            JSONObject item = new JSONObject();
+            item.put("capacity", bucket.capacity);
+            item.put("refillPerMinute", bucket.refillPerMinute);
+            item.put("tokens", bucket.tokens);
+            item.put("refilledAt", bucket.refilledAtMs);
+            item.put("events", bucket.events);
+            item.put("allowed", bucket.allowed);
+            item.put("suppressed", bucket.suppressed);
+            classes.put(entry.getKey(), item);
+        }
+        JSONObject json = new JSONObject();
+        json.put("classes", classes);
+        json.put("suppressed", getSuppressed());
+        json.put("since", since);
+        json.put("updatedAt", System.currentTimeMillis());
+        return json;
+    }
+
+    void persist() {
+        if (!dirty) return;
+        try {
+            prefs.edit().putString(KEY_WAKE_GOVERNOR, toJson().toString()).apply();
+            dirty = false;
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist wake governor", e);
+        }
+    }
+
+    private void load() {
+        String saved = prefs.getString(KEY_WAKE_GOVERNOR, null);
+        if (saved == null) return;
+        try {
+            JSONObject json = new JSONObject(saved);
+            since = json.optLong("since", since);
+            JSONObject classes = json.optJSONObject("classes");
+            if (classes == null) return;
+            for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                JSONObject item = classes.optJSONObject(entry.getKey());
+                if (item == null) continue;
+                Bucket bucket = entry.getValue();
+                // Budgets come from the code, a saved level above a lowered capacity is cut down
+                bucket.tokens = Math.min(bucket.capacity, item.optDouble("tokens", bucket.capacity));
+                bucket.refilledAtMs = item.optLong("refilledAt", 0);
+                bucket.events = item.optLong("events", 0);
+                bucket.allowed = item.optLong("allowed", 0);
+                bucket.suppressed = item.optLong("suppressed", 0);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to load wake governor, starting over", e);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.oxchat.lite;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.RouteInfo;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reconnect scheduler for push relays
+ * Backs off exponentially with full jitter, a relay with a poor health score waits up to MAX_HEALTH_FACTOR times
+ * longer so it does not take radio time from the healthy ones
+ * Parks reconnects while there is no network or the device is dozing. A network that is up but not validated
+ * (captive portal, or a connectivity check that is blocked) is still retried at the longest backoff, and
+ * becoming validated only cuts the wait short: every waiting relay reconnects immediately
+ * State snapshot is written to the push_service prefs so AppPreferences can return it to Dart
+ * Must only be used from the push event-loop thread behind the handler, network and doze callbacks land there too
+ */
+class ReconnectScheduler {
+    private static final String TAG = "ReconnectScheduler";
+    static final long BASE_DELAY_MS = 2000;
+    static final long MAX_DELAY_MS = 5 * 60 * 1000; // 5 minutes
+    static final int MAX_HEALTH_FACTOR = 4;
+    private static final int MAX_EXPONENT = 16;
+
+    static final String KEY_RECONNECT_STATE = "reconnect_state";
+
+    private final Context context;
+    private final Handler handler;
+    private final SharedPreferences prefs;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<PushRelayConnection, Runnable> scheduled = new HashMap<>();
+    private final Map<PushRelayConnection, Long> nextAttemptAt = new HashMap<>();
+    private final List<PushRelayConnection> parked = new ArrayList<>(); // Waiting for network or end of doze
+
+    private ConnectivityManager connectivityManager;
+    private PowerManager powerManager;
+    private Network currentNetwork;
+    private boolean networkValidated = false;
+    private boolean deviceIdle = false;
+    private String transport = "none";
+    private String networkKey = "none"; // Transport plus link identity or carrier, keys learned heartbeat intervals
+    private boolean started = false;
+
+    // Package-private so tests can deliver network changes
+    final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            boolean validated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            boolean changed = !network.equals(currentNetwork);
+            boolean becameValidated = validated && (!networkValidated || changed);
+            currentNetwork = network;
+            networkValidated = validated;
+            String newTransport = describeTransport(capabilities);
+            if (changed || !newTransport.equals(transport)) {
+                // Capabilities change often (signal strength), only re-identify a different network
+                networkKey = describeNetworkKey(network, newTransport);
+            }
+            transport = newTransport;
+            if (becameValidated) {
+                Log.d(TAG, "Validated network available (" + transport + "), reconnecting now");
+                reconnectAllNow();
+            } else {
+                // Not validated (yet), relays parked for lack of a network retry at the longest backoff
+                scheduleParked();
+                persistState();
+            }
+        }
+
+        @Override
+        public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+            if (network.equals(currentNetwork)) {
+                networkKey = describeNetworkKey(network, transport);
+            }
+        }
+
+        @Override
+        public void onLost(Network network) {
+            if (network.equals(currentNetwork)) {
+                Log.d(TAG, "Network lost, parking reconnects until a network appears");
+                currentNetwork = null;
+                networkValidated = false;
+                transport = "none";
+                networkKey = "none";
+                persistState();
+            }
+        }
+    };
+
+    private final BroadcastReceiver idleReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            boolean idle = powerManager != null && powerManager.isDeviceIdleMode();
+            if (idle == deviceIdle) return;
+            deviceIdle = idle;
+            Log.d(TAG, "Device idle mode changed: " + idle);
+            if (!idle) {
+                // Maintenance window or screen on, use it before the radio goes back to sleep
+                reconnectAllNow();
+            } else {
+                persistState();
+            }
+        }
+    };
+
+    ReconnectScheduler(Context context, Handler handler, SharedPreferences prefs) {
+        this.context = context;
+        this.handler = handler;
+        this.prefs = prefs;
+    }
+
+    void start() {
+        if (started) return;
+        started = true;
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null) {
+            deviceIdle = powerManager.isDeviceIdleMode();
+        }
+        if (connectivityManager != null) {
+            currentNetwork = connectivityManager.getActiveNetwork();
+            NetworkCapabilities capabilities = currentNetwork != null
+                    ? connectivityManager.getNetworkCapabilities(currentNetwork) : null;
+            if (capabilities != null) {
+                networkValidated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+                transport = describeTransport(capabilities);
+                networkKey = describeNetworkKey(currentNetwork, transport);
+            }
+            try {
+                connectivityManager.registerDefaultNetworkCallback(networkCallback, handler);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to register network callback", e);
+            }
+        }
+        // Delivered on the handler's thread, same as the network callback
+        context.registerReceiver(idleReceiver, new IntentFilter(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED),
+                null, handler);
+        persistState();
+    }
+
+    void stop() {
+        if (!started) return;
+        started = false;
+        for (Runnable runnable : scheduled.values()) {
+            handler.removeCallbacks(runnable);
+        }
+        scheduled.clear();
+        nextAttemptAt.clear();
+        parked.clear();
+        if (connectivityManager != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to unregister network callback", e);
+            }
+        }
+        try {
+            context.unregisterReceiver(idleReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Idle receiver was not registered", e);
+        }
+        prefs.edit().remove(KEY_RECONNECT_STATE).apply();
+    }
+
+    /**
+     * Schedule the next reconnect of a relay with exponential backoff and full jitter, stretched by poor health
+     * On a network that is not validated the longest backoff applies; with no network at all, or while the
+     * device is idle, the relay is parked until that changes
+     */
+    void schedule(final PushRelayConnection connection) {
+        cancel(connection);
+        if (!canConnectNow()) {
+            Log.d(TAG, "No network or device idle, parking reconnect of " + connection.url);
+            parked.add(connection);
+            persistState();
+            return;
+        }
+
+        long ceiling;
+        if (networkValidated) {
+            int exponent = Math.min(connection.reconnectAttempts, MAX_EXPONENT);
+            long healthFactor = 1 + Math.round((1.0 - connection.health.getScore()) * (MAX_HEALTH_FACTOR - 1));
+            ceiling = Math.min(MAX_DELAY_MS, (BASE_DELAY_MS << exponent) * healthFactor);
+        } else {
+            ceiling = MAX_DELAY_MS;
+        }
+        long delay = (long) (random.nextDouble() * ceiling);
+        connection.reconnectAttempts++;
+
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                scheduled.remove(connection);
+                nextAttemptAt.remove(connection);
+                connection.reconnect();
+                persistState();
+            }
+        };
+        scheduled.put(connection, runnable);
+        nextAttemptAt.put(connection, System.currentTimeMillis() + delay);
+        handler.postDelayed(runnable, delay);
+        Log.d(TAG, "Reconnect of " + connection.url + " in " + delay + "ms (attempt " + connection.reconnectAttempts + ")");
+        persistState();
+    }
+
+    /**
+     * Drop any pending reconnect of a relay
+     */
+    void cancel(PushRelayConnection connection) {
+        Runnable runnable = scheduled.remove(connection);
+        if (runnable != null) {
+            handler.removeCallbacks(runnable);
+        }
+        nextAttemptAt.remove(connection);
+        parked.remove(connection);
+    }
+
+    /**
+     * Relay connected, the next outage starts from the base delay again
+     */
+    void onConnected(PushRelayConnection connection) {
+        connection.reconnectAttempts = 0;
+        persistState();
+    }
+
+    boolean isNetworkValidated() {
+        return networkValidated;
+    }
+
+    /**
+     * Identity of the current network for per-network learning, e.g. "wifi:1a2b3c4d" or "cellular:310260"
+     */
+    String getNetworkKey() {
+        return networkKey;
+    }
+
+    /**
+     * A reconnect can be attempted on any network outside of doze, validation only decides how soon
+     */
+    boolean canConnectNow() {
+        return currentNetwork != null && !deviceIdle;
+    }
+
+    /**
+     * Give parked relays a backoff timer once a network is usable again
+     */
+    private void scheduleParked() {
+        if (parked.isEmpty() || !canConnectNow()) return;
+        for (PushRelayConnection connection : new ArrayList<>(parked)) {
+            schedule(connection);
+        }
+    }
+
+    /**
+     * Skip the remaining backoff of every waiting relay
+     */
+    private void reconnectAllNow() {
+        if (!canConnectNow()) {
+            persistState();
+            return;
+        }
+        List<PushRelayConnection> waiting = new ArrayList<>(parked);
+        waiting.addAll(scheduled.keySet());
+        for (PushRelayConnection connection : waiting) {
+            cancel(connection);
+            connection.reconnectAttempts = 0;
+            connection.reconnect();
+        }
+        persistState();
+    }
+
+    private static String describeTransport(NetworkCapabilities capabilities) {
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return "wifi";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return "cellular";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) return "ethernet";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) return "vpn";
+        return "other";
+    }
+
+    /**
+     * Wi-Fi networks are told apart by a hash of their link properties (search domains, DNS servers, default
+     * gateway), which needs no location permission unlike the SSID; cellular networks by the operator MCC+MNC
+     */
+    private String describeNetworkKey(Network network, String transport) {
+        try {
+            if ("wifi".equals(transport) || "ethernet".equals(transport)) {
+                LinkProperties properties = connectivityManager != null && network != null
+                        ? connectivityManager.getLinkProperties(network) : null;
+                if (properties != null) {
+                    StringBuilder identity = new StringBuilder();
+                    identity.append(properties.getDomains()).append('|').append(properties.getDnsServers());
+                    for (RouteInfo route : properties.getRoutes()) {
+                        if (route.isDefaultRoute() && route.getGateway() != null) {
+                            identity.append('|').append(route.getGateway().getHostAddress());
+                        }
+                    }
+                    return transport + ":" + Integer.toHexString(identity.toString().hashCode());
+                }
+            } else if ("cellular".equals(transport)) {
+                TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+                String operator = telephonyManager != null ? telephonyManager.getNetworkOperator() : null;
+                if (operator != null && !operator.isEmpty()) {
+                    return "cellular:" + operator;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to identify network", e);
+        }
+        return transport;
+    }
+
+    private void persistState() {
+        try {
+            JSONObject state = new JSONObject();
+            state.put("networkValidated", networkValidated);
+            state.put("transport", transport);
+            state.put("networkKey", networkKey);
+            state.put("deviceIdle", deviceIdle);
+            JSONArray relays = new JSONArray();
+            for (Map.Entry<PushRelayConnection, Long> entry : nextAttemptAt.entrySet()) {
+                JSONObject relay = new JSONObject();
+                relay.put("relay", entry.getKey().url);
+                relay.put("attempt", entry.getKey().reconnectAttempts);
+                relay.put("nextAttemptAt", entry.getValue());
+                relays.put(relay);
+            }
+            for (PushRelayConnection connection : parked) {
+                JSONObject relay = new JSONObject();
+                relay.put("relay", connection.url);
+                relay.put("attempt", connection.reconnectAttempts);
+                relay.put("parked", true);
+                relays.put(relay);
+            }
+            state.put("pending", relays);
+            state.put("updatedAt", System.currentTimeMillis());
+            prefs.edit().putString(KEY_RECONNECT_STATE, state.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist reconnect state", e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.oxchat.lite;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import okhttp3.Dns;
+
+/**
+ * Stale-while-revalidate DNS cache for the relay sockets, persisted so a restarted service skips the lookup too
+ * Answers younger than FRESH_MS are used as they are; older ones, up to MAX_STALE_MS, are used right away while
+ * one background lookup refreshes them, so a reconnect after a network switch never waits on DNS for a relay
+ * it has seen before. A failed lookup falls back to whatever answer is cached, however old
+ * Addresses of a relay that failed to connect can be expired so the next lookup refreshes them
+ */
+final class RelayDnsCache implements Dns {
+    private static final int MAGIC = 0x444e5343; // "DNSC"
+    private static final int VERSION = 1;
+    static final long FRESH_MS = 5 * 60 * 1000; // 5 minutes
+    static final long MAX_STALE_MS = 7 * 24 * 60 * 60 * 1000L; // 7 days
+    private static final int MAX_HOSTS = 32;
+
+    private static final class Entry {
+        final List<InetAddress> addresses;
+        final long resolvedAtMs;
+
+        Entry(List<InetAddress> addresses, long resolvedAtMs) {
+            this.addresses = addresses;
+            this.resolvedAtMs = resolvedAtMs;
+        }
+    }
+
+    private final File file;
+    private final Dns upstream;
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RelayDnsRefresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+    private final Set<String> refreshing = new HashSet<>();
+    private boolean dirty;
+    private long freshHits;
+    private long staleHits;
+    private long misses;
+    private long refreshFailures;
+
+    RelayDnsCache(File file, Dns upstream) {
+        this.file = file;
+        this.upstream = upstream;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(hostname);
+            long ageMs = entry != null ? System.currentTimeMillis() - entry.resolvedAtMs : Long.MAX_VALUE;
+            if (ageMs >= 0 && ageMs < FRESH_MS) {
+                freshHits++;
+                return entry.addresses;
+            }
+            if (ageMs >= 0 && ageMs < MAX_STALE_MS) {
+                staleHits++;
+                refreshAsync(hostname);
+                return entry.addresses;
+            }
+            misses++;
+        }
+        try {
+            return resolve(hostname);
+        } catch (UnknownHostException e) {
+            if (entry != null) {
+                // Better an old answer than none, the connect attempt tells whether it still works
+                return entry.addresses;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Mark a host's answer as stale, e.g. after a connect to it failed
+     */
+    synchronized void expire(String hostname) {
+        Entry entry = entries.get(hostname);
+        if (entry != null && System.currentTimeMillis() - entry.resolvedAtMs < FRESH_MS) {
+            entries.put(hostname, new Entry(entry.addresses, System.currentTimeMillis() - FRESH_MS));
+            dirty = true;
+        }
+    }
+
+    synchronized long getFreshHits() {
+        return freshHits;
+    }
+
+    synchronized long getStaleHits() {
+        return staleHits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getRefreshFailures() {
+        return refreshFailures;
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private List<InetAddress> resolve(String hostname) throws UnknownHostException {
+        List<InetAddress> addresses = Collections.unmodifiableList(new ArrayList<>(upstream.lookup(hostname)));
+        if (addresses.isEmpty()) {
+            throw new UnknownHostException(hostname);
+        }
+        synchronized (this) {
+            entries.put(hostname, new Entry(addresses, System.currentTimeMillis()));
+            dirty = true;
+        }
+        return addresses;
+    }
+
+    private void refreshAsync(String hostname) {
+        if (!refreshing.add(hostname)) return;
+        try {
+            refresher.execute(() -> {
+                try {
+                    resolve(hostname);
+                } catch (UnknownHostException e) {
+                    synchronized (this) {
+                        refreshFailures++;
+                    }
+                } finally {
+                    synchronized (this) {
+                        refreshing.remove(hostname);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down
+            refreshing.remove(hostname);
+        }
+    }
+
+    /**
+     * Load the persisted answers, a missing or corrupt file leaves the cache empty
+     */
+    synchronized void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized DNS cache format");
+            }
+            int hosts = in.readInt();
+            if (hosts < 0 || hosts > MAX_HOSTS) {
+                throw new IOException("Invalid DNS cache size " + hosts);
+            }
+            Map<String, Entry> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < hosts; i++) {
+                String hostname = in.readUTF();
+                long resolvedAtMs = in.readLong();
+                int count = in.readUnsignedByte();
+                List<InetAddress> addresses = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    byte[] address = new byte[in.readUnsignedByte()];
+                    in.readFully(address);
+                    // Address literal, no lookup
+                    addresses.add(InetAddress.getByAddress(hostname, address));
+                }
+                if (!addresses.isEmpty()) {
+                    loaded.put(hostname, new Entry(Collections.unmodifiableList(addresses), resolvedAtMs));
+                }
+            }
+            entries.putAll(loaded);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Write the answers to a temp file and rename it over the old one, so a crash never leaves a torn file
+     */
+    synchronized void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                List<InetAddress> addresses = item.getValue().addresses;
+                int count = Math.min(addresses.size(), 255);
+                out.writeUTF(item.getKey());
+                out.writeLong(item.getValue().resolvedAtMs);
+                out.writeByte(count);
+                for (int i = 0; i < count; i++) {
+                    byte[] address = addresses.get(i).getAddress();
+                    out.writeByte(address.length);
+                    out.write(address);
+                }
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+        dirty = false;
+    }
+}
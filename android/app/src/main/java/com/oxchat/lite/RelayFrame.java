@@ -0,0 +1,336 @@
+package com.oxchat.lite;
+
+import okio.ByteString;
+
+/**
+ * Lazy view over an inbound relay message (NIP-01 JSON array)
+ * Only the boundaries of the top-level elements are located up front, values are decoded on demand,
+ * so the message type, subscription id or event id can be read without building a JSON tree
+ * Works on the OkHttp String or ByteString directly, binary frames are never decoded as a whole
+ * JSON structural characters are ASCII, so scanning UTF-8 bytes and UTF-16 chars is the same walk
+ */
+final class RelayFrame {
+    static final int TYPE_UNKNOWN = 0;
+    static final int TYPE_EVENT = 1;
+    static final int TYPE_EOSE = 2;
+    static final int TYPE_NOTICE = 3;
+    static final int TYPE_CLOSED = 4;
+    static final int TYPE_AUTH = 5;
+    static final int TYPE_OK = 6;
+
+    private static final int MAX_ELEMENTS = 6;
+
+    // Exactly one of text / bytes is set
+    private final String text;
+    private final ByteString bytes;
+    private final int length;
+    private final int[] starts = new int[MAX_ELEMENTS];
+    private final int[] ends = new int[MAX_ELEMENTS];
+    private int count;
+    private int type = TYPE_UNKNOWN;
+    private boolean valid;
+
+    private RelayFrame(String text, ByteString bytes) {
+        this.text = text;
+        this.bytes = bytes;
+        this.length = text != null ? text.length() : bytes.size();
+        valid = scanElements();
+        if (valid && count > 0 && isString(0)) {
+            type = detectType();
+        }
+    }
+
+    static RelayFrame parse(String text) {
+        return new RelayFrame(text, null);
+    }
+
+    static RelayFrame parse(ByteString bytes) {
+        return new RelayFrame(null, bytes);
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    int type() {
+        return type;
+    }
+
+    /**
+     * Number of top-level elements
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Frame size in chars (text frame) or bytes (binary frame)
+     */
+    int rawLength() {
+        return length;
+    }
+
+    /**
+     * Decoded string element, or null if it is missing or not a string
+     */
+    String stringAt(int index) {
+        if (!hasElement(index) || !isString(index)) return null;
+        return decodeString(starts[index], ends[index]);
+    }
+
+    boolean booleanAt(int index) {
+        return hasElement(index) && rawEquals(starts[index], ends[index], "true");
+    }
+
+    /**
+     * String member of the object element at index, e.g. the "id" of an EVENT's event object
+     * Only top-level members of that object are inspected, nested values are skipped without decoding
+     */
+    String objectString(int index, String key) {
+        int valueStart = findMember(index, key);
+        if (valueStart < 0 || at(valueStart) != '"') return null;
+        int valueEnd = skipString(valueStart);
+        return valueEnd < 0 ? null : decodeString(valueStart, valueEnd);
+    }
+
+    /**
+     * Integer member of the object element at index, e.g. "created_at" or "kind"
+     */
+    long objectLong(int index, String key, long fallback) {
+        int i = findMember(index, key);
+        if (i < 0) return fallback;
+        boolean negative = false;
+        if (at(i) == '-') {
+            negative = true;
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (i < length) {
+            int c = at(i);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            digits++;
+            i++;
+        }
+        if (digits == 0) return fallback;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Raw JSON text of an element, for the rare handler that needs the full value
+     */
+    String rawAt(int index) {
+        if (!hasElement(index)) return null;
+        return slice(starts[index], ends[index]);
+    }
+
+    @Override
+    public String toString() {
+        return "RelayFrame{type=" + type + ", size=" + count + ", length=" + length + "}";
+    }
+
+    private boolean hasElement(int index) {
+        return index >= 0 && index < count && index < MAX_ELEMENTS;
+    }
+
+    private boolean isString(int index) {
+        return at(starts[index]) == '"';
+    }
+
+    private int at(int i) {
+        return text != null ? text.charAt(i) : bytes.getByte(i) & 0xff;
+    }
+
+    private int detectType() {
+        int start = starts[0];
+        int end = ends[0];
+        if (rawEquals(start, end, "\"EVENT\"")) return TYPE_EVENT;
+        if (rawEquals(start, end, "\"OK\"")) return TYPE_OK;
+        if (rawEquals(start, end, "\"EOSE\"")) return TYPE_EOSE;
+        if (rawEquals(start, end, "\"AUTH\"")) return TYPE_AUTH;
+        if (rawEquals(start, end, "\"NOTICE\"")) return TYPE_NOTICE;
+        if (rawEquals(start, end, "\"CLOSED\"")) return TYPE_CLOSED;
+        return TYPE_UNKNOWN;
+    }
+
+    private boolean rawEquals(int start, int end, String literal) {
+        if (end - start != literal.length()) return false;
+        for (int i = 0; i < literal.length(); i++) {
+            if (at(start + i) != literal.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean scanElements() {
+        int i = skipWhitespace(0);
+        if (i >= length || at(i) != '[') return false;
+        i = skipWhitespace(i + 1);
+        if (i < length && at(i) == ']') return true;
+        while (i < length) {
+            int end = skipValue(i);
+            if (end < 0) return false;
+            if (count < MAX_ELEMENTS) {
+                starts[count] = i;
+                ends[count] = end;
+            }
+            count++;
+            i = skipWhitespace(end);
+            if (i >= length) return false;
+            int c = at(i);
+            if (c == ']') return true;
+            if (c != ',') return false;
+            i = skipWhitespace(i + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Position of the value of a top-level member of the object element at index, or -1
+     */
+    private int findMember(int index, String key) {
+        if (!hasElement(index) || at(starts[index]) != '{') return -1;
+        int i = skipWhitespace(starts[index] + 1);
+        int end = ends[index] - 1;
+        while (i < end) {
+            if (at(i) != '"') return -1;
+            int keyEnd = skipString(i);
+            if (keyEnd < 0) return -1;
+            boolean match = keyEnd - i - 2 == key.length() && rawEquals(i + 1, keyEnd - 1, key);
+            i = skipWhitespace(keyEnd);
+            if (i >= end || at(i) != ':') return -1;
+            i = skipWhitespace(i + 1);
+            if (match) return i;
+            int valueEnd = skipValue(i);
+            if (valueEnd < 0) return -1;
+            i = skipWhitespace(valueEnd);
+            if (i < end && at(i) == ',') {
+                i = skipWhitespace(i + 1);
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < length) {
+            int c = at(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') break;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * End (exclusive) of the value starting at i, or -1 if it is malformed
+     */
+    private int skipValue(int i) {
+        if (i >= length) return -1;
+        int c = at(i);
+        if (c == '"') return skipString(i);
+        if (c == '{' || c == '[') return skipNested(i);
+        int start = i;
+        while (i < length) {
+            c = at(i);
+            if (c == ',' || c == ']' || c == '}' || c == ' ' || c == '\t' || c == '\n' || c == '\r') break;
+            i++;
+        }
+        return i == start ? -1 : i;
+    }
+
+    private int skipString(int i) {
+        i++;
+        while (i < length) {
+            int c = at(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private int skipNested(int i) {
+        int depth = 0;
+        while (i < length) {
+            int c = at(i);
+            if (c == '"') {
+                i = skipString(i);
+                if (i < 0) return -1;
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private String slice(int start, int end) {
+        return text != null ? text.substring(start, end) : bytes.substring(start, end).utf8();
+    }
+
+    /**
+     * Decode the JSON string spanning [start, end) including its quotes
+     */
+    private String decodeString(int start, int end) {
+        int contentStart = start + 1;
+        int contentEnd = end - 1;
+        for (int i = contentStart; i < contentEnd; i++) {
+            if (at(i) == '\\') {
+                return unescape(slice(contentStart, contentEnd));
+            }
+        }
+        return slice(contentStart, contentEnd);
+    }
+
+    private static String unescape(String raw) {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 >= raw.length()) {
+                sb.append(c);
+                continue;
+            }
+            char escaped = raw.charAt(++i);
+            switch (escaped) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    int value = i + 4 < raw.length() ? parseHex4(raw, i + 1) : -1;
+                    if (value < 0) {
+                        // Truncated or not hex, kept as it was sent
+                        sb.append('\\').append('u');
+                    } else {
+                        sb.append((char) value);
+                        i += 4;
+                    }
+                    break;
+                default: sb.append(escaped); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Value of the four hex digits at start, or -1 if one of them is not a hex digit
+     */
+    private static int parseHex4(String raw, int start) {
+        int value = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(raw.charAt(i), 16);
+            if (digit < 0) return -1;
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,58 @@
+package com.oxchat.lite;
+
+/**
+ * Health score for a single push relay
+ * Score is an exponentially weighted average in [0, 1]: connects and first-seen events
+ * push it up, failures push it down and events that another relay delivered first count as half
+ */
+class RelayHealth {
+    private static final double ALPHA = 0.2;
+    private static final double LATE_EVENT_SAMPLE = 0.5;
+
+    private double score = 1.0;
+    private int consecutiveFailures = 0;
+    private long lastFrameAtMs = 0;
+
+    synchronized void recordConnected() {
+        consecutiveFailures = 0;
+        sample(1.0);
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        sample(0.0);
+    }
+
+    /**
+     * Record an EVENT delivery
+     * @param first true if this relay delivered the event before any other relay in the pool
+     */
+    synchronized void recordEvent(boolean first) {
+        sample(first ? 1.0 : LATE_EVENT_SAMPLE);
+    }
+
+    synchronized void recordFrame() {
+        lastFrameAtMs = System.currentTimeMillis();
+    }
+
+    synchronized double getScore() {
+        return score;
+    }
+
+    synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    synchronized long getLastFrameAtMs() {
+        return lastFrameAtMs;
+    }
+
+    private void sample(double value) {
+        score = score * (1 - ALPHA) + value * ALPHA;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(java.util.Locale.US, "score=%.2f failures=%d", score, consecutiveFailures);
+    }
+}
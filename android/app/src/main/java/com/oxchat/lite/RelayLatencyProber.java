@@ -0,0 +1,375 @@
+package com.oxchat.lite;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Connect and NIP-42 AUTH round-trip times per candidate push relay, for latency-based relay selection
+ * Relays in the pool are measured passively from their own connects and AUTH answers; candidates outside the
+ * pool get a short probe socket: open, REQ, answer the AUTH challenge if the relay sends one, close
+ * Times are exponentially weighted averages, persisted in the push_service preferences so a restart ranks the
+ * relays right away; rank() orders healthy relays by connect + AUTH time and puts failing ones last
+ * All methods run on the push event loop
+ */
+class RelayLatencyProber {
+    private static final String TAG = "RelayLatencyProber";
+    static final String KEY_RELAY_LATENCY = "relay_latency";
+    private static final double ALPHA = 0.3;
+    private static final int MAX_FAILURES = 3;
+    private static final long PROBE_TIMEOUT_MS = 10_000;
+
+    /**
+     * Sign an AUTH event for a probe socket
+     */
+    interface AuthSigner {
+        /**
+         * @return the ["AUTH", event] message, or null if no key is available
+         */
+        String signAuth(String relayUrl, String challenge);
+    }
+
+    private static final class Sample {
+        double connectMs = -1;
+        double authMs = -1;
+        int failures;
+        long lastSuccessAt;
+        long lastProbeAt;
+
+        boolean isHealthy() {
+            return connectMs >= 0 && failures < MAX_FAILURES;
+        }
+
+        double latencyMs() {
+            return connectMs + Math.max(authMs, 0);
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final Handler handler;
+    private final SharedPreferences prefs;
+    private final AuthSigner authSigner;
+    private final Map<String, Sample> samples = new HashMap<>();
+    private List<String> selected = Collections.emptyList();
+    private boolean probing;
+    private Probe current;
+    private boolean dirty;
+
+    RelayLatencyProber(OkHttpClient httpClient, Handler handler, SharedPreferences prefs, AuthSigner authSigner) {
+        this.httpClient = httpClient;
+        this.handler = handler;
+        this.prefs = prefs;
+        this.authSigner = authSigner;
+        load();
+    }
+
+    void recordConnect(String url, long elapsedMs) {
+        Sample sample = sampleFor(url);
+        sample.connectMs = average(sample.connectMs, elapsedMs);
+        sample.failures = 0;
+        sample.lastSuccessAt = System.currentTimeMillis();
+        dirty = true;
+    }
+
+    void recordAuth(String url, long elapsedMs) {
+        Sample sample = sampleFor(url);
+        sample.authMs = average(sample.authMs, elapsedMs);
+        dirty = true;
+    }
+
+    void recordFailure(String url) {
+        sampleFor(url).failures++;
+        dirty = true;
+    }
+
+    /**
+     * Order relays for the pool: healthy ones by latency, then unmeasured ones, then failing ones
+     * Ties and unmeasured relays keep the given order, so the configured primary wins until measured otherwise
+     */
+    List<String> rank(List<String> urls) {
+        List<String> healthy = new ArrayList<>();
+        List<String> unmeasured = new ArrayList<>();
+        List<String> failing = new ArrayList<>();
+        for (String url : urls) {
+            Sample sample = samples.get(url);
+            if (sample == null || (sample.connectMs < 0 && sample.failures == 0)) {
+                unmeasured.add(url);
+            } else if (sample.isHealthy()) {
+                healthy.add(url);
+            } else {
+                failing.add(url);
+            }
+        }
+        Collections.sort(healthy, (a, b) -> Double.compare(samples.get(a).latencyMs(), samples.get(b).latencyMs()));
+        List<String> ranked = new ArrayList<>(healthy);
+        ranked.addAll(unmeasured);
+        ranked.addAll(failing);
+        return ranked;
+    }
+
+    /**
+     * Forget the times of relays that are no longer configured, so a removed relay's samples don't pile up
+     */
+    void retain(Collection<String> urls) {
+        if (samples.keySet().retainAll(urls)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Remember the relays the pool was last configured with, for the stats
+     */
+    void setSelected(List<String> urls) {
+        if (urls.equals(selected)) return;
+        selected = new ArrayList<>(urls);
+        dirty = true;
+    }
+
+    /**
+     * Probe the given relays one after another, a round already running is not restarted
+     * @param onDone called on the event loop once every relay was probed or timed out
+     */
+    void probe(List<String> urls, Runnable onDone) {
+        if (probing) return;
+        probing = true;
+        probeNext(new ArrayList<>(urls).iterator(), onDone);
+    }
+
+    /**
+     * Stop the running round, its probe socket is closed without a result
+     */
+    void cancel() {
+        Probe probe = current;
+        current = null;
+        probing = false;
+        if (probe != null) {
+            probe.cancel();
+        }
+    }
+
+    List<String> getSelected() {
+        return selected;
+    }
+
+    private void probeNext(Iterator<String> urls, Runnable onDone) {
+        if (!probing) return;
+        if (!urls.hasNext()) {
+            current = null;
+            probing = false;
+            onDone.run();
+            return;
+        }
+        current = new Probe(urls.next(), () -> probeNext(urls, onDone));
+        current.start();
+    }
+
+    /**
+     * One probe socket, lives until the relay answered, failed or PROBE_TIMEOUT_MS passed
+     */
+    private final class Probe {
+        private final String url;
+        private final Runnable onDone;
+        private final Runnable timeoutRunnable = () -> finish(false, "timeout");
+        private WebSocket webSocket;
+        private long startedAtMs;
+        private long authSentAtMs;
+        private boolean done;
+
+        Probe(String url, Runnable onDone) {
+            this.url = url;
+            this.onDone = onDone;
+        }
+
+        void start() {
+            startedAtMs = SystemClock.elapsedRealtime();
+            sampleFor(url).lastProbeAt = System.currentTimeMillis();
+            handler.postDelayed(timeoutRunnable, PROBE_TIMEOUT_MS);
+            try {
+                webSocket = httpClient.newWebSocket(new Request.Builder().url(url).build(), new WebSocketListener() {
+                    @Override
+                    public void onOpen(WebSocket webSocket, Response response) {
+                        handler.post(() -> handleOpen());
+                    }
+
+                    @Override
+                    public void onMessage(WebSocket webSocket, String text) {
+                        RelayFrame frame = RelayFrame.parse(text);
+                        handler.post(() -> handleFrame(frame));
+                    }
+
+                    @Override
+                    public void onClosing(WebSocket webSocket, int code, String reason) {
+                        webSocket.close(1000, null);
+                        handler.post(() -> finish(false, "closed " + code));
+                    }
+
+                    @Override
+                    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                        handler.post(() -> finish(false, "failure " + t.getClass().getSimpleName()));
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to open probe socket to " + url, e);
+                finish(false, "connect error");
+            }
+        }
+
+        private void handleOpen() {
+            if (done) return;
+            recordConnect(url, SystemClock.elapsedRealtime() - startedAtMs);
+            // limit 0 asks for no stored events, relays that require NIP-42 answer with an AUTH challenge
+            try {
+                JSONObject filter = new JSONObject();
+                filter.put("kinds", new JSONArray().put(20284));
+                filter.put("limit", 0);
+                webSocket.send(new JSONArray().put("REQ").put("probe").put(filter).toString());
+            } catch (JSONException e) {
+                finish(true, "connected");
+            }
+        }
+
+        private void handleFrame(RelayFrame frame) {
+            if (done || !frame.isValid()) return;
+            switch (frame.type()) {
+                case RelayFrame.TYPE_AUTH: {
+                    if (authSentAtMs > 0) return;
+                    String message = authSigner.signAuth(url, frame.stringAt(1));
+                    if (message == null) {
+                        finish(true, "connected, no key for AUTH");
+                        return;
+                    }
+                    authSentAtMs = SystemClock.elapsedRealtime();
+                    webSocket.send(message);
+                    break;
+                }
+                case RelayFrame.TYPE_OK:
+                    if (authSentAtMs > 0) {
+                        recordAuth(url, SystemClock.elapsedRealtime() - authSentAtMs);
+                        finish(true, "authenticated");
+                    }
+                    break;
+                case RelayFrame.TYPE_EOSE:
+                case RelayFrame.TYPE_CLOSED:
+                    // No AUTH asked for, or the relay refused the REQ before challenging
+                    if (authSentAtMs == 0) {
+                        finish(true, "connected");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void cancel() {
+            done = true;
+            handler.removeCallbacks(timeoutRunnable);
+            if (webSocket != null) {
+                webSocket.cancel();
+            }
+        }
+
+        private void finish(boolean success, String reason) {
+            if (done) return;
+            done = true;
+            handler.removeCallbacks(timeoutRunnable);
+            if (!success) {
+                recordFailure(url);
+            }
+            if (webSocket != null) {
+                webSocket.close(1000, "probe done");
+            }
+            Sample sample = samples.get(url);
+            Log.d(TAG, "Probed " + url + ": " + reason + " (connect " + Math.round(sample.connectMs) + "ms, auth "
+                    + Math.round(sample.authMs) + "ms, failures " + sample.failures + ")");
+            onDone.run();
+        }
+    }
+
+    /**
+     * Per-relay times and the current selection, persisted form plus "selected"
+     */
+    JSONObject toJson() throws JSONException {
+        JSONObject relays = new JSONObject();
+        for (Map.Entry<String, Sample> entry : samples.entrySet()) {
+            Sample sample = entry.getValue();
+            JSONObject item = new JSONObject();
+            item.put("connectMs", sample.connectMs);
+            item.put("authMs", sample.authMs);
+            item.put("failures", sample.failures);
+            item.put("lastSuccessAt", sample.lastSuccessAt);
+            item.put("lastProbeAt", sample.lastProbeAt);
+            item.put("healthy", sample.isHealthy());
+            relays.put(entry.getKey(), item);
+        }
+        JSONObject json = new JSONObject();
+        json.put("relays", relays);
+        json.put("selected", new JSONArray(selected));
+        json.put("updatedAt", System.currentTimeMillis());
+        return json;
+    }
+
+    void persist() {
+        if (!dirty) return;
+        try {
+            prefs.edit().putString(KEY_RELAY_LATENCY, toJson().toString()).apply();
+            dirty = false;
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist relay latency", e);
+        }
+    }
+
+    private void load() {
+        String saved = prefs.getString(KEY_RELAY_LATENCY, null);
+        if (saved == null) return;
+        try {
+            JSONObject relays = new JSONObject(saved).optJSONObject("relays");
+            if (relays == null) return;
+            Iterator<String> urls = relays.keys();
+            while (urls.hasNext()) {
+                String url = urls.next();
+                JSONObject item = relays.getJSONObject(url);
+                Sample sample = new Sample();
+                sample.connectMs = item.optDouble("connectMs", -1);
+                sample.authMs = item.optDouble("authMs", -1);
+                sample.failures = item.optInt("failures", 0);
+                sample.lastSuccessAt = item.optLong("lastSuccessAt", 0);
+                sample.lastProbeAt = item.optLong("lastProbeAt", 0);
+                samples.put(url, sample);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to load relay latency, starting over", e);
+        }
+    }
+
+    private Sample sampleFor(String url) {
+        Sample sample = samples.get(url);
+        if (sample == null) {
+            sample = new Sample();
+            samples.put(url, sample);
+        }
+        return sample;
+    }
+
+    private static double average(double current, long value) {
+        return current < 0 ? value : current * (1 - ALPHA) + value * ALPHA;
+    }
+}
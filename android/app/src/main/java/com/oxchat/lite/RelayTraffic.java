@@ -0,0 +1,130 @@
+package com.oxchat.lite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import okio.ByteString;
+import okio.Utf8;
+
+/**
+ * Byte counters of one relay connection, to quantify what permessage-deflate saves on mobile data
+ * Counted per WebSocket message rather than on the TCP socket, the platform TLS socket reads and writes the
+ * socket's file descriptor directly and a wrapped socket sees little or nothing of it
+ * - decoded bytes: UTF-8 size of the messages the app sends and receives
+ * - wire bytes: size of the data frames carrying them, header and payload; with permessage-deflate the payload
+ *   is estimated from the compression ratio of every SAMPLE_INTERVAL-th message, deflated here without context
+ *   takeover, so it is an upper bound for relays that keep their compression context
+ * TLS records, TCP/IP headers, control frames and the HTTP upgrade are not included
+ * Counters are updated from OkHttp's threads and read from the event loop, so they are atomics
+ */
+final class RelayTraffic {
+    static final int COMPRESSION_UNKNOWN = 0; // No handshake completed yet
+    static final int COMPRESSION_NEGOTIATED = 1; // Relay accepted permessage-deflate
+    static final int COMPRESSION_DECLINED = 2; // Relay answered without the extension, frames are uncompressed
+    static final int COMPRESSION_DISABLED = 3; // Relay mishandled the extension, we stopped offering it
+
+    static final int SAMPLE_INTERVAL = 16;
+    // OkHttp deflates outgoing messages from this size on, smaller ones go out as they are
+    static final long MIN_DEFLATE_SIZE = 1024;
+    private static final int MASK_LENGTH = 4; // Client frames are masked
+    private static final double RATIO_ALPHA = 0.2;
+
+    final AtomicLong wireBytesIn = new AtomicLong();
+    final AtomicLong wireBytesOut = new AtomicLong();
+    final AtomicLong decodedBytesIn = new AtomicLong();
+    final AtomicLong decodedBytesOut = new AtomicLong();
+    final AtomicLong messagesIn = new AtomicLong();
+    final AtomicLong messagesOut = new AtomicLong();
+    volatile int compression = COMPRESSION_UNKNOWN;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] deflateBuffer = new byte[4096];
+    private double deflateRatio = -1; // Compressed / decoded size, -1 until the first sample
+
+    void recordMessageIn(String text) {
+        long decodedBytes = Utf8.size(text);
+        long message = messagesIn.incrementAndGet();
+        decodedBytesIn.addAndGet(decodedBytes);
+        long payload = decodedBytes;
+        if (compression == COMPRESSION_NEGOTIATED) {
+            payload = compressedSize(message, decodedBytes, text, null);
+        }
+        wireBytesIn.addAndGet(frameHeaderLength(payload) + payload);
+    }
+
+    void recordMessageIn(ByteString bytes) {
+        long decodedBytes = bytes.size();
+        long message = messagesIn.incrementAndGet();
+        decodedBytesIn.addAndGet(decodedBytes);
+        long payload = decodedBytes;
+        if (compression == COMPRESSION_NEGOTIATED) {
+            payload = compressedSize(message, decodedBytes, null, bytes);
+        }
+        wireBytesIn.addAndGet(frameHeaderLength(payload) + payload);
+    }
+
+    void recordMessageOut(String text) {
+        long decodedBytes = Utf8.size(text);
+        long message = messagesOut.incrementAndGet();
+        decodedBytesOut.addAndGet(decodedBytes);
+        long payload = decodedBytes;
+        if (compression == COMPRESSION_NEGOTIATED && decodedBytes >= MIN_DEFLATE_SIZE) {
+            payload = compressedSize(message, decodedBytes, text, null);
+        }
+        wireBytesOut.addAndGet(frameHeaderLength(payload) + MASK_LENGTH + payload);
+    }
+
+    /**
+     * Current estimate of compressed / decoded size, 1 before anything was sampled
+     */
+    synchronized double getDeflateRatio() {
+        return deflateRatio < 0 ? 1 : deflateRatio;
+    }
+
+    /**
+     * Estimated deflated payload size, sampling the message if it is due
+     */
+    private synchronized long compressedSize(long message, long decodedBytes, String text, ByteString bytes) {
+        if (decodedBytes == 0) return 0;
+        if (deflateRatio < 0 || message % SAMPLE_INTERVAL == 0) {
+            byte[] data = text != null ? text.getBytes(StandardCharsets.UTF_8) : bytes.toByteArray();
+            double ratio = (double) deflatedSize(data) / data.length;
+            deflateRatio = deflateRatio < 0 ? ratio : deflateRatio * (1 - RATIO_ALPHA) + ratio * RATIO_ALPHA;
+        }
+        return Math.max(1, Math.round(decodedBytes * deflateRatio));
+    }
+
+    /**
+     * Raw deflate with a sync flush, minus the 00 00 ff ff tail RFC 7692 strips from every message
+     */
+    private int deflatedSize(byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        int size = 0;
+        int count;
+        do {
+            count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            size += count;
+        } while (count == deflateBuffer.length);
+        return Math.max(1, size - 4);
+    }
+
+    /**
+     * Frame header without the mask: 2 bytes, plus a 16 or 64-bit extended payload length
+     */
+    static int frameHeaderLength(long payloadLength) {
+        if (payloadLength <= 125) return 2;
+        if (payloadLength <= 0xffff) return 4;
+        return 10;
+    }
+
+    static String describeCompression(int compression) {
+        switch (compression) {
+            case COMPRESSION_NEGOTIATED: return "permessage-deflate";
+            case COMPRESSION_DECLINED: return "none";
+            case COMPRESSION_DISABLED: return "disabled";
+            default: return "unknown";
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.oxchat.lite;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded index of event ids the service has already acted on, so relay replays after a reconnect or a
+ * service restart do not wake the app again
+ * Recent ids are kept exactly in an LRU, older ids are remembered by a bloom filter that is persisted to disk
+ * and consulted only for events that may be replays
+ * The bloom filter has two generations: when the current one holds GENERATION_CAPACITY ids it becomes the
+ * previous one and a fresh filter starts, so memory and false positive rate stay bounded forever
+ * With 64 Kbit per generation, 7 hashes and 4096 ids per generation the false positive rate is below 0.2%
+ */
+final class SeenEventIndex {
+    private static final int MAGIC = 0x5345454e; // "SEEN"
+    private static final int VERSION = 1;
+    private static final int LRU_CAPACITY = 2048;
+    private static final int BLOOM_BITS = 1 << 16;
+    private static final int BLOOM_WORDS = BLOOM_BITS / 64;
+    private static final int HASH_COUNT = 7;
+    static final int GENERATION_CAPACITY = 4096;
+
+    private final File file;
+    private final Map<String, Boolean> recent = new LinkedHashMap<String, Boolean>(LRU_CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > LRU_CAPACITY;
+        }
+    };
+    private long[] current = new long[BLOOM_WORDS];
+    private long[] previous = new long[BLOOM_WORDS];
+    private int currentCount;
+    private boolean dirty;
+    private long duplicates;
+
+    SeenEventIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Record an event id
+     * Only possible replays are checked against the bloom filter, a live event newer than anything the relay sent
+     * before can only repeat a recent one, so its false positives would just drop real events
+     * @param mayBeReplay true for catch-up events and events not newer than the relay's watermark
+     * @return true if the id was not seen before, false if it is (probably) a replay
+     */
+    synchronized boolean markSeen(String eventId, boolean mayBeReplay) {
+        if (eventId == null || eventId.isEmpty()) {
+            return true;
+        }
+        if (recent.containsKey(eventId)) {
+            duplicates++;
+            return false;
+        }
+        long h1 = hash1(eventId);
+        long h2 = hash2(eventId, h1);
+        recent.put(eventId, Boolean.TRUE);
+        if (mayBeReplay && (contains(current, h1, h2) || contains(previous, h1, h2))) {
+            duplicates++;
+            return false;
+        }
+        if (currentCount >= GENERATION_CAPACITY) {
+            long[] recycled = previous;
+            Arrays.fill(recycled, 0L);
+            previous = current;
+            current = recycled;
+            currentCount = 0;
+        }
+        add(current, h1, h2);
+        currentCount++;
+        dirty = true;
+        return true;
+    }
+
+    synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Load the persisted bloom filter, a missing or corrupt file leaves the index empty
+     */
+    synchronized void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != BLOOM_BITS
+                    || in.readInt() != HASH_COUNT) {
+                throw new IOException("Unrecognized seen event index format");
+            }
+            int count = in.readInt();
+            long[] loadedCurrent = new long[BLOOM_WORDS];
+            long[] loadedPrevious = new long[BLOOM_WORDS];
+            for (int i = 0; i < BLOOM_WORDS; i++) {
+                loadedCurrent[i] = in.readLong();
+            }
+            for (int i = 0; i < BLOOM_WORDS; i++) {
+                loadedPrevious[i] = in.readLong();
+            }
+            current = loadedCurrent;
+            previous = loadedPrevious;
+            currentCount = Math.max(0, Math.min(count, GENERATION_CAPACITY));
+            dirty = false;
+        }
+    }
+
+    /**
+     * Write the bloom filter to a temp file and rename it over the old one, so a crash never leaves a torn file
+     */
+    synchronized void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(BLOOM_BITS);
+            out.writeInt(HASH_COUNT);
+            out.writeInt(currentCount);
+            for (long word : current) {
+                out.writeLong(word);
+            }
+            for (long word : previous) {
+                out.writeLong(word);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+        dirty = false;
+    }
+
+    private static boolean contains(long[] bits, long h1, long h2) {
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = bitIndex(h1, h2, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(long[] bits, long h1, long h2) {
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = bitIndex(h1, h2, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    // Kirsch-Mitzenmacher double hashing: bit_i = h1 + i * h2
+    private static int bitIndex(long h1, long h2, int i) {
+        return (int) ((h1 + i * h2) & (BLOOM_BITS - 1));
+    }
+
+    /**
+     * Event ids are SHA-256 hex, so their leading bits are already uniform and are used directly
+     * Anything else goes through FNV-1a
+     */
+    private static long hash1(String eventId) {
+        if (eventId.length() >= 32) {
+            try {
+                byte[] bytes = Hex.decode(eventId.subSequence(0, 16));
+                return toLong(bytes);
+            } catch (IllegalArgumentException e) {
+                // Not hex, fall through
+            }
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < eventId.length(); i++) {
+            hash ^= eventId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long hash2(String eventId, long h1) {
+        if (eventId.length() >= 32) {
+            try {
+                byte[] bytes = Hex.decode(eventId.subSequence(16, 32));
+                return toLong(bytes) | 1;
+            } catch (IllegalArgumentException e) {
+                // Not hex, fall through
+            }
+        }
+        long mixed = (h1 ^ (h1 >>> 33)) * 0xff51afd7ed558ccdL;
+        return (mixed ^ (mixed >>> 33)) | 1;
+    }
+
+    private static long toLong(byte[] bytes) {
+        long value = 0;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xff);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,190 @@
+package com.oxchat.lite;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the decoded push signing keys, one per account
+ * Avoids re-reading the encrypted key file, reloading the AndroidKeyStore and running AES-GCM for every AUTH challenge
+ * Key bytes live in one array per account that is zeroed when the idle TTL expires, when KeystoreHelper stores or
+ * clears the key, or when the push service is destroyed; the idle timer is shared, any use keeps all keys alive
+ * Storing a key is also the "key available" signal, the push service listens for it to answer AUTH challenges
+ * that were waiting on the key
+ * Accounts are keyed by lowercase pubkey, as the service and KeystoreHelper's key files are. A key is loaded
+ * outside the lock and published under it, so keyStored() on the main thread never waits on a Keystore load
+ */
+final class SigningKeyCache {
+    private static final String TAG = "SigningKeyCache";
+    static final long DEFAULT_IDLE_TTL_MS = 10 * 60 * 1000; // 10 minutes
+
+    private static final SigningKeyCache INSTANCE = new SigningKeyCache();
+
+    /**
+     * Work that needs the raw key, must not keep a reference to the array
+     */
+    interface KeyConsumer<T> {
+        T apply(byte[] privateKey) throws Exception;
+    }
+
+    /**
+     * Called on the thread that stored the key
+     */
+    interface KeyStoredListener {
+        void onKeyStored(String pubkey);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable expireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "Signing keys idle for " + idleTtlMs + "ms, wiping");
+            invalidate();
+        }
+    };
+
+    private final Map<String, byte[]> keys = new HashMap<>(); // By lowercase account pubkey
+    private long generation; // Bumped by every invalidation, a load that spans one is not published
+    private KeyStoredListener keyStoredListener;
+    private long idleTtlMs = DEFAULT_IDLE_TTL_MS;
+    private long hits;
+    private long misses;
+
+    static SigningKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    private SigningKeyCache() {
+    }
+
+    /**
+     * @param idleTtlMs how long the key may stay in memory without being used, 0 disables caching
+     */
+    synchronized void setIdleTtlMs(long idleTtlMs) {
+        this.idleTtlMs = Math.max(0, idleTtlMs);
+        if (!keys.isEmpty()) {
+            touch();
+        }
+    }
+
+    /**
+     * Run work with an account's private key, loading it from the Keystore on a cache miss
+     * @return the consumer's result, or null if no private key is stored for the account yet
+     */
+    <T> T use(Context context, String pubkey, KeyConsumer<T> consumer) throws Exception {
+        String account = pubkey.toLowerCase();
+        while (true) {
+            long loadGeneration;
+            synchronized (this) {
+                byte[] key = keys.get(account);
+                if (key != null) {
+                    hits++;
+                    return apply(key, consumer);
+                }
+                misses++;
+                loadGeneration = generation;
+            }
+            byte[] loaded = KeystoreHelper.getPrivateKeyBytes(context, account);
+            if (loaded == null) {
+                return null;
+            }
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    byte[] key = keys.get(account);
+                    if (key == null) {
+                        keys.put(account, loaded);
+                        key = loaded;
+                    } else {
+                        // Another thread loaded it meanwhile
+                        Arrays.fill(loaded, (byte) 0);
+                    }
+                    return apply(key, consumer);
+                }
+            }
+            // Invalidated while loading, the key file may have been replaced
+            Arrays.fill(loaded, (byte) 0);
+        }
+    }
+
+    /**
+     * Zero and drop all cached keys
+     */
+    synchronized void invalidate() {
+        generation++;
+        handler.removeCallbacks(expireRunnable);
+        for (byte[] key : keys.values()) {
+            Arrays.fill(key, (byte) 0);
+        }
+        keys.clear();
+    }
+
+    /**
+     * Zero and drop the cached key of one account
+     */
+    synchronized void invalidate(String pubkey) {
+        generation++;
+        byte[] key = keys.remove(pubkey.toLowerCase());
+        if (key != null) {
+            Arrays.fill(key, (byte) 0);
+        }
+        if (keys.isEmpty()) {
+            handler.removeCallbacks(expireRunnable);
+        }
+    }
+
+    synchronized void setKeyStoredListener(KeyStoredListener listener) {
+        keyStoredListener = listener;
+    }
+
+    /**
+     * A new key was stored for the account, drop the old one and signal that the key is available
+     */
+    void keyStored(String pubkey) {
+        String account = pubkey.toLowerCase();
+        KeyStoredListener listener;
+        synchronized (this) {
+            invalidate(account);
+            listener = keyStoredListener;
+        }
+        if (listener != null) {
+            listener.onKeyStored(account);
+        }
+    }
+
+    synchronized boolean isCached(String pubkey) {
+        return keys.containsKey(pubkey.toLowerCase());
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Called with the lock held, so an invalidation cannot zero the key while the consumer reads it
+     */
+    private <T> T apply(byte[] key, KeyConsumer<T> consumer) throws Exception {
+        try {
+            return consumer.apply(key);
+        } finally {
+            touch();
+        }
+    }
+
+    private void touch() {
+        handler.removeCallbacks(expireRunnable);
+        if (idleTtlMs == 0) {
+            invalidate();
+        } else {
+            handler.postDelayed(expireRunnable, idleTtlMs);
+        }
+    }
+}
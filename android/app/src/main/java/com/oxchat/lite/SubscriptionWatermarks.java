@@ -0,0 +1,137 @@
+package com.oxchat.lite;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Highest created_at processed per relay and subscription filter, persisted in the push_service preferences
+ * A reconnect resumes with since = watermark - SKEW_SECONDS, so catch-up only covers the disconnected window
+ * instead of everything the relay retains; the skew absorbs clock differences between senders and relays
+ * Also keeps the timing of the last catch-up (REQ to EOSE) per relay for diagnostics
+ */
+class SubscriptionWatermarks {
+    private static final String TAG = "SubscriptionWatermarks";
+    static final String KEY_WATERMARKS = "subscription_watermarks";
+    static final long SKEW_SECONDS = 120;
+
+    private final SharedPreferences prefs;
+    private final Map<String, Long> watermarks = new HashMap<>();
+    private final Map<String, JSONObject> eoseTimings = new HashMap<>();
+    private boolean dirty;
+
+    SubscriptionWatermarks(SharedPreferences prefs) {
+        this.prefs = prefs;
+        load();
+    }
+
+    /**
+     * since value for a new REQ, or 0 when the relay/filter was never caught up
+     */
+    synchronized long sinceFor(String relay, String filterKey) {
+        Long watermark = watermarks.get(key(relay, filterKey));
+        if (watermark == null || watermark <= 0) {
+            return 0;
+        }
+        return Math.max(0, watermark - SKEW_SECONDS);
+    }
+
+    /**
+     * Highest created_at processed for the relay/filter, 0 if none
+     */
+    synchronized long watermarkFor(String relay, String filterKey) {
+        Long watermark = watermarks.get(key(relay, filterKey));
+        return watermark != null ? watermark : 0;
+    }
+
+    /**
+     * Advance the watermark with an event's created_at
+     * Timestamps ahead of the local clock are clamped to now, so one bad event can't skip real ones
+     */
+    synchronized void advance(String relay, String filterKey, long createdAt) {
+        long now = System.currentTimeMillis() / 1000;
+        long value = Math.min(createdAt, now);
+        String key = key(relay, filterKey);
+        Long watermark = watermarks.get(key);
+        if (value > 0 && (watermark == null || value > watermark)) {
+            watermarks.put(key, value);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Record a finished catch-up: time from REQ to EOSE and number of stored events delivered before EOSE
+     */
+    synchronized void recordEose(String relay, long since, long elapsedMs, int storedEvents) {
+        try {
+            JSONObject timing = new JSONObject();
+            timing.put("since", since);
+            timing.put("elapsedMs", elapsedMs);
+            timing.put("storedEvents", storedEvents);
+            timing.put("at", System.currentTimeMillis());
+            eoseTimings.put(relay, timing);
+            dirty = true;
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to record EOSE timing", e);
+        }
+    }
+
+    synchronized void persist() {
+        if (!dirty) return;
+        try {
+            JSONObject marks = new JSONObject();
+            for (Map.Entry<String, Long> entry : watermarks.entrySet()) {
+                marks.put(entry.getKey(), entry.getValue().longValue());
+            }
+            JSONObject timings = new JSONObject();
+            for (Map.Entry<String, JSONObject> entry : eoseTimings.entrySet()) {
+                timings.put(entry.getKey(), entry.getValue());
+            }
+            JSONObject state = new JSONObject();
+            state.put("watermarks", marks);
+            state.put("eose", timings);
+            prefs.edit().putString(KEY_WATERMARKS, state.toString()).apply();
+            dirty = false;
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist watermarks", e);
+        }
+    }
+
+    private void load() {
+        String saved = prefs.getString(KEY_WATERMARKS, null);
+        if (saved == null) return;
+        try {
+            JSONObject state = new JSONObject(saved);
+            JSONObject marks = state.optJSONObject("watermarks");
+            if (marks != null) {
+                Iterator<String> keys = marks.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    watermarks.put(key, marks.getLong(key));
+                }
+            }
+            JSONObject timings = state.optJSONObject("eose");
+            if (timings != null) {
+                Iterator<String> keys = timings.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    eoseTimings.put(key, timings.getJSONObject(key));
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to load watermarks, catching up from scratch", e);
+            watermarks.clear();
+            eoseTimings.clear();
+        }
+    }
+
+    private static String key(String relay, String filterKey) {
+        return relay + "|" + filterKey;
+    }
+}
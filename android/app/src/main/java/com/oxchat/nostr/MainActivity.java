@@ -7,6 +7,7 @@ import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.WindowManager;
@@ -14,6 +15,7 @@ import android.view.WindowManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.oxchat.lite.AppForegroundTracker;
 import com.oxchat.nostr.channel.AppPreferences;
 import com.oxchat.nostr.util.Constant;
 import com.oxchat.nostr.util.SharedPreUtils;
@@ -30,9 +32,12 @@ import java.util.Objects;
 
 import io.flutter.embedding.android.FlutterFragmentActivity;
 import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.renderer.FlutterUiDisplayListener;
 import io.flutter.plugins.GeneratedPluginRegistrant;
 
 public class MainActivity extends FlutterFragmentActivity {
+    private String warmEngineId; // Engine pre-warmed by the push service, null when starting a new one
+    private long createdAtMs;
 
     public static NewMyEngineIntentBuilder withNewEngine(Class<? extends FlutterFragmentActivity> activityClass) {
         return new NewMyEngineIntentBuilder(activityClass);
@@ -64,9 +69,35 @@ public class MainActivity extends FlutterFragmentActivity {
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS);
+        createdAtMs = SystemClock.elapsedRealtime();
+        // Must be decided before super.onCreate(), which creates the FlutterFragment
+        warmEngineId = WarmFlutterEngine.claim();
         super.onCreate(savedInstanceState);
     }
 
+    @Override
+    public String getCachedEngineId() {
+        return warmEngineId != null ? warmEngineId : super.getCachedEngineId();
+    }
+
+    @Override
+    public boolean shouldDestroyEngineWithHost() {
+        // The warm engine belongs to this activity once claimed, like an engine it created itself
+        return warmEngineId != null || super.shouldDestroyEngineWithHost();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        AppForegroundTracker.getInstance().onActivityStarted();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        AppForegroundTracker.getInstance().onActivityStopped();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -88,9 +119,23 @@ public class MainActivity extends FlutterFragmentActivity {
 
     @Override
     public void configureFlutterEngine(@NonNull FlutterEngine flutterEngine) {
-        GeneratedPluginRegistrant.registerWith(flutterEngine);
-        flutterEngine.getPlugins().add(new AppPreferences());
+        // The warm engine registered its plugins when it was started
+        if (warmEngineId == null) {
+            GeneratedPluginRegistrant.registerWith(flutterEngine);
+            flutterEngine.getPlugins().add(new AppPreferences());
+        }
+        final boolean warm = warmEngineId != null;
+        flutterEngine.getRenderer().addIsDisplayingFlutterUiListener(new FlutterUiDisplayListener() {
+            @Override
+            public void onFlutterUiDisplayed() {
+                flutterEngine.getRenderer().removeIsDisplayingFlutterUiListener(this);
+                WarmFlutterEngine.recordFirstFrame(MainActivity.this, warm, createdAtMs);
+            }
 
+            @Override
+            public void onFlutterUiNoLongerDisplayed() {
+            }
+        });
     }
 
     private void getOpenData(Intent intent) {
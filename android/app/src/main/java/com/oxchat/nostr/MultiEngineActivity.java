@@ -5,6 +5,7 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.oxchat.lite.AppForegroundTracker;
 import com.oxchat.nostr.channel.AppPreferences;
 
 import org.json.JSONException;
@@ -49,6 +50,18 @@ public class MultiEngineActivity extends FlutterFragmentActivity {
     }
 
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        AppForegroundTracker.getInstance().onActivityStarted();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        AppForegroundTracker.getInstance().onActivityStopped();
+    }
+
     @Override
     public void configureFlutterEngine(@NonNull FlutterEngine flutterEngine) {
         GeneratedPluginRegistrant.registerWith(flutterEngine);
@@ -0,0 +1,150 @@
+package com.oxchat.nostr;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.oxchat.lite.AppForegroundTracker;
+import com.oxchat.nostr.channel.AppPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineCache;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+
+/**
+ * FlutterEngine started ahead of time by the push service, so tapping a push notification skips the cold start
+ * The engine runs the Dart warmUpMain entrypoint (VM, plugins, Rust library, modules, theme and localization),
+ * which defers login and runApp until an activity shows it; it is stored in FlutterEngineCache under ENGINE_ID
+ * and MainActivity attaches to it instead of creating a new engine
+ * An engine nobody claims within UNCLAIMED_TTL_MS is destroyed again, so a burst of pushes the user ignores does
+ * not keep the Dart heap alive in the background
+ *
+ * Must be used on the main thread
+ */
+public final class WarmFlutterEngine {
+    private static final String TAG = "WarmFlutterEngine";
+    public static final String ENGINE_ID = "push_warm_engine";
+    static final String WARM_UP_ENTRYPOINT = "warmUpMain";
+    static final long UNCLAIMED_TTL_MS = 10 * 60 * 1000; // 10 minutes
+    private static final String PREFS_NAME = "push_service";
+    private static final String KEY_FIRST_FRAME_STATS = "first_frame_stats";
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static boolean starting;
+    private static long warmedAtMs;
+    private static final Runnable expireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            FlutterEngine engine = FlutterEngineCache.getInstance().get(ENGINE_ID);
+            if (engine != null) {
+                Log.d(TAG, "Warm engine unclaimed for " + UNCLAIMED_TTL_MS + "ms, destroying");
+                FlutterEngineCache.getInstance().remove(ENGINE_ID);
+                engine.destroy();
+            }
+        }
+    };
+
+    private WarmFlutterEngine() {
+    }
+
+    /**
+     * Start the warm engine unless one exists or the app is already visible, safe to call from any thread
+     */
+    public static void warmUp(Context context) {
+        final Context appContext = context.getApplicationContext();
+        mainHandler.post(() -> startIfNeeded(appContext));
+    }
+
+    /**
+     * Hand the warm engine to an activity that is about to be created
+     * The activity owns it from now on and destroys it with itself
+     * @return ENGINE_ID if a warm engine is cached, null to create a new engine
+     */
+    static String claim() {
+        mainHandler.removeCallbacks(expireRunnable);
+        if (!FlutterEngineCache.getInstance().contains(ENGINE_ID)) {
+            return null;
+        }
+        Log.d(TAG, "Claiming warm engine started " + (SystemClock.elapsedRealtime() - warmedAtMs) + "ms ago");
+        return ENGINE_ID;
+    }
+
+    /**
+     * Record the time from activity creation (and process start, for a cold process) to the first Flutter frame
+     * Stats are kept per start type in the push_service preferences for getFirstFrameStats
+     */
+    static void recordFirstFrame(Context context, boolean warm, long activityCreatedAtMs) {
+        long now = SystemClock.elapsedRealtime();
+        long fromActivityMs = now - activityCreatedAtMs;
+        long fromProcessMs = now - Process.getStartElapsedRealtime();
+        String type = warm ? "warm" : "cold";
+        Log.d(TAG, "First frame (" + type + " engine) " + fromActivityMs + "ms after activity create, "
+                + fromProcessMs + "ms after process start");
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        try {
+            String saved = prefs.getString(KEY_FIRST_FRAME_STATS, null);
+            JSONObject stats = saved != null ? new JSONObject(saved) : new JSONObject();
+            JSONObject entry = stats.optJSONObject(type);
+            if (entry == null) {
+                entry = new JSONObject();
+            }
+            int count = entry.optInt("count", 0) + 1;
+            entry.put("count", count);
+            entry.put("lastMs", fromActivityMs);
+            entry.put("lastFromProcessStartMs", fromProcessMs);
+            entry.put("totalMs", entry.optLong("totalMs", 0) + fromActivityMs);
+            entry.put("avgMs", entry.optLong("totalMs", 0) / count);
+            entry.put("updatedAt", System.currentTimeMillis());
+            stats.put(type, entry);
+            prefs.edit().putString(KEY_FIRST_FRAME_STATS, stats.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to record first frame stats", e);
+        }
+    }
+
+    private static void startIfNeeded(Context context) {
+        if (starting || FlutterEngineCache.getInstance().contains(ENGINE_ID)) {
+            return;
+        }
+        if (AppForegroundTracker.getInstance().isForeground()) {
+            // An activity already runs its own engine
+            return;
+        }
+        starting = true;
+        final long startedAtMs = SystemClock.elapsedRealtime();
+        final FlutterLoader loader = FlutterInjector.instance().flutterLoader();
+        loader.startInitialization(context);
+        // Native library and assets are loaded off the main thread, the engine is created once they are ready
+        loader.ensureInitializationCompleteAsync(context, null, mainHandler, () -> {
+            starting = false;
+            if (AppForegroundTracker.getInstance().isForeground()
+                    || FlutterEngineCache.getInstance().contains(ENGINE_ID)) {
+                Log.d(TAG, "App opened while loading, skipping warm engine");
+                return;
+            }
+            try {
+                // Plugins from GeneratedPluginRegistrant are registered by the constructor
+                FlutterEngine engine = new FlutterEngine(context);
+                engine.getPlugins().add(new AppPreferences());
+                engine.getDartExecutor().executeDartEntrypoint(
+                        new DartExecutor.DartEntrypoint(loader.findAppBundlePath(), WARM_UP_ENTRYPOINT));
+                FlutterEngineCache.getInstance().put(ENGINE_ID, engine);
+                warmedAtMs = SystemClock.elapsedRealtime();
+                mainHandler.removeCallbacks(expireRunnable);
+                mainHandler.postDelayed(expireRunnable, UNCLAIMED_TTL_MS);
+                Log.d(TAG, "Warm engine started in " + (warmedAtMs - startedAtMs) + "ms");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to start warm engine", e);
+            }
+        });
+    }
+}
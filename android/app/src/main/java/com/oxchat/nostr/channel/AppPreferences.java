@@ -1,7 +1,6 @@
 package com.oxchat.nostr.channel;
 
 import android.app.Activity;
-import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -12,10 +11,21 @@ import androidx.annotation.NonNull;
 import com.oxchat.nostr.MultiEngineActivity;
 import com.oxchat.nostr.util.SharedPreUtils;
 import com.oxchat.nostr.VoiceCallService;
+import com.oxchat.lite.AppForegroundTracker;
 import com.oxchat.lite.PushNotificationService;
+import com.oxchat.lite.PushServiceClient;
 import com.oxchat.lite.KeystoreHelper;
+import com.oxchat.lite.PushSyncJobService;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.flutter.Log;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
@@ -36,21 +46,60 @@ import io.flutter.plugin.common.MethodChannel;
  */
 public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterPlugin, ActivityAware {
     private static final String OX_PERFERENCES_CHANNEL = "com.oxchat.global/perferences";
+    private static final String OX_APP_FOREGROUND_CHANNEL = "com.oxchat.global/app_foreground";
     private Context mContext;
     private Activity mActivity;
     private MethodChannel.Result mMethodChannelResult;
     private MethodChannel mChannel;
+    private EventChannel mForegroundChannel;
+    private AppForegroundTracker.Listener mForegroundListener;
+    private PushServiceClient mPushServiceClient;
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding binding) {
         mContext = binding.getApplicationContext();
         mChannel = new MethodChannel(binding.getBinaryMessenger(), OX_PERFERENCES_CHANNEL);
         mChannel.setMethodCallHandler(this);
+        // Attaches to the push service whenever it runs, calls fall back to intents and prefs otherwise
+        mPushServiceClient = new PushServiceClient(mContext);
+        mPushServiceClient.bind();
+        // Foreground/background changes are pushed to Dart as they happen, current state first
+        mForegroundChannel = new EventChannel(binding.getBinaryMessenger(), OX_APP_FOREGROUND_CHANNEL);
+        mForegroundChannel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                removeForegroundListener();
+                mForegroundListener = events::success;
+                AppForegroundTracker tracker = AppForegroundTracker.getInstance();
+                tracker.addListener(mForegroundListener);
+                events.success(tracker.isForeground());
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                removeForegroundListener();
+            }
+        });
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+        removeForegroundListener();
+        if (mPushServiceClient != null) {
+            mPushServiceClient.unbind();
+            mPushServiceClient = null;
+        }
+        if (mForegroundChannel != null) {
+            mForegroundChannel.setStreamHandler(null);
+            mForegroundChannel = null;
+        }
+    }
 
+    private void removeForegroundListener() {
+        if (mForegroundListener != null) {
+            AppForegroundTracker.getInstance().removeListener(mForegroundListener);
+            mForegroundListener = null;
+        }
     }
 
     @Override
@@ -108,7 +157,15 @@ public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterP
                 String serverRelay = "";
                 String pubkey = "";
                 String privkey = "";
+                ArrayList<String> standbyRelays = new ArrayList<>();
+                ArrayList<String> candidateRelays = new ArrayList<>();
+                LinkedHashMap<String, String> accountKeys = new LinkedHashMap<>();
+                long keyCacheTtlSeconds = -1;
+                String mode = PushNotificationService.MODE_PERSISTENT;
                 if (paramsMap != null) {
+                    if (PushNotificationService.MODE_SCHEDULED.equals(paramsMap.get("mode"))) {
+                        mode = PushNotificationService.MODE_SCHEDULED;
+                    }
                     if (paramsMap.containsKey("serverRelay")) {
                         serverRelay = (String) paramsMap.get("serverRelay");
                     }
@@ -118,10 +175,56 @@ public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterP
                     if (paramsMap.containsKey("privkey")) {
                         privkey = (String) paramsMap.get("privkey");
                     }
+                    if (paramsMap.get("keyCacheTtlSeconds") instanceof Number) {
+                        keyCacheTtlSeconds = ((Number) paramsMap.get("keyCacheTtlSeconds")).longValue();
+                    }
+                    // Extra accounts share the relay sockets, each as [{pubkey, privkey}]
+                    if (paramsMap.get("accounts") instanceof List) {
+                        for (Object account : (List<?>) paramsMap.get("accounts")) {
+                            if (!(account instanceof Map)) continue;
+                            Object accountPubkey = ((Map<?, ?>) account).get("pubkey");
+                            Object accountPrivkey = ((Map<?, ?>) account).get("privkey");
+                            if (accountPubkey instanceof String && !((String) accountPubkey).isEmpty()) {
+                                accountKeys.put((String) accountPubkey,
+                                        accountPrivkey instanceof String ? (String) accountPrivkey : "");
+                            }
+                        }
+                    }
+                    if (paramsMap.get("standbyRelays") instanceof List) {
+                        for (Object relay : (List<?>) paramsMap.get("standbyRelays")) {
+                            if (relay instanceof String) {
+                                standbyRelays.add((String) relay);
+                            }
+                        }
+                    }
+                    // Relays the service may switch to when they measure faster than the configured ones
+                    if (paramsMap.get("candidateRelays") instanceof List) {
+                        for (Object relay : (List<?>) paramsMap.get("candidateRelays")) {
+                            if (relay instanceof String) {
+                                candidateRelays.add((String) relay);
+                            }
+                        }
+                    }
                 }
-                // Store private key in Android Keystore (encrypted in memory, not in SharedPreferences)
-                if (!privkey.isEmpty()) {
-                    boolean success = KeystoreHelper.storePrivateKey(mContext, privkey);
+                // The single pubkey/privkey pair is the primary account
+                LinkedHashMap<String, String> keys = new LinkedHashMap<>();
+                if (!pubkey.isEmpty()) {
+                    keys.put(pubkey, privkey);
+                }
+                for (Map.Entry<String, String> entry : accountKeys.entrySet()) {
+                    if (!keys.containsKey(entry.getKey())) {
+                        keys.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                ArrayList<String> pubkeys = new ArrayList<>(keys.keySet());
+                // Store private keys in Android Keystore (encrypted in memory, not in SharedPreferences)
+                // A running service answers AUTH challenges waiting on a key as soon as it is stored
+                PushNotificationService.ControlBinder control = mPushServiceClient != null ? mPushServiceClient.get() : null;
+                for (Map.Entry<String, String> entry : keys.entrySet()) {
+                    if (entry.getValue().isEmpty()) continue;
+                    boolean success = control != null
+                            ? control.storeKey(entry.getKey(), entry.getValue())
+                            : KeystoreHelper.storePrivateKey(mContext, entry.getKey(), entry.getValue());
                     if (success) {
                         Log.d("AppPreferences", "Private key stored in Android Keystore");
                     } else {
@@ -132,8 +235,18 @@ public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterP
                 Intent serviceIntent = new Intent(mContext, PushNotificationService.class);
                 serviceIntent.putExtra(PushNotificationService.EXTRA_SERVER_RELAY, serverRelay);
                 // deviceId is optional for Android, service will use pubkey if not provided
-                serviceIntent.putExtra(PushNotificationService.EXTRA_PUBKEY, pubkey);
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                serviceIntent.putExtra(PushNotificationService.EXTRA_PUBKEY, pubkeys.isEmpty() ? pubkey : pubkeys.get(0));
+                serviceIntent.putStringArrayListExtra(PushNotificationService.EXTRA_ACCOUNTS, pubkeys);
+                serviceIntent.putStringArrayListExtra(PushNotificationService.EXTRA_STANDBY_RELAYS, standbyRelays);
+                serviceIntent.putStringArrayListExtra(PushNotificationService.EXTRA_CANDIDATE_RELAYS, candidateRelays);
+                if (keyCacheTtlSeconds >= 0) {
+                    serviceIntent.putExtra(PushNotificationService.EXTRA_KEY_CACHE_TTL_MS, keyCacheTtlSeconds * 1000);
+                }
+                serviceIntent.putExtra(PushNotificationService.EXTRA_MODE, mode);
+                if (PushNotificationService.MODE_SCHEDULED.equals(mode)) {
+                    // Only saves the config and schedules the sync job, never goes foreground
+                    mContext.startService(serviceIntent);
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                     mContext.startForegroundService(serviceIntent);
                 } else {
                     mContext.startService(serviceIntent);
@@ -143,6 +256,9 @@ public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterP
             case "stopPushNotificationService" -> {
                 Intent serviceIntent = new Intent(mContext, PushNotificationService.class);
                 mContext.stopService(serviceIntent);
+                // Scheduled mode keeps the key between sync windows, stopping push ends both
+                PushSyncJobService.cancel(mContext);
+                KeystoreHelper.clearPrivateKey(mContext);
                 result.success(true);
             }
             case "sendAuthResponse" -> {
@@ -150,35 +266,93 @@ public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterP
                 if (paramsMap != null && paramsMap.containsKey("authJson")) {
                     authJson = (String) paramsMap.get("authJson");
                 }
-                // Send auth response to push service
-                Intent serviceIntent = new Intent(mContext, PushNotificationService.class);
-                serviceIntent.setAction("com.oxchat.nostr.SEND_AUTH");
-                serviceIntent.putExtra("authJson", authJson);
-                mContext.startService(serviceIntent);
+                // Send auth response to push service, through the binder when it is connected
+                PushNotificationService.ControlBinder control = mPushServiceClient != null ? mPushServiceClient.get() : null;
+                if (control != null) {
+                    control.sendAuth(authJson);
+                } else {
+                    Intent serviceIntent = new Intent(mContext, PushNotificationService.class);
+                    serviceIntent.setAction(PushNotificationService.ACTION_SEND_AUTH);
+                    serviceIntent.putExtra(PushNotificationService.EXTRA_AUTH_JSON, authJson);
+                    mContext.startService(serviceIntent);
+                }
                 result.success(true);
             }
-            case "getPendingAuthChallenge" -> {
-                // Get pending AUTH challenge from SharedPreferences
-                android.content.SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
-                String challenge = prefs.getString("auth_challenge", "");
-                String relay = prefs.getString("auth_relay", "");
-                if (!challenge.isEmpty() && !relay.isEmpty()) {
-                    HashMap<String, String> resultMap = new HashMap<>();
-                    resultMap.put("challenge", challenge);
-                    resultMap.put("relay", relay);
-                    result.success(resultMap);
+            case "updatePushFilters" -> {
+                // Replace the push accounts of the running service without restarting it, primary first
+                // Refused if an account has no stored key, start the service with that account's privkey instead
+                ArrayList<String> pubkeys = new ArrayList<>();
+                if (paramsMap != null && paramsMap.get("pubkeys") instanceof List) {
+                    for (Object pubkey : (List<?>) paramsMap.get("pubkeys")) {
+                        if (pubkey instanceof String) {
+                            pubkeys.add((String) pubkey);
+                        }
+                    }
+                }
+                PushNotificationService.ControlBinder control = mPushServiceClient != null ? mPushServiceClient.get() : null;
+                if (control != null) {
+                    result.success(control.updateFilters(pubkeys));
                 } else {
-                    result.success(null);
+                    result.success(false);
                 }
             }
-            case "clearPendingAuthChallenge" -> {
-                // Clear pending AUTH challenge
-                android.content.SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
-                prefs.edit()
-                    .remove("auth_challenge")
-                    .remove("auth_relay")
-                    .apply();
-                result.success(true);
+            case "getPushReconnectState" -> {
+                // Snapshot written by the push service reconnect scheduler
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String state = prefs.getString("reconnect_state", "");
+                result.success(state.isEmpty() ? null : jsonToMap(state));
+            }
+            case "getPushConnectionStates" -> {
+                // Relay state machine snapshot and recent transitions written by the push service event loop
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String states = prefs.getString("connection_states", "");
+                result.success(states.isEmpty() ? null : jsonToMap(states));
+            }
+            case "getFirstFrameStats" -> {
+                // Time to first Flutter frame for activities on the pre-warmed engine vs a new engine
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String stats = prefs.getString("first_frame_stats", "");
+                result.success(stats.isEmpty() ? null : jsonToMap(stats));
+            }
+            case "getPushServiceStats" -> {
+                // Connect / AUTH / EVENT-to-notify latency histograms, reconnects by cause, frames and bytes per minute
+                // Live from the running service, or the summary it last persisted
+                PushNotificationService.ControlBinder control = mPushServiceClient != null ? mPushServiceClient.get() : null;
+                if (control != null) {
+                    control.getStats(live -> {
+                        if (live != null) {
+                            result.success(jsonToMap(live.toString()));
+                        } else {
+                            result.success(persistedPushServiceStats());
+                        }
+                    });
+                } else {
+                    result.success(persistedPushServiceStats());
+                }
+            }
+            case "getPushRelayLatency" -> {
+                // Connect / AUTH round-trip per candidate relay and the relays currently selected for the pool
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String latency = prefs.getString("relay_latency", "");
+                result.success(latency.isEmpty() ? null : jsonToMap(latency));
+            }
+            case "getPushPowerStats" -> {
+                // Socket uptime and wakeups per hour, per push mode (persistent socket vs scheduled sync)
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String stats = prefs.getString("power_stats", "");
+                result.success(stats.isEmpty() ? null : jsonToMap(stats));
+            }
+            case "getPushWakeStats" -> {
+                // Wake budget per kind class: allowed and suppressed wakeups, bucket levels
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String stats = prefs.getString("wake_governor", "");
+                result.success(stats.isEmpty() ? null : jsonToMap(stats));
+            }
+            case "getPushTrafficStats" -> {
+                // Per-relay wire vs decoded bytes and permessage-deflate status, refreshed every minute
+                SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+                String stats = prefs.getString("relay_traffic", "");
+                result.success(stats.isEmpty() ? null : jsonToMap(stats));
             }
             case "getAppOpenURL" -> {
                 SharedPreferences preferences = mContext.getSharedPreferences(SharedPreUtils.SP_NAME, Context.MODE_PRIVATE);
@@ -223,20 +397,54 @@ public class AppPreferences implements MethodChannel.MethodCallHandler, FlutterP
         }
     }
 
-    private boolean isAppInBackground() {
-        ActivityManager activityManager = (ActivityManager) mActivity.getSystemService(Context.ACTIVITY_SERVICE);
-        List<ActivityManager.RunningAppProcessInfo> runningApps = activityManager.getRunningAppProcesses();
-        for (ActivityManager.RunningAppProcessInfo processInfo : runningApps) {
-            if (processInfo.processName.equals(mActivity.getPackageName())) {
-                if (processInfo.importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND) {
-                    //ActivityState", "App is in the foreground.  is see
-                    return false;
-                } else {
-                    //ActivityState", "App is in the background.
-                    return true;
-                }
+    /**
+     * Service stats the push service last persisted, for when it is not running
+     */
+    private HashMap<String, Object> persistedPushServiceStats() {
+        SharedPreferences prefs = mContext.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+        String stats = prefs.getString("push_service_stats", "");
+        return stats.isEmpty() ? null : jsonToMap(stats);
+    }
+
+    /**
+     * Convert a JSON object string written by the push service into a map for the method channel
+     */
+    private static HashMap<String, Object> jsonToMap(String json) {
+        try {
+            return jsonObjectToMap(new JSONObject(json));
+        } catch (JSONException e) {
+            Log.e("AppPreferences", "Failed to parse push service state: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static HashMap<String, Object> jsonObjectToMap(JSONObject jsonObject) throws JSONException {
+        HashMap<String, Object> map = new HashMap<>();
+        Iterator<String> keys = jsonObject.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            map.put(key, jsonValueToObject(jsonObject.get(key)));
+        }
+        return map;
+    }
+
+    private static Object jsonValueToObject(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            return jsonObjectToMap((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            ArrayList<Object> list = new ArrayList<>();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                list.add(jsonValueToObject(jsonArray.get(i)));
             }
+            return list;
         }
-        return false;
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    private boolean isAppInBackground() {
+        // Cached by the activity lifecycle, no process list IPC
+        return !AppForegroundTracker.getInstance().isForeground();
     }
 }
@@ -0,0 +1,146 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Byte-for-byte comparison with Jackson's default writer plus String.getBytes(UTF_8), the reference the
+ * serializer replaces, on edge cases and on random events
+ */
+public class CanonicalEventSerializerTest {
+    private static final String PUBKEY = "7e7e9c42a91bfef19fa929e5fda1b72e0ebc1a4c1141673e2794234d86addf4e";
+    private static final String ID = "4376c65d2f232afbe9b882a35baa4f6fe8667c4e684749af565f981833ed6a65";
+    private static final String SIG = "908a15e46fb4d8675bab026fc230a0e3542bfade63da02d542fb78b2a8513fcd"
+            + "0092619a2c8c1221e581946e0191f2af505dfdf8657a414dbca329186f009262";
+    private static final int RANDOM_EVENTS = 500;
+    // Every character class the escaping distinguishes
+    private static final String[] PIECES = {
+            "a", "Z", "0", " ", "\"", "\\", "/", "\b", "\t", "\n", "\f", "\r", "\u0000", "\u0001", "\u001f",
+            "\u007f", "\u0080", "\u00e9", "\u2028", "\u2029", "\u4e2d", "\ufeff", "\uffff", "\ud83d\ude00",
+            "\ud83d", "\ude00", "{", "}", "[", "]", ",", ":"
+    };
+
+    private final CanonicalEventSerializer serializer = new CanonicalEventSerializer();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void matchesJacksonOnEdgeCases() throws Exception {
+        StringBuilder controls = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            controls.append(c);
+        }
+        String[] contents = {
+                "", "plain", controls.toString(), "line\u2028separator\u2029paragraph", "\ud83d\ude00\ud83c\udf89",
+                "lone high \ud83d end", "lone low \ude00 end", "reversed \ude00\ud83d pair", "quote \" slash \\ /",
+                "\u00e9\u4e2d\ufeff", repeat("\ud83d\ude00\"\n", 2000)
+        };
+        String[][][] tagSets = {
+                {},
+                {{}},
+                {{""}},
+                {{"p", PUBKEY}, {"e", ID, "", "reply"}},
+                {{"t", "\u2028"}, {"\u0000", "\ud83d"}},
+        };
+        long[] times = {0, 1, 1700000000L, Long.MAX_VALUE};
+        int[] kinds = {0, 1, 1059, 22242, 65535};
+        int n = 0;
+        for (String content : contents) {
+            for (String[][] tags : tagSets) {
+                assertMatches(times[n % times.length], kinds[n % kinds.length], tags, content);
+                n++;
+            }
+        }
+    }
+
+    @Test
+    public void matchesJacksonOnRandomEvents() throws Exception {
+        Random random = new Random(0x5eedL);
+        for (int i = 0; i < RANDOM_EVENTS; i++) {
+            String[][] tags = new String[random.nextInt(5)][];
+            for (int t = 0; t < tags.length; t++) {
+                tags[t] = new String[random.nextInt(4)];
+                for (int v = 0; v < tags[t].length; v++) {
+                    tags[t][v] = randomString(random, 12);
+                }
+            }
+            long createdAt = random.nextInt(Integer.MAX_VALUE);
+            int kind = random.nextInt(65536);
+            // Now and then longer than the serializer's buffer, so the hash sees several flushes
+            String content = randomString(random, random.nextInt(10) == 0 ? 3000 : 60);
+            assertMatches(createdAt, kind, tags, content);
+        }
+    }
+
+    private void assertMatches(long createdAt, int kind, String[][] tags, String content) throws Exception {
+        List<Object> canonical = Arrays.asList(0, PUBKEY, createdAt, kind, tags, content);
+        byte[] expected = mapper.writeValueAsString(canonical).getBytes(StandardCharsets.UTF_8);
+        String what = "kind " + kind + " content " + escapeForMessage(content);
+
+        assertArrayEquals(what, expected, serializer.serializeCanonical(PUBKEY, createdAt, kind, tags, content));
+        assertEquals(what, Hex.encode(MessageDigest.getInstance("SHA-256").digest(expected)),
+                serializer.computeIdHex(PUBKEY, createdAt, kind, tags, content));
+
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("id", ID);
+        event.put("pubkey", PUBKEY);
+        event.put("created_at", createdAt);
+        event.put("kind", kind);
+        event.put("tags", tags);
+        event.put("content", content);
+        event.put("sig", SIG);
+        assertEquals(what, utf8RoundTrip(mapper.writeValueAsString(event)),
+                serializer.serializeEvent(ID, PUBKEY, createdAt, kind, tags, content, SIG));
+        assertEquals(what, utf8RoundTrip(mapper.writeValueAsString(Arrays.asList("AUTH", event))),
+                serializer.serializeEventMessage("AUTH", ID, PUBKEY, createdAt, kind, tags, content, SIG));
+    }
+
+    /**
+     * The serializer hands back strings decoded from its UTF-8 bytes, unpaired surrogates come back as '?'
+     */
+    private static String utf8RoundTrip(String value) {
+        return new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    private static String randomString(Random random, int maxPieces) {
+        StringBuilder builder = new StringBuilder();
+        int pieces = random.nextInt(maxPieces + 1);
+        for (int i = 0; i < pieces; i++) {
+            builder.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static String escapeForMessage(String value) {
+        StringBuilder builder = new StringBuilder();
+        int length = Math.min(value.length(), 80);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return value.length() > length ? builder + "..." : builder.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import fr.acinq.secp256k1.Secp256k1;
+import fr.acinq.secp256k1.jni.NativeSecp256k1JvmLoader;
+
+/**
+ * NIP-44 v2 against the test vectors of the specification (nip44.vectors.json, v2 section)
+ * The decrypter has no encrypt side, payloads are built here from the JDK's ChaCha20 and HMAC so the fixed-nonce
+ * vectors check both directions and the invalid cases can be made from a valid payload
+ */
+public class Nip44Test {
+    // v2.valid.get_conversation_key: sec1, pub2, conversation_key
+    private static final String[][] CONVERSATION_KEYS = {
+            {"315e59ff51cb9209768cf7da80791ddcaae56ac9775eb25b6dee1234bc5d2268",
+                    "c2f9d9948dc8c7c38321e4b85c8558872eafa0641cd269db76848a6073e69133",
+                    "3dfef0ce2a4d80a25e7a328accf73448ef67096f65f79588e358d9a0eb9013f1"},
+    };
+    // v2.valid.encrypt_decrypt: sec1, sec2, conversation_key, nonce, plaintext, payload
+    private static final String[][] ENCRYPT_DECRYPT = {
+            {"0000000000000000000000000000000000000000000000000000000000000001",
+                    "0000000000000000000000000000000000000000000000000000000000000002",
+                    "c41c775356fd92eadc63ff5a0dc1da211b268cbea22316767095b2871ea1412d",
+                    "0000000000000000000000000000000000000000000000000000000000000001",
+                    "a",
+                    "AgAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAABee0G5VSK0/9YypIObAtDKfYEAjD35uVkHyB0F4DwrcNaCXlCWZKaAr"
+                            + "sGrY6M9wnuTMxWfp1RTN9Xga8no+kF5Vsb"},
+            {"0000000000000000000000000000000000000000000000000000000000000002",
+                    "0000000000000000000000000000000000000000000000000000000000000001",
+                    "c41c775356fd92eadc63ff5a0dc1da211b268cbea22316767095b2871ea1412d",
+                    "f00000000000000000000000000000f00000000000000000000000000000000f",
+                    "\ud83c\udf55\ud83e\udec3",
+                    "AvAAAAAAAAAAAAAAAAAAAPAAAAAAAAAAAAAAAAAAAAAPSKSK6is9ngkX2+cSq85Th16oRTISAOfhStnixqZziKMDvB0QQzgFZ"
+                            + "djLTPicCJaV8nDITO+QfaQ61+KbWQIOO2Yj"},
+            {"5c0c523f52a5b6fad39ed2403092df8cebc36318b39383bca6c00808626fab3a",
+                    "4b22aa260e4acb7021e32f38a6cdf4b673c6a277755bfce287e370c924dc936d",
+                    "3e2b52a63be47d34fe0a80e34e73d436d6963bc8f39827f327057a9986c20a45",
+                    "b635236c42db20f021bb8d1cdff5ca75dd1a0cc72ea742ad750f33010b24f73b",
+                    "\u8868\u30dd\u3042A\u9dd7\u0152\u00e9\uff22\u900d\u00dc\u00df\u00aa\u0105\u00f1\u4e02\u3400"
+                            + "\ud840\udc00",
+                    "ArY1I2xC2yDwIbuNHN/1ynXdGgzHLqdCrXUPMwELJPc7s7JqlCMJBAIIjfkpHReBPXeoMCyuClwgbT419jUWU1PwaNl4FEQYK"
+                            + "CDKVJz+97Mp3K+Q2YGa77B6gpxB/lr1QgoqpDf7wDVrDmOqGoiPjWDqy8KzLueKDcm9BVP8xeTJIxs="},
+    };
+    // v2.valid.calc_padded_len: unpadded, padded
+    private static final int[][] PADDED_LENGTHS = {
+            {16, 32}, {32, 32}, {33, 64}, {37, 64}, {45, 64}, {49, 64}, {64, 64}, {65, 96}, {100, 128},
+            {111, 128}, {200, 224}, {250, 256}, {320, 320}, {383, 384}, {384, 384}, {400, 448}, {500, 512},
+            {512, 512}, {515, 640}, {700, 768}, {800, 896}, {900, 1024}, {1020, 1024}, {65536, 65536}
+    };
+
+    private static Secp256k1 secp256k1;
+    private static Nip44 nip44;
+
+    @BeforeClass
+    public static void loadSecp256k1() throws Exception {
+        secp256k1 = NativeSecp256k1JvmLoader.load();
+        nip44 = new Nip44(secp256k1);
+    }
+
+    @Test
+    public void conversationKeys() {
+        for (String[] vector : CONVERSATION_KEYS) {
+            assertEquals(vector[2], Hex.encode(nip44.conversationKey(Hex.decode(vector[0]), Hex.decode(vector[1]))));
+        }
+        for (String[] vector : ENCRYPT_DECRYPT) {
+            byte[] pub2 = Hex.decode(StandInRelay.xOnlyPublicKey(secp256k1, Hex.decode(vector[1])));
+            byte[] pub1 = Hex.decode(StandInRelay.xOnlyPublicKey(secp256k1, Hex.decode(vector[0])));
+            assertEquals(vector[2], Hex.encode(nip44.conversationKey(Hex.decode(vector[0]), pub2)));
+            // Symmetric
+            assertEquals(vector[2], Hex.encode(nip44.conversationKey(Hex.decode(vector[1]), pub1)));
+        }
+    }
+
+    @Test
+    public void encryptDecryptWithFixedNonce() throws Exception {
+        for (String[] vector : ENCRYPT_DECRYPT) {
+            byte[] conversationKey = Hex.decode(vector[2]);
+            assertEquals(vector[5], encrypt(vector[4], conversationKey, Hex.decode(vector[3])));
+            assertEquals(vector[4], nip44.decrypt(vector[5], conversationKey));
+        }
+    }
+
+    @Test
+    public void paddedLengths() {
+        for (int[] vector : PADDED_LENGTHS) {
+            assertEquals("length " + vector[0], vector[1], Nip44.paddedLength(vector[0]));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidPayloads() throws Exception {
+        String[] valid = ENCRYPT_DECRYPT[2];
+        byte[] conversationKey = Hex.decode(valid[2]);
+        byte[] nonce = Hex.decode(valid[3]);
+        byte[] data = Base64.getDecoder().decode(valid[5]);
+
+        // Unknown encoding and version
+        assertRejected("#" + valid[5].substring(1), conversationKey);
+        byte[] versionOne = data.clone();
+        versionOne[0] = 1;
+        assertRejected(Base64.getEncoder().encodeToString(versionOne), conversationKey);
+        // Invalid base64, too short, too long
+        assertRejected(valid[5].substring(0, 100) + "!!!!" + valid[5].substring(104), conversationKey);
+        assertRejected(valid[5].substring(0, 128), conversationKey);
+        assertRejected(valid[5] + repeat("A", 90_000), conversationKey);
+        assertRejected("", conversationKey);
+
+        // Invalid MAC: a flipped bit in the nonce, the ciphertext or the MAC itself, or another conversation key
+        for (int index : new int[]{1, 40, data.length - 1}) {
+            byte[] tampered = data.clone();
+            tampered[index] ^= 1;
+            assertRejected(Base64.getEncoder().encodeToString(tampered), conversationKey);
+        }
+        assertRejected(valid[5], Hex.decode(ENCRYPT_DECRYPT[0][2]));
+
+        // Valid MAC over invalid padding: length prefix zero, larger than the padding, or padding cut short
+        assertRejected(encryptPadded(new byte[]{0, 0}, 32, conversationKey, nonce), conversationKey);
+        assertRejected(encryptPadded(new byte[]{0, 40, 'a'}, 32, conversationKey, nonce), conversationKey);
+        assertRejected(encryptPadded(new byte[]{0, 1, 'a'}, 16, conversationKey, nonce), conversationKey);
+    }
+
+    private static void assertRejected(String payload, byte[] conversationKey) {
+        try {
+            nip44.decrypt(payload, conversationKey);
+            fail("Accepted invalid payload " + payload);
+        } catch (IllegalArgumentException expected) {
+            // Rejected
+        }
+    }
+
+    /**
+     * Reference NIP-44 v2 encryption with a given nonce
+     */
+    private static String encrypt(String plaintext, byte[] conversationKey, byte[] nonce) throws Exception {
+        byte[] unpadded = plaintext.getBytes(StandardCharsets.UTF_8);
+        byte[] prefixed = new byte[2 + unpadded.length];
+        prefixed[0] = (byte) (unpadded.length >>> 8);
+        prefixed[1] = (byte) unpadded.length;
+        System.arraycopy(unpadded, 0, prefixed, 2, unpadded.length);
+        return encryptPadded(prefixed, Nip44.paddedLength(unpadded.length), conversationKey, nonce);
+    }
+
+    /**
+     * Encrypt length prefix and plaintext as given, zero padded to 2 + paddedLength bytes, with a valid MAC
+     */
+    private static String encryptPadded(byte[] prefixed, int paddedLength, byte[] conversationKey, byte[] nonce)
+            throws Exception {
+        byte[] keys = hkdfExpand(conversationKey, nonce, 76);
+        byte[] padded = Arrays.copyOf(prefixed, 2 + paddedLength);
+        Cipher chacha = Cipher.getInstance("ChaCha20");
+        chacha.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Arrays.copyOfRange(keys, 0, 32), "ChaCha20"),
+                new ChaCha20ParameterSpec(Arrays.copyOfRange(keys, 32, 44), 0));
+        byte[] ciphertext = chacha.doFinal(padded);
+        Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(Arrays.copyOfRange(keys, 44, 76), "HmacSHA256"));
+        hmac.update(nonce);
+        byte[] mac = hmac.doFinal(ciphertext);
+
+        byte[] payload = new byte[1 + nonce.length + ciphertext.length + mac.length];
+        payload[0] = Nip44.VERSION;
+        System.arraycopy(nonce, 0, payload, 1, nonce.length);
+        System.arraycopy(ciphertext, 0, payload, 1 + nonce.length, ciphertext.length);
+        System.arraycopy(mac, 0, payload, 1 + nonce.length + ciphertext.length, mac.length);
+        return Base64.getEncoder().encodeToString(payload);
+    }
+
+    private static byte[] hkdfExpand(byte[] key, byte[] info, int length) throws Exception {
+        Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(key, "HmacSHA256"));
+        byte[] out = new byte[length];
+        byte[] previous = new byte[0];
+        for (int block = 1, written = 0; written < length; block++) {
+            hmac.update(previous);
+            hmac.update(info);
+            hmac.update((byte) block);
+            previous = hmac.doFinal();
+            int count = Math.min(previous.length, length - written);
+            System.arraycopy(previous, 0, out, written, count);
+            written += count;
+        }
+        return out;
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationCoalescerTest {
+    private static final int KIND = PushMessageDecoder.KIND_CHAT_MESSAGE;
+
+    private static final class Summary {
+        final int totalEvents;
+        final Map<String, Integer> groupCounts;
+        final boolean alert;
+        final boolean silent;
+
+        Summary(int totalEvents, Map<String, Integer> groupCounts, boolean alert, boolean silent) {
+            this.totalEvents = totalEvents;
+            this.groupCounts = new HashMap<>(groupCounts);
+            this.alert = alert;
+            this.silent = silent;
+        }
+    }
+
+    private final List<Summary> summaries = new ArrayList<>();
+    private boolean wakeAllowed = true;
+    private int wakeRequests;
+    private NotificationCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        coalescer = new NotificationCoalescer(new Handler(Looper.getMainLooper()), kinds -> {
+            wakeRequests++;
+            return wakeAllowed;
+        }, (totalEvents, groupCounts, previews, alert, silent) ->
+                summaries.add(new Summary(totalEvents, groupCounts, alert, silent)));
+    }
+
+    @Test
+    public void burstIsPostedOncePerWindow() {
+        for (int i = 0; i < 20; i++) {
+            coalescer.onEvent(i % 2 == 0 ? "alice" : "bob", null, KIND);
+        }
+        idle(NotificationCoalescer.WINDOW_MS - 1);
+        assertTrue(summaries.isEmpty());
+
+        idle(1);
+        assertEquals(1, summaries.size());
+        Summary summary = summaries.get(0);
+        assertEquals(20, summary.totalEvents);
+        assertEquals(Integer.valueOf(10), summary.groupCounts.get("alice"));
+        assertEquals(Integer.valueOf(10), summary.groupCounts.get("bob"));
+        assertEquals(1, wakeRequests);
+        assertEquals(20, coalescer.getReceivedEvents());
+        assertEquals(1, coalescer.getPostedSummaries());
+    }
+
+    @Test
+    public void postsNeverComeFasterThanTheMinimumInterval() {
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.WINDOW_MS);
+        assertEquals(1, summaries.size());
+
+        // The next window would end 750 ms later, the floor holds it to 1000 ms after the last post
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.MIN_POST_INTERVAL_MS - 1);
+        assertEquals(1, summaries.size());
+        idle(1);
+        assertEquals(2, summaries.size());
+        // Counts run on until a reset
+        assertEquals(2, summaries.get(1).totalEvents);
+    }
+
+    @Test
+    public void alertsAreRateLimited() {
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.WINDOW_MS);
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.MIN_POST_INTERVAL_MS);
+        assertTrue(summaries.get(0).alert);
+        assertFalse(summaries.get(1).alert);
+        assertFalse(summaries.get(1).silent);
+
+        idle(NotificationCoalescer.ALERT_INTERVAL_MS);
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.WINDOW_MS);
+        assertTrue(summaries.get(2).alert);
+    }
+
+    @Test
+    public void callIsPostedAtOnceAndAlertsAfterAMessageAlert() {
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.WINDOW_MS);
+        assertTrue(summaries.get(0).alert);
+
+        // Within the alert interval and the minimum post interval of the message alert
+        coalescer.onEvent("alice", null, KIND);
+        coalescer.onEvent("alice", null, PushWakeGovernor.KIND_CALL);
+        idle(0);
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.get(1).alert);
+        assertEquals(3, summaries.get(1).totalEvents);
+
+        // The message window it was merged into is not posted again
+        idle(NotificationCoalescer.ALERT_INTERVAL_MS);
+        assertEquals(2, summaries.size());
+    }
+
+    @Test
+    public void windowOverTheWakeBudgetIsSilent() {
+        wakeAllowed = false;
+        coalescer.onEvent("alice", null, KIND);
+        idle(NotificationCoalescer.WINDOW_MS);
+
+        assertTrue(summaries.get(0).silent);
+        assertFalse(summaries.get(0).alert);
+    }
+
+    @Test
+    public void resetDropsPendingEventsAndCounts() {
+        coalescer.onEvent("alice", null, KIND);
+        coalescer.reset();
+        idle(NotificationCoalescer.ALERT_INTERVAL_MS);
+        assertTrue(summaries.isEmpty());
+        assertEquals(0, wakeRequests);
+
+        coalescer.onEvent("bob", null, KIND);
+        idle(NotificationCoalescer.WINDOW_MS);
+        assertEquals(1, summaries.get(0).totalEvents);
+        assertNull(summaries.get(0).groupCounts.get("alice"));
+    }
+
+    @Test
+    public void flushNowPostsRightAway() {
+        coalescer.onEvent("alice", null, KIND);
+        coalescer.flushNow();
+        assertEquals(1, summaries.size());
+
+        idle(NotificationCoalescer.ALERT_INTERVAL_MS);
+        assertEquals(1, summaries.size());
+    }
+
+    private static void idle(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(ms));
+    }
+}
@@ -0,0 +1,88 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushEventVerifierTest {
+    private static final String PUBKEY = "79be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798";
+    private static final String SIG = "908a15e46fb4d8675bab026fc230a0e3542bfade63da02d542fb78b2a8513fcd0092619a2c8c12"
+            + "21e581946e0191f2af505dfdf8657a414dbca329186f009262";
+
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor();
+    private PushEventVerifier verifier;
+
+    @After
+    public void tearDown() {
+        verifier.shutdown();
+        delivery.shutdownNow();
+    }
+
+    @Test
+    public void failingCheckRejectsTheEventAndTheQueueKeepsMoving() throws Exception {
+        // No signer: an event that gets as far as the signature check throws on the worker
+        verifier = new PushEventVerifier(null, 1, delivery);
+        BlockingQueue<Boolean> results = new ArrayBlockingQueue<>(4);
+
+        RelayFrame event = RelayFrame.parse(eventFrame("hello"));
+        delivery.execute(() -> {
+            verifier.submit(event, results::add);
+            verifier.submit(RelayFrame.parse("[\"EOSE\",\"sub\"]"), results::add);
+        });
+        assertEquals(Boolean.FALSE, results.poll(5, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, results.poll(5, TimeUnit.SECONDS));
+
+        // The verifier is idle again, a later frame starts a new batch
+        delivery.execute(() -> verifier.submit(RelayFrame.parse("[\"EOSE\",\"sub\"]"), results::add));
+        assertEquals(Boolean.TRUE, results.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, verifier.getRejectedEvents());
+    }
+
+    @Test(timeout = 10_000)
+    public void failingChecksDoNotStallTheBatch() throws Exception {
+        verifier = new PushEventVerifier(null, 2, delivery);
+        String malformed = "{\"id\":\"x\"}";
+        String[] events = new String[8];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = i % 2 == 0 ? eventJson("event " + i).toString() : malformed;
+        }
+
+        // Both chunks complete, a worker that threw would leave verifyBatch waiting
+        assertArrayEquals(new boolean[events.length], verifier.verifyBatch(events));
+    }
+
+    private static String eventFrame(String content) throws Exception {
+        return new JSONArray().put("EVENT").put("sub").put(eventJson(content)).toString();
+    }
+
+    /**
+     * Event with a correct id and a signature that is never checked
+     */
+    private static JSONObject eventJson(String content) throws Exception {
+        long createdAt = 1700000000;
+        String id = new CanonicalEventSerializer().computeIdHex(PUBKEY, createdAt, 1059, new String[0][], content);
+        return new JSONObject()
+                .put("id", id.toLowerCase())
+                .put("pubkey", PUBKEY)
+                .put("created_at", createdAt)
+                .put("kind", 1059)
+                .put("tags", new JSONArray())
+                .put("content", content)
+                .put("sig", SIG);
+    }
+}
@@ -0,0 +1,291 @@
+package com.oxchat.lite;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import fr.acinq.secp256k1.Secp256k1;
+import fr.acinq.secp256k1.jni.NativeSecp256k1JvmLoader;
+import okhttp3.OkHttpClient;
+
+/**
+ * The push service's relay path for one account, built from the real classes and pointed at {@link StandInRelay}s:
+ * PushRelayPool with its connections, ReconnectScheduler, AdaptiveHeartbeat, SubscriptionWatermarks,
+ * PushEventVerifier, SeenEventIndex and NotificationCoalescer, all on a "PushEventLoop" HandlerThread
+ *
+ * Frames go through the verifier into the service's PushRelayProtocol, which sends the REQs, runs the NIP-42 AUTH
+ * and dedups EVENTs; the listener signs AUTH with a test key instead of the Keystore and counts instead of
+ * notifying: every event that gets through per id, so a test can check exactly-once
+ *
+ * Robolectric pauses background loopers on a fake clock, a ticker advances it with real time so backoff and
+ * coalescing delays run as they do on a device
+ */
+final class PushRelayPathRig implements PushRelayConnection.Listener, PushRelayProtocol.Listener, Closeable {
+    static final String PREFS_NAME = "push_service";
+    private static final long TICK_MS = 10;
+    private static final long LOOP_TIMEOUT_MS = 5000;
+
+    final Secp256k1 secp256k1;
+    final Context context;
+    final SharedPreferences prefs;
+    final String pubkey;
+    final HandlerThread eventLoopThread = new HandlerThread("PushEventLoop");
+    final Handler eventLoop;
+    final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+    final ReconnectScheduler reconnectScheduler;
+    final PushRelayPool relayPool;
+    final SubscriptionWatermarks watermarks;
+    final SeenEventIndex seenEvents;
+    final PushEventVerifier verifier;
+    final NotificationCoalescer coalescer;
+    final PushRelayProtocol protocol;
+
+    // Written on the event loop, read by the test thread
+    final Map<String, AtomicInteger> delivered = new ConcurrentHashMap<>(); // Event id -> times it got through
+    final Map<String, AtomicInteger> framesByRelay = new ConcurrentHashMap<>(); // Verified EVENTs per relay
+    final Map<String, AtomicInteger> firstByRelay = new ConcurrentHashMap<>(); // First deliveries per relay
+    final Map<String, Long> lastEoseAtNs = new ConcurrentHashMap<>();
+    final AtomicInteger eoseCount = new AtomicInteger();
+    final AtomicInteger rejected = new AtomicInteger();
+    final AtomicLong framesHandled = new AtomicLong(); // Every frame out of the verifier
+    final AtomicInteger summaries = new AtomicInteger();
+    final AtomicInteger lastSummaryTotal = new AtomicInteger();
+
+    private final NostrSigner signer;
+    private final byte[] privateKey = new byte[NostrSigner.KEY_LENGTH];
+    private final PushAccount account;
+    private final Thread ticker;
+    private List<String> candidates; // Event loop only, set by select()
+
+    PushRelayPathRig(File stateDir) throws Exception {
+        // Secp256k1.get() would try the Android loader first, the tests run on the JVM library
+        secp256k1 = NativeSecp256k1JvmLoader.load();
+        signer = new NostrSigner(secp256k1);
+        new SecureRandom().nextBytes(privateKey);
+        pubkey = StandInRelay.xOnlyPublicKey(secp256k1, privateKey);
+        account = new PushAccount(pubkey, true, PREFS_NAME, 1);
+        context = RuntimeEnvironment.getApplication();
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        ticker = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(TICK_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ShadowSystemClock.advanceBy(Duration.ofMillis(TICK_MS));
+            }
+        }, "PushRelayPathRig-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+
+        eventLoopThread.start();
+        eventLoop = new Handler(eventLoopThread.getLooper());
+        // Validated Wi-Fi, read by the scheduler on start()
+        networkCapabilities(context.getSystemService(ConnectivityManager.class), true);
+        reconnectScheduler = new ReconnectScheduler(context, eventLoop, prefs);
+        AdaptiveHeartbeat heartbeat = new AdaptiveHeartbeat(prefs);
+        relayPool = new PushRelayPool(httpClient, eventLoop, reconnectScheduler, heartbeat, this);
+        watermarks = new SubscriptionWatermarks(prefs);
+        seenEvents = new SeenEventIndex(new File(stateDir, "push_seen_events.bin"));
+        verifier = new PushEventVerifier(signer, 2, eventLoop::post);
+        coalescer = new NotificationCoalescer(eventLoop, kinds -> true, (totalEvents, groupCounts, previews, alert, silent) -> {
+            lastSummaryTotal.set(totalEvents);
+            summaries.incrementAndGet();
+        });
+        protocol = new PushRelayProtocol(relayPool, watermarks, seenEvents, new CanonicalEventSerializer(), signer,
+                this);
+        onLoop(() -> {
+            reconnectScheduler.start();
+            return null;
+        });
+    }
+
+    /**
+     * Default network with the given validation state, as the shadow ConnectivityManager reports it
+     */
+    private static NetworkCapabilities networkCapabilities(ConnectivityManager connectivityManager,
+                                                           boolean validated) {
+        NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+        shadowOf(capabilities).addTransportType(NetworkCapabilities.TRANSPORT_WIFI);
+        shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        if (validated) {
+            shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        }
+        shadowOf(connectivityManager).setNetworkCapabilities(connectivityManager.getActiveNetwork(), capabilities);
+        return capabilities;
+    }
+
+    /**
+     * Configure the pool with the given relays, the first as primary, and connect them
+     */
+    void connect(List<String> urls) throws Exception {
+        onLoop(() -> {
+            relayPool.configure(urls.get(0), urls.subList(1, urls.size()));
+            relayPool.connectIdle();
+            return null;
+        });
+    }
+
+    /**
+     * Fill the pool from the given ranking and connect new relays, reselecting whenever a relay backs off
+     * @return the pool, primary first
+     */
+    List<String> select(List<String> ranked) throws Exception {
+        return onLoop(() -> {
+            candidates = ranked;
+            return reselect();
+        });
+    }
+
+    private List<String> reselect() {
+        List<String> selection = relayPool.select(candidates);
+        relayPool.connectIdle();
+        return selection;
+    }
+
+    /**
+     * Run on the event loop and wait for the result
+     */
+    <T> T onLoop(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        eventLoop.post(task);
+        return task.get(LOOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    static void await(BooleanSupplier condition, long timeoutMs, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out after " + timeoutMs + " ms waiting for " + what);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Event ids that got through more than once
+     */
+    List<String> duplicates() {
+        List<String> duplicates = new ArrayList<>();
+        for (Map.Entry<String, AtomicInteger> entry : delivered.entrySet()) {
+            if (entry.getValue().get() > 1) duplicates.add(entry.getKey() + " x" + entry.getValue().get());
+        }
+        return duplicates;
+    }
+
+    static int count(Map<String, AtomicInteger> counts, String key) {
+        AtomicInteger count = counts.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void onRelayOpen(PushRelayConnection connection) {
+        protocol.sendSubscriptionRequest(connection, connection.subscriptionFor(pubkey));
+    }
+
+    @Override
+    public void onRelayFrame(PushRelayConnection connection, RelayFrame frame) {
+        verifier.submit(frame, verified -> {
+            framesHandled.incrementAndGet();
+            if (!verified) {
+                rejected.incrementAndGet();
+                return;
+            }
+            protocol.handleFrame(connection, frame);
+        });
+    }
+
+    @Override
+    public void onRelayStateChanged(PushRelayConnection connection, PushRelayConnection.State from,
+                                    PushRelayConnection.State to, String reason) {
+        if (to == PushRelayConnection.State.BACKOFF && candidates != null) {
+            // As the service does: the reconnect is where a standby can take the slot
+            eventLoop.post(this::reselect);
+        }
+    }
+
+    @Override
+    public PushAccount findAccount(String accountPubkey) {
+        return account.pubkey.equals(accountPubkey) ? account : null;
+    }
+
+    @Override
+    public void onEvent(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                        PushAccount account, RelayFrame frame, String eventId, int outcome) {
+        framesByRelay.computeIfAbsent(connection.url, url -> new AtomicInteger()).incrementAndGet();
+        if (outcome == PushRelayProtocol.EVENT_DUPLICATE) return;
+        firstByRelay.computeIfAbsent(connection.url, url -> new AtomicInteger()).incrementAndGet();
+        if (outcome != PushRelayProtocol.EVENT_NEW) return;
+        delivered.computeIfAbsent(eventId, id -> new AtomicInteger()).incrementAndGet();
+        coalescer.onEvent(frame.objectString(2, "pubkey"), null, (int) frame.objectLong(2, "kind", -1));
+    }
+
+    @Override
+    public void onCatchUpDone(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                              long elapsedMs) {
+        lastEoseAtNs.put(connection.url, System.nanoTime());
+        eoseCount.incrementAndGet();
+    }
+
+    @Override
+    public void onAuthChallenge(PushRelayConnection connection, String challenge) {
+        List<PushRelayConnection> connections = Collections.singletonList(connection);
+        String[] authMessages = protocol.createAuthEvents(connections, pubkey, privateKey);
+        protocol.sendAuth(connection, connection.subscriptionFor(pubkey), authMessages[0]);
+    }
+
+    @Override
+    public void onAuthAccepted(PushRelayConnection connection, PushRelayConnection.Subscription subscription,
+                               long authMs) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            onLoop(() -> {
+                relayPool.disconnectAll();
+                reconnectScheduler.stop();
+                return null;
+            });
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            verifier.shutdown();
+            eventLoopThread.quitSafely();
+            ticker.interrupt();
+            httpClient.dispatcher().executorService().shutdown();
+            httpClient.connectionPool().evictAll();
+        }
+    }
+}
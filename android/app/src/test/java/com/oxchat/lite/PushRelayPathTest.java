@@ -0,0 +1,238 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Load test of the push relay path: the real pool, scheduler, verifier, protocol and coalescer against three
+ * stand-in relays, failing on any missed or duplicate delivery, on slow reconnects and on heap that keeps growing
+ * Reports frame throughput, the reconnect latency distribution and heap after GC per soak round on stdout
+ * Scale with -DpushRelayPath.events=2000 -DpushRelayPath.drops=20 -DpushRelayPath.rounds=20
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushRelayPathTest {
+    private static final int EVENTS = Integer.getInteger("pushRelayPath.events", 300);
+    private static final int DROPS = Integer.getInteger("pushRelayPath.drops", 5);
+    private static final int ROUNDS = Integer.getInteger("pushRelayPath.rounds", 5);
+    private static final int RELAYS = 3;
+    // First retry after a drop waits a uniform share of the first backoff ceiling, at worst the base delay stretched
+    // by poor health, then connect, AUTH and catch-up take up to HANDSHAKE_MS
+    private static final long HANDSHAKE_MS = 1000;
+    private static final long WORST_CEILING_MS = ReconnectScheduler.BASE_DELAY_MS * ReconnectScheduler.MAX_HEALTH_FACTOR;
+    private static final long RECONNECT_P50_BUDGET_MS = WORST_CEILING_MS / 2 + HANDSHAKE_MS;
+    private static final long RECONNECT_P90_BUDGET_MS = WORST_CEILING_MS * 9 / 10 + HANDSHAKE_MS;
+    private static final long RECONNECT_BUDGET_MS = WORST_CEILING_MS + HANDSHAKE_MS;
+    // The seen-event index grows by a few hundred bytes per event until it is full, everything else is bounded
+    private static final long HEAP_GROWTH_BUDGET_PER_ROUND = 256 * 1024;
+    private static final long PHASE_TIMEOUT_MS = 30_000;
+
+    @Rule
+    public TemporaryFolder stateDir = new TemporaryFolder();
+
+    private PushRelayPathRig rig;
+    private final List<StandInRelay> relays = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+    private final Set<String> expected = new HashSet<>();
+
+    @Before
+    public void setUp() throws Exception {
+        rig = new PushRelayPathRig(stateDir.getRoot());
+        for (int i = 0; i < RELAYS; i++) {
+            StandInRelay relay = new StandInRelay(rig.secp256k1);
+            relays.add(relay);
+            urls.add(relay.start());
+        }
+        rig.connect(urls);
+        PushRelayPathRig.await(() -> rig.eoseCount.get() >= RELAYS, PHASE_TIMEOUT_MS, "every relay to reach EOSE");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        rig.close();
+        for (StandInRelay relay : relays) {
+            relay.close();
+        }
+    }
+
+    @Test
+    public void deliversEveryEventOnceAcrossRelaysAndDrops() throws Exception {
+        List<String> events = relays.get(0).signEvents(rig.pubkey, EVENTS);
+        String forged = forge(events.get(0));
+        List<String> flood = new ArrayList<>(events);
+        flood.add(forged);
+        long framesBefore = rig.framesHandled.get();
+        long floodStartNs = System.nanoTime();
+        streamToAll(flood);
+        awaitDelivered(events, "flood");
+        // Each relay sent the forged event once, none of them got through
+        PushRelayPathRig.await(() -> rig.rejected.get() >= RELAYS, PHASE_TIMEOUT_MS, "forged event rejections");
+        long floodFrames = (long) RELAYS * flood.size();
+        PushRelayPathRig.await(() -> rig.framesHandled.get() - framesBefore >= floodFrames, PHASE_TIMEOUT_MS,
+                "every flood frame");
+        long floodMs = Math.max(1, elapsedMs(floodStartNs));
+        log("flood: %d frames from %d relays in %d ms, %.0f frames/s", floodFrames, RELAYS, floodMs,
+                floodFrames * 1000.0 / floodMs);
+
+        List<Long> reconnectMs = new ArrayList<>();
+        for (int drop = 0; drop < DROPS; drop++) {
+            int eoseBefore = rig.eoseCount.get();
+            long droppedAtNs = System.nanoTime();
+            for (StandInRelay relay : relays) {
+                relay.dropAll();
+            }
+            // Stored while the sockets are down, they come back with the catch-up after the reconnect
+            List<String> missed = relays.get(0).signEvents(rig.pubkey, Math.max(1, EVENTS / 10));
+            streamToAll(missed);
+            PushRelayPathRig.await(() -> rig.eoseCount.get() >= eoseBefore + RELAYS, PHASE_TIMEOUT_MS,
+                    "EOSE after drop " + (drop + 1));
+            for (String url : urls) {
+                reconnectMs.add((rig.lastEoseAtNs.get(url) - droppedAtNs) / 1_000_000);
+            }
+            awaitDelivered(missed, "catch-up after drop " + (drop + 1));
+        }
+
+        Collections.sort(reconnectMs);
+        long p50 = percentile(reconnectMs, 50);
+        long p90 = percentile(reconnectMs, 90);
+        long slowest = reconnectMs.get(reconnectMs.size() - 1);
+        log("reconnect: %d samples, p50 %d ms, p90 %d ms, p99 %d ms, max %d ms", reconnectMs.size(), p50, p90,
+                percentile(reconnectMs, 99), slowest);
+        assertTrue("Reconnect to EOSE p50 " + p50 + " ms, budget " + RECONNECT_P50_BUDGET_MS + " ms: " + reconnectMs,
+                p50 <= RECONNECT_P50_BUDGET_MS);
+        assertTrue("Reconnect to EOSE p90 " + p90 + " ms, budget " + RECONNECT_P90_BUDGET_MS + " ms: " + reconnectMs,
+                p90 <= RECONNECT_P90_BUDGET_MS);
+        assertTrue("Reconnect to EOSE took " + slowest + " ms, budget " + RECONNECT_BUDGET_MS + " ms: " + reconnectMs,
+                slowest <= RECONNECT_BUDGET_MS);
+        assertEquals(expected, rig.delivered.keySet());
+        assertEquals(Collections.emptyList(), rig.duplicates());
+
+        // One notification total for everything since the last reset, however many windows it took
+        rig.onLoop(() -> {
+            rig.coalescer.flushNow();
+            return null;
+        });
+        assertEquals(expected.size(), rig.lastSummaryTotal.get());
+        assertTrue(rig.summaries.get() < expected.size());
+    }
+
+    @Test
+    public void slowRelayLosesTheRaceWithoutDuplicates() throws Exception {
+        StandInRelay slow = relays.get(0);
+        slow.bytesPerSecond = 64 * 1024;
+        slow.frameDelayMs = 50;
+        List<String> events = slow.signEvents(rig.pubkey, EVENTS);
+        streamToAll(events);
+        awaitDelivered(events, "flood");
+        // The slow relay's copies still arrive, each must be recognised as a duplicate
+        String slowUrl = urls.get(0);
+        PushRelayPathRig.await(() -> PushRelayPathRig.count(rig.framesByRelay, slowUrl) >= EVENTS, PHASE_TIMEOUT_MS,
+                "every event from the slow relay");
+
+        assertEquals(expected, rig.delivered.keySet());
+        assertEquals(Collections.emptyList(), rig.duplicates());
+        int slowFirst = PushRelayPathRig.count(rig.firstByRelay, slowUrl);
+        assertTrue("Slow relay delivered " + slowFirst + " of " + EVENTS + " events first", slowFirst < EVENTS / 10);
+    }
+
+    @Test
+    public void heapStaysFlatOverFloodAndDropRounds() throws Exception {
+        List<Long> heap = new ArrayList<>();
+        for (int round = 1; round <= ROUNDS; round++) {
+            List<String> events = relays.get(0).signEvents(rig.pubkey, EVENTS);
+            long framesBefore = rig.framesHandled.get();
+            // Not stored, the stand-in relays' own history would be counted as growth of the path
+            for (StandInRelay relay : relays) {
+                relay.stream(rig.pubkey, events, false);
+            }
+            awaitDelivered(events, "soak flood " + round);
+            PushRelayPathRig.await(() -> rig.framesHandled.get() - framesBefore >= (long) RELAYS * EVENTS,
+                    PHASE_TIMEOUT_MS, "every soak frame " + round);
+            assertEquals(expected, rig.delivered.keySet());
+            assertEquals(Collections.emptyList(), rig.duplicates());
+            // Checked, so the test's own bookkeeping does not grow with the rounds
+            expected.clear();
+            rig.delivered.clear();
+            // Robolectric keeps every Log line in memory, on a device they go to logcat
+            ShadowLog.clear();
+            int eoseBefore = rig.eoseCount.get();
+            for (StandInRelay relay : relays) {
+                relay.dropAll();
+            }
+            PushRelayPathRig.await(() -> rig.eoseCount.get() >= eoseBefore + RELAYS, PHASE_TIMEOUT_MS,
+                    "soak reconnect " + round);
+            heap.add(usedHeapAfterGc());
+            log("soak %d/%d: heap %d KiB after GC", round, ROUNDS, heap.get(heap.size() - 1) / 1024);
+        }
+
+        if (ROUNDS < 2) return;
+        // From the first round on, so class loading and the pool's warm-up are not counted as growth
+        long growthPerRound = (heap.get(heap.size() - 1) - heap.get(0)) / (ROUNDS - 1);
+        log("soak: %+d KiB heap per round over %d rounds", growthPerRound / 1024, ROUNDS - 1);
+        assertTrue("Heap grew " + growthPerRound / 1024 + " KiB per round: " + heap,
+                growthPerRound <= HEAP_GROWTH_BUDGET_PER_ROUND);
+    }
+
+    private void streamToAll(List<String> events) {
+        for (StandInRelay relay : relays) {
+            relay.stream(rig.pubkey, events, true);
+        }
+    }
+
+    private void awaitDelivered(List<String> events, String phase) throws InterruptedException {
+        for (String event : events) {
+            expected.add(StandInRelay.eventId(event));
+        }
+        PushRelayPathRig.await(() -> rig.delivered.keySet().containsAll(expected), PHASE_TIMEOUT_MS,
+                phase + ", " + expected.size() + " events");
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(sorted.size() * percent / 100.0) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static long elapsedMs(long startNs) {
+        return (System.nanoTime() - startNs) / 1_000_000;
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println(String.format(Locale.US, format, args));
+    }
+
+    /**
+     * Same id and signature, content changed after signing
+     */
+    private static String forge(String event) throws Exception {
+        JSONObject forged = new JSONObject(event);
+        forged.put("content", "forged");
+        return forged.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Failover of the relay pool: three of four stand-in relays pooled, the fourth a candidate, the primary fails
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushRelayPoolTest {
+    private static final int RELAYS = PushRelayPool.MAX_RELAYS + 1;
+    private static final int EVENTS = 50;
+    private static final long PHASE_TIMEOUT_MS = 30_000;
+
+    @Rule
+    public TemporaryFolder stateDir = new TemporaryFolder();
+
+    private PushRelayPathRig rig;
+    private final List<StandInRelay> relays = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+    private final Set<String> expected = new HashSet<>();
+
+    @Before
+    public void setUp() throws Exception {
+        rig = new PushRelayPathRig(stateDir.getRoot());
+        for (int i = 0; i < RELAYS; i++) {
+            StandInRelay relay = new StandInRelay(rig.secp256k1);
+            relays.add(relay);
+            urls.add(relay.start());
+        }
+        assertEquals(urls.subList(0, PushRelayPool.MAX_RELAYS), rig.select(urls));
+        PushRelayPathRig.await(() -> rig.eoseCount.get() >= PushRelayPool.MAX_RELAYS, PHASE_TIMEOUT_MS,
+                "the pooled relays to reach EOSE");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        rig.close();
+        for (StandInRelay relay : relays) {
+            relay.close();
+        }
+    }
+
+    @Test
+    public void standbysDeliverWhileThePrimaryIsDown() throws Exception {
+        relays.get(0).close();
+
+        List<String> events = relays.get(1).signEvents(rig.pubkey, EVENTS);
+        streamToAll(events);
+        awaitDelivered(events, "events while the primary is down");
+
+        assertEquals(expected, rig.delivered.keySet());
+        assertEquals(Collections.emptyList(), rig.duplicates());
+    }
+
+    @Test
+    public void failingRelayHandsItsSlotToTheCandidate() throws Exception {
+        String failing = urls.get(0);
+        String candidate = urls.get(PushRelayPool.MAX_RELAYS);
+        rig.onLoop(() -> {
+            for (PushRelayConnection connection : rig.relayPool.getConnections()) {
+                if (connection.url.equals(failing)) {
+                    // A history of failed connects
+                    while (connection.health.getScore() >= PushRelayPool.MIN_SCORE) {
+                        connection.health.recordFailure();
+                    }
+                }
+            }
+            return null;
+        });
+        relays.get(0).close();
+
+        PushRelayPathRig.await(() -> rig.lastEoseAtNs.containsKey(candidate), PHASE_TIMEOUT_MS,
+                "the candidate to take the failing relay's slot");
+        List<String> pool = rig.onLoop(() -> pooledUrls());
+        assertFalse(pool.contains(failing));
+        assertTrue(pool.contains(candidate));
+
+        List<String> events = relays.get(1).signEvents(rig.pubkey, EVENTS);
+        streamToAll(events);
+        awaitDelivered(events, "events after the failover");
+        assertEquals(expected, rig.delivered.keySet());
+        assertEquals(Collections.emptyList(), rig.duplicates());
+    }
+
+    @Test
+    public void healthiestOpenRelayBecomesPrimary() throws Exception {
+        List<String> selection = rig.onLoop(() -> {
+            for (PushRelayConnection connection : rig.relayPool.getConnections()) {
+                if (connection.url.equals(urls.get(0))) {
+                    // Late with every event, still healthy enough to keep its slot
+                    for (int i = 0; i < 10; i++) {
+                        connection.health.recordEvent(false);
+                    }
+                }
+            }
+            return rig.relayPool.select(urls);
+        });
+
+        assertEquals(urls.get(1), selection.get(0));
+        assertEquals(new HashSet<>(urls.subList(0, PushRelayPool.MAX_RELAYS)), new HashSet<>(selection));
+    }
+
+    private List<String> pooledUrls() {
+        List<String> pooled = new ArrayList<>();
+        for (PushRelayConnection connection : rig.relayPool.getConnections()) {
+            pooled.add(connection.url);
+        }
+        return pooled;
+    }
+
+    private void streamToAll(List<String> events) {
+        for (StandInRelay relay : relays) {
+            relay.stream(rig.pubkey, events, true);
+        }
+    }
+
+    private void awaitDelivered(List<String> events, String phase) throws InterruptedException {
+        for (String event : events) {
+            expected.add(StandInRelay.eventId(event));
+        }
+        PushRelayPathRig.await(() -> rig.delivered.keySet().containsAll(expected), PHASE_TIMEOUT_MS,
+                phase + ", " + expected.size() + " events");
+    }
+}
@@ -0,0 +1,67 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushTelemetryTest {
+    private SharedPreferences prefs;
+    private PushTelemetry telemetry;
+
+    @Before
+    public void setUp() {
+        prefs = RuntimeEnvironment.getApplication().getSharedPreferences("push_service", Context.MODE_PRIVATE);
+        telemetry = new PushTelemetry(prefs);
+        telemetry.recordConnect(120);
+        telemetry.recordAuthRoundTrip(80);
+        telemetry.recordReconnect("closed 1006");
+        telemetry.sampleMinute(Collections.emptyList());
+    }
+
+    @Test
+    public void summaryWithinTheWindowIsKept() throws Exception {
+        long since = telemetry.toJson().getLong("since");
+        assertFalse(telemetry.rollIfExpired(since + PushTelemetry.SUMMARY_TTL_MS));
+
+        JSONObject stats = telemetry.toJson();
+        assertEquals(1, stats.getJSONObject("connect").getLong("count"));
+        assertEquals(1, stats.getLong("reconnects"));
+    }
+
+    @Test
+    public void expiredSummaryStartsOverWhileRunning() throws Exception {
+        long since = telemetry.toJson().getLong("since");
+        long expired = since + PushTelemetry.SUMMARY_TTL_MS + 1;
+        assertTrue(telemetry.rollIfExpired(expired));
+
+        JSONObject stats = telemetry.toJson();
+        assertEquals(expired, stats.getLong("since"));
+        assertEquals(0, stats.getJSONObject("connect").getLong("count"));
+        assertEquals(0, stats.getJSONObject("authRoundTrip").getLong("count"));
+        assertEquals(0, stats.getLong("reconnects"));
+        assertEquals(0, stats.getJSONObject("reconnectCauses").length());
+        assertEquals(0, stats.getJSONArray("minutes").length());
+
+        // The new window records as usual and is what gets persisted
+        telemetry.recordConnect(40);
+        telemetry.persist();
+        PushTelemetry restored = new PushTelemetry(prefs);
+        assertEquals(1, restored.toJson().getJSONObject("connect").getLong("count"));
+        assertEquals(expired, restored.toJson().getLong("since"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PushWakeGovernorTest {
+    private static final int DIRECT_BURST = 5;
+    private static final int GROUP_BURST = 2;
+
+    private SharedPreferences prefs;
+    private PushWakeGovernor governor;
+
+    @Before
+    public void setUp() {
+        prefs = RuntimeEnvironment.getApplication().getSharedPreferences("push_service", Context.MODE_PRIVATE);
+        governor = new PushWakeGovernor(prefs);
+    }
+
+    @Test
+    public void windowCostsOneWakeHoweverManyEventsItHolds() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            governor.recordEvent(PushMessageDecoder.KIND_CHAT_MESSAGE);
+        }
+        assertTrue(governor.tryWake(kinds(PushMessageDecoder.KIND_CHAT_MESSAGE)));
+
+        JSONObject direct = classStats("direct");
+        assertEquals(50, direct.getLong("events"));
+        assertEquals(1, direct.getLong("allowed"));
+        assertEquals(DIRECT_BURST - 1, direct.getDouble("tokens"), 0.01);
+    }
+
+    @Test
+    public void spentWindowIsSuppressedOnce() throws Exception {
+        for (int i = 0; i < GROUP_BURST; i++) {
+            assertTrue(governor.tryWake(kinds(PushWakeGovernor.KIND_GROUP_PUSH)));
+        }
+        assertFalse(governor.tryWake(kinds(PushWakeGovernor.KIND_GROUP_PUSH)));
+
+        assertEquals(1, classStats("group").getLong("suppressed"));
+        assertEquals(1, governor.getSuppressed());
+    }
+
+    @Test
+    public void windowFallsBackToAnotherClassWithBudget() throws Exception {
+        for (int i = 0; i < GROUP_BURST; i++) {
+            governor.tryWake(kinds(PushWakeGovernor.KIND_GROUP_PUSH));
+        }
+
+        assertTrue(governor.tryWake(kinds(PushWakeGovernor.KIND_GROUP_PUSH, PushMessageDecoder.KIND_CHAT_MESSAGE)));
+        assertEquals(0, governor.getSuppressed());
+    }
+
+    @Test
+    public void callsAlwaysWake() {
+        for (int i = 0; i < 20; i++) {
+            assertTrue(governor.tryWake(kinds(PushWakeGovernor.KIND_CALL)));
+        }
+        assertFalse(governor.tryWake(Collections.emptySet()));
+    }
+
+    @Test
+    public void levelsSurviveARestart() throws Exception {
+        for (int i = 0; i < GROUP_BURST; i++) {
+            governor.tryWake(kinds(PushWakeGovernor.KIND_GROUP_PUSH));
+        }
+        governor.persist();
+
+        assertFalse(new PushWakeGovernor(prefs).tryWake(kinds(PushWakeGovernor.KIND_GROUP_PUSH)));
+    }
+
+    private JSONObject classStats(String name) throws Exception {
+        return governor.toJson().getJSONObject("classes").getJSONObject(name);
+    }
+
+    private static Set<Integer> kinds(int... kinds) {
+        Set<Integer> set = new HashSet<>();
+        for (int kind : kinds) {
+            set.add(kind);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,159 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+
+import okhttp3.OkHttpClient;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ReconnectSchedulerTest {
+    private static final String RELAY = "ws://127.0.0.1:1/";
+
+    private Context context;
+    private SharedPreferences prefs;
+    private ConnectivityManager connectivityManager;
+    private Handler handler;
+    private ReconnectScheduler scheduler;
+    private PushRelayConnection connection;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        prefs = context.getSharedPreferences("push_service", Context.MODE_PRIVATE);
+        connectivityManager = context.getSystemService(ConnectivityManager.class);
+        handler = new Handler(Looper.getMainLooper());
+        setCapabilities(false);
+        scheduler = new ReconnectScheduler(context, handler, prefs);
+        scheduler.start();
+        connection = new PushRelayConnection(RELAY, new OkHttpClient(), handler, scheduler,
+                new AdaptiveHeartbeat(prefs), new PushRelayConnection.Listener() {
+                    @Override
+                    public void onRelayOpen(PushRelayConnection connection) {
+                    }
+
+                    @Override
+                    public void onRelayFrame(PushRelayConnection connection, RelayFrame frame) {
+                    }
+
+                    @Override
+                    public void onRelayStateChanged(PushRelayConnection connection, PushRelayConnection.State from,
+                                                    PushRelayConnection.State to, String reason) {
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        connection.disconnect("test done");
+        scheduler.stop();
+    }
+
+    @Test
+    public void unvalidatedNetworkRetriesAtTheLongestBackoff() throws Exception {
+        scheduler.schedule(connection);
+
+        JSONObject pending = pending();
+        assertFalse(pending.optBoolean("parked"));
+        long delay = pending.getLong("nextAttemptAt") - System.currentTimeMillis();
+        assertTrue("delay " + delay, delay <= ReconnectScheduler.MAX_DELAY_MS);
+        assertEquals(PushRelayConnection.State.IDLE, connection.getState());
+    }
+
+    @Test
+    public void validationCutsTheBackoffShort() {
+        scheduler.schedule(connection);
+
+        validate(true);
+
+        assertEquals(PushRelayConnection.State.CONNECTING, connection.getState());
+        assertEquals(0, connection.reconnectAttempts);
+    }
+
+    @Test
+    public void noNetworkParksUntilOneAppears() throws Exception {
+        Network network = connectivityManager.getActiveNetwork();
+        scheduler.networkCallback.onLost(network);
+        scheduler.schedule(connection);
+        assertTrue(pending().getBoolean("parked"));
+
+        // Back, but not validated: a backoff timer instead of waiting for validation that may never come
+        validate(false);
+        assertFalse(pending().optBoolean("parked"));
+        assertTrue(pending().has("nextAttemptAt"));
+    }
+
+    @Test
+    public void poorHealthStretchesTheBackoff() throws Exception {
+        validate(true);
+        long healthyMax = maxDelay(20);
+        for (int i = 0; i < 20; i++) {
+            connection.health.recordFailure();
+        }
+        long unhealthyMax = maxDelay(20);
+
+        assertTrue("healthy " + healthyMax, healthyMax <= ReconnectScheduler.BASE_DELAY_MS);
+        assertTrue("unhealthy " + unhealthyMax, unhealthyMax > ReconnectScheduler.BASE_DELAY_MS);
+        assertTrue("unhealthy " + unhealthyMax,
+                unhealthyMax <= ReconnectScheduler.BASE_DELAY_MS * ReconnectScheduler.MAX_HEALTH_FACTOR);
+    }
+
+    /**
+     * Longest first-attempt delay over the given number of schedules
+     */
+    private long maxDelay(int samples) throws Exception {
+        long max = 0;
+        for (int i = 0; i < samples; i++) {
+            connection.reconnectAttempts = 0;
+            long before = System.currentTimeMillis();
+            scheduler.schedule(connection);
+            max = Math.max(max, pending().getLong("nextAttemptAt") - before);
+        }
+        scheduler.cancel(connection);
+        return max;
+    }
+
+    private JSONObject pending() throws Exception {
+        JSONArray pending = new JSONObject(prefs.getString(ReconnectScheduler.KEY_RECONNECT_STATE, "{}"))
+                .getJSONArray("pending");
+        assertEquals(1, pending.length());
+        return pending.getJSONObject(0);
+    }
+
+    private NetworkCapabilities setCapabilities(boolean validated) {
+        NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+        shadowOf(capabilities).addTransportType(NetworkCapabilities.TRANSPORT_WIFI);
+        shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        if (validated) {
+            shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        }
+        shadowOf(connectivityManager).setNetworkCapabilities(connectivityManager.getActiveNetwork(), capabilities);
+        return capabilities;
+    }
+
+    private void validate(boolean validated) {
+        NetworkCapabilities capabilities = setCapabilities(validated);
+        scheduler.networkCallback.onCapabilitiesChanged(connectivityManager.getActiveNetwork(), capabilities);
+    }
+}
@@ -0,0 +1,159 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import okio.ByteString;
+
+public class RelayFrameTest {
+    private static final String EVENT = "[\"EVENT\",\"sub-1\",{\"id\":\"4376c65d2f232afbe9b882a35baa4f6fe8667c4e684749af"
+            + "565f981833ed6a65\",\"pubkey\":\"7e7e9c42a91bfef19fa929e5fda1b72e0ebc1a4c1141673e2794234d86addf4e\","
+            + "\"created_at\":1700000000,\"kind\":1059,\"tags\":[[\"p\",\"id\"],[\"e\",\"]\\\"}\"]],"
+            + "\"content\":\"{\\\"id\\\":\\\"inner\\\"}\",\"sig\":\"00\"}]";
+
+    @Test
+    public void typeAndSubscriptionId() {
+        assertFrame(RelayFrame.TYPE_EVENT, "sub-1", EVENT);
+        assertFrame(RelayFrame.TYPE_EOSE, "sub-1", "[\"EOSE\",\"sub-1\"]");
+        assertFrame(RelayFrame.TYPE_CLOSED, "sub-1", "[\"CLOSED\",\"sub-1\",\"auth-required: sign in\"]");
+        assertFrame(RelayFrame.TYPE_OK, "4376c65d", "[\"OK\",\"4376c65d\",true,\"\"]");
+        assertFrame(RelayFrame.TYPE_AUTH, "challenge", "[\"AUTH\",\"challenge\"]");
+        assertFrame(RelayFrame.TYPE_NOTICE, "slow down", " [ \"NOTICE\" ,\n\"slow down\" ] ");
+        assertFrame(RelayFrame.TYPE_UNKNOWN, "sub-1", "[\"COUNT\",\"sub-1\",{\"count\":3}]");
+        // A type has to be a string of exactly that name
+        assertFrame(RelayFrame.TYPE_UNKNOWN, "sub-1", "[\"EVENTS\",\"sub-1\"]");
+        assertFrame(RelayFrame.TYPE_UNKNOWN, "sub-1", "[1,\"sub-1\"]");
+
+        RelayFrame ok = RelayFrame.parse("[\"OK\",\"4376c65d\",true,\"\"]");
+        assertTrue(ok.booleanAt(2));
+        assertEquals("", ok.stringAt(3));
+        assertFalse(RelayFrame.parse("[\"OK\",\"4376c65d\",false,\"blocked\"]").booleanAt(2));
+        assertEquals(0, RelayFrame.parse("[]").size());
+    }
+
+    @Test
+    public void escapedQuotesAndBracketsInStrings() {
+        RelayFrame frame = RelayFrame.parse("[\"NOTICE\",\"say \\\"hi\\\" [or] {not}\",\"\\\\\",\"a\\/b\\n\"]");
+        assertTrue(frame.isValid());
+        assertEquals(4, frame.size());
+        assertEquals("say \"hi\" [or] {not}", frame.stringAt(1));
+        assertEquals("\\", frame.stringAt(2));
+        assertEquals("a/b\n", frame.stringAt(3));
+    }
+
+    @Test
+    public void nestedObjectsAndArrays() {
+        RelayFrame frame = RelayFrame.parse(EVENT);
+        assertTrue(frame.isValid());
+        assertEquals(3, frame.size());
+        assertEquals("4376c65d2f232afbe9b882a35baa4f6fe8667c4e684749af565f981833ed6a65", frame.objectString(2, "id"));
+        assertEquals(1700000000L, frame.objectLong(2, "created_at", 0));
+        assertEquals(1059L, frame.objectLong(2, "kind", 0));
+        assertEquals("{\"id\":\"inner\"}", frame.objectString(2, "content"));
+        // Only members of the event itself, "id" inside tags or content is never matched
+        assertNull(frame.objectString(2, "p"));
+        assertNull(frame.objectString(2, "tags"));
+        assertEquals(-1L, frame.objectLong(2, "missing", -1));
+        assertEquals(-1L, frame.objectLong(2, "pubkey", -1));
+        assertNull(frame.objectString(1, "id"));
+        assertTrue(frame.rawAt(2).startsWith("{\"id\":") && frame.rawAt(2).endsWith("\"sig\":\"00\"}"));
+
+        RelayFrame negative = RelayFrame.parse("[\"EVENT\",\"s\",{\"tags\":[[],[[\"x\"]]],\"created_at\":-5}]");
+        assertEquals(-5L, negative.objectLong(2, "created_at", 0));
+    }
+
+    @Test
+    public void surrogatePairs() {
+        String emoji = "\ud83d\ude00";
+        // Escaped pair, decoded to the same two chars
+        assertEquals("hi " + emoji, RelayFrame.parse("[\"NOTICE\",\"hi \\ud83d\\ude00\"]").stringAt(1));
+        assertEquals("\u00e9", RelayFrame.parse("[\"NOTICE\",\"\\u00E9\"]").stringAt(1));
+        // Sent as is, in a text frame and as UTF-8 bytes
+        String frame = "[\"NOTICE\",\"hi " + emoji + " \u4e2d\"]";
+        assertEquals("hi " + emoji + " \u4e2d", RelayFrame.parse(frame).stringAt(1));
+        assertEquals("hi " + emoji + " \u4e2d",
+                RelayFrame.parse(ByteString.encodeString(frame, StandardCharsets.UTF_8)).stringAt(1));
+    }
+
+    @Test
+    public void byteStringReadsLikeText() {
+        RelayFrame text = RelayFrame.parse(EVENT);
+        RelayFrame bytes = RelayFrame.parse(ByteString.encodeString(EVENT, StandardCharsets.UTF_8));
+        assertTrue(bytes.isValid());
+        assertEquals(text.type(), bytes.type());
+        assertEquals(text.size(), bytes.size());
+        assertEquals(text.stringAt(1), bytes.stringAt(1));
+        assertEquals(text.objectString(2, "id"), bytes.objectString(2, "id"));
+        assertEquals(text.objectString(2, "content"), bytes.objectString(2, "content"));
+        assertEquals(text.objectLong(2, "created_at", 0), bytes.objectLong(2, "created_at", 0));
+        assertEquals(text.rawAt(2), bytes.rawAt(2));
+
+        String utf8 = "[\"NOTICE\",\"\u00e9\"]";
+        assertEquals(utf8.length(), RelayFrame.parse(utf8).rawLength());
+        assertEquals(utf8.length() + 1,
+                RelayFrame.parse(ByteString.encodeString(utf8, StandardCharsets.UTF_8)).rawLength());
+    }
+
+    @Test
+    public void elementsPastTheLimitAreCountedButNotKept() {
+        RelayFrame frame = RelayFrame.parse("[\"X\",\"1\",\"2\",\"3\",\"4\",\"5\",\"6\",[\"7\"],\"8\"]");
+        assertTrue(frame.isValid());
+        assertEquals(9, frame.size());
+        assertEquals("5", frame.stringAt(5));
+        assertNull(frame.stringAt(6));
+        assertNull(frame.rawAt(7));
+        assertNull(frame.stringAt(-1));
+    }
+
+    @Test
+    public void malformedAndTruncatedFrames() {
+        String[] malformed = {
+                "",
+                "   ",
+                "{\"EVENT\":1}",
+                "\"EVENT\"",
+                "[\"EVENT\"",
+                "[\"EVENT\",",
+                "[\"EVENT\",\"sub",
+                "[\"EVENT\",\"sub\",{\"id\":\"abc\"",
+                "[\"EVENT\",\"sub\",{\"tags\":[[\"p\"]}",
+                "[\"EVENT\" \"sub\"]",
+                "[\"EVENT\",,\"sub\"]",
+                "[\"NOTICE\",\"ends in a backslash\\",
+        };
+        for (String text : malformed) {
+            RelayFrame frame = RelayFrame.parse(text);
+            assertFalse(text, frame.isValid());
+            assertEquals(text, RelayFrame.TYPE_UNKNOWN, frame.type());
+            assertFalse(text, RelayFrame.parse(ByteString.encodeString(text, StandardCharsets.UTF_8)).isValid());
+        }
+        // A malformed event object is only noticed when it is read
+        RelayFrame frame = RelayFrame.parse("[\"EVENT\",\"sub\",{\"id\" 1,\"kind\":1}]");
+        assertTrue(frame.isValid());
+        assertNull(frame.objectString(2, "id"));
+        assertEquals(-1L, frame.objectLong(2, "kind", -1));
+    }
+
+    @Test
+    public void brokenUnicodeEscapesAreKeptRaw() {
+        assertEquals("a\\u12", RelayFrame.parse("[\"NOTICE\",\"a\\u12\"]").stringAt(1));
+        assertEquals("\\u", RelayFrame.parse("[\"NOTICE\",\"\\u\"]").stringAt(1));
+        assertEquals("\\uZZZZ!", RelayFrame.parse("[\"NOTICE\",\"\\uZZZZ!\"]").stringAt(1));
+        // parseInt would take the sign
+        assertEquals("\\u+041", RelayFrame.parse("[\"NOTICE\",\"\\u+041\"]").stringAt(1));
+        assertEquals("A\\u00", RelayFrame.parse("[\"NOTICE\",\"\\u0041\\u00\"]").stringAt(1));
+    }
+
+    private static void assertFrame(int type, String secondElement, String text) {
+        RelayFrame frame = RelayFrame.parse(text);
+        assertTrue(text, frame.isValid());
+        assertEquals(text, type, frame.type());
+        assertEquals(text, secondElement, frame.stringAt(1));
+    }
+}
@@ -0,0 +1,62 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class RelayLatencyProberTest {
+    private static final String KEPT = "wss://kept.example";
+    private static final String REMOVED = "wss://removed.example";
+
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() {
+        prefs = RuntimeEnvironment.getApplication().getSharedPreferences("push_service", Context.MODE_PRIVATE);
+    }
+
+    @Test
+    public void retainForgetsRelaysNoLongerConfigured() throws Exception {
+        RelayLatencyProber prober = newProber();
+        prober.recordConnect(KEPT, 120);
+        prober.recordConnect(REMOVED, 80);
+        prober.persist();
+
+        prober.retain(Arrays.asList(KEPT));
+        prober.persist();
+
+        JSONObject relays = saved();
+        assertTrue(relays.has(KEPT));
+        assertFalse(relays.has(REMOVED));
+        // A restart doesn't bring the removed relay back
+        assertEquals(Arrays.asList(KEPT, REMOVED), newProber().rank(Arrays.asList(KEPT, REMOVED)));
+    }
+
+    private RelayLatencyProber newProber() {
+        return new RelayLatencyProber(new OkHttpClient(), new Handler(Looper.getMainLooper()), prefs,
+                (relayUrl, challenge) -> null);
+    }
+
+    private JSONObject saved() throws Exception {
+        return new JSONObject(prefs.getString(RelayLatencyProber.KEY_RELAY_LATENCY, "{}")).getJSONObject("relays");
+    }
+}
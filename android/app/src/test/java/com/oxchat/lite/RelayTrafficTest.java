@@ -0,0 +1,77 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import okio.ByteString;
+
+public class RelayTrafficTest {
+    private static final String EVENT = "[\"EVENT\",\"sub\",{\"id\":\"4376c65d2f232afbe9b882a35baa4f6fe8667c4e684749af"
+            + "565f981833ed6a65\",\"pubkey\":\"7e7e9c42a91bfef19fa929e5fda1b72e0ebc1a4c1141673e2794234d86addf4e\","
+            + "\"created_at\":1700000000,\"kind\":1059,\"tags\":[[\"p\",\"7e7e9c42a91bfef19fa929e5fda1b72e0ebc1a4c"
+            + "1141673e2794234d86addf4e\"]],\"content\":\"\",\"sig\":\"908a15e46fb4d8675bab026fc230a0e3542bfade63"
+            + "da02d542fb78b2a8513fcd0092619a2c8c1221e581946e0191f2af505dfdf8657a414dbca329186f009262\"}]";
+
+    @Test
+    public void uncompressedFramesAreCountedExactly() {
+        RelayTraffic traffic = new RelayTraffic();
+        traffic.compression = RelayTraffic.COMPRESSION_DECLINED;
+
+        traffic.recordMessageIn("[\"EOSE\",\"sub\"]"); // 14 bytes, 2-byte header
+        traffic.recordMessageIn(repeat("a", 200)); // 16-bit length
+        traffic.recordMessageIn(ByteString.of(new byte[70_000])); // 64-bit length
+        assertEquals(14 + 200 + 70_000, traffic.decodedBytesIn.get());
+        assertEquals(14 + 2 + 200 + 4 + 70_000 + 10, traffic.wireBytesIn.get());
+        assertEquals(3, traffic.messagesIn.get());
+
+        // Client frames carry a 4-byte mask
+        traffic.recordMessageOut("[\"CLOSE\",\"sub\"]");
+        assertEquals(15, traffic.decodedBytesOut.get());
+        assertEquals(15 + 2 + 4, traffic.wireBytesOut.get());
+    }
+
+    @Test
+    public void decodedSizeIsUtf8() {
+        RelayTraffic traffic = new RelayTraffic();
+        traffic.recordMessageIn("\u00e9\u4e2d\ud83d\ude00");
+        assertEquals(2 + 3 + 4, traffic.decodedBytesIn.get());
+    }
+
+    @Test
+    public void negotiatedCompressionShrinksWireEstimate() {
+        RelayTraffic traffic = new RelayTraffic();
+        traffic.compression = RelayTraffic.COMPRESSION_NEGOTIATED;
+        for (int i = 0; i < 2 * RelayTraffic.SAMPLE_INTERVAL; i++) {
+            traffic.recordMessageIn(EVENT);
+        }
+
+        assertTrue(traffic.getDeflateRatio() < 0.9);
+        assertTrue(traffic.wireBytesIn.get() < traffic.decodedBytesIn.get());
+    }
+
+    @Test
+    public void smallOutgoingMessagesAreNotDeflated() {
+        RelayTraffic traffic = new RelayTraffic();
+        traffic.compression = RelayTraffic.COMPRESSION_NEGOTIATED;
+        traffic.recordMessageIn(EVENT);
+
+        String request = "[\"REQ\",\"sub\",{\"kinds\":[1059],\"#p\":[\"7e7e9c42\"]}]";
+        traffic.recordMessageOut(request);
+        long size = request.length();
+        assertEquals(size + RelayTraffic.frameHeaderLength(size) + 4, traffic.wireBytesOut.get());
+
+        String large = "[\"EVENT\"," + repeat(EVENT, 10) + "]";
+        traffic.recordMessageOut(large);
+        assertTrue(traffic.wireBytesOut.get() - size - 6 < large.length());
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.oxchat.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+public class SeenEventIndexTest {
+    // Above the LRU capacity, so the first ids are only left in the bloom filter
+    private static final int EVICTING_COUNT = 4000;
+
+    @Rule
+    public TemporaryFolder stateDir = new TemporaryFolder();
+
+    @Test
+    public void recentDuplicateIsDroppedLiveOrReplayed() throws Exception {
+        SeenEventIndex index = newIndex();
+        assertTrue(index.markSeen(eventId(1), false));
+        assertFalse(index.markSeen(eventId(1), false));
+        assertFalse(index.markSeen(eventId(1), true));
+        assertEquals(2, index.getDuplicates());
+    }
+
+    @Test
+    public void bloomFilterOnlyRejectsPossibleReplays() throws Exception {
+        SeenEventIndex index = newIndex();
+        for (int i = 0; i < EVICTING_COUNT; i++) {
+            index.markSeen(eventId(i), false);
+        }
+
+        // Out of the LRU: a catch-up replay is caught by the filter, a live event is not filtered at all
+        assertFalse(index.markSeen(eventId(0), true));
+        assertTrue(index.markSeen(eventId(1), false));
+    }
+
+    @Test
+    public void replayAfterRestartIsDropped() throws Exception {
+        SeenEventIndex index = newIndex();
+        assertTrue(index.markSeen(eventId(7), false));
+        index.save();
+
+        SeenEventIndex restarted = newIndex();
+        restarted.load();
+        assertFalse(restarted.markSeen(eventId(7), true));
+        assertTrue(restarted.markSeen(eventId(8), true));
+    }
+
+    private SeenEventIndex newIndex() {
+        return new SeenEventIndex(new File(stateDir.getRoot(), "push_seen_events.bin"));
+    }
+
+    private static String eventId(int n) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(("event " + n).getBytes(StandardCharsets.UTF_8));
+        return Hex.encode(hash);
+    }
+}
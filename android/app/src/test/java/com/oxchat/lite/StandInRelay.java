@@ -0,0 +1,494 @@
+package com.oxchat.lite;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+import fr.acinq.secp256k1.Secp256k1;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Utf8;
+
+/**
+ * Local stand-in for the push relay, speaking the NIP-01 / NIP-42 subset the push service uses
+ * Runs on OkHttp's MockWebServer, every upgrade request gets its own session, so reconnects just work
+ *
+ * - REQ from an unauthenticated session is answered with an AUTH challenge and CLOSED "auth-required"
+ *   (requireAuth), the AUTH event is checked like a real relay: kind 22242, relay and challenge tags,
+ *   created_at within AUTH_MAX_SKEW_S, recomputed id and BIP-340 signature
+ * - REQ after AUTH replays the stored events matching #h and since, then EOSE
+ * - signEvents() signs kind 20284 events for a group, stream() sends them to every matching subscription
+ * - dropAll() cuts every socket without a close frame, closeAll() closes them with 1001
+ * - frameDelayMs adds latency to every outgoing frame, bytesPerSecond paces frames by their size; both queue
+ *   each frame behind the previous one of its session, like a slow relay or a congested link
+ * - start(tls) serves wss:// with the given server certificate, for the reconnect handshake phase
+ *
+ * Used by the relay path tests and by the push-harness handshake measurement, which compiles it from here
+ * OkHttp calls each session from its socket's reader thread, subscriptions and the paced frame queue are also
+ * used by stream() and are guarded by the session lock
+ */
+final class StandInRelay implements Closeable {
+    static final int KIND_AUTH = 22242;
+    static final int KIND_PUSH = 20284;
+    static final long AUTH_MAX_SKEW_S = 600;
+
+    volatile boolean requireAuth = true;
+    volatile long frameDelayMs;
+    volatile long bytesPerSecond; // 0 for no bandwidth limit
+
+    final AtomicLong framesSent = new AtomicLong();
+    final AtomicLong authAccepted = new AtomicLong();
+    final AtomicLong authRejected = new AtomicLong();
+    final AtomicLong connections = new AtomicLong();
+
+    private final MockWebServer server = new MockWebServer();
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final List<Socket> acceptedSockets = new CopyOnWriteArrayList<>();
+    private final List<StoredEvent> stored = Collections.synchronizedList(new ArrayList<>());
+    private final ScheduledExecutorService delayedSender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StandInRelay-delay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Secp256k1 secp256k1;
+    private final NostrSigner signer;
+    private final CanonicalEventSerializer serializer = new CanonicalEventSerializer();
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] authorKey = new byte[NostrSigner.KEY_LENGTH];
+    private final String authorPubkey;
+    private final AtomicLong eventSequence = new AtomicLong();
+    private String url;
+
+    private static final class StoredEvent {
+        final String group;
+        final long createdAt;
+        final String json;
+
+        StoredEvent(String group, long createdAt, String json) {
+            this.group = group;
+            this.createdAt = createdAt;
+            this.json = json;
+        }
+    }
+
+    StandInRelay(Secp256k1 secp256k1) {
+        this.secp256k1 = secp256k1;
+        signer = new NostrSigner(secp256k1);
+        random.nextBytes(authorKey);
+        authorPubkey = xOnlyPublicKey(secp256k1, authorKey);
+    }
+
+    /**
+     * Start listening on a free local port
+     * @return ws:// url of the relay
+     */
+    String start() throws IOException {
+        return start(null);
+    }
+
+    /**
+     * Start listening on a free local port, over TLS when a server socket factory is given
+     * @return ws:// url of the relay, or wss://localhost url with TLS so the certificate and DNS lookup apply
+     */
+    String start(SSLSocketFactory tls) throws IOException {
+        server.setServerSocketFactory(new ServerSocketFactory() {
+            @Override
+            public ServerSocket createServerSocket() throws IOException {
+                return new TrackingServerSocket();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                connections.incrementAndGet();
+                return new MockResponse().withWebSocketUpgrade(new Session());
+            }
+        });
+        if (tls != null) {
+            server.useHttps(tls, false);
+        }
+        server.start();
+        url = tls != null
+                ? "wss://localhost:" + server.getPort() + "/"
+                : "ws://" + server.getHostName() + ":" + server.getPort() + "/";
+        return url;
+    }
+
+    String url() {
+        return url;
+    }
+
+    /**
+     * Number of sessions with an open socket
+     */
+    int openSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Sign count push events for a group, signing is kept out of the streaming so it does not cap throughput
+     * @return bare event objects for stream()
+     */
+    List<String> signEvents(String group, int count) {
+        long createdAt = System.currentTimeMillis() / 1000;
+        String[][] tags = {{"h", group}};
+        byte[] id = new byte[CanonicalEventSerializer.ID_LENGTH];
+        List<String> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String content = "push " + eventSequence.incrementAndGet();
+            serializer.computeId(authorPubkey, createdAt, KIND_PUSH, tags, content, id, 0);
+            String message = serializer.serializeEventMessage("EVENT", Hex.encode(id), authorPubkey, createdAt,
+                    KIND_PUSH, tags, content, Hex.encode(signer.sign(id, authorKey)));
+            // serializeEventMessage gives ["EVENT",{...}], sessions need the bare event to add their sub id
+            events.add(message.substring("[\"EVENT\",".length(), message.length() - 1));
+        }
+        return events;
+    }
+
+    /**
+     * Stream events of a group to every subscription on it
+     * @param store keep the events for the replay after the next REQ, like a relay with storage
+     */
+    void stream(String group, List<String> events, boolean store) {
+        long createdAt = System.currentTimeMillis() / 1000;
+        for (String event : events) {
+            if (store) {
+                stored.add(new StoredEvent(group, createdAt, event));
+            }
+            for (Session session : sessions) {
+                session.deliver(group, event);
+            }
+        }
+    }
+
+    /**
+     * Drop every socket without a close handshake, what a NAT timeout or a dead radio looks like to the client
+     */
+    void dropAll() {
+        // Server-side WebSockets can't be cancelled, reset the accepted TCP sockets instead
+        // Only the sockets seen here are removed, a client reconnecting meanwhile keeps its socket and session
+        for (Socket socket : new ArrayList<>(acceptedSockets)) {
+            try {
+                socket.setSoLinger(true, 0);
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            acceptedSockets.remove(socket);
+        }
+        // Sessions of the reset sockets remove themselves in onFailure
+    }
+
+    /**
+     * Close every socket with 1001 going away, like a relay restart
+     */
+    void closeAll() {
+        for (Session session : new ArrayList<>(sessions)) {
+            session.socket.close(1001, "going away");
+            sessions.remove(session);
+        }
+    }
+
+    void clearStored() {
+        stored.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        dropAll();
+        delayedSender.shutdownNow();
+        server.shutdown();
+    }
+
+    /**
+     * Event id of a bare event object from signEvents()
+     */
+    static String eventId(String event) {
+        try {
+            return new JSONObject(event).getString("id");
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static String xOnlyPublicKey(Secp256k1 secp256k1, byte[] privateKey) {
+        byte[] uncompressed = secp256k1.pubkeyCreate(privateKey);
+        return Hex.encode(uncompressed, 1, 32);
+    }
+
+    /**
+     * Remembers accepted sockets so dropAll() can reset them
+     */
+    private final class TrackingServerSocket extends ServerSocket {
+        TrackingServerSocket() throws IOException {
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = new Socket();
+            implAccept(socket);
+            acceptedSockets.removeIf(Socket::isClosed);
+            acceptedSockets.add(socket);
+            return socket;
+        }
+    }
+
+    /**
+     * Frame waiting for its turn on a paced session
+     */
+    private static final class PacedFrame {
+        final String frame;
+        final long sendAtNs;
+
+        PacedFrame(String frame, long sendAtNs) {
+            this.frame = frame;
+            this.sendAtNs = sendAtNs;
+        }
+    }
+
+    /**
+     * One client socket
+     */
+    private final class Session extends WebSocketListener {
+        private WebSocket socket;
+        private final String challenge = Hex.encode(randomBytes(16));
+        private String authedPubkey; // Reader thread only
+        private final Map<String, List<String>> subscriptions = new HashMap<>(); // sub id -> #h groups, under lock
+        private final ArrayDeque<PacedFrame> paced = new ArrayDeque<>(); // Under lock, in send order
+        private long linkFreeAtNs; // When the last paced frame is through the link, under lock
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            socket = webSocket;
+            sessions.add(this);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            try {
+                JSONArray message = new JSONArray(text);
+                switch (message.optString(0)) {
+                    case "REQ":
+                        handleReq(message);
+                        break;
+                    case "AUTH":
+                        handleAuth(message.getJSONObject(1));
+                        break;
+                    case "CLOSE":
+                        synchronized (this) {
+                            subscriptions.remove(message.optString(1));
+                        }
+                        break;
+                    default:
+                        send(new JSONArray().put("NOTICE").put("unsupported: " + message.optString(0)).toString());
+                        break;
+                }
+            } catch (JSONException e) {
+                send(new JSONArray().put("NOTICE").put("invalid: " + e.getMessage()).toString());
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            sessions.remove(this);
+            webSocket.close(1000, null);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            sessions.remove(this);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            sessions.remove(this);
+        }
+
+        private void handleReq(JSONArray message) throws JSONException {
+            String subscriptionId = message.getString(1);
+            if (requireAuth && authedPubkey == null) {
+                send(new JSONArray().put("AUTH").put(challenge).toString());
+                send(new JSONArray().put("CLOSED").put(subscriptionId)
+                        .put("auth-required: this relay only serves authenticated clients").toString());
+                return;
+            }
+            JSONObject filter = message.optJSONObject(2);
+            List<String> groups = new ArrayList<>();
+            long since = 0;
+            if (filter != null) {
+                JSONArray h = filter.optJSONArray("#h");
+                for (int i = 0; h != null && i < h.length(); i++) {
+                    groups.add(h.getString(i));
+                }
+                since = filter.optLong("since", 0);
+            }
+            synchronized (this) {
+                subscriptions.put(subscriptionId, groups);
+            }
+            List<StoredEvent> replay;
+            synchronized (stored) {
+                replay = new ArrayList<>(stored);
+            }
+            for (StoredEvent event : replay) {
+                if (event.createdAt >= since && groups.contains(event.group)) {
+                    send("[\"EVENT\"," + JSONObject.quote(subscriptionId) + "," + event.json + "]");
+                }
+            }
+            send(new JSONArray().put("EOSE").put(subscriptionId).toString());
+        }
+
+        private void handleAuth(JSONObject event) throws JSONException {
+            String id = event.optString("id");
+            String reason = checkAuthEvent(event);
+            if (reason == null) {
+                authedPubkey = event.getString("pubkey");
+                authAccepted.incrementAndGet();
+                send(new JSONArray().put("OK").put(id).put(true).put("").toString());
+            } else {
+                authRejected.incrementAndGet();
+                send(new JSONArray().put("OK").put(id).put(false).put("auth-required: " + reason).toString());
+            }
+        }
+
+        /**
+         * @return why the AUTH event is rejected, null if it is valid
+         */
+        private String checkAuthEvent(JSONObject event) throws JSONException {
+            if (event.optInt("kind") != KIND_AUTH) return "wrong kind";
+            long createdAt = event.optLong("created_at");
+            if (Math.abs(System.currentTimeMillis() / 1000 - createdAt) > AUTH_MAX_SKEW_S) return "created_at too far off";
+            JSONArray tagsArray = event.optJSONArray("tags");
+            String[][] tags = new String[tagsArray == null ? 0 : tagsArray.length()][];
+            String relayTag = null;
+            String challengeTag = null;
+            for (int i = 0; i < tags.length; i++) {
+                JSONArray tag = tagsArray.getJSONArray(i);
+                tags[i] = new String[tag.length()];
+                for (int j = 0; j < tag.length(); j++) {
+                    tags[i][j] = tag.getString(j);
+                }
+                if (tags[i].length >= 2 && "relay".equals(tags[i][0])) relayTag = tags[i][1];
+                if (tags[i].length >= 2 && "challenge".equals(tags[i][0])) challengeTag = tags[i][1];
+            }
+            if (!challenge.equals(challengeTag)) return "challenge mismatch";
+            if (relayTag == null || !stripSlash(relayTag).equals(stripSlash(url))) return "relay mismatch";
+            String pubkey = event.optString("pubkey");
+            String sig = event.optString("sig");
+            if (pubkey.length() != 64 || sig.length() != 128) return "malformed pubkey or sig";
+            byte[] id = new byte[CanonicalEventSerializer.ID_LENGTH];
+            serializer.computeId(pubkey, createdAt, KIND_AUTH, tags, event.optString("content"), id, 0);
+            if (!Hex.encode(id).equals(event.optString("id"))) return "id mismatch";
+            if (!signer.verify(Hex.decode(sig), id, Hex.decode(pubkey))) return "bad signature";
+            return null;
+        }
+
+        void deliver(String group, String event) {
+            List<String> matching = new ArrayList<>();
+            synchronized (this) {
+                for (Map.Entry<String, List<String>> entry : subscriptions.entrySet()) {
+                    if (entry.getValue().contains(group)) {
+                        matching.add(entry.getKey());
+                    }
+                }
+            }
+            for (String subscriptionId : matching) {
+                send("[\"EVENT\"," + JSONObject.quote(subscriptionId) + "," + event + "]");
+            }
+        }
+
+        /**
+         * Send right away, or after the frames queued before it when the link is slowed down
+         * A frame takes its size / bytesPerSecond on the link after the previous one, then frameDelayMs
+         */
+        private synchronized void send(String frame) {
+            long delayNs = TimeUnit.MILLISECONDS.toNanos(frameDelayMs);
+            long bandwidth = bytesPerSecond;
+            if (delayNs <= 0 && bandwidth <= 0 && paced.isEmpty()) {
+                sendNow(frame);
+                return;
+            }
+            long now = System.nanoTime();
+            long transmitNs = bandwidth > 0 ? Utf8.size(frame) * 1_000_000_000L / bandwidth : 0;
+            linkFreeAtNs = Math.max(now, linkFreeAtNs) + transmitNs;
+            long sendAtNs = linkFreeAtNs + delayNs;
+            if (!paced.isEmpty()) {
+                // A lowered delay must not let a frame overtake the ones queued before it
+                sendAtNs = Math.max(sendAtNs, paced.peekLast().sendAtNs);
+            }
+            paced.addLast(new PacedFrame(frame, sendAtNs));
+            if (paced.size() == 1) {
+                delayedSender.schedule(this::sendPaced, sendAtNs - now, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Send the paced frames that are due, then wait for the next one
+         */
+        private synchronized void sendPaced() {
+            long now = System.nanoTime();
+            while (!paced.isEmpty() && paced.peekFirst().sendAtNs <= now) {
+                sendNow(paced.removeFirst().frame);
+            }
+            if (!paced.isEmpty()) {
+                delayedSender.schedule(this::sendPaced, paced.peekFirst().sendAtNs - now, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void sendNow(String frame) {
+            if (socket != null && socket.send(frame)) {
+                framesSent.incrementAndGet();
+            }
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String stripSlash(String value) {
+        return value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+    }
+}
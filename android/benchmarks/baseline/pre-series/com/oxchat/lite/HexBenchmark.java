@@ -0,0 +1,46 @@
+package com.oxchat.lite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-series counterpart of HexBenchmark: the service's hexStringToByteArray and byteArrayToHexString
+ * decodeInto and decodeAscii have no counterpart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexBenchmark {
+    @Param({"32", "64"})
+    public int length;
+
+    private final PreSeriesPushPaths paths = new PreSeriesPushPaths();
+    private byte[] bytes;
+    private String hex;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        hex = paths.byteArrayToHexString(bytes);
+    }
+
+    @Benchmark
+    public String encode() {
+        return paths.byteArrayToHexString(bytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return paths.hexStringToByteArray(hex);
+    }
+}
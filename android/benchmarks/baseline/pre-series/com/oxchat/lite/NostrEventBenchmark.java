@@ -0,0 +1,82 @@
+package com.oxchat.lite;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-series counterpart of NostrEventBenchmark on the same event
+ * - computeIdHex: the service's calculateEventId, Jackson tree from org.json tags
+ * - sign: signEventId, hex id and key in, hex signature out, a new SecureRandom per call
+ * - jacksonEventId: the reference, the same code as in the series
+ * computeId, signBatch and verify have no counterpart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NostrEventBenchmark {
+    static final String PUBKEY = "79be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798";
+    static final long CREATED_AT = 1_700_000_000L;
+    static final int KIND = 22242;
+    static final String[][] TAGS = {
+            {"relay", "wss://relay.0xchat.com"},
+            {"challenge", "3f2b9c1e-5d7a-4e60-9b8f-0c1d2e3f4a5b"},
+            {"h", "c6047f9441ed7d6d3045406e95c07cd85c778e4b8cef3ca7abac09b95c709ee5"},
+    };
+    static final String CONTENT = "Push \"test\" \\ line\nnext\ttab\u0001 h\u00e9llo \ud83c\udf0d";
+    static final String PRIVATE_KEY = "0000000000000000000000000000000000000000000000000000000000000001";
+
+    private final PreSeriesPushPaths paths = new PreSeriesPushPaths();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private MessageDigest sha256;
+    private JSONArray tags;
+    private String eventId;
+
+    @Setup
+    public void setup() throws Exception {
+        sha256 = MessageDigest.getInstance("SHA-256");
+        tags = new JSONArray();
+        for (String[] tag : TAGS) {
+            JSONArray tagArray = new JSONArray();
+            for (String value : tag) {
+                tagArray.put(value);
+            }
+            tags.put(tagArray);
+        }
+        eventId = paths.calculateEventId(PUBKEY, CREATED_AT, KIND, tags, CONTENT);
+        String reference = paths.byteArrayToHexString(jacksonEventId());
+        if (!reference.equals(eventId)) {
+            throw new IllegalStateException("Event id differs from the reference: " + eventId + " vs " + reference);
+        }
+        if (paths.signEventId(eventId, PRIVATE_KEY) == null) {
+            throw new IllegalStateException("signEventId failed");
+        }
+    }
+
+    @Benchmark
+    public String computeIdHex() {
+        return paths.calculateEventId(PUBKEY, CREATED_AT, KIND, tags, CONTENT);
+    }
+
+    @Benchmark
+    public byte[] jacksonEventId() throws Exception {
+        return sha256.digest(mapper.writeValueAsString(new Object[]{0, PUBKEY, CREATED_AT, KIND, TAGS, CONTENT})
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String sign() {
+        return paths.signEventId(eventId, PRIVATE_KEY);
+    }
+}
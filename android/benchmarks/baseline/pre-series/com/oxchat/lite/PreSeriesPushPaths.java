@@ -0,0 +1,297 @@
+package com.oxchat.lite;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import fr.acinq.secp256k1.Secp256k1;
+
+/**
+ * The push paths of the pre-series PushNotificationService (commit 01eb09b), for the baseline run only
+ * The methods below are copied from that file, lines 399-449 and 589-753, unchanged apart from dropping private;
+ * what they call on the service is stubbed, so only their own parsing, serialization, hashing, hex and signing
+ * work is timed
+ * Log keeps the length of every message so the string building the service did for each log call stays in
+ */
+public class PreSeriesPushPaths {
+    private static final String TAG = "PushNotificationService";
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final JsonNodeFactory JSON_NODE_FACTORY = JsonNodeFactory.instance;
+
+    static final class Log {
+        static volatile int sink;
+
+        static void d(String tag, String message) {
+            sink = message.length();
+        }
+
+        static void e(String tag, String message) {
+            sink = message.length();
+        }
+
+        static void e(String tag, String message, Throwable t) {
+            sink = message.length();
+        }
+    }
+
+    private final Secp256k1 secp256k1 = Secp256k1.get();
+    private String authEventId;
+    private String pendingAuthChallenge;
+    private boolean regenerateSubscriptionId;
+
+    /**
+     * onMessage(WebSocket, String) of the service
+     */
+    void onMessage(String text) {
+        Log.d(TAG, "Received message: " + text);
+        handleMessage(text);
+    }
+
+    /**
+     * onMessage(WebSocket, ByteString) of the service
+     */
+    void onMessage(okio.ByteString bytes) {
+        Log.d(TAG, "Received bytes message");
+        handleMessage(bytes.utf8());
+    }
+
+    // Collaborators of handleMessage: the app counts as running, so EVENT never activates it
+    private boolean isAppProcessRunning() {
+        return true;
+    }
+
+    private void activateApp() {
+    }
+
+    private void handleAuthChallenge(String challenge) {
+    }
+
+    private void sendSubscriptionRequest() {
+    }
+
+    /**
+     * Handle incoming WebSocket messages
+     */
+    void handleMessage(String message) {
+        try {
+            JSONArray jsonArray = new JSONArray(message);
+            String messageType = jsonArray.getString(0);
+            
+            if ("EVENT".equals(messageType)) {
+                // Received an event, only wake app if process is not running
+                Log.d(TAG, "Received EVENT");
+                if (!isAppProcessRunning()) {
+                    Log.d(TAG, "App process not running, activating");
+                    activateApp();
+                } else {
+                    Log.d(TAG, "App process already running, skipping activation");
+                }
+            } else if ("EOSE".equals(messageType)) {
+                // End of stored events
+                Log.d(TAG, "End of stored events");
+            } else if ("NOTICE".equals(messageType)) {
+                String notice = jsonArray.getString(1);
+                Log.d(TAG, "Relay notice: " + notice);
+            } else if ("CLOSED".equals(messageType)) {
+                Log.d(TAG, "Subscription closed");
+            } else if ("AUTH".equals(messageType)) {
+                // Handle AUTH challenge
+                String challenge = jsonArray.getString(1);
+                Log.d(TAG, "Received AUTH challenge: " + challenge);
+                handleAuthChallenge(challenge);
+            } else if ("OK".equals(messageType)) {
+                // Handle OK response, check if it's AUTH response
+                if (jsonArray.length() >= 3) {
+                    String eventId = jsonArray.getString(1);
+                    boolean status = jsonArray.getBoolean(2);
+                    String okMessage = jsonArray.length() > 3 ? jsonArray.getString(3) : "";
+                    Log.d(TAG, "Received OK: eventId=" + eventId + ", status=" + status + ", message=" + okMessage);
+                    // If this is AUTH OK response and successful, resend subscription request
+                    if (status && authEventId != null && authEventId.equals(eventId)) {
+                        Log.d(TAG, "AUTH successful, resending subscription request");
+                        authEventId = null;
+                        pendingAuthChallenge = null;
+                        regenerateSubscriptionId = true;
+                        sendSubscriptionRequest();
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to parse message: " + message, e);
+        }
+    }
+
+    /**
+     * Calculate event ID: SHA256 of [0, pubkey, created_at, kind, tags, content]
+     * Uses Jackson ObjectMapper for serialization (matching nostr-java EventSerializer)
+     * Reference: nostr-java EventSerializer.serialize() and computeEventId()
+     */
+    String calculateEventId(String pubkey, long createdAt, int kind, JSONArray tags, String content) {
+        try {
+            // Ensure pubkey is lowercase (matching nostr-java and Flutter)
+            String pubkeyLower = pubkey.toLowerCase();
+            
+            // Create array node: [0, pubkey, created_at, kind, tags, content]
+            // Reference: nostr-java EventSerializer.serialize() using JsonNodeFactory
+            ArrayNode arrayNode = JSON_NODE_FACTORY.arrayNode();
+            arrayNode.add(0); // Protocol version
+            arrayNode.add(pubkeyLower);
+            arrayNode.add(createdAt);
+            arrayNode.add(kind);
+            
+            // Convert JSONArray tags to Jackson ArrayNode
+            // Tags format: [["relay","..."],["challenge","..."]]
+            ArrayNode tagsNode = JSON_NODE_FACTORY.arrayNode();
+            for (int i = 0; i < tags.length(); i++) {
+                JSONArray tagArray = tags.getJSONArray(i);
+                ArrayNode tagNode = JSON_NODE_FACTORY.arrayNode();
+                for (int j = 0; j < tagArray.length(); j++) {
+                    Object tagValue = tagArray.get(j);
+                    if (tagValue instanceof String) {
+                        tagNode.add((String) tagValue);
+                    } else if (tagValue instanceof Number) {
+                        tagNode.add(((Number) tagValue).longValue());
+                    } else {
+                        tagNode.add(tagValue.toString());
+                    }
+                }
+                tagsNode.add(tagNode);
+            }
+            arrayNode.add(tagsNode);
+            arrayNode.add(content);
+            
+            // Serialize to JSON string using Jackson (matching nostr-java)
+            // Reference: nostr-java EventSerializer: MAPPER.writeValueAsString(arrayNode)
+            String serialized = JSON_MAPPER.writeValueAsString(arrayNode);
+            
+            // Debug: Log serialized JSON to compare with nostr-java/Flutter
+            Log.d(TAG, "Event ID calculation - serialized JSON: " + serialized);
+            
+            // SHA256 hash of UTF-8 encoded string
+            // Reference: nostr-java EventSerializer.computeEventId()
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(serialized.getBytes(StandardCharsets.UTF_8));
+            
+            // Convert to hex string (lowercase)
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : hash) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) {
+                    hexString.append('0');
+                }
+                hexString.append(hex);
+            }
+            
+            String eventId = hexString.toString();
+            Log.d(TAG, "Calculated event ID: " + eventId);
+            return eventId;
+        } catch (JsonProcessingException e) {
+            Log.e(TAG, "Failed to serialize event for ID calculation", e);
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to calculate event ID", e);
+            return null;
+        }
+    }
+
+    /**
+     * Sign event ID with private key using Schnorr signature (BIP340)
+     * Reference: nostr-java Identity.sign() and Schnorr.sign()
+     * 
+     * Process:
+     * 1. Event ID is already a SHA256 hash (64 hex chars = 32 bytes)
+     * 2. Convert event ID hex string to 32-byte array
+     * 3. Generate random 32-byte aux parameter (BIP340 requirement)
+     * 4. Sign the 32-byte event ID hash with private key and aux
+     * 
+     * Note: The event ID itself is already a hash, so we sign the hash bytes directly
+     */
+    String signEventId(String eventId, String privkey) {
+        try {
+            if (secp256k1 == null) {
+                Log.e(TAG, "Secp256k1 not initialized");
+                return null;
+            }
+            
+            // Convert event ID hex string to 32-byte array
+            // Event ID is already a SHA256 hash (64 hex chars = 32 bytes)
+            byte[] eventIdBytes = hexStringToByteArray(eventId);
+            if (eventIdBytes.length != 32) {
+                Log.e(TAG, "Event ID must be 32 bytes (64 hex chars), got: " + eventIdBytes.length);
+                return null;
+            }
+            
+            // Convert private key hex string to 32-byte array
+            byte[] privkeyBytes = hexStringToByteArray(privkey);
+            if (privkeyBytes.length != 32) {
+                Log.e(TAG, "Private key must be 32 bytes (64 hex chars), got: " + privkeyBytes.length);
+                return null;
+            }
+            
+            // Generate random 32-byte aux parameter (BIP340 requirement)
+            // Reference: nostr-java Identity.generateAuxRand() -> NostrUtil.createRandomByteArray(32)
+            SecureRandom secureRandom = new SecureRandom();
+            byte[] aux = new byte[32];
+            secureRandom.nextBytes(aux);
+            
+            // Sign the 32-byte event ID hash using Schnorr with aux parameter
+            // Reference: nostr-java Schnorr.sign(msg, secKey, auxRand)
+            byte[] signature = secp256k1.signSchnorr(eventIdBytes, privkeyBytes, aux);
+            
+            if (signature == null) {
+                Log.e(TAG, "Signature is null");
+                return null;
+            }
+            
+            // Signature should be 64 bytes (R || s)
+            if (signature.length != 64) {
+                Log.e(TAG, "Signature must be 64 bytes, got: " + signature.length);
+                return null;
+            }
+            
+            // Convert signature to hex string (lowercase)
+            String sigHex = byteArrayToHexString(signature);
+            Log.d(TAG, "Signed event ID, signature length: " + sigHex.length() + " chars (expected 128)");
+            return sigHex;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to sign event ID", e);
+            return null;
+        }
+    }
+
+    /**
+     * Convert hex string to byte array
+     */
+    byte[] hexStringToByteArray(String hex) {
+        int len = hex.length();
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
+                    + Character.digit(hex.charAt(i + 1), 16));
+        }
+        return data;
+    }
+
+    /**
+     * Convert byte array to hex string
+     */
+    String byteArrayToHexString(byte[] bytes) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.oxchat.lite;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+/**
+ * Pre-series counterpart of RelayFrameBenchmark over the same relay-frames.txt session
+ * - scan / scanBytes: the service's onMessage for text and binary frames, i.e. the log line and handleMessage
+ * - jsonTree: the reference, the same code as in the series
+ * Scores are per frame
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RelayFrameBenchmark {
+    static final String CORPUS = "relay-frames.txt";
+    static final int CORPUS_FRAMES = 52;
+
+    private final PreSeriesPushPaths paths = new PreSeriesPushPaths();
+    private String[] frames;
+    private ByteString[] frameBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = RelayFrameBenchmark.class.getResourceAsStream(CORPUS)) {
+            if (in == null) throw new IllegalStateException(CORPUS + " is not on the classpath");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        if (lines.size() != CORPUS_FRAMES) {
+            throw new IllegalStateException(CORPUS + " has " + lines.size() + " frames, expected " + CORPUS_FRAMES);
+        }
+        frames = lines.toArray(new String[0]);
+        frameBytes = new ByteString[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            frameBytes[i] = ByteString.encodeString(frames[i], StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_FRAMES)
+    public void scan() {
+        for (String text : frames) {
+            paths.onMessage(text);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_FRAMES)
+    public void scanBytes() {
+        for (ByteString bytes : frameBytes) {
+            paths.onMessage(bytes);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_FRAMES)
+    public void jsonTree(Blackhole blackhole) throws Exception {
+        for (String text : frames) {
+            JSONArray message = new JSONArray(text);
+            String type = message.getString(0);
+            blackhole.consume(type);
+            switch (type) {
+                case "EVENT":
+                    blackhole.consume(message.getString(1));
+                    JSONObject event = message.getJSONObject(2);
+                    blackhole.consume(event.getString("id"));
+                    blackhole.consume(event.optLong("created_at", 0));
+                    blackhole.consume(event.getString("pubkey"));
+                    break;
+                case "OK":
+                    blackhole.consume(message.getString(1));
+                    blackhole.consume(message.getBoolean(2));
+                    blackhole.consume(message.optString(3));
+                    break;
+                case "CLOSED":
+                    blackhole.consume(message.getString(1));
+                    blackhole.consume(message.optString(2));
+                    break;
+                default:
+                    blackhole.consume(message.getString(1));
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.ox.ox_common.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date formatting of DateUtils: the shared static formats (getDateString, getNormalDateString) and
+ * getHHmm, which creates its SimpleDateFormat per call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateUtilsBenchmark {
+    private final long timestamp = 1_700_000_000_000L;
+    private final Date date = new Date(timestamp);
+
+    @Benchmark
+    public String getDateString() {
+        return DateUtils.getDateString(timestamp);
+    }
+
+    @Benchmark
+    public String getNormalDateString() {
+        return DateUtils.getNormalDateString(timestamp);
+    }
+
+    @Benchmark
+    public String getHHmm() {
+        return DateUtils.getHHmm(date);
+    }
+}
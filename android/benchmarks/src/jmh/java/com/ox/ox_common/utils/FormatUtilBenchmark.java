@@ -0,0 +1,48 @@
+package com.ox.ox_common.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number formatting of FormatUtil: fastFormat against parseDoubleMax_X, which builds a DecimalFormat per call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatUtilBenchmark {
+    @Param({"0.000123456789", "1234.56789"})
+    public String number;
+
+    @Param({"2", "8"})
+    public int precision;
+
+    private double value;
+
+    @Setup
+    public void setup() {
+        value = Double.parseDouble(number);
+    }
+
+    @Benchmark
+    public String fastFormat() {
+        return FormatUtil.fastFormat(value, precision);
+    }
+
+    @Benchmark
+    public String parseDoubleMaxX() {
+        return FormatUtil.parseDoubleMax_X(value, precision);
+    }
+
+    @Benchmark
+    public String parseDoubleMaxXString() {
+        return FormatUtil.parseDoubleMax_X(number, precision);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ox.ox_common.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OXCImageUtils.detectImageFormat on the first and last formats it checks and on data it does not recognize
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OXCImageUtilsBenchmark {
+    @Param({"png", "webp", "tiff", "unknown"})
+    public String format;
+
+    private byte[] header;
+
+    @Setup
+    public void setup() {
+        switch (format) {
+            case "png":
+                header = bytes(0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A);
+                break;
+            case "webp":
+                header = bytes(0x52, 0x49, 0x46, 0x46, 0x24, 0x00, 0x00, 0x00, 0x57, 0x45, 0x42, 0x50);
+                break;
+            case "tiff":
+                header = bytes(0x4D, 0x4D, 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08);
+                break;
+            default:
+                header = bytes(0x00, 0x00, 0x00, 0x18, 0x66, 0x74, 0x79, 0x70, 0x68, 0x65, 0x69, 0x63);
+                break;
+        }
+        String detected = OXCImageUtils.detectImageFormat(header);
+        if (!format.equals(detected == null ? "unknown" : detected)) {
+            throw new IllegalStateException("Detected " + detected + " for " + format);
+        }
+    }
+
+    @Benchmark
+    public String detectImageFormat() {
+        return OXCImageUtils.detectImageFormat(header);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+}
@@ -0,0 +1,84 @@
+package com.oxchat.lite;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import fr.acinq.secp256k1.Secp256k1;
+
+/**
+ * Inbound event check of the push service, PushEventVerifier: id recomputed and BIP-340 signature verified for a
+ * burst of BATCH_SIZE push events, spread over the given number of workers
+ * Scores are per event, events per second is 1e9 / score. Worker counts above the host's cores only add
+ * hand-off cost, so compare the rows on a multi-core machine; the last event of the burst is forged and setup
+ * fails unless exactly that one is rejected
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventVerifierBenchmark {
+    static final int BATCH_SIZE = 64;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    private PushEventVerifier verifier;
+    private String[] events;
+
+    @Setup
+    public void setup() throws Exception {
+        Secp256k1 secp256k1 = Secp256k1.get();
+        NostrSigner signer = new NostrSigner(secp256k1);
+        CanonicalEventSerializer serializer = new CanonicalEventSerializer();
+        byte[] privateKey = new byte[NostrSigner.KEY_LENGTH];
+        privateKey[NostrSigner.KEY_LENGTH - 1] = 1;
+        String[][] tags = {{"h", "c6047f9441ed7d6d3045406e95c07cd85c778e4b8cef3ca7abac09b95c709ee5"}};
+        events = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long createdAt = NostrEventBenchmark.CREATED_AT + i;
+            String content = "push " + i;
+            byte[] id = new byte[NostrSigner.ID_LENGTH];
+            serializer.computeId(NostrEventBenchmark.PUBKEY, createdAt, 20284, tags, content, id, 0);
+            JSONObject event = new JSONObject();
+            event.put("id", Hex.encode(id));
+            event.put("pubkey", NostrEventBenchmark.PUBKEY);
+            event.put("created_at", createdAt);
+            event.put("kind", 20284);
+            event.put("tags", new JSONArray().put(new JSONArray(Arrays.asList(tags[0]))));
+            // Forged: content changed after signing
+            event.put("content", i == BATCH_SIZE - 1 ? "forged" : content);
+            event.put("sig", Hex.encode(signer.sign(id, privateKey)));
+            events[i] = event.toString();
+        }
+        verifier = new PushEventVerifier(signer, workers, Runnable::run);
+        boolean[] results = verifier.verifyBatch(events);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (results[i] != (i != BATCH_SIZE - 1)) {
+                throw new IllegalStateException("Event " + i + " verified as " + results[i]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        verifier.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean[] verifyBatch() throws InterruptedException {
+        return verifier.verifyBatch(events);
+    }
+}
@@ -0,0 +1,60 @@
+package com.oxchat.lite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hex conversion at the sizes of the push path: 32-byte ids and keys, 64-byte signatures
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexBenchmark {
+    @Param({"32", "64"})
+    public int length;
+
+    private byte[] bytes;
+    private String hex;
+    private byte[] hexAscii;
+    private byte[] out;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        hex = Hex.encode(bytes);
+        hexAscii = hex.getBytes(StandardCharsets.US_ASCII);
+        out = new byte[length];
+    }
+
+    @Benchmark
+    public String encode() {
+        return Hex.encode(bytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Hex.decode(hex);
+    }
+
+    @Benchmark
+    public byte[] decodeInto() {
+        Hex.decode(hex, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] decodeAscii() {
+        return Hex.decodeAscii(hexAscii);
+    }
+}
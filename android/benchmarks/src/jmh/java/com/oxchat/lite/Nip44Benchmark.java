@@ -0,0 +1,137 @@
+package com.oxchat.lite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import fr.acinq.secp256k1.Secp256k1;
+
+/**
+ * NIP-44 v2 of the rich notification path: the conversation key (ECDH plus HKDF-extract) and decrypt
+ * Payloads are encrypted in setup with the JDK's ChaCha20 and HmacSHA256, an implementation independent of
+ * Nip44's own ChaCha20, and setup fails unless the conversation key matches the NIP-44 test vector and
+ * every payload decrypts to its plaintext
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Nip44Benchmark {
+    // NIP-44 test vector: sec1 = 1, pub2 = x-only public key of sec2 = 2
+    private static final String VECTOR_CONVERSATION_KEY =
+            "c41c775356fd92eadc63ff5a0dc1da211b268cbea22316767095b2871ea1412d";
+
+    /**
+     * Key pair of the test vector, the conversation key does not depend on the payload
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        Nip44 nip44;
+        byte[] privateKey;
+        byte[] publicKey;
+        byte[] conversationKey;
+
+        @Setup
+        public void setupKeys() {
+            Secp256k1 secp256k1 = Secp256k1.get();
+            nip44 = new Nip44(secp256k1);
+            privateKey = new byte[Nip44.KEY_LENGTH];
+            privateKey[Nip44.KEY_LENGTH - 1] = 1;
+            byte[] otherKey = new byte[Nip44.KEY_LENGTH];
+            otherKey[Nip44.KEY_LENGTH - 1] = 2;
+            publicKey = Arrays.copyOfRange(secp256k1.pubkeyCreate(otherKey), 1, 33);
+            conversationKey = nip44.conversationKey(privateKey, publicKey);
+            if (!Hex.encode(conversationKey).equals(VECTOR_CONVERSATION_KEY)) {
+                throw new IllegalStateException("Conversation key differs from the test vector: "
+                        + Hex.encode(conversationKey));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Payload extends Keys {
+        @Param({"64", "512", "4096"})
+        public int plaintextLength;
+
+        String payload;
+
+        @Setup
+        public void setupPayload() throws Exception {
+            Random random = new Random(1);
+            StringBuilder plaintext = new StringBuilder();
+            for (int i = 0; i < plaintextLength; i++) {
+                plaintext.append((char) ('a' + random.nextInt(26)));
+            }
+            byte[] nonce = new byte[32];
+            random.nextBytes(nonce);
+            payload = encrypt(plaintext.toString(), conversationKey, nonce);
+            if (!nip44.decrypt(payload, conversationKey).equals(plaintext.toString())) {
+                throw new IllegalStateException("Decrypt does not round-trip " + plaintextLength + " bytes");
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] conversationKey(Keys keys) {
+        return keys.nip44.conversationKey(keys.privateKey, keys.publicKey);
+    }
+
+    @Benchmark
+    public String decrypt(Payload payload) {
+        return payload.nip44.decrypt(payload.payload, payload.conversationKey);
+    }
+
+    /**
+     * NIP-44 v2 encryption with the JDK ciphers
+     */
+    private static String encrypt(String plaintext, byte[] conversationKey, byte[] nonce) throws Exception {
+        // HKDF-expand(conversationKey, nonce, 76): chacha key, chacha nonce, hmac key
+        byte[] keys = new byte[96];
+        byte[] previous = new byte[0];
+        for (int i = 1; i <= 3; i++) {
+            previous = hmac(conversationKey, previous, nonce, new byte[]{(byte) i});
+            System.arraycopy(previous, 0, keys, (i - 1) * 32, 32);
+        }
+        byte[] unpadded = plaintext.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[2 + Nip44.paddedLength(unpadded.length)];
+        padded[0] = (byte) (unpadded.length >> 8);
+        padded[1] = (byte) unpadded.length;
+        System.arraycopy(unpadded, 0, padded, 2, unpadded.length);
+
+        Cipher cipher = Cipher.getInstance("ChaCha20");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Arrays.copyOf(keys, 32), "ChaCha20"),
+                new ChaCha20ParameterSpec(Arrays.copyOfRange(keys, 32, 44), 0));
+        byte[] ciphertext = cipher.doFinal(padded);
+        byte[] mac = hmac(Arrays.copyOfRange(keys, 44, 76), nonce, ciphertext);
+
+        byte[] out = new byte[1 + nonce.length + ciphertext.length + mac.length];
+        out[0] = (byte) Nip44.VERSION;
+        System.arraycopy(nonce, 0, out, 1, nonce.length);
+        System.arraycopy(ciphertext, 0, out, 1 + nonce.length, ciphertext.length);
+        System.arraycopy(mac, 0, out, 1 + nonce.length + ciphertext.length, mac.length);
+        return Base64.getEncoder().encodeToString(out);
+    }
+
+    private static byte[] hmac(byte[] key, byte[]... parts) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        for (byte[] part : parts) {
+            mac.update(part);
+        }
+        return mac.doFinal();
+    }
+}
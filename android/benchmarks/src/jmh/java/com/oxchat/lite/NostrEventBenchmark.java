@@ -0,0 +1,126 @@
+package com.oxchat.lite;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import fr.acinq.secp256k1.Secp256k1;
+
+/**
+ * Event id and signature of the push path: CanonicalEventSerializer.computeId (calculateEventId),
+ * NostrSigner.sign/signBatch (signEventId) and verify
+ * jacksonEventId is the generic serializer plus digest that the streaming serializer replaced, setup fails
+ * if the two ever produce different canonical bytes
+ * Jackson goes through a String since its UTF-8 byte writer escapes characters outside the BMP as surrogate
+ * pairs, which NIP-01 does not
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NostrEventBenchmark {
+    static final String PUBKEY = "79be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798";
+    static final long CREATED_AT = 1_700_000_000L;
+    static final int KIND = 22242;
+    static final String[][] TAGS = {
+            {"relay", "wss://relay.0xchat.com"},
+            {"challenge", "3f2b9c1e-5d7a-4e60-9b8f-0c1d2e3f4a5b"},
+            {"h", "c6047f9441ed7d6d3045406e95c07cd85c778e4b8cef3ca7abac09b95c709ee5"},
+    };
+    // Quote, backslash, short escapes, a control character and non-ASCII text
+    static final String CONTENT = "Push \"test\" \\ line\nnext\ttab\u0001 h\u00e9llo \ud83c\udf0d";
+    static final int BATCH_SIZE = 8;
+
+    private final CanonicalEventSerializer serializer = new CanonicalEventSerializer();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private MessageDigest sha256;
+    private NostrSigner signer;
+    private byte[] privateKey;
+    private byte[] publicKey;
+    private byte[] eventId;
+    private byte[] signature;
+    private byte[][] batchIds;
+    private final byte[] idOut = new byte[CanonicalEventSerializer.ID_LENGTH];
+
+    @Setup
+    public void setup() throws Exception {
+        sha256 = MessageDigest.getInstance("SHA-256");
+        Secp256k1 secp256k1 = Secp256k1.get();
+        signer = new NostrSigner(secp256k1);
+        privateKey = new byte[NostrSigner.KEY_LENGTH];
+        privateKey[NostrSigner.KEY_LENGTH - 1] = 1;
+        publicKey = Arrays.copyOfRange(secp256k1.pubkeyCreate(privateKey), 1, 33);
+        if (!Hex.encode(publicKey).equals(PUBKEY)) {
+            throw new IllegalStateException("Unexpected public key " + Hex.encode(publicKey));
+        }
+
+        byte[] canonical = serializer.serializeCanonical(PUBKEY, CREATED_AT, KIND, TAGS, CONTENT);
+        byte[] reference = jacksonCanonical();
+        if (!Arrays.equals(canonical, reference)) {
+            throw new IllegalStateException("Canonical serialization differs from Jackson: "
+                    + new String(canonical, StandardCharsets.UTF_8)
+                    + " vs " + new String(reference, StandardCharsets.UTF_8));
+        }
+        eventId = jacksonEventId();
+        serializer.computeId(PUBKEY, CREATED_AT, KIND, TAGS, CONTENT, idOut, 0);
+        if (!Arrays.equals(idOut, eventId)) {
+            throw new IllegalStateException("Event id differs from the reference");
+        }
+
+        signature = signer.sign(eventId, privateKey);
+        if (!signer.verify(signature, eventId, publicKey)) {
+            throw new IllegalStateException("Signature does not verify");
+        }
+        batchIds = new byte[BATCH_SIZE][];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batchIds[i] = new byte[CanonicalEventSerializer.ID_LENGTH];
+            serializer.computeId(PUBKEY, CREATED_AT + i, KIND, TAGS, CONTENT, batchIds[i], 0);
+        }
+    }
+
+    @Benchmark
+    public byte[] computeId() {
+        serializer.computeId(PUBKEY, CREATED_AT, KIND, TAGS, CONTENT, idOut, 0);
+        return idOut;
+    }
+
+    @Benchmark
+    public String computeIdHex() {
+        return serializer.computeIdHex(PUBKEY, CREATED_AT, KIND, TAGS, CONTENT);
+    }
+
+    @Benchmark
+    public byte[] jacksonEventId() throws Exception {
+        return sha256.digest(jacksonCanonical());
+    }
+
+    private byte[] jacksonCanonical() throws Exception {
+        return mapper.writeValueAsString(new Object[]{0, PUBKEY, CREATED_AT, KIND, TAGS, CONTENT})
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return signer.sign(eventId, privateKey);
+    }
+
+    @Benchmark
+    public byte[][] signBatch() {
+        return signer.signBatch(batchIds, privateKey);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return signer.verify(signature, eventId, publicKey);
+    }
+}
@@ -0,0 +1,153 @@
+package com.oxchat.lite;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+/**
+ * Inbound frame handling of PushRelayProtocol.handleFrame over the frames of one relay session
+ * (relay-frames.txt): the frame type, then the fields the service reads for that type, for an EVENT the
+ * subscription, id, created_at and pubkey it reads before deciding to notify
+ * jsonTree is the same work on a full org.json tree, the parsing the frame scanner replaced
+ * Scores are per frame, averaged over the session
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RelayFrameBenchmark {
+    static final String CORPUS = "relay-frames.txt";
+    static final int CORPUS_FRAMES = 52;
+
+    private String[] frames;
+    private ByteString[] frameBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        List<String> lines = readCorpus();
+        if (lines.size() != CORPUS_FRAMES) {
+            throw new IllegalStateException(CORPUS + " has " + lines.size() + " frames, expected " + CORPUS_FRAMES);
+        }
+        frames = lines.toArray(new String[0]);
+        frameBytes = new ByteString[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            frameBytes[i] = ByteString.encodeString(frames[i], StandardCharsets.UTF_8);
+            // The scanner has to agree with the tree on every frame it is timed on
+            RelayFrame frame = RelayFrame.parse(frames[i]);
+            JSONArray message = new JSONArray(frames[i]);
+            if (frame.type() == RelayFrame.TYPE_UNKNOWN || !message.getString(0).equals(frame.stringAt(0))
+                    || (frame.type() == RelayFrame.TYPE_EVENT
+                    && (!message.getJSONObject(2).getString("id").equals(frame.objectString(2, "id"))
+                    || message.getJSONObject(2).getLong("created_at") != frame.objectLong(2, "created_at", 0)))) {
+                throw new IllegalStateException("Frame scanner misread frame " + i + " of " + CORPUS);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_FRAMES)
+    public void scan(Blackhole blackhole) {
+        for (String text : frames) {
+            read(RelayFrame.parse(text), blackhole);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_FRAMES)
+    public void scanBytes(Blackhole blackhole) {
+        for (ByteString bytes : frameBytes) {
+            read(RelayFrame.parse(bytes), blackhole);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_FRAMES)
+    public void jsonTree(Blackhole blackhole) throws Exception {
+        for (String text : frames) {
+            JSONArray message = new JSONArray(text);
+            String type = message.getString(0);
+            blackhole.consume(type);
+            switch (type) {
+                case "EVENT":
+                    blackhole.consume(message.getString(1));
+                    JSONObject event = message.getJSONObject(2);
+                    blackhole.consume(event.getString("id"));
+                    blackhole.consume(event.optLong("created_at", 0));
+                    blackhole.consume(event.getString("pubkey"));
+                    break;
+                case "OK":
+                    blackhole.consume(message.getString(1));
+                    blackhole.consume(message.getBoolean(2));
+                    blackhole.consume(message.optString(3));
+                    break;
+                case "CLOSED":
+                    blackhole.consume(message.getString(1));
+                    blackhole.consume(message.optString(2));
+                    break;
+                default:
+                    blackhole.consume(message.getString(1));
+                    break;
+            }
+        }
+    }
+
+    private static void read(RelayFrame frame, Blackhole blackhole) {
+        int type = frame.type();
+        blackhole.consume(type);
+        switch (type) {
+            case RelayFrame.TYPE_EVENT:
+                blackhole.consume(frame.stringAt(1));
+                blackhole.consume(frame.objectString(2, "id"));
+                blackhole.consume(frame.objectLong(2, "created_at", 0));
+                blackhole.consume(frame.objectString(2, "pubkey"));
+                break;
+            case RelayFrame.TYPE_OK:
+                blackhole.consume(frame.stringAt(1));
+                blackhole.consume(frame.booleanAt(2));
+                blackhole.consume(frame.stringAt(3));
+                break;
+            case RelayFrame.TYPE_CLOSED:
+                blackhole.consume(frame.stringAt(1));
+                blackhole.consume(frame.stringAt(2));
+                break;
+            default:
+                blackhole.consume(frame.stringAt(1));
+                break;
+        }
+    }
+
+    /**
+     * Frames of relay-frames.txt, one per line, # lines are comments
+     */
+    static List<String> readCorpus() throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = RelayFrameBenchmark.class.getResourceAsStream(CORPUS)) {
+            if (in == null) throw new IllegalStateException(CORPUS + " is not on the classpath");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,180 @@
+package com.oxchat.lite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import fr.acinq.secp256k1.Secp256k1;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+/**
+ * Times push relay reconnects on a plain JVM: ./gradlew :push-harness:run --args="--handshakes 20 --dns-delay-ms 40"
+ * Reconnects to a wss:// stand-in relay, cold (uncached lookup delayed by --dns-delay-ms like a mobile resolver)
+ * against warm (RelayDnsCache reloaded from its file as after a service restart); every attempt has a new TLS
+ * context, as after a restart, so the difference is only the lookup the DNS cache saves per reconnect
+ * Delivery and reconnect behaviour of the relay path itself is checked by PushRelayPathTest in the app unit tests
+ */
+public final class ReconnectHandshakeTimer {
+    private int handshakes = 20;
+    private long dnsDelayMs = 40;
+
+    public static void main(String[] args) throws Exception {
+        ReconnectHandshakeTimer timer = new ReconnectHandshakeTimer();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--handshakes": timer.handshakes = Integer.parseInt(value); break;
+                case "--dns-delay-ms": timer.dnsDelayMs = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        File stateDir = Files.createTempDirectory("push-harness").toFile();
+        timer.handshakes(stateDir);
+    }
+
+    /**
+     * Reconnect to a TLS stand-in with and without the DNS cache, full TLS handshake every time
+     */
+    private void handshakes(File stateDir) throws Exception {
+        HeldCertificate certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(certificate)
+                .build();
+        Dns slowDns = hostname -> {
+            try {
+                Thread.sleep(dnsDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Dns.SYSTEM.lookup(hostname);
+        };
+        try (StandInRelay relay = new StandInRelay(Secp256k1.get())) {
+            String url = relay.start(serverCertificates.sslSocketFactory());
+            List<HandshakeTiming> cold = new ArrayList<>();
+            for (int i = 0; i < handshakes; i++) {
+                cold.add(timeHandshake(url, newTlsClient(certificate), slowDns));
+            }
+
+            File dnsFile = new File(stateDir, "dns-cache.bin");
+            RelayDnsCache firstRun = new RelayDnsCache(dnsFile, slowDns);
+            // First connect fills the DNS cache, like the last run before a restart
+            timeHandshake(url, newTlsClient(certificate), firstRun);
+            firstRun.save();
+            firstRun.shutdown();
+            RelayDnsCache restarted = new RelayDnsCache(dnsFile, slowDns);
+            restarted.load();
+            List<HandshakeTiming> warm = new ArrayList<>();
+            for (int i = 0; i < handshakes; i++) {
+                warm.add(timeHandshake(url, newTlsClient(certificate), restarted));
+            }
+            restarted.shutdown();
+
+            long coldTotal = median(cold, timing -> timing.totalMs);
+            long warmTotal = median(warm, timing -> timing.totalMs);
+            log("handshakes cold: p50 %d ms to open (dns %d ms, connect + tls + upgrade %d ms) over %d reconnects",
+                    coldTotal, median(cold, timing -> timing.dnsMs), median(cold, timing -> timing.totalMs - timing.dnsMs),
+                    cold.size());
+            log("handshakes warm: p50 %d ms to open (dns %d ms, connect + tls + upgrade %d ms), "
+                            + "DNS cache %d fresh / %d stale hits / %d misses",
+                    warmTotal, median(warm, timing -> timing.dnsMs), median(warm, timing -> timing.totalMs - timing.dnsMs),
+                    restarted.getFreshHits(), restarted.getStaleHits(), restarted.getMisses());
+            log("handshakes: %d ms saved per reconnect at p50", coldTotal - warmTotal);
+        }
+    }
+
+    /**
+     * Client with a new TLS context trusting the stand-in's certificate, so there is no session to resume
+     */
+    private static OkHttpClient.Builder newTlsClient(HeldCertificate certificate) {
+        HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(certificate.certificate())
+                .build();
+        return new OkHttpClient.Builder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager());
+    }
+
+    private static final class HandshakeTiming {
+        long totalMs;
+        long dnsMs;
+    }
+
+    private interface TimingValue {
+        long get(HandshakeTiming timing);
+    }
+
+    /**
+     * Open one WebSocket and time it to onOpen, with the lookup timed separately
+     * OkHttp drops the client's EventListener for WebSocket calls, so DNS is timed around the Dns itself
+     */
+    private static HandshakeTiming timeHandshake(String url, OkHttpClient.Builder clientBuilder, Dns dns)
+            throws Exception {
+        HandshakeTiming timing = new HandshakeTiming();
+        OkHttpClient client = clientBuilder.dns(hostname -> {
+            long lookupStartNs = System.nanoTime();
+            try {
+                return dns.lookup(hostname);
+            } finally {
+                timing.dnsMs += elapsedMs(lookupStartNs);
+            }
+        }).build();
+        CountDownLatch opened = new CountDownLatch(1);
+        Throwable[] failure = new Throwable[1];
+        long startNs = System.nanoTime();
+        WebSocket socket = client.newWebSocket(new Request.Builder().url(url).build(), new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                timing.totalMs = elapsedMs(startNs);
+                opened.countDown();
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                failure[0] = t;
+                opened.countDown();
+            }
+        });
+        if (!opened.await(10, TimeUnit.SECONDS) || failure[0] != null) {
+            socket.cancel();
+            throw new IOException("Handshake to " + url + " failed", failure[0]);
+        }
+        socket.close(1000, null);
+        return timing;
+    }
+
+    private static long median(List<HandshakeTiming> timings, TimingValue value) {
+        List<Long> values = new ArrayList<>();
+        for (HandshakeTiming timing : timings) {
+            values.add(value.get(timing));
+        }
+        Collections.sort(values);
+        return percentile(values, 50);
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(sorted.size() * percent / 100.0) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static long elapsedMs(long startNs) {
+        return (System.nanoTime() - startNs) / 1_000_000;
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println(String.format(Locale.US, format, args));
+    }
+}
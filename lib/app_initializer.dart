@@ -42,7 +42,8 @@ class AppInitializer {
 
   OXWindowManager windowManager = OXWindowManager();
 
-  Future initialize() async {
+  /// [waitForForeground] holds back login until an app activity is visible, used by the pre-warmed engine
+  Future initialize({bool waitForForeground = false}) async {
     await _safeHandle(() async {
       try {
         await coreInitializer();
@@ -50,6 +51,9 @@ class AppInitializer {
           uiInitializer(),
           businessInitializer(),
         ]);
+        if (waitForForeground) {
+          await _waitUntilForeground();
+        }
         await userInitializer();
         if (kDebugMode) {
           getApplicationDocumentsDirectory().then((value) {
@@ -88,6 +92,14 @@ class AppInitializer {
     _cleanupTempFolders();
   }
 
+  Future<void> _waitUntilForeground() async {
+    try {
+      await OXCommon.appForegroundStream.firstWhere((foreground) => foreground);
+    } catch (e) {
+      debugPrint('Waiting for foreground failed: $e');
+    }
+  }
+
   /// Try auto login using LoginManager
   Future<void> _tryAutoLogin() async {
     try {
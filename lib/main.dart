@@ -39,24 +39,39 @@ void main() async {
     runApp(
       MainApp(window.defaultRouteName),
     );
-  }, (error, stackTrace) async {
-    try {
-      bool openDevLog = UserConfigTool.getSetting(
-          StorageSettingKey.KEY_OPEN_DEV_LOG.name,
-          defaultValue: false);
-      if (openDevLog) {
-        ErrorUtils.logErrorToFile(
-            error.toString() + '\n' + stackTrace.toString());
-      }
-      print(error);
-      print(stackTrace);
-    } catch (e, stack) {
-      if (kDebugMode) {
-        print(e);
-        print(stack);
-      }
+  }, _handleZoneError);
+}
+
+/// Entrypoint of the engine the Android push service starts before the user taps a notification
+/// (WarmFlutterEngine). Runs the offline part of the initialization in the background; login and the
+/// first frame wait until an activity shows the engine.
+@pragma('vm:entry-point')
+void warmUpMain() async {
+  runZonedGuarded(() async {
+    await AppInitializer.shared.initialize(waitForForeground: true);
+    runApp(
+      MainApp(window.defaultRouteName),
+    );
+  }, _handleZoneError);
+}
+
+void _handleZoneError(Object error, StackTrace stackTrace) async {
+  try {
+    bool openDevLog = UserConfigTool.getSetting(
+        StorageSettingKey.KEY_OPEN_DEV_LOG.name,
+        defaultValue: false);
+    if (openDevLog) {
+      ErrorUtils.logErrorToFile(
+          error.toString() + '\n' + stackTrace.toString());
     }
-  });
+    print(error);
+    print(stackTrace);
+  } catch (e, stack) {
+    if (kDebugMode) {
+      print(e);
+      print(stack);
+    }
+  }
 }
 
 class MainApp extends StatefulWidget {
@@ -41,6 +41,11 @@ class OXCommon extends OXFlutterModule {
 
   static const MethodChannel channel = const MethodChannel('$CommonModule');
   static const MethodChannel channelPreferences = const MethodChannel('com.oxchat.global/perferences');
+  static const EventChannel channelAppForeground = const EventChannel('com.oxchat.global/app_foreground');
+
+  // true when an app activity is visible, pushed by Android on every lifecycle change (current value first)
+  static Stream<bool> get appForegroundStream =>
+      channelAppForeground.receiveBroadcastStream().map((event) => event == true);
 
   static Future<String> get platformVersion async {
     final String version = await channel.invokeMethod('getPlatformVersion');
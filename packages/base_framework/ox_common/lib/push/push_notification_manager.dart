@@ -1,4 +1,3 @@
-import 'dart:async';
 import 'dart:io';
 
 import 'package:flutter/material.dart';
@@ -12,18 +11,30 @@ import 'package:ox_common/navigator/navigator.dart';
 import 'package:ox_localizable/ox_localizable.dart';
 import 'package:chatcore/chat-core.dart';
 import 'package:ox_common/log_util.dart';
+import 'package:ox_common/utils/storage_key_tool.dart';
+import 'package:ox_cache_manager/ox_cache_manager.dart';
 
 import 'push_integration.dart';
 
 class CLUserPushNotificationManager implements PushPermissionChecker {
   static final CLUserPushNotificationManager instance = CLUserPushNotificationManager._internal();
   static const MethodChannel _authChannel = MethodChannel('com.oxchat.global/perferences');
-  Timer? _authCheckTimer;
+  // Android push modes: always-on foreground socket, or periodic low-power sync windows
+  static const String androidPushModePersistent = 'persistent';
+  static const String androidPushModeScheduled = 'scheduled';
+  String _androidPushMode = androidPushModePersistent;
+  // Push relays connected next to the server relay, so a stalled relay doesn't delay notifications
+  List<String> _androidStandbyRelays = [];
+  // Further push relays the service probes and takes into the pool when they are faster than the configured ones
+  List<String> _androidCandidateRelays = [];
+
+  String get androidPushMode => _androidPushMode;
+  List<String> get androidStandbyRelays => List.unmodifiable(_androidStandbyRelays);
+  List<String> get androidCandidateRelays => List.unmodifiable(_androidCandidateRelays);
   
   CLUserPushNotificationManager._internal() {
     NotificationHelper.sharedInstance.permissionChecker = this;
     _setupAuthHandler();
-    _startAuthCheckTimer();
   }
 
   void _setupAuthHandler() {
@@ -67,6 +78,10 @@ class CLUserPushNotificationManager implements PushPermissionChecker {
     if (circle == null) return;
 
     await _loadConfiguration(circle);
+    if (Platform.isAndroid) {
+      await _loadAndroidPushMode();
+      await _loadAndroidPushRelays();
+    }
 
     final token = await updatePushTokenIfNeeded();
 
@@ -77,10 +92,8 @@ class CLUserPushNotificationManager implements PushPermissionChecker {
     }
 
     await checkAndUpdatePermissionStatus();
-    
-    // Check for pending AUTH challenges from Android push service
+
     if (Platform.isAndroid) {
-      _checkPendingAuth();
       await _ensureAndroidPushServiceStarted();
     }
   }
@@ -111,52 +124,184 @@ class CLUserPushNotificationManager implements PushPermissionChecker {
       }
 
       const MethodChannel channel = MethodChannel('com.oxchat.global/perferences');
-      await channel.invokeMethod('startPushNotificationService', {
-        'serverRelay': serverRelay,
-        'pubkey': account.pubkey,
-        'privkey': privkey,
-      });
+      await channel.invokeMethod('startPushNotificationService',
+          _androidPushServiceArguments(serverRelay, account.pubkey, privkey));
     } catch (e) {
       LogUtil.e('ensurePushService failed to start service: $e');
     }
   }
 
-  // Start timer to periodically check for pending AUTH challenges
-  void _startAuthCheckTimer() {
-    if (Platform.isAndroid) {
-      _authCheckTimer?.cancel();
-      _authCheckTimer = Timer.periodic(const Duration(seconds: 2), (timer) {
-        _checkPendingAuth();
+  Map<String, dynamic> _androidPushServiceArguments(String serverRelay, String pubkey, String privkey) {
+    return {
+      'serverRelay': serverRelay,
+      'pubkey': pubkey,
+      'privkey': privkey,
+      'mode': _androidPushMode,
+      'standbyRelays': _androidStandbyRelays.where((relay) => relay != serverRelay).toList(),
+      'candidateRelays': _androidCandidateRelays.where((relay) => relay != serverRelay).toList(),
+    };
+  }
+
+  // Reconnect scheduler state of the Android push service (network, doze, pending backoffs)
+  Future<Map<String, dynamic>?> getPushReconnectState() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getPushReconnectState');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getPushReconnectState failed: $e');
+    }
+    return null;
+  }
+
+  // Relay connection states (IDLE/CONNECTING/AUTHING/SUBSCRIBED/BACKOFF) and recent transitions
+  Future<Map<String, dynamic>?> getPushConnectionStates() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getPushConnectionStates');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getPushConnectionStates failed: $e');
+    }
+    return null;
+  }
+
+  // Per-relay wire vs decoded byte counters of the push sockets and whether permessage-deflate is active
+  Future<Map<String, dynamic>?> getPushTrafficStats() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getPushTrafficStats');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getPushTrafficStats failed: $e');
+    }
+    return null;
+  }
+
+  Future<void> _loadAndroidPushMode() async {
+    final value = await OXCacheManager.defaultOXCacheManager
+        .getForeverData(StorageKeyTool.KEY_ANDROID_PUSH_MODE, defaultValue: androidPushModePersistent);
+    _androidPushMode = value == androidPushModeScheduled ? androidPushModeScheduled : androidPushModePersistent;
+  }
+
+  // Switch between the always-on socket and scheduled sync, restarting the running push service in the new mode
+  Future<void> setAndroidPushMode(String mode) async {
+    if (!Platform.isAndroid || mode == _androidPushMode) return;
+    if (mode != androidPushModePersistent && mode != androidPushModeScheduled) return;
+    _androidPushMode = mode;
+    await OXCacheManager.defaultOXCacheManager.saveForeverData(StorageKeyTool.KEY_ANDROID_PUSH_MODE, mode);
+    await _ensureAndroidPushServiceStarted();
+  }
+
+  Future<void> _loadAndroidPushRelays() async {
+    _androidStandbyRelays = await _loadRelayList(StorageKeyTool.KEY_ANDROID_PUSH_STANDBY_RELAYS);
+    _androidCandidateRelays = await _loadRelayList(StorageKeyTool.KEY_ANDROID_PUSH_CANDIDATE_RELAYS);
+  }
+
+  Future<List<String>> _loadRelayList(String key) async {
+    final value = await OXCacheManager.defaultOXCacheManager.getForeverData(key, defaultValue: []);
+    return value is List ? value.whereType<String>().toList() : [];
+  }
+
+  static List<String> _normalizeRelays(List<String> relays) =>
+      relays.map((relay) => relay.trim()).where((relay) => relay.isNotEmpty).toSet().toList();
+
+  // Set the hot standby push relays, restarting the running push service with the new relay list
+  Future<void> setAndroidStandbyRelays(List<String> relays) async {
+    if (!Platform.isAndroid) return;
+    final updated = _normalizeRelays(relays);
+    if (listEquals(updated, _androidStandbyRelays)) return;
+    _androidStandbyRelays = updated;
+    await OXCacheManager.defaultOXCacheManager
+        .saveForeverData(StorageKeyTool.KEY_ANDROID_PUSH_STANDBY_RELAYS, updated);
+    await _ensureAndroidPushServiceStarted();
+  }
+
+  // Set the candidate push relays, restarting the running push service so it probes the new list
+  Future<void> setAndroidCandidateRelays(List<String> relays) async {
+    if (!Platform.isAndroid) return;
+    final updated = _normalizeRelays(relays);
+    if (listEquals(updated, _androidCandidateRelays)) return;
+    _androidCandidateRelays = updated;
+    await OXCacheManager.defaultOXCacheManager
+        .saveForeverData(StorageKeyTool.KEY_ANDROID_PUSH_CANDIDATE_RELAYS, updated);
+    await _ensureAndroidPushServiceStarted();
+  }
+
+  // Socket uptime and wakeups per hour of each push mode, to compare their power cost on this device
+  Future<Map<String, dynamic>?> getPushPowerStats() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getPushPowerStats');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getPushPowerStats failed: $e');
+    }
+    return null;
+  }
+
+  // Wakeups allowed and suppressed per kind class by the push service's wake budget, for tuning battery impact
+  Future<Map<String, dynamic>?> getPushWakeStats() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getPushWakeStats');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getPushWakeStats failed: $e');
+    }
+    return null;
+  }
+
+  // Measured connect / AUTH round-trip per candidate relay and the relays the push service selected
+  Future<Map<String, dynamic>?> getPushRelayLatency() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getPushRelayLatency');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getPushRelayLatency failed: $e');
+    }
+    return null;
+  }
+
+  // Replace the accounts served by the running Android push service without restarting it, primary first
+  // false if the service is not running or an account has no stored key, start the service with its privkey then
+  Future<bool> updatePushFilters(List<String> pubkeys) async {
+    if (!Platform.isAndroid) return false;
+    try {
+      final result = await _authChannel.invokeMethod('updatePushFilters', {
+        'pubkeys': pubkeys,
       });
+      return result == true;
+    } catch (e) {
+      LogUtil.e('updatePushFilters failed: $e');
     }
+    return false;
   }
 
-  // Check for pending AUTH challenges and process them
-  Future<void> _checkPendingAuth() async {
+  // Push path telemetry: latency histograms, reconnects by cause and traffic per minute over a rolling day
+  // Read live from the service while it runs, relays and key cache counters are only in the live form
+  Future<Map<String, dynamic>?> getPushServiceStats() async {
+    if (!Platform.isAndroid) return null;
     try {
-      final result = await _authChannel.invokeMethod('getPendingAuthChallenge');
-      if (result != null && result is Map) {
-        final challenge = result['challenge'] as String?;
-        final relay = result['relay'] as String?;
-        
-        if (challenge != null && relay != null && challenge.isNotEmpty) {
-          try {
-            final authJson = await NotificationHelper.generateAuthJson(challenge, relay);
-            if (authJson.isNotEmpty) {
-              await _authChannel.invokeMethod('sendAuthResponse', {
-                'authJson': authJson,
-              });
-              // Clear the pending challenge
-              await _authChannel.invokeMethod('clearPendingAuthChallenge');
-            }
-          } catch (e) {
-            print('Error generating authJson: $e');
-          }
-        }
-      }
+      final result = await _authChannel.invokeMethod('getPushServiceStats');
+      if (result is Map) return Map<String, dynamic>.from(result);
     } catch (e) {
-      // No pending challenge or error
+      LogUtil.e('getPushServiceStats failed: $e');
     }
+    return null;
+  }
+
+  // Time to first frame of MainActivity, split by pre-warmed ("warm") and newly created ("cold") engine
+  Future<Map<String, dynamic>?> getFirstFrameStats() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final result = await _authChannel.invokeMethod('getFirstFrameStats');
+      if (result is Map) return Map<String, dynamic>.from(result);
+    } catch (e) {
+      LogUtil.e('getFirstFrameStats failed: $e');
+    }
+    return null;
   }
 
   Future<String?> updatePushTokenIfNeeded() async {
@@ -239,11 +384,8 @@ class CLUserPushNotificationManager implements PushPermissionChecker {
           }
 
           const MethodChannel channel = MethodChannel('com.oxchat.global/perferences');
-          await channel.invokeMethod('startPushNotificationService', {
-            'serverRelay': serverRelay,
-            'pubkey': account.pubkey,
-            'privkey': privkey,
-          });
+          await channel.invokeMethod('startPushNotificationService',
+              _androidPushServiceArguments(serverRelay, account.pubkey, privkey));
         } catch (e) {
           return 'Failed to start push service: $e';
         }
@@ -11,6 +11,9 @@ class StorageKeyTool {
   static const String APP_MOMENT_POSITION = "APP_MOMENT_POSITION";  //0: top; 1: tabbar; 2: delete.
 
   static const String APP_DOMAIN_NAME = "APP_DOMAIN_NAME"; //当前domain
+  static const String KEY_ANDROID_PUSH_MODE = "KEY_ANDROID_PUSH_MODE"; //persistent: always-on socket; scheduled: periodic sync
+  static const String KEY_ANDROID_PUSH_STANDBY_RELAYS = "KEY_ANDROID_PUSH_STANDBY_RELAYS"; //hot standby push relays next to the server relay
+  static const String KEY_ANDROID_PUSH_CANDIDATE_RELAYS = "KEY_ANDROID_PUSH_CANDIDATE_RELAYS"; //push relays the service may switch to when they measure faster
 
 
 }